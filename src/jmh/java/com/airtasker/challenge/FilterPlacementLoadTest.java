@@ -0,0 +1,125 @@
+package com.airtasker.challenge;
+
+import com.airtasker.challenge.configuration.RateLimitFilterPlacementConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the end-to-end latency of denied requests of the servlet application per placement of the rate limit
+ * filter: in the filter chain of Spring Security, as the first filter of the servlet container and as a valve in the
+ * engine of Tomcat. All requests come from one IP with a limit of one request per hour, so every request but the first
+ * is denied, the flood the placement should make cheap. The requests are sent over a few keep-alive connections by a
+ * non-blocking client.
+ * <p>
+ * Run with {@code ./gradlew placementLoadTest}, the arguments ({@code --args="50000 8"}) are the number of requests per
+ * placement and the number of connections. Every placement first serves the same number of requests to warm up the
+ * JIT. The client runs on the same machine, so the latency includes its share of the CPU.
+ */
+public class FilterPlacementLoadTest {
+
+    private static final int DEFAULT_REQUESTS = 50_000;
+    private static final int DEFAULT_CONNECTIONS = 8;
+
+
+    public static void main(String[] args) {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_REQUESTS;
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CONNECTIONS;
+
+        System.out.printf("Java %s, %d denied requests over %d connections%n", System.getProperty("java.version"),
+                requests, connections);
+        System.out.printf("%-16s %10s %8s %10s %10s %10s %12s%n", "placement", "denied", "other",
+                "p50 us", "p99 us", "max us", "requests/s");
+
+        run(RateLimitFilterPlacementConfiguration.SECURITY_CHAIN, requests, connections);
+        run(RateLimitFilterPlacementConfiguration.SERVLET_FILTER, requests, connections);
+        run(RateLimitFilterPlacementConfiguration.TOMCAT_VALVE, requests, connections);
+    }
+
+    private static void run(String placement, int requests, int connections) {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(RatelimiterApplication.class)
+                // arguments, as the default properties would be overridden by the application properties
+                .run("--server.port=0", "--rate.limit.filter.placement=" + placement,
+                        "--api.limit.strategy=gcra", "--api.limit.requests=1", "--rate.limit.metrics.enabled=false",
+                        "--spring.main.banner-mode=off", "--logging.level.root=WARN");
+        ConnectionProvider connectionProvider = ConnectionProvider.builder("placement-load-test")
+                .maxConnections(connections)
+                .pendingAcquireMaxCount(-1)
+                .build();
+
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            HttpClient client = HttpClient.create(connectionProvider).baseUrl("http://localhost:" + port);
+
+            // the first request uses up the limit of the IP
+            send(client, 1, 1);
+            send(client, requests, connections);
+            Result result = send(client, requests, connections);
+
+            System.out.printf("%-16s %10d %8d %10d %10d %10d %12.0f%n", placement, result.denied, result.other,
+                    toMicros(result.latencies[requests / 2]), toMicros(result.latencies[requests * 99 / 100]),
+                    toMicros(result.latencies[requests - 1]),
+                    requests / (result.durationInNanos / (double) TimeUnit.SECONDS.toNanos(1)));
+        } finally {
+            connectionProvider.dispose();
+            context.close();
+        }
+    }
+
+    private static Result send(HttpClient client, int requests, int connections) {
+        long[] latencies = new long[requests];
+        AtomicInteger denied = new AtomicInteger();
+        AtomicInteger other = new AtomicInteger();
+        long start = System.nanoTime();
+
+        Flux.range(0, requests)
+                .flatMap(request -> {
+                    long requestStart = System.nanoTime();
+
+                    return client.get().uri("/")
+                            .responseSingle((response, body) -> body.then(Mono.just(response.status().code())))
+                            .doOnNext(status -> {
+                                latencies[request] = System.nanoTime() - requestStart;
+                                (status == 429 ? denied : other).incrementAndGet();
+                            })
+                            .onErrorResume(e -> {
+                                latencies[request] = System.nanoTime() - requestStart;
+                                other.incrementAndGet();
+                                return Mono.empty();
+                            });
+                }, connections)
+                .blockLast();
+
+        long duration = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        return new Result(latencies, denied.get(), other.get(), duration);
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+
+    private static final class Result {
+
+        final long[] latencies;
+        final int denied;
+        final int other;
+        final long durationInNanos;
+
+        Result(long[] latencies, int denied, int other, long durationInNanos) {
+            this.latencies = latencies;
+            this.denied = denied;
+            this.other = other;
+            this.durationInNanos = durationInNanos;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.airtasker.challenge;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares how many requests the servlet application serves concurrently on the thread pool of Tomcat and on virtual
+ * threads, when every request waits for a slow downstream call behind the rate limit filter. The downstream call is
+ * simulated by a blocking sleep in {@code /slow}, and all requests are sent at once over their own connection by a
+ * non-blocking client.
+ * <p>
+ * Run with {@code ./gradlew loadTest -PvirtualThreads -PruntimeJavaHome=<JDK 21>}, the arguments
+ * ({@code --args="2000 2000"}) are the number of concurrent requests and the latency of the downstream call in
+ * milliseconds. With the default 200 threads of Tomcat at most 200 requests wait for the downstream call at a time and
+ * the others queue, on virtual threads all of them do. The downstream latency is long enough for the requests to be
+ * bound by waiting rather than by the CPU, which both modes share with the client.
+ */
+public class VirtualThreadLoadTest {
+
+    private static final int DEFAULT_CONCURRENT_REQUESTS = 2000;
+    private static final long DEFAULT_DOWNSTREAM_LATENCY_MILLIS = 2000;
+    private static final int MAX_REQUESTS = 100_000;
+
+    static long downstreamLatencyInMillis;
+    static final AtomicInteger IN_FLIGHT = new AtomicInteger();
+    static final AtomicInteger MAX_IN_FLIGHT = new AtomicInteger();
+
+
+    public static void main(String[] args) {
+        int concurrentRequests = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CONCURRENT_REQUESTS;
+        downstreamLatencyInMillis = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_DOWNSTREAM_LATENCY_MILLIS;
+
+        System.out.printf("Java %s, %d concurrent requests, downstream latency %d ms%n",
+                System.getProperty("java.version"), concurrentRequests, downstreamLatencyInMillis);
+        System.out.printf("%-16s %10s %8s %10s %10s %10s %10s %12s%n", "threads", "completed", "failed",
+                "max in flight", "p50 ms", "p99 ms", "max ms", "requests/s");
+
+        // the first run warms up the JIT and the connections of the client
+        run(false, concurrentRequests, false);
+        run(false, concurrentRequests, true);
+        run(true, concurrentRequests, true);
+    }
+
+    private static void run(boolean virtualThreads, int concurrentRequests, boolean report) {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(RatelimiterApplication.class, SlowDownstream.class)
+                // arguments, as the default properties would be overridden by the application properties
+                .run("--server.port=0", "--server.virtual.threads.enabled=" + virtualThreads,
+                        // a limit that no request reaches, every request is checked but none denied
+                        "--api.limit.strategy=gcra", "--api.limit.requests=" + MAX_REQUESTS,
+                        "--spring.main.banner-mode=off", "--logging.level.root=WARN");
+        ConnectionProvider connections = ConnectionProvider.builder("load-test")
+                .maxConnections(concurrentRequests)
+                .pendingAcquireMaxCount(-1)
+                .build();
+
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            HttpClient client = HttpClient.create(connections).baseUrl("http://localhost:" + port);
+            long[] latencies = new long[concurrentRequests];
+            AtomicInteger completed = new AtomicInteger();
+            AtomicInteger failed = new AtomicInteger();
+
+            IN_FLIGHT.set(0);
+            MAX_IN_FLIGHT.set(0);
+            long start = System.nanoTime();
+
+            Flux.range(0, concurrentRequests)
+                    .flatMap(request -> {
+                        long requestStart = System.nanoTime();
+
+                        return client.get().uri("/slow")
+                                .responseSingle((response, body) -> body.then(Mono.just(response.status().code())))
+                                .doOnNext(status -> {
+                                    latencies[request] = System.nanoTime() - requestStart;
+                                    (status == 200 ? completed : failed).incrementAndGet();
+                                })
+                                .onErrorResume(e -> {
+                                    latencies[request] = System.nanoTime() - requestStart;
+                                    failed.incrementAndGet();
+                                    return Mono.empty();
+                                });
+                    }, concurrentRequests)
+                    .blockLast();
+
+            long duration = System.nanoTime() - start;
+            Arrays.sort(latencies);
+
+            if (report) {
+                System.out.printf("%-16s %10d %8d %10d %10d %10d %10d %12.0f%n",
+                        virtualThreads ? "virtual" : "platform pool", completed.get(), failed.get(), MAX_IN_FLIGHT.get(),
+                        toMillis(latencies[latencies.length / 2]), toMillis(latencies[latencies.length * 99 / 100]),
+                        toMillis(latencies[latencies.length - 1]),
+                        concurrentRequests / (duration / (double) TimeUnit.SECONDS.toNanos(1)));
+            }
+        } finally {
+            connections.dispose();
+            context.close();
+        }
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+
+    @RestController
+    static class SlowDownstream {
+
+        @GetMapping("/slow")
+        String slow() throws InterruptedException {
+            MAX_IN_FLIGHT.accumulateAndGet(IN_FLIGHT.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(downstreamLatencyInMillis);
+                return "ok";
+            } finally {
+                IN_FLIGHT.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.SystemMonotonicClock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures acquiring and releasing a permit of the {@link ConcurrencyLimiter}, the overhead it adds to every allowed
+ * request, with the key distributions of the {@link RateLimitStrategyBenchmark}. With {@code global} only the requests
+ * of all IPs are limited, with {@code per-ip} each IP as well, and with {@code adaptive} the requests of all IPs by an
+ * {@link AdaptiveLimit}, which reads the clock around every request. Run with
+ * {@code ./gradlew jmh -PjmhInclude=ConcurrencyLimiterBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrencyLimiterBenchmark {
+
+    private static final int MAX_IN_FLIGHT_PER_IP = 64;
+    private static final int MAX_IN_FLIGHT = 10_000;
+
+
+    @State(Scope.Benchmark)
+    public static class LimiterState {
+
+        @Param({"global", "per-ip", "adaptive"})
+        String limit;
+
+        @Param({"hot-key", "uniform"})
+        String keyDistribution;
+
+        ConcurrencyLimiter concurrencyLimiter;
+        String[] keys;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            SystemMonotonicClock clock = new SystemMonotonicClock();
+
+            if (limit.equals("adaptive")) {
+                concurrencyLimiter = new ConcurrencyLimiter(clock, ConcurrencyLimiter.UNLIMITED,
+                        new AdaptiveLimit(MAX_IN_FLIGHT, 1, MAX_IN_FLIGHT, TimeUnit.MILLISECONDS.toNanos(100), 1.5));
+            } else {
+                concurrencyLimiter = new ConcurrencyLimiter(clock,
+                        limit.equals("per-ip") ? MAX_IN_FLIGHT_PER_IP : ConcurrencyLimiter.UNLIMITED, MAX_IN_FLIGHT);
+            }
+            keys = RateLimitStrategyBenchmark.ipAddresses(RateLimitStrategyBenchmark.NUMBER_OF_KEYS);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class KeySequence {
+
+        private int[] keyIndexes;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp(LimiterState state) {
+            keyIndexes = RateLimitStrategyBenchmark.KeySequence.keyIndexes(state.keyDistribution, state.keys.length);
+        }
+
+        String nextKey(String[] keys) {
+            int index = keyIndexes[next];
+            next = next + 1 == keyIndexes.length ? 0 : next + 1;
+            return keys[index];
+        }
+    }
+
+
+    @Benchmark
+    @Threads(1)
+    public boolean acquireAndRelease_1Thread(LimiterState state, KeySequence keySequence) {
+        return acquireAndRelease(state.concurrencyLimiter, keySequence.nextKey(state.keys));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean acquireAndRelease_4Threads(LimiterState state, KeySequence keySequence) {
+        return acquireAndRelease(state.concurrencyLimiter, keySequence.nextKey(state.keys));
+    }
+
+    private static boolean acquireAndRelease(ConcurrencyLimiter concurrencyLimiter, String userIP) {
+        boolean acquired = concurrencyLimiter.tryAcquire(userIP);
+
+        if (acquired) {
+            concurrencyLimiter.release(userIP, concurrencyLimiter.startTimer(), false);
+        }
+        return acquired;
+    }
+}
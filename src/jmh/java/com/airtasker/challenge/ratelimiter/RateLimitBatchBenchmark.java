@@ -0,0 +1,110 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.SystemMonotonicClock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link RateLimitStrategy#checkRateLimits(RateLimitBatch)} with checking the same {@value #BATCH_SIZE}
+ * requests one by one, with the key distributions of the {@link RateLimitStrategyBenchmark}. The time is reported
+ * per request. Run with {@code ./gradlew jmh -PjmhInclude=RateLimitBatchBenchmark}, the gc profiler shows that a
+ * reused batch does not allocate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RateLimitBatchBenchmark {
+
+    private static final int BATCH_SIZE = 64;
+
+
+    @State(Scope.Benchmark)
+    public static class StrategyState {
+
+        @Param({"sliding-window-counter", "gcra", "gcra-compact"})
+        String strategy;
+
+        @Param({"hot-key", "uniform"})
+        String keyDistribution;
+
+        RateLimitStrategy rateLimitStrategy;
+        String[] keys;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            rateLimitStrategy = RateLimitStrategyBenchmark.createStrategy(strategy, new SystemMonotonicClock());
+            keys = RateLimitStrategyBenchmark.ipAddresses(RateLimitStrategyBenchmark.NUMBER_OF_KEYS);
+        }
+    }
+
+    /**
+     * The keys of the next batch, drawn in advance like the {@link RateLimitStrategyBenchmark.KeySequence}.
+     */
+    @State(Scope.Thread)
+    public static class BatchSequence {
+
+        private final RateLimitBatch batch = new RateLimitBatch(BATCH_SIZE);
+        private String[] userIPs;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp(StrategyState state) {
+            int[] keyIndexes = RateLimitStrategyBenchmark.KeySequence.keyIndexes(state.keyDistribution, state.keys.length);
+            userIPs = new String[Math.max(keyIndexes.length, BATCH_SIZE)];
+
+            for (int i = 0; i < userIPs.length; i++) {
+                userIPs[i] = state.keys[keyIndexes[i % keyIndexes.length]];
+            }
+        }
+
+        int nextBatchStart() {
+            int start = next;
+            next = next + 2 * BATCH_SIZE > userIPs.length ? 0 : next + BATCH_SIZE;
+            return start;
+        }
+    }
+
+
+    @Benchmark
+    @Threads(1)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void checkRateLimit_oneByOne(StrategyState state, BatchSequence sequence, Blackhole blackhole) {
+        int start = sequence.nextBatchStart();
+
+        for (int i = start; i < start + BATCH_SIZE; i++) {
+            blackhole.consume(state.rateLimitStrategy.checkRateLimit(sequence.userIPs[i]));
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public RateLimitBatch checkRateLimits_batch(StrategyState state, BatchSequence sequence) {
+        int start = sequence.nextBatchStart();
+        RateLimitBatch batch = sequence.batch;
+
+        batch.clear();
+        for (int i = start; i < start + BATCH_SIZE; i++) {
+            batch.add(sequence.userIPs[i]);
+        }
+        state.rateLimitStrategy.checkRateLimits(batch);
+        return batch;
+    }
+}
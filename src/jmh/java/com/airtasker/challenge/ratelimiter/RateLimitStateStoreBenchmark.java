@@ -0,0 +1,119 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.MonotonicClock;
+import com.airtasker.challenge.util.SystemMonotonicClock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how the throughput of {@link RateLimitStateStore#getOrCreate(String, long)} scales with the number of
+ * threads, depending on the number of shards. The keys are distributed uniformly or with a Zipf distribution over
+ * {@value RateLimitStrategyBenchmark#NUMBER_OF_KEYS} IPs, in an unbounded store and in a bounded store, which
+ * updates the frequency sketch on every request and locks its wheel to add a key.
+ * <p>
+ * Run with {@code ./gradlew jmh -PjmhInclude=RateLimitStateStoreBenchmark}. With enough shards, the throughput with
+ * 4 and all threads should be close to 4 and as many times the throughput with 1 thread.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RateLimitStateStoreBenchmark {
+
+    private static final long IDLE_TIMEOUT_IN_NANOS = TimeUnit.MINUTES.toNanos(60);
+
+
+    @State(Scope.Benchmark)
+    public static class StoreState {
+
+        @Param({"1", "4", "16", "64"})
+        int numberOfShards;
+
+        @Param({"uniform", "zipfian"})
+        String keyDistribution;
+
+        @Param({"0", "100000"})
+        int maximumSize;
+
+        MonotonicClock clock;
+        RateLimitStateStore<AtomicLong> store;
+        String[] keys;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            clock = new SystemMonotonicClock();
+            store = new RateLimitStateStore<>(IDLE_TIMEOUT_IN_NANOS, AtomicLong::new, this::removeIfIdle, maximumSize,
+                    numberOfShards);
+            keys = RateLimitStrategyBenchmark.ipAddresses(RateLimitStrategyBenchmark.NUMBER_OF_KEYS);
+        }
+
+        private long removeIfIdle(String key, AtomicLong timeOfCreation, long currentTime) {
+            long idleTime = timeOfCreation.get() + IDLE_TIMEOUT_IN_NANOS;
+
+            if (idleTime >= currentTime) {
+                return idleTime;
+            }
+
+            store.remove(key, timeOfCreation);
+            return RateLimitStateStore.REMOVED;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class KeySequence {
+
+        private int[] keyIndexes;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp(StoreState state) {
+            keyIndexes = RateLimitStrategyBenchmark.KeySequence.keyIndexes(state.keyDistribution, state.keys.length);
+        }
+
+        String nextKey(String[] keys) {
+            int index = keyIndexes[next];
+            next = next + 1 == keyIndexes.length ? 0 : next + 1;
+            return keys[index];
+        }
+    }
+
+
+    @Benchmark
+    @Threads(1)
+    public AtomicLong getOrCreate_1Thread(StoreState state, KeySequence keySequence) {
+        return getOrCreate(state, keySequence);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public AtomicLong getOrCreate_4Threads(StoreState state, KeySequence keySequence) {
+        return getOrCreate(state, keySequence);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public AtomicLong getOrCreate_MaxThreads(StoreState state, KeySequence keySequence) {
+        return getOrCreate(state, keySequence);
+    }
+
+    private static AtomicLong getOrCreate(StoreState state, KeySequence keySequence) {
+        long currentTime = state.clock.nanoTime();
+        state.store.expireIdleStates(currentTime);
+        return state.store.getOrCreate(keySequence.nextKey(state.keys), currentTime);
+    }
+}
@@ -0,0 +1,190 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.MonotonicClock;
+import com.airtasker.challenge.util.SystemMonotonicClock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link RateLimitStrategy#checkRateLimit(String)} of every strategy with different key distributions:
+ * <ul>
+ * <li>{@code hot-key}: every request comes from the same IP, so nearly all of them are denied</li>
+ * <li>{@code uniform}: requests are evenly distributed over {@value #NUMBER_OF_KEYS} IPs</li>
+ * <li>{@code zipfian}: requests are distributed over {@value #NUMBER_OF_KEYS} IPs with a Zipf distribution, a few IPs
+ * send most of the requests</li>
+ * <li>{@code churn}: {@value #NUMBER_OF_CHURN_KEYS} IPs send one request each, more than the
+ * {@value #MAX_TRACKED_IPS} IPs that are tracked</li>
+ * <li>{@code flood}: {@value #NUMBER_OF_FLOOD_KEYS} abusive IPs send requests far above their limit, so after the
+ * warmup every request takes the path of a denied request</li>
+ * </ul>
+ * Throughput and sample time (latency percentiles) are measured with 1, 4 and as many threads as there are
+ * processors. Run with {@code ./gradlew jmh}, the gc profiler reports the allocation rate per operation.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RateLimitStrategyBenchmark {
+
+    static final int NUMBER_OF_KEYS = 10_000;
+    static final int NUMBER_OF_CHURN_KEYS = 1 << 20;
+    static final int MAX_TRACKED_IPS = 100_000;
+    static final int NUMBER_OF_FLOOD_KEYS = 256;
+
+    private static final int API_LIMIT_IN_MINUTES = 60;
+    private static final int API_LIMIT_REQUESTS = 100;
+    private static final int KEY_SEQUENCE_LENGTH = 1 << 16;
+    private static final double ZIPF_EXPONENT = 1.0;
+
+
+    @State(Scope.Benchmark)
+    public static class StrategyState {
+
+        @Param({"sliding-window", "sliding-window-ring-buffer", "sliding-window-counter", "gcra", "gcra-compact",
+                "gcra-compact-off-heap"})
+        String strategy;
+
+        @Param({"hot-key", "uniform", "zipfian", "churn", "flood"})
+        String keyDistribution;
+
+        RateLimitStrategy rateLimitStrategy;
+        String[] keys;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            rateLimitStrategy = createStrategy(strategy, new SystemMonotonicClock());
+            keys = ipAddresses(keyDistribution.equals("churn") ? NUMBER_OF_CHURN_KEYS
+                    : keyDistribution.equals("flood") ? NUMBER_OF_FLOOD_KEYS : NUMBER_OF_KEYS);
+        }
+    }
+
+    static String[] ipAddresses(int numberOfKeys) {
+        String[] keys = new String[numberOfKeys];
+
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (i >>> 24) + "." + (i >>> 16 & 0xff) + "." + (i >>> 8 & 0xff) + "." + (i & 0xff);
+        }
+
+        return keys;
+    }
+
+    /**
+     * The keys of each thread are drawn in advance, so the benchmark does not measure the random number generator.
+     */
+    @State(Scope.Thread)
+    public static class KeySequence {
+
+        private int[] keyIndexes;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp(StrategyState state) {
+            keyIndexes = keyIndexes(state.keyDistribution, state.keys.length);
+        }
+
+        String nextKey(String[] keys) {
+            int index = keyIndexes[next];
+            next = next + 1 == keyIndexes.length ? 0 : next + 1;
+            return keys[index];
+        }
+
+        static int[] keyIndexes(String keyDistribution, int numberOfKeys) {
+            SplittableRandom random = new SplittableRandom();
+
+            switch (keyDistribution) {
+                case "hot-key":
+                    return new int[1];
+                case "uniform":
+                case "flood":
+                    return random.ints(KEY_SEQUENCE_LENGTH, 0, numberOfKeys).toArray();
+                case "zipfian":
+                    return zipfianIndexes(random, numberOfKeys);
+                case "churn":
+                    int offset = random.nextInt(numberOfKeys);
+                    int[] keyIndexes = new int[numberOfKeys];
+                    for (int i = 0; i < keyIndexes.length; i++) {
+                        keyIndexes[i] = (offset + i) % numberOfKeys;
+                    }
+                    return keyIndexes;
+                default:
+                    throw new IllegalArgumentException("unknown key distribution: " + keyDistribution);
+            }
+        }
+
+        private static int[] zipfianIndexes(SplittableRandom random, int numberOfKeys) {
+            double[] cumulativeProbability = new double[numberOfKeys];
+            double sum = 0;
+
+            for (int rank = 1; rank <= numberOfKeys; rank++) {
+                sum += 1 / Math.pow(rank, ZIPF_EXPONENT);
+                cumulativeProbability[rank - 1] = sum;
+            }
+
+            int[] indexes = new int[KEY_SEQUENCE_LENGTH];
+            for (int i = 0; i < indexes.length; i++) {
+                double value = random.nextDouble() * sum;
+                int index = Arrays.binarySearch(cumulativeProbability, value);
+                indexes[i] = Math.min(index >= 0 ? index : -index - 1, numberOfKeys - 1);
+            }
+
+            return indexes;
+        }
+    }
+
+
+    @Benchmark
+    @Threads(1)
+    public RateLimitResult checkRateLimit_1Thread(StrategyState state, KeySequence keySequence) {
+        return state.rateLimitStrategy.checkRateLimit(keySequence.nextKey(state.keys));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public RateLimitResult checkRateLimit_4Threads(StrategyState state, KeySequence keySequence) {
+        return state.rateLimitStrategy.checkRateLimit(keySequence.nextKey(state.keys));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public RateLimitResult checkRateLimit_MaxThreads(StrategyState state, KeySequence keySequence) {
+        return state.rateLimitStrategy.checkRateLimit(keySequence.nextKey(state.keys));
+    }
+
+
+    static RateLimitStrategy createStrategy(String strategy, MonotonicClock clock) {
+        switch (strategy) {
+            case "sliding-window":
+                return new SlidingWindowRateLimitStrategy(clock, API_LIMIT_IN_MINUTES, API_LIMIT_REQUESTS, MAX_TRACKED_IPS);
+            case "sliding-window-ring-buffer":
+                return new RingBufferSlidingWindowRateLimitStrategy(clock, API_LIMIT_IN_MINUTES, API_LIMIT_REQUESTS, MAX_TRACKED_IPS);
+            case "sliding-window-counter":
+                return new SlidingWindowCounterRateLimitStrategy(clock, API_LIMIT_IN_MINUTES, API_LIMIT_REQUESTS, MAX_TRACKED_IPS);
+            case "gcra":
+                return new GcraRateLimitStrategy(clock, API_LIMIT_IN_MINUTES, API_LIMIT_REQUESTS, MAX_TRACKED_IPS);
+            case "gcra-compact":
+                return new CompactGcraRateLimitStrategy(clock, API_LIMIT_IN_MINUTES, API_LIMIT_REQUESTS, MAX_TRACKED_IPS,
+                        IpAddressKey.IPV6_ADDRESS_LENGTH, SlotTable.Storage.HEAP);
+            case "gcra-compact-off-heap":
+                return new CompactGcraRateLimitStrategy(clock, API_LIMIT_IN_MINUTES, API_LIMIT_REQUESTS, MAX_TRACKED_IPS,
+                        IpAddressKey.IPV6_ADDRESS_LENGTH, SlotTable.Storage.OFF_HEAP);
+            default:
+                throw new IllegalArgumentException("unknown strategy: " + strategy);
+        }
+    }
+}
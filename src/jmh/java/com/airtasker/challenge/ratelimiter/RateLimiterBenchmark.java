@@ -0,0 +1,124 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.SystemMonotonicClock;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of the {@link RateLimitMetrics} on {@link RateLimiter#checkRateLimit}, with requests that are
+ * allowed ({@code uniform} over {@value RateLimitStrategyBenchmark#NUMBER_OF_KEYS} IPs, far below the limit) and
+ * requests that are denied ({@code hot-key}). Run with {@code ./gradlew jmh -PjmhInclude=RateLimiterBenchmark}, the
+ * gc profiler shows that recording the metrics does not allocate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+    private static final int API_LIMIT_IN_MINUTES = 60;
+    private static final int API_LIMIT_REQUESTS = 1_000_000;
+
+
+    @State(Scope.Benchmark)
+    public static class RateLimiterState {
+
+        @Param({"false", "true"})
+        boolean metrics;
+
+        @Param({"uniform", "hot-key"})
+        String keyDistribution;
+
+        RateLimiter rateLimiter;
+        String[] keys;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            int apiLimitRequests = keyDistribution.equals("hot-key") ? 1 : API_LIMIT_REQUESTS;
+            RateLimitStrategy strategy = new GcraRateLimitStrategy(new SystemMonotonicClock(), API_LIMIT_IN_MINUTES,
+                    apiLimitRequests, RateLimitStrategyBenchmark.MAX_TRACKED_IPS);
+
+            rateLimiter = new RateLimiter(strategy, null,
+                    metrics ? new RateLimitMetrics(new SimpleMeterRegistry(), 10, 16) : null);
+            keys = RateLimitStrategyBenchmark.ipAddresses(RateLimitStrategyBenchmark.NUMBER_OF_KEYS);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class KeySequence {
+
+        private int[] keyIndexes;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp(RateLimiterState state) {
+            keyIndexes = RateLimitStrategyBenchmark.KeySequence.keyIndexes(state.keyDistribution, state.keys.length);
+        }
+
+        String nextKey(String[] keys) {
+            int index = keyIndexes[next];
+            next = next + 1 == keyIndexes.length ? 0 : next + 1;
+            return keys[index];
+        }
+    }
+
+
+    @Benchmark
+    @Threads(1)
+    public RateLimitResult checkRateLimit(RateLimiterState state, KeySequence keySequence) {
+        return state.rateLimiter.checkRateLimit(keySequence.nextKey(state.keys), RemoteAddressAdapter.INSTANCE);
+    }
+
+
+    /**
+     * A request that is only its remote address.
+     */
+    private enum RemoteAddressAdapter implements RateLimitRequestAdapter<String> {
+        INSTANCE;
+
+        @Override
+        public String remoteAddress(String request) {
+            return request;
+        }
+
+        @Override
+        public String method(String request) {
+            return "GET";
+        }
+
+        @Override
+        public String path(String request) {
+            return "/";
+        }
+
+        @Override
+        public String header(String request, String name) {
+            return null;
+        }
+
+        @Override
+        public String principal(String request) {
+            return null;
+        }
+
+        @Override
+        public Object attribute(String request, String name) {
+            return null;
+        }
+    }
+}
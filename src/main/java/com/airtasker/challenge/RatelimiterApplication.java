@@ -3,9 +3,11 @@ package com.airtasker.challenge;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.boot.web.servlet.ServletComponentScan;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @ServletComponentScan
+@EnableScheduling
 public class RatelimiterApplication {
 
 	public static void main(String[] args) {
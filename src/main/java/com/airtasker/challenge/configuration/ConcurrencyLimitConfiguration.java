@@ -0,0 +1,41 @@
+package com.airtasker.challenge.configuration;
+
+import com.airtasker.challenge.ratelimiter.AdaptiveLimit;
+import com.airtasker.challenge.ratelimiter.ConcurrencyLimiter;
+import com.airtasker.challenge.util.MonotonicClock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the requests in flight with {@code rate.limit.concurrency.per.ip} and {@code rate.limit.concurrency.global},
+ * if at least one of them is set. With {@code rate.limit.concurrency.adaptive.enabled=true} the global limit follows
+ * the latency of the backend instead, see {@link AdaptiveLimit}. The filters check the limit once the rate limit allowed
+ * a request.
+ */
+@Configuration
+@ConditionalOnExpression("${rate.limit.concurrency.per.ip:0} > 0 or ${rate.limit.concurrency.global:0} > 0"
+        + " or ${rate.limit.concurrency.adaptive.enabled:false}")
+public class ConcurrencyLimitConfiguration {
+
+    @Bean
+    public ConcurrencyLimiter concurrencyLimiter(MonotonicClock clock,
+                                                 @Value("${rate.limit.concurrency.per.ip:0}") int maxInFlightPerIP,
+                                                 @Value("${rate.limit.concurrency.global:0}") int maxInFlight,
+                                                 @Value("${rate.limit.concurrency.adaptive.enabled:false}") boolean adaptive,
+                                                 @Value("${rate.limit.concurrency.adaptive.initial:20}") int initialLimit,
+                                                 @Value("${rate.limit.concurrency.adaptive.min:5}") int minLimit,
+                                                 @Value("${rate.limit.concurrency.adaptive.max:200}") int maxLimit,
+                                                 @Value("${rate.limit.concurrency.adaptive.window.millis:500}") long windowInMillis,
+                                                 @Value("${rate.limit.concurrency.adaptive.latency.tolerance:1.5}") double latencyTolerance) {
+        if (!adaptive) {
+            return new ConcurrencyLimiter(clock, maxInFlightPerIP, maxInFlight);
+        }
+
+        return new ConcurrencyLimiter(clock, maxInFlightPerIP, new AdaptiveLimit(initialLimit, minLimit, maxLimit,
+                TimeUnit.MILLISECONDS.toNanos(windowInMillis), latencyTolerance));
+    }
+}
@@ -0,0 +1,34 @@
+package com.airtasker.challenge.configuration;
+
+import com.airtasker.challenge.ratelimiter.InMemorySharedRateLimitStore;
+import com.airtasker.challenge.ratelimiter.RedisSharedRateLimitStore;
+import com.airtasker.challenge.ratelimiter.SharedRateLimitStore;
+import com.airtasker.challenge.util.MonotonicClock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Shared store of the distributed strategies, selected with the {@code rate.limit.shared.store} property.
+ */
+@Configuration
+@ConditionalOnExpression("'${api.limit.strategy:}' == 'distributed' or '${api.limit.strategy:}' == 'distributed-leased'")
+public class DistributedRateLimitConfiguration {
+
+    @Bean
+    @ConditionalOnProperty(name = "rate.limit.shared.store", havingValue = "redis", matchIfMissing = true)
+    public SharedRateLimitStore redisSharedRateLimitStore(@Value("${rate.limit.redis.uri}") String redisURI,
+                                                          @Value("${rate.limit.distributed.timeout.millis}") long timeoutInMillis) {
+        return new RedisSharedRateLimitStore(redisURI, Duration.ofMillis(timeoutInMillis));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "rate.limit.shared.store", havingValue = "in-memory")
+    public SharedRateLimitStore inMemorySharedRateLimitStore(MonotonicClock clock) {
+        return new InMemorySharedRateLimitStore(clock);
+    }
+}
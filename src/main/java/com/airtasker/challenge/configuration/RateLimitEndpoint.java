@@ -0,0 +1,42 @@
+package com.airtasker.challenge.configuration;
+
+import com.airtasker.challenge.ratelimiter.ObservableRateLimitStrategy;
+import com.airtasker.challenge.ratelimiter.RateLimitMetrics;
+import com.airtasker.challenge.ratelimiter.RateLimitStrategy;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code /actuator/ratelimit}: the heaviest clients, which do not fit into metrics with a fixed set of tags, together
+ * with the counts of the requests and the tracked IPs.
+ */
+@Endpoint(id = "ratelimit")
+public class RateLimitEndpoint {
+
+    private final RateLimitMetrics metrics;
+    private final RateLimitStrategy strategy;
+
+
+    public RateLimitEndpoint(RateLimitMetrics metrics, RateLimitStrategy strategy) {
+        this.metrics = metrics;
+        this.strategy = strategy;
+    }
+
+
+    @ReadOperation
+    public Map<String, Object> rateLimit() {
+        Map<String, Object> rateLimit = new LinkedHashMap<>();
+        rateLimit.put("allowedRequests", metrics.getAllowedCount());
+        rateLimit.put("deniedRequests", metrics.getDeniedCount());
+
+        if (strategy instanceof ObservableRateLimitStrategy) {
+            rateLimit.put("trackedIPs", ((ObservableRateLimitStrategy) strategy).numberOfTrackedIPs());
+        }
+
+        rateLimit.put("heaviestClients", metrics.heaviestClients());
+        return rateLimit;
+    }
+}
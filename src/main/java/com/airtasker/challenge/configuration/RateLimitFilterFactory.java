@@ -1,22 +1,32 @@
 package com.airtasker.challenge.configuration;
 
+import com.airtasker.challenge.ratelimiter.ConcurrencyLimiter;
 import com.airtasker.challenge.ratelimiter.RateLimitFilter;
+import com.airtasker.challenge.ratelimiter.RateLimitMetrics;
+import com.airtasker.challenge.ratelimiter.RateLimitPolicyEngine;
 import com.airtasker.challenge.ratelimiter.RateLimitStrategy;
-import com.airtasker.challenge.util.TimeProvider;
-import org.springframework.beans.factory.annotation.Autowired;
+import com.airtasker.challenge.ratelimiter.RateLimitWebFilter;
+import com.airtasker.challenge.ratelimiter.RateLimiter;
+import com.airtasker.challenge.ratelimiter.RequestCosts;
 import org.springframework.stereotype.Component;
 
 @Component
 public class RateLimitFilterFactory {
 
-
-    @Autowired
-    TimeProvider timeProvider;
-
     public RateLimitFilterFactory() {
     }
 
-    public RateLimitFilter creatRateLimitFilter(RateLimitStrategy rateLimitStrategy) {
-        return new RateLimitFilter(rateLimitStrategy);
+    public RateLimitFilter creatRateLimitFilter(RateLimitStrategy rateLimitStrategy, RateLimitPolicyEngine policyEngine,
+                                                RateLimitMetrics metrics, RequestCosts requestCosts,
+                                                ConcurrencyLimiter concurrencyLimiter) {
+        return new RateLimitFilter(new RateLimiter(rateLimitStrategy, policyEngine, metrics, requestCosts),
+                concurrencyLimiter);
+    }
+
+    public RateLimitWebFilter createRateLimitWebFilter(RateLimitStrategy rateLimitStrategy, RateLimitPolicyEngine policyEngine,
+                                                       RateLimitMetrics metrics, RequestCosts requestCosts,
+                                                       ConcurrencyLimiter concurrencyLimiter) {
+        return new RateLimitWebFilter(new RateLimiter(rateLimitStrategy, policyEngine, metrics, requestCosts),
+                concurrencyLimiter);
     }
 }
@@ -0,0 +1,84 @@
+package com.airtasker.challenge.configuration;
+
+import com.airtasker.challenge.ratelimiter.ConcurrencyLimiter;
+import com.airtasker.challenge.ratelimiter.RateLimitFilter;
+import com.airtasker.challenge.ratelimiter.RateLimitMetrics;
+import com.airtasker.challenge.ratelimiter.RateLimitPolicyEngine;
+import com.airtasker.challenge.ratelimiter.RateLimitStrategy;
+import com.airtasker.challenge.ratelimiter.RateLimitValve;
+import com.airtasker.challenge.ratelimiter.RequestCosts;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Places the rate limit filter of the servlet application outside of Spring Security, with
+ * {@code rate.limit.filter.placement}:
+ * <ul>
+ * <li>{@value #SECURITY_CHAIN} (default): in the filter chain of Spring Security, before the basic authentication, see
+ * {@link WebSecurityConfiguration}</li>
+ * <li>{@value #SERVLET_FILTER}: as the first filter of the servlet container, before the filter chain of Spring
+ * Security is set up</li>
+ * <li>{@value #TOMCAT_VALVE}: as a {@link RateLimitValve} in the engine of Tomcat, before any filter</li>
+ * </ul>
+ * Outside of Spring Security the policies with the key {@code principal} do not see the authentication restored from
+ * the session, only the principal of the servlet container.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class RateLimitFilterPlacementConfiguration {
+
+    public static final String SECURITY_CHAIN = "security-chain";
+    public static final String SERVLET_FILTER = "servlet-filter";
+    public static final String TOMCAT_VALVE = "tomcat-valve";
+
+    @Autowired
+    RateLimitStrategy rateLimitStrategy;
+
+    @Autowired
+    RateLimitPolicyEngine rateLimitPolicyEngine;
+
+    @Autowired(required = false)
+    RateLimitMetrics rateLimitMetrics;
+
+    @Autowired
+    RequestCosts requestCosts;
+
+    @Autowired(required = false)
+    ConcurrencyLimiter concurrencyLimiter;
+
+    private final RateLimitFilterFactory rateLimitFilterFactory;
+
+
+    public RateLimitFilterPlacementConfiguration(RateLimitFilterFactory rateLimitFilterFactory) {
+        this.rateLimitFilterFactory = rateLimitFilterFactory;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "rate.limit.filter.placement", havingValue = SERVLET_FILTER)
+    public FilterRegistrationBean<RateLimitFilter> rateLimitFilterRegistration() {
+        FilterRegistrationBean<RateLimitFilter> registration = new FilterRegistrationBean<>(createRateLimitFilter());
+
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "rate.limit.filter.placement", havingValue = TOMCAT_VALVE)
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> rateLimitValveCustomizer() {
+        RateLimitValve valve = new RateLimitValve(createRateLimitFilter());
+
+        return factory -> factory.addEngineValves(valve);
+    }
+
+    private RateLimitFilter createRateLimitFilter() {
+        return rateLimitFilterFactory.creatRateLimitFilter(rateLimitStrategy, rateLimitPolicyEngine, rateLimitMetrics,
+                requestCosts, concurrencyLimiter);
+    }
+}
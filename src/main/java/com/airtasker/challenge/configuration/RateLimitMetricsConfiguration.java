@@ -0,0 +1,95 @@
+package com.airtasker.challenge.configuration;
+
+import com.airtasker.challenge.ratelimiter.ConcurrencyLimiter;
+import com.airtasker.challenge.ratelimiter.ObservableRateLimitStrategy;
+import com.airtasker.challenge.ratelimiter.RateLimitMetrics;
+import com.airtasker.challenge.ratelimiter.RateLimitStateStatistics;
+import com.airtasker.challenge.ratelimiter.RateLimitStrategy;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of the rate limit, published with the other Micrometer metrics of Actuator ({@code /actuator/metrics}), and
+ * the heaviest clients at {@code /actuator/ratelimit}. The size of the state is only reported by the strategies that
+ * keep it in memory ({@link ObservableRateLimitStrategy}), and read when the metrics are published, like the requests in
+ * flight of the {@link ConcurrencyLimiter}, if there is one.
+ */
+@Configuration
+@ConditionalOnProperty(name = "rate.limit.metrics.enabled", havingValue = "true", matchIfMissing = true)
+public class RateLimitMetricsConfiguration {
+
+    @Bean
+    public RateLimitMetrics rateLimitMetrics(MeterRegistry registry,
+                                             @Value("${rate.limit.metrics.heavy.hitters}") int numberOfHeavyHitters,
+                                             @Value("${rate.limit.metrics.latency.sampling.interval}") int latencySamplingInterval) {
+        return new RateLimitMetrics(registry, numberOfHeavyHitters, latencySamplingInterval);
+    }
+
+    @Bean
+    public MeterBinder rateLimitStateMetrics(RateLimitStrategy rateLimitStrategy) {
+        return registry -> {
+            if (rateLimitStrategy instanceof ObservableRateLimitStrategy) {
+                bind((ObservableRateLimitStrategy) rateLimitStrategy, registry);
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder concurrencyLimitMetrics(ObjectProvider<ConcurrencyLimiter> concurrencyLimiter) {
+        return registry -> concurrencyLimiter.ifAvailable(limiter -> {
+            Gauge.builder("rate.limit.in.flight", limiter, ConcurrencyLimiter::numberOfRequestsInFlight)
+                    .description("Requests in flight that were allowed by the rate limit")
+                    .register(registry);
+            Gauge.builder("rate.limit.concurrency.limit", limiter, ConcurrencyLimiter::getLimit)
+                    .description("Current limit of the requests in flight of all IPs, adjusted if it is adaptive, 0 if unlimited")
+                    .register(registry);
+            FunctionCounter.builder("rate.limit.concurrency.rejected", limiter, ConcurrencyLimiter::getRejectedCount)
+                    .description("Requests rejected because too many requests were in flight")
+                    .register(registry);
+        });
+    }
+
+    private static void bind(ObservableRateLimitStrategy strategy, MeterRegistry registry) {
+        RateLimitStateStatistics statistics = strategy.getStateStatistics();
+
+        Gauge.builder("rate.limit.tracked.ips", strategy, ObservableRateLimitStrategy::numberOfTrackedIPs)
+                .description("IPs whose rate limit state is kept")
+                .register(registry);
+        Gauge.builder("rate.limit.state.memory", strategy, ObservableRateLimitStrategy::estimateMemoryInBytes)
+                .description("Estimated memory of the tracked IPs and their state")
+                .baseUnit("bytes")
+                .register(registry);
+
+        FunctionCounter.builder("rate.limit.state.removed", statistics, RateLimitStateStatistics::getExpiredCount)
+                .description("IPs removed from the state")
+                .tag("cause", "idle")
+                .register(registry);
+        FunctionCounter.builder("rate.limit.state.removed", statistics, RateLimitStateStatistics::getEvictionCount)
+                .description("IPs removed from the state")
+                .tag("cause", "evicted")
+                .register(registry);
+        FunctionCounter.builder("rate.limit.state.not.admitted", statistics, RateLimitStateStatistics::getNotAdmittedCount)
+                .description("Requests whose IP was not tracked because the state was full, they share one limit")
+                .register(registry);
+
+        FunctionTimer.builder("rate.limit.state.cleanup", statistics, RateLimitStateStatistics::getCleanupCount,
+                RateLimitStateStatistics::getCleanupTimeInNanos, TimeUnit.NANOSECONDS)
+                .description("Cleanups of the idle IPs by the background task")
+                .register(registry);
+    }
+
+    @Bean
+    public RateLimitEndpoint rateLimitEndpoint(RateLimitMetrics rateLimitMetrics, RateLimitStrategy rateLimitStrategy) {
+        return new RateLimitEndpoint(rateLimitMetrics, rateLimitStrategy);
+    }
+}
@@ -0,0 +1,54 @@
+package com.airtasker.challenge.configuration;
+
+import com.airtasker.challenge.ratelimiter.RateLimitPolicy;
+import com.airtasker.challenge.ratelimiter.RateLimitPolicyEngine;
+import com.airtasker.challenge.ratelimiter.RequestCosts;
+import com.airtasker.challenge.ratelimiter.RouteCost;
+import com.airtasker.challenge.util.MonotonicClock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles the {@code rate.limit.policies} and {@code rate.limit.costs} on startup, an invalid policy or cost fails the
+ * startup. The policies can be replaced at runtime by the {@link RateLimitReloader}, the costs cannot.
+ */
+@Configuration
+@EnableConfigurationProperties(RateLimitPolicyProperties.class)
+public class RateLimitPolicyConfiguration {
+
+    @Bean
+    public RateLimitPolicyEngine rateLimitPolicyEngine(MonotonicClock clock, RateLimitPolicyProperties properties,
+                                                       @Value("${rate.limit.max.tracked.ips}") int maxTrackedKeys) {
+        return new RateLimitPolicyEngine(clock, compile(properties.getPolicies()), maxTrackedKeys);
+    }
+
+    @Bean
+    public RequestCosts requestCosts(RateLimitPolicyProperties properties) {
+        List<RouteCost> routeCosts = new ArrayList<>();
+
+        for (RateLimitPolicyProperties.Cost cost : properties.getCosts()) {
+            routeCosts.add(RouteCost.compile(cost.getPath(), cost.getMethod(), cost.getCost()));
+        }
+
+        return new RequestCosts(routeCosts);
+    }
+
+    static List<RateLimitPolicy> compile(List<RateLimitPolicyProperties.Policy> properties) {
+        List<RateLimitPolicy> policies = new ArrayList<>();
+
+        for (int i = 0; i < properties.size(); i++) {
+            RateLimitPolicyProperties.Policy policy = properties.get(i);
+            String name = policy.getName() == null ? "policy-" + i : policy.getName();
+
+            policies.add(RateLimitPolicy.compile(name, policy.getKey(), policy.getPath(), policy.getMethod(),
+                    policy.getLimits()));
+        }
+
+        return policies;
+    }
+}
@@ -0,0 +1,116 @@
+package com.airtasker.challenge.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code rate.limit.policies} of the application properties, see
+ * {@link com.airtasker.challenge.ratelimiter.RateLimitPolicy#compile}, and the {@code rate.limit.costs} of the routes,
+ * see {@link com.airtasker.challenge.ratelimiter.RouteCost#compile}.
+ */
+@ConfigurationProperties(prefix = "rate.limit")
+public class RateLimitPolicyProperties {
+
+    private List<Policy> policies = new ArrayList<>();
+    private List<Cost> costs = new ArrayList<>();
+
+
+    public List<Policy> getPolicies() {
+        return policies;
+    }
+
+    public void setPolicies(List<Policy> policies) {
+        this.policies = policies;
+    }
+
+    public List<Cost> getCosts() {
+        return costs;
+    }
+
+    public void setCosts(List<Cost> costs) {
+        this.costs = costs;
+    }
+
+
+    public static class Policy {
+
+        private String name;
+        private String key;
+        private String path;
+        private String method;
+        private List<String> limits = new ArrayList<>();
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public void setKey(String key) {
+            this.key = key;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public void setPath(String path) {
+            this.path = path;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public void setMethod(String method) {
+            this.method = method;
+        }
+
+        public List<String> getLimits() {
+            return limits;
+        }
+
+        public void setLimits(List<String> limits) {
+            this.limits = limits;
+        }
+    }
+
+    public static class Cost {
+
+        private String path;
+        private String method;
+        private int cost;
+
+        public String getPath() {
+            return path;
+        }
+
+        public void setPath(String path) {
+            this.path = path;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public void setMethod(String method) {
+            this.method = method;
+        }
+
+        public int getCost() {
+            return cost;
+        }
+
+        public void setCost(int cost) {
+            this.cost = cost;
+        }
+    }
+}
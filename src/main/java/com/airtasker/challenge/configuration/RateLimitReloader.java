@@ -0,0 +1,127 @@
+package com.airtasker.challenge.configuration;
+
+import com.airtasker.challenge.ratelimiter.RateLimitPolicy;
+import com.airtasker.challenge.ratelimiter.RateLimitPolicyEngine;
+import com.airtasker.challenge.ratelimiter.RateLimitStrategy;
+import com.airtasker.challenge.ratelimiter.ReloadableRateLimitStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * Watches {@code rate.limit.reload.file} and applies the {@code api.limit.in.minutes}, {@code api.limit.requests} and
+ * {@code rate.limit.policies} it contains while the service is running. The file overrides the application
+ * properties: what it does not contain, or everything once it is deleted, is taken from the application properties.
+ * <p>
+ * The limit of the strategy and the policies are each replaced atomically and the tracked state is kept, see
+ * {@link ReloadableRateLimitStrategy} and {@link RateLimitPolicyEngine#updatePolicies}. A file with an invalid limit
+ * or policy is not applied at all.
+ */
+@Component
+@ConditionalOnProperty(name = "rate.limit.reload.enabled", havingValue = "true")
+public class RateLimitReloader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RateLimitReloader.class);
+
+    private final RateLimitStrategy strategy;
+    private final RateLimitPolicyEngine policyEngine;
+    private final Path file;
+    private final int apiLimitInMinutes;
+    private final int apiLimitRequests;
+    private final List<RateLimitPolicyProperties.Policy> policies;
+    private FileTime lastModifiedTime;
+
+
+    @Autowired
+    public RateLimitReloader(RateLimitStrategy strategy, RateLimitPolicyEngine policyEngine,
+                             RateLimitPolicyProperties policyProperties,
+                             @Value("${rate.limit.reload.file}") String file,
+                             @Value("${api.limit.in.minutes}") int apiLimitInMinutes,
+                             @Value("${api.limit.requests}") int apiLimitRequests) {
+        this.strategy = strategy;
+        this.policyEngine = policyEngine;
+        this.file = Paths.get(file).toAbsolutePath();
+        this.apiLimitInMinutes = apiLimitInMinutes;
+        this.apiLimitRequests = apiLimitRequests;
+        this.policies = policyProperties.getPolicies();
+
+        if (!(strategy instanceof ReloadableRateLimitStrategy)) {
+            LOGGER.warn("{} does not support reloading its limit, only the policies are reloaded",
+                    strategy.getClass().getSimpleName());
+        }
+    }
+
+
+    @PostConstruct
+    @Scheduled(initialDelayString = "${rate.limit.reload.interval.millis}", fixedDelayString = "${rate.limit.reload.interval.millis}")
+    public synchronized void reloadIfModified() {
+        FileTime modifiedTime;
+        Properties properties = new Properties();
+
+        try {
+            modifiedTime = Files.exists(file) ? Files.getLastModifiedTime(file) : null;
+
+            if (Objects.equals(modifiedTime, lastModifiedTime)) {
+                return;
+            }
+            if (modifiedTime != null) {
+                try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    properties.load(reader);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not read the rate limits from {}", file, e);
+            return;
+        }
+
+        lastModifiedTime = modifiedTime;
+
+        try {
+            reload(properties);
+            LOGGER.info("Reloaded the rate limits from {}", modifiedTime != null ? file : "the application properties");
+        } catch (RuntimeException e) {
+            // the service keeps its current limits rather than applying a part of the file
+            LOGGER.warn("Could not apply the rate limits of {}, the current limits are kept", file, e);
+        }
+    }
+
+    void reload(Properties properties) {
+        Binder binder = new Binder(new MapConfigurationPropertySource(properties));
+
+        int newApiLimitInMinutes = binder.bind("api.limit.in.minutes", Integer.class).orElse(apiLimitInMinutes);
+        int newApiLimitRequests = binder.bind("api.limit.requests", Integer.class).orElse(apiLimitRequests);
+        List<RateLimitPolicy> newPolicies = RateLimitPolicyConfiguration.compile(binder
+                .bind("rate.limit.policies", Bindable.listOf(RateLimitPolicyProperties.Policy.class))
+                .orElse(policies));
+
+        if (newApiLimitInMinutes <= 0 || newApiLimitRequests <= 0) {
+            throw new IllegalArgumentException("invalid rate limit: " + newApiLimitRequests + " requests in "
+                    + newApiLimitInMinutes + " minutes");
+        }
+
+        policyEngine.updatePolicies(newPolicies);
+
+        if (strategy instanceof ReloadableRateLimitStrategy) {
+            ((ReloadableRateLimitStrategy) strategy).updateLimit(newApiLimitInMinutes, newApiLimitRequests);
+        }
+    }
+}
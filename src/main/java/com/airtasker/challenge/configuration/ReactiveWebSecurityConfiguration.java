@@ -0,0 +1,49 @@
+package com.airtasker.challenge.configuration;
+
+import com.airtasker.challenge.ratelimiter.ConcurrencyLimiter;
+import com.airtasker.challenge.ratelimiter.RateLimitMetrics;
+import com.airtasker.challenge.ratelimiter.RateLimitPolicyEngine;
+import com.airtasker.challenge.ratelimiter.RateLimitStrategy;
+import com.airtasker.challenge.ratelimiter.RequestCosts;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.autoconfigure.security.reactive.EndpointRequest;
+import org.springframework.boot.actuate.health.HealthEndpoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+
+/**
+ * The {@link WebSecurityConfiguration} of the application running on Netty, with
+ * {@code spring.main.web-application-type=reactive}. The rate limit is checked before the authentication, as it is
+ * by the servlet filter, and the endpoints of Actuator except health require authentication.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@EnableWebFluxSecurity
+public class ReactiveWebSecurityConfiguration {
+
+    @Bean
+    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http, RateLimitStrategy rateLimitStrategy,
+                                                         RateLimitPolicyEngine rateLimitPolicyEngine,
+                                                         ObjectProvider<RateLimitMetrics> rateLimitMetrics,
+                                                         RequestCosts requestCosts,
+                                                         ObjectProvider<ConcurrencyLimiter> concurrencyLimiter,
+                                                         RateLimitFilterFactory rateLimitFilterFactory) {
+
+        return http
+                .authorizeExchange()
+                .matchers(EndpointRequest.toAnyEndpoint().excluding(HealthEndpoint.class)).authenticated()
+                .anyExchange().permitAll()
+                .and()
+                .httpBasic()
+                .and()
+                .addFilterBefore(rateLimitFilterFactory.createRateLimitWebFilter(rateLimitStrategy, rateLimitPolicyEngine,
+                        rateLimitMetrics.getIfAvailable(), requestCosts, concurrencyLimiter.getIfAvailable()),
+                        SecurityWebFiltersOrder.HTTP_BASIC)
+                .build();
+    }
+}
@@ -0,0 +1,44 @@
+package com.airtasker.challenge.configuration;
+
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs every request of the servlet application on its own virtual thread instead of the thread pool of Tomcat, with
+ * {@code server.virtual.threads.enabled=true} (the {@code virtual-threads} profile) on Java 21 or later. A request that
+ * waits for a slow downstream call then only holds a virtual thread, so the concurrent requests are limited by
+ * {@code server.tomcat.max-connections} instead of {@code server.tomcat.threads.max}.
+ * <p>
+ * The application is built for Java 8, so the executor is looked up at runtime, and the startup fails on an older JDK.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "server.virtual.threads.enabled", havingValue = "true")
+public class VirtualThreadConfiguration {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer() {
+        ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreads);
+    }
+
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("virtual threads require Java 21, running on Java "
+                    + System.getProperty("java.version"), e);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("could not create the executor of virtual threads", e);
+        }
+    }
+}
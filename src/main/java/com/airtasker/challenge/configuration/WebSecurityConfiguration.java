@@ -1,9 +1,16 @@
 package com.airtasker.challenge.configuration;
 
+import com.airtasker.challenge.ratelimiter.ConcurrencyLimiter;
+import com.airtasker.challenge.ratelimiter.RateLimitMetrics;
+import com.airtasker.challenge.ratelimiter.RateLimitPolicyEngine;
 import com.airtasker.challenge.ratelimiter.RateLimitStrategy;
+import com.airtasker.challenge.ratelimiter.RequestCosts;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.actuate.health.HealthEndpoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
@@ -11,7 +18,7 @@ import org.springframework.security.config.annotation.web.configuration.WebSecur
 import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 
 @Configuration
-@EnableScheduling
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @EnableWebSecurity
 @EnableGlobalMethodSecurity(securedEnabled = true)
 public class WebSecurityConfiguration extends WebSecurityConfigurerAdapter {
@@ -19,6 +26,21 @@ public class WebSecurityConfiguration extends WebSecurityConfigurerAdapter {
     @Autowired
     RateLimitStrategy rateLimitStrategy;
 
+    @Autowired
+    RateLimitPolicyEngine rateLimitPolicyEngine;
+
+    @Autowired(required = false)
+    RateLimitMetrics rateLimitMetrics;
+
+    @Autowired
+    RequestCosts requestCosts;
+
+    @Autowired(required = false)
+    ConcurrencyLimiter concurrencyLimiter;
+
+    @Value("${rate.limit.filter.placement:" + RateLimitFilterPlacementConfiguration.SECURITY_CHAIN + "}")
+    String rateLimitFilterPlacement;
+
     private final RateLimitFilterFactory rateLimitFilterFactory;
 
 
@@ -26,10 +48,26 @@ public class WebSecurityConfiguration extends WebSecurityConfigurerAdapter {
         this.rateLimitFilterFactory = rateLimitFilterFactory;
     }
 
+    /**
+     * The endpoints of Actuator except health require authentication, as {@code /actuator/ratelimit} lists the IPs of
+     * the clients that sent the most requests. The user is {@code spring.security.user.name} and
+     * {@code spring.security.user.password}.
+     */
     @Override
-    public void configure(HttpSecurity http) {
+    public void configure(HttpSecurity http) throws Exception {
+
+        http.authorizeRequests()
+                .requestMatchers(EndpointRequest.toAnyEndpoint().excluding(HealthEndpoint.class)).authenticated()
+                .anyRequest().permitAll()
+                .and()
+                .httpBasic();
+
+        if (!RateLimitFilterPlacementConfiguration.SECURITY_CHAIN.equals(rateLimitFilterPlacement)) {
+            // placed before the security chain by the RateLimitFilterPlacementConfiguration
+            return;
+        }
 
-        http.addFilterBefore(rateLimitFilterFactory.creatRateLimitFilter(rateLimitStrategy), BasicAuthenticationFilter.class);
+        http.addFilterBefore(rateLimitFilterFactory.creatRateLimitFilter(rateLimitStrategy, rateLimitPolicyEngine, rateLimitMetrics, requestCosts, concurrencyLimiter), BasicAuthenticationFilter.class);
 
     }
 
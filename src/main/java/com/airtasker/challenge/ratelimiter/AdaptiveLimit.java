@@ -0,0 +1,137 @@
+package com.airtasker.challenge.ratelimiter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A limit of the requests in flight that follows the latency of the backend instead of a fixed number, so load is shed
+ * before the queues of the server and the backend build up. The latency of the completed requests is averaged per
+ * window and compared with its long term average:
+ * <ul>
+ * <li>while the latency stays within {@code latencyTolerance} times the long term average, the limit grows by the
+ * square root of the limit per window, the requests that may queue without adding latency. It only grows if at least
+ * {@value #MIN_UTILIZATION} of the limit was in flight during the window, otherwise a stable latency says nothing about
+ * a higher limit, and idle or sequential traffic would raise it to the maximum before a burst arrives</li>
+ * <li>once it exceeds it, the limit shrinks by the ratio of the two averages, but at most by half (gradient)</li>
+ * <li>if more than {@value #MAX_FAILURE_RATIO} of the requests of a window failed, the limit is multiplied by
+ * {@value #BACKOFF_RATIO} (multiplicative decrease)</li>
+ * </ul>
+ * The new limit is smoothed with the old one and kept between the minimum and the maximum limit. The long term
+ * average slowly follows a lasting change of the latency, so a backend that became slower for good is not throttled
+ * forever, and follows faster once the latency has recovered.
+ * <p>
+ * Recording a sample does not take a lock: the samples are summed by {@link LongAdder}s, and the request that
+ * completes after the end of a window closes it with compare and set and alone computes the next limit.
+ */
+public class AdaptiveLimit {
+
+    static final int MIN_SAMPLES_PER_WINDOW = 10;
+    static final double MAX_FAILURE_RATIO = 0.05;
+    static final double BACKOFF_RATIO = 0.9;
+    static final double MIN_GRADIENT = 0.5;
+    static final double LIMIT_SMOOTHING = 0.2;
+    static final double MIN_UTILIZATION = 0.5;
+    static final double LONG_LATENCY_SMOOTHING = 0.05;
+    static final double LONG_LATENCY_DECAY = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long windowInNanos;
+    private final double latencyTolerance;
+
+    private final LongAdder numberOfSamples = new LongAdder();
+    private final LongAdder latencySumInNanos = new LongAdder();
+    private final LongAdder numberOfFailures = new LongAdder();
+    private final LongAccumulator maxInFlight = new LongAccumulator(Math::max, 0);
+    private final AtomicLong endOfWindow = new AtomicLong(Long.MIN_VALUE);
+
+    private volatile int limit;
+
+    // only read and written by the request that closed the window, published by the compare and set of its end
+    private double estimatedLimit;
+    private double longLatencyInNanos;
+
+
+    /**
+     * @param latencyTolerance how much longer than the long term average the latency of a window may be before the
+     *                         limit shrinks, e.g. {@code 1.5}
+     */
+    public AdaptiveLimit(int initialLimit, int minLimit, int maxLimit, long windowInNanos, double latencyTolerance) {
+        if (minLimit <= 0 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("invalid adaptive limit: initial " + initialLimit + ", min "
+                    + minLimit + ", max " + maxLimit);
+        }
+        if (windowInNanos <= 0 || latencyTolerance < 1) {
+            throw new IllegalArgumentException("invalid adaptive limit: window " + windowInNanos
+                    + " ns, tolerance " + latencyTolerance);
+        }
+
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.windowInNanos = windowInNanos;
+        this.latencyTolerance = latencyTolerance;
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+    }
+
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Records a completed request, and adjusts the limit if the window has ended and has enough samples.
+     *
+     * @param inFlight the requests in flight when the request completed, including it
+     * @param failed   whether the backend failed, e.g. with an exception or a server error
+     */
+    public void onSample(long latencyInNanos, int inFlight, boolean failed, long currentTime) {
+        numberOfSamples.increment();
+        latencySumInNanos.add(latencyInNanos);
+        maxInFlight.accumulate(inFlight);
+        if (failed) {
+            numberOfFailures.increment();
+        }
+
+        long end = endOfWindow.get();
+
+        if (currentTime >= end && numberOfSamples.sum() >= MIN_SAMPLES_PER_WINDOW
+                && endOfWindow.compareAndSet(end, currentTime + windowInNanos)) {
+            adjustLimit();
+        }
+    }
+
+    private void adjustLimit() {
+        // samples recorded concurrently are counted by this or the next window
+        long samples = numberOfSamples.sumThenReset();
+        double latencyInNanos = Math.max((double) latencySumInNanos.sumThenReset() / samples, 1);
+        long failures = numberOfFailures.sumThenReset();
+        long peakInFlight = maxInFlight.getThenReset();
+
+        if (longLatencyInNanos == 0) {
+            longLatencyInNanos = latencyInNanos;
+        } else {
+            longLatencyInNanos += (latencyInNanos - longLatencyInNanos) * LONG_LATENCY_SMOOTHING;
+
+            if (longLatencyInNanos > 2 * latencyInNanos) {
+                // the latency has recovered, the long term average follows faster
+                longLatencyInNanos *= LONG_LATENCY_DECAY;
+            }
+        }
+
+        double newLimit;
+
+        if (failures > samples * MAX_FAILURE_RATIO) {
+            newLimit = estimatedLimit * BACKOFF_RATIO;
+        } else {
+            double gradient = Math.max(MIN_GRADIENT, Math.min(1, latencyTolerance * longLatencyInNanos / latencyInNanos));
+            double growth = peakInFlight >= estimatedLimit * MIN_UTILIZATION ? Math.sqrt(estimatedLimit) : 0;
+            newLimit = estimatedLimit * gradient + growth;
+            newLimit = estimatedLimit * (1 - LIMIT_SMOOTHING) + newLimit * LIMIT_SMOOTHING;
+        }
+
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+}
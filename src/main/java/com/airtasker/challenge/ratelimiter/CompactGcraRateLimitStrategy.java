@@ -0,0 +1,505 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.MonotonicClock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The generic cell rate algorithm of {@link GcraRateLimitStrategy}, but the IPs are parsed into 128 bit keys
+ * ({@link IpAddressKey}) and kept in open addressing hash tables of primitive longs. A tracked IP takes three longs
+ * (the key and its theoretical arrival time) instead of a String, a map entry, an {@code AtomicLong} and an entry of
+ * the timing wheel, and looking it up hashes two longs instead of a String. IPv6 addresses can be aggregated to a
+ * prefix, so a client cannot bypass the limit by using the other addresses of its network.
+ * <p>
+ * The tables are sharded like the {@link RateLimitStateStore}, each shard is guarded by a lock, and are kept on the heap
+ * or off the heap ({@code rate.limit.state.storage}). Every new IP sweeps a few slots of its shard and removes the IPs
+ * whose theoretical arrival time has passed, and so does a background task with all slots. When the number of tracked
+ * IPs is capped and a shard is full, a new IP is not tracked: all IPs of the shard that are not tracked share one
+ * theoretical arrival time, so together they are limited like a single IP. As an IP that sent a single request is
+ * removed after one emission interval, a flood of distinct IPs cannot displace the tracked ones, and while it fills the
+ * shards its fresh IPs are limited by the shared limit instead of being allowed.
+ * <p>
+ * Remote addresses that are not IP addresses are limited by a {@link GcraRateLimitStrategy}. The limit is
+ * {@link #updateLimit updated} like the one of the {@link GcraRateLimitStrategy}.
+ */
+@Component
+@ConditionalOnProperty(name = "api.limit.strategy", havingValue = "gcra-compact")
+public class CompactGcraRateLimitStrategy implements ReloadableRateLimitStrategy, ObservableRateLimitStrategy {
+
+    static final int SLOT_LENGTH = 3;
+    static final int MIN_CAPACITY = 16;
+    // 1.5 GB of slots per shard, a direct buffer is limited to 2 GB
+    static final int MAX_CAPACITY = 1 << 26;
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int HIGH = 0;
+    private static final int LOW = 1;
+    private static final int TAT = 2;
+
+    private final Shard[] shards;
+    private final int shardMask;
+    private final long hashSeed;
+    private final GcraRateLimitStrategy nonIpAddressStrategy;
+    private final MonotonicClock clock;
+    private final int ipv6PrefixLength;
+    private final SlotTable.Storage storage;
+    private volatile RateLimit limit;
+    private final RateLimitStateStatistics statistics;
+
+
+    public CompactGcraRateLimitStrategy(MonotonicClock clock, int apiLimitInMinutes, int apiLimitRequests) {
+        this(clock, apiLimitInMinutes, apiLimitRequests, RateLimitStateStore.UNBOUNDED, IpAddressKey.IPV6_ADDRESS_LENGTH,
+                SlotTable.Storage.HEAP);
+    }
+
+    @Autowired
+    public CompactGcraRateLimitStrategy(MonotonicClock clock, @Value("${api.limit.in.minutes}") int apiLimitInMinutes,
+                                        @Value("${api.limit.requests}") int apiLimitRequests,
+                                        @Value("${rate.limit.max.tracked.ips}") int maxTrackedIPs,
+                                        @Value("${rate.limit.ipv6.prefix.length}") int ipv6PrefixLength,
+                                        @Value("${rate.limit.state.storage}") String storage) {
+        this(clock, apiLimitInMinutes, apiLimitRequests, maxTrackedIPs, ipv6PrefixLength, SlotTable.Storage.of(storage));
+    }
+
+    CompactGcraRateLimitStrategy(MonotonicClock clock, int apiLimitInMinutes, int apiLimitRequests, int maxTrackedIPs,
+                                 int ipv6PrefixLength, SlotTable.Storage storage) {
+        if (ipv6PrefixLength < 0 || ipv6PrefixLength > IpAddressKey.IPV6_ADDRESS_LENGTH) {
+            throw new IllegalArgumentException("invalid IPv6 prefix length: " + ipv6PrefixLength);
+        }
+
+        int numberOfShards = RateLimitStateStore.defaultNumberOfShards(maxTrackedIPs);
+
+        this.clock = clock;
+        this.limit = new RateLimit(apiLimitInMinutes, apiLimitRequests);
+        this.ipv6PrefixLength = ipv6PrefixLength;
+        this.storage = storage;
+        this.nonIpAddressStrategy = new GcraRateLimitStrategy(clock, apiLimitInMinutes, apiLimitRequests, maxTrackedIPs);
+        this.shards = new Shard[numberOfShards];
+        this.shardMask = numberOfShards - 1;
+        // a random seed, so that clients cannot choose addresses that collide in the tables
+        this.hashSeed = ThreadLocalRandom.current().nextLong();
+        this.statistics = new RateLimitStateStatistics();
+
+        for (int i = 0; i < numberOfShards; i++) {
+            int maximumSizeOfShard = maxTrackedIPs / numberOfShards + (i < maxTrackedIPs % numberOfShards ? 1 : 0);
+            shards[i] = new Shard(maximumSizeOfShard);
+        }
+    }
+
+
+    @Override
+    public RateLimitResult checkRateLimit(String userIP, int cost) {
+
+        long high = 0;
+        long low = IpAddressKey.parseIPv4(userIP);
+
+        if (low == IpAddressKey.NOT_IPV4) {
+            IpAddressKey key = IpAddressKey.parse(userIP, ipv6PrefixLength);
+
+            if (key == null) {
+                return nonIpAddressStrategy.checkRateLimit(userIP, cost);
+            }
+
+            high = key.getHigh();
+            low = key.getLow();
+        }
+
+        RateLimit limit = this.limit;
+
+        if (cost > limit.apiLimitRequests) {
+            return limit.deniedAboveLimit();
+        }
+
+        long hash = hash(high, low);
+        long currentTime = clock.nanoTime();
+        Shard shard = shards[shardOf(hash)];
+
+        shard.lock.lock();
+        try {
+            return checkRateLimit(shard, high, low, hash, cost, limit, currentTime);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Parses the IPs of the batch and groups them by shard, then takes the lock of every shard once and checks all
+     * requests of the shard. The grouping keeps the order of the requests within a shard, so the requests of an IP
+     * are checked in the order they were added.
+     */
+    @Override
+    public void checkRateLimits(RateLimitBatch batch) {
+
+        RateLimit limit = this.limit;
+        long currentTime = clock.nanoTime();
+        int size = batch.size();
+
+        batch.ensureScratchCapacity(shards.length);
+        int[] groups = batch.groups;
+        int[] order = batch.order;
+        int[] groupEnds = batch.groupEnds;
+        long[] highs = batch.highs;
+        long[] lows = batch.lows;
+        long[] hashes = batch.hashes;
+
+        Arrays.fill(groupEnds, 0, shards.length, 0);
+
+        for (int i = 0; i < size; i++) {
+            String userIP = batch.userIP(i);
+            long high = 0;
+            long low = IpAddressKey.parseIPv4(userIP);
+
+            if (low == IpAddressKey.NOT_IPV4) {
+                IpAddressKey key = IpAddressKey.parse(userIP, ipv6PrefixLength);
+
+                if (key == null) {
+                    batch.setResult(i, nonIpAddressStrategy.checkRateLimit(userIP, batch.cost(i)));
+                    groups[i] = -1;
+                    continue;
+                }
+
+                high = key.getHigh();
+                low = key.getLow();
+            }
+
+            highs[i] = high;
+            lows[i] = low;
+            hashes[i] = hash(high, low);
+            groups[i] = shardOf(hashes[i]);
+            groupEnds[groups[i]]++;
+        }
+
+        // counting sort by shard: first the start of every shard, which is its end once the requests are placed
+        for (int shard = 0, start = 0; shard < shards.length; shard++) {
+            int count = groupEnds[shard];
+            groupEnds[shard] = start;
+            start += count;
+        }
+        for (int i = 0; i < size; i++) {
+            if (groups[i] >= 0) {
+                order[groupEnds[groups[i]]++] = i;
+            }
+        }
+
+        for (int shardIndex = 0, start = 0; shardIndex < shards.length; shardIndex++) {
+            int end = groupEnds[shardIndex];
+
+            if (start == end) {
+                continue;
+            }
+
+            Shard shard = shards[shardIndex];
+
+            shard.lock.lock();
+            try {
+                for (int position = start; position < end; position++) {
+                    int i = order[position];
+                    batch.setResult(i, batch.cost(i) > limit.apiLimitRequests ? limit.deniedAboveLimit()
+                            : checkRateLimit(shard, highs[i], lows[i], hashes[i], batch.cost(i), limit, currentTime));
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+
+            start = end;
+        }
+    }
+
+    /**
+     * Checks the request of the key while holding the lock of its shard.
+     */
+    private RateLimitResult checkRateLimit(Shard shard, long high, long low, long hash, int cost, RateLimit limit,
+                                           long currentTime) {
+        int index = shard.indexOf(high, low, (int) hash);
+        // an entry whose theoretical arrival time has passed has the same effect as a new one
+        long tat = index >= 0 ? Math.max(shard.slots.get(index + TAT), currentTime) : currentTime;
+        long newTat = tat + cost * limit.emissionIntervalInNanos;
+        long allowedAt = newTat - limit.apiLimitInNanos;
+
+        if (currentTime < allowedAt) {
+            return limit.denied(toSecondsRoundedUp(allowedAt - currentTime));
+        }
+
+        if (index >= 0) {
+            shard.slots.set(index + TAT, newTat);
+        } else if (!shard.insert(high, low, newTat, -index - 1, currentTime)) {
+            statistics.recordNotAdmitted();
+            return checkUntrackedRateLimit(shard, cost, limit, currentTime);
+        }
+
+        int remaining = (int) ((currentTime - allowedAt) / limit.emissionIntervalInNanos);
+        return limit.allowed(remaining);
+    }
+
+    /**
+     * Checks the request of a key that is not tracked because its shard is full against the theoretical arrival time
+     * that all these keys of the shard share, while holding the lock of the shard.
+     */
+    private RateLimitResult checkUntrackedRateLimit(Shard shard, int cost, RateLimit limit, long currentTime) {
+        long newTat = Math.max(shard.untrackedTat, currentTime) + cost * limit.emissionIntervalInNanos;
+        long allowedAt = newTat - limit.apiLimitInNanos;
+
+        if (currentTime < allowedAt) {
+            return limit.denied(toSecondsRoundedUp(allowedAt - currentTime));
+        }
+
+        shard.untrackedTat = newTat;
+        int remaining = (int) ((currentTime - allowedAt) / limit.emissionIntervalInNanos);
+        return limit.allowed(remaining);
+    }
+
+    @Override
+    public void updateLimit(int apiLimitInMinutes, int apiLimitRequests) {
+        RateLimit newLimit = new RateLimit(apiLimitInMinutes, apiLimitRequests);
+
+        nonIpAddressStrategy.updateLimit(apiLimitInMinutes, apiLimitRequests);
+        limit = newLimit;
+    }
+
+    private int shardOf(long hash) {
+        return (int) (hash >>> 32) & shardMask;
+    }
+
+    private long hash(long high, long low) {
+        long hash = (high ^ hashSeed) * 0x9e3779b97f4a7c15L + low;
+        hash = (hash ^ (hash >>> 32)) * 0xd6e8feb86659fd93L;
+        return hash ^ (hash >>> 32);
+    }
+
+    private static long toSecondsRoundedUp(long nanos) {
+        return (nanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND;
+    }
+
+    @Scheduled(initialDelayString = "${rate.limit.expiry.interval.millis}", fixedDelayString = "${rate.limit.expiry.interval.millis}")
+    public void expireIdleStates() {
+        long currentTime = clock.nanoTime();
+        long start = System.nanoTime();
+
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                shard.expireIdleEntries(currentTime, Integer.MAX_VALUE);
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+
+        statistics.recordCleanup(System.nanoTime() - start);
+        nonIpAddressStrategy.expireIdleStates();
+    }
+
+    @Override
+    public int numberOfTrackedIPs() {
+        int size = nonIpAddressStrategy.numberOfTrackedIPs();
+        for (Shard shard : shards) {
+            size += shard.size;
+        }
+        return size;
+    }
+
+    /**
+     * The size of the tables, which does not depend on the number of tracked IPs, plus the memory of the remote
+     * addresses that are not IP addresses.
+     */
+    @Override
+    public long estimateMemoryInBytes() {
+        long bytes = nonIpAddressStrategy.estimateMemoryInBytes();
+
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                bytes += MemoryLayout.sizeOfArray(shard.slots.length(), MemoryLayout.LONG);
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * The statistics of the IP addresses, the remote addresses that are not IP addresses are not included.
+     */
+    @Override
+    public RateLimitStateStatistics getStateStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Number of requests whose IP was not tracked because its shard was full, they are limited together.
+     */
+    public long getNotAdmittedCount() {
+        return statistics.getNotAdmittedCount();
+    }
+
+
+    /**
+     * Open addressing with linear probing. The slots are stored in one {@link SlotTable} of {@value #SLOT_LENGTH} longs
+     * per slot: the high and the low long of the key and the theoretical arrival time, which is {@link #EMPTY} for a
+     * free slot. The theoretical arrival time is updated in place while holding the lock. Entries are deleted by
+     * shifting the following entries of the probe sequence back, so there are no tombstones.
+     */
+    private final class Shard {
+
+        private final ReentrantLock lock;
+        private final int maximumSize;
+        private SlotTable slots;
+        private int capacityMask;
+        private int size;
+        private int sweepPosition;
+        private long untrackedTat = Long.MIN_VALUE;
+
+        Shard(int maximumSize) {
+            this.lock = new ReentrantLock();
+            this.maximumSize = maximumSize == RateLimitStateStore.UNBOUNDED ? maximumSize
+                    : Math.min(maximumSize, MAX_CAPACITY / 4 * 3);
+            // a bounded table is never resized, it is at most three quarters full
+            int capacity = maximumSize == RateLimitStateStore.UNBOUNDED ? MIN_CAPACITY
+                    : Math.max(Integer.highestOneBit(Math.max(this.maximumSize * 4 / 3, 1) - 1) << 1, MIN_CAPACITY);
+            allocate(capacity);
+        }
+
+        private void allocate(int capacity) {
+            slots = SlotTable.allocate(storage, capacity * SLOT_LENGTH);
+            capacityMask = capacity - 1;
+            for (int slot = 0; slot < capacity; slot++) {
+                slots.set(slot * SLOT_LENGTH + TAT, EMPTY);
+            }
+        }
+
+        /**
+         * @return the index of the key in {@link #slots}, or {@code -(index of the free slot) - 1}
+         */
+        int indexOf(long high, long low, int hash) {
+            for (int slot = hash & capacityMask; ; slot = (slot + 1) & capacityMask) {
+                int index = slot * SLOT_LENGTH;
+
+                if (slots.get(index + TAT) == EMPTY) {
+                    return -index - 1;
+                }
+                if (slots.get(index + HIGH) == high && slots.get(index + LOW) == low) {
+                    return index;
+                }
+            }
+        }
+
+        /**
+         * @return {@code false} if the shard is full, an unbounded shard is full at {@value #MAX_CAPACITY} slots
+         */
+        boolean insert(long high, long low, long tat, int index, long currentTime) {
+            // the sweep keeps pace with the new IPs, the free slot may move when an entry is deleted
+            if (expireIdleEntries(currentTime, RateLimitStateStore.EXPIRY_CHECKS_PER_REQUEST)) {
+                index = -indexOf(high, low, (int) hash(high, low)) - 1;
+            }
+
+            if (maximumSize != RateLimitStateStore.UNBOUNDED && size >= maximumSize) {
+                return false;
+            } else if (maximumSize == RateLimitStateStore.UNBOUNDED && (size + 1) * 4 > (capacityMask + 1) * 3) {
+                if (capacityMask + 1 == MAX_CAPACITY) {
+                    return false;
+                }
+                resize(currentTime);
+                index = -indexOf(high, low, (int) hash(high, low)) - 1;
+            }
+
+            slots.set(index + HIGH, high);
+            slots.set(index + LOW, low);
+            slots.set(index + TAT, tat);
+            size++;
+            return true;
+        }
+
+        /**
+         * Doubles the capacity if the table would still be more than half full without the idle entries.
+         */
+        private void resize(long currentTime) {
+            SlotTable oldSlots = slots;
+            int liveEntries = 0;
+
+            for (int index = 0; index < oldSlots.length(); index += SLOT_LENGTH) {
+                if (oldSlots.get(index + TAT) != EMPTY && oldSlots.get(index + TAT) > currentTime) {
+                    liveEntries++;
+                }
+            }
+
+            int capacity = capacityMask + 1;
+            statistics.recordExpired(size - liveEntries);
+            allocate(liveEntries * 2 > capacity ? capacity * 2 : capacity);
+            size = 0;
+            sweepPosition = 0;
+
+            for (int index = 0; index < oldSlots.length(); index += SLOT_LENGTH) {
+                long tat = oldSlots.get(index + TAT);
+
+                if (tat != EMPTY && tat > currentTime) {
+                    long high = oldSlots.get(index + HIGH);
+                    long low = oldSlots.get(index + LOW);
+                    int newIndex = -indexOf(high, low, (int) hash(high, low)) - 1;
+                    slots.set(newIndex + HIGH, high);
+                    slots.set(newIndex + LOW, low);
+                    slots.set(newIndex + TAT, tat);
+                    size++;
+                }
+            }
+        }
+
+        /**
+         * Visits at most the given number of slots, starting where the last call stopped, and deletes the entries
+         * whose theoretical arrival time has passed. A full round visits every slot once.
+         *
+         * @return {@code true} if an entry was deleted
+         */
+        boolean expireIdleEntries(long currentTime, int maxChecks) {
+            int capacity = capacityMask + 1;
+            int initialSize = size;
+
+            for (int checks = 0, visitedSlots = 0; checks < maxChecks && visitedSlots < capacity && size > 0; checks++) {
+                int index = sweepPosition * SLOT_LENGTH;
+                long tat = slots.get(index + TAT);
+
+                if (tat != EMPTY && tat <= currentTime) {
+                    // an entry of the probe sequence may be shifted into this slot, so it is visited again
+                    delete(sweepPosition);
+                    statistics.recordExpired(1);
+                } else {
+                    sweepPosition = (sweepPosition + 1) & capacityMask;
+                    visitedSlots++;
+                }
+            }
+
+            return size != initialSize;
+        }
+
+        private void delete(int slot) {
+            int hole = slot;
+
+            for (int next = (slot + 1) & capacityMask; ; next = (next + 1) & capacityMask) {
+                int index = next * SLOT_LENGTH;
+
+                if (slots.get(index + TAT) == EMPTY) {
+                    break;
+                }
+
+                int home = (int) hash(slots.get(index + HIGH), slots.get(index + LOW)) & capacityMask;
+                // the entry can move into the hole if its home slot is not cyclically within (hole, next]
+                boolean homeBetween = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+
+                if (!homeBetween) {
+                    slots.copy(index, hole * SLOT_LENGTH, SLOT_LENGTH);
+                    hole = next;
+                }
+            }
+
+            slots.set(hole * SLOT_LENGTH + TAT, EMPTY);
+            size--;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.MonotonicClock;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the requests that are in flight at the same time, per IP and of all IPs together, so that a few slow
+ * requests cannot occupy all threads of the server, which a rate limit alone does not prevent. A permit is acquired
+ * once the rate limit allowed the request, and released when the request has completed.
+ * <p>
+ * Neither acquiring nor releasing a permit takes a lock: the requests in flight are counted by atomic integers, which
+ * are only incremented with compare and set while they are below the limit. The counter of an IP is kept in a
+ * {@link RateLimitStateStore} and removed once no request of the IP is in flight. Like the state of the strategies,
+ * a removed counter is marked with compare and set, so no permit can be acquired from a counter that is being removed.
+ * <p>
+ * Instead of a fixed number, the requests of all IPs can be limited by an {@link AdaptiveLimit}, which follows the
+ * latency and the failures of the requests that were released with {@link #release(String, long, boolean)}.
+ */
+public class ConcurrencyLimiter {
+
+    public static final int UNLIMITED = 0;
+
+    /**
+     * A request that was rejected may be retried as soon as one of the requests in flight has completed.
+     */
+    public static final long RETRY_AFTER_IN_SECONDS = 1;
+
+    /**
+     * Returned by {@link #startTimer()} if the latency of the requests is not measured.
+     */
+    public static final long NOT_TIMED = Long.MIN_VALUE;
+
+    static final long IDLE_TIMEOUT_IN_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private static final int REMOVED = -1;
+
+    private final MonotonicClock clock;
+    private final int maxInFlightPerIP;
+    private final int maxInFlight;
+    private final AdaptiveLimit adaptiveLimit;
+    private final RateLimitStateStore<AtomicInteger> ipToInFlightStore;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejectedCount = new LongAdder();
+
+
+    /**
+     * @param maxInFlightPerIP maximum number of requests of one IP in flight, or {@link #UNLIMITED}
+     * @param maxInFlight      maximum number of requests of all IPs in flight, or {@link #UNLIMITED}
+     */
+    public ConcurrencyLimiter(MonotonicClock clock, int maxInFlightPerIP, int maxInFlight) {
+        this(clock, maxInFlightPerIP, maxInFlight, null);
+    }
+
+    /**
+     * @param adaptiveLimit limits the requests of all IPs in flight
+     */
+    public ConcurrencyLimiter(MonotonicClock clock, int maxInFlightPerIP, AdaptiveLimit adaptiveLimit) {
+        this(clock, maxInFlightPerIP, UNLIMITED, adaptiveLimit);
+    }
+
+    private ConcurrencyLimiter(MonotonicClock clock, int maxInFlightPerIP, int maxInFlight, AdaptiveLimit adaptiveLimit) {
+        if (maxInFlightPerIP < 0 || maxInFlight < 0) {
+            throw new IllegalArgumentException("invalid concurrency limit: " + maxInFlightPerIP + " per IP, "
+                    + maxInFlight + " in total");
+        }
+
+        this.clock = clock;
+        this.maxInFlightPerIP = maxInFlightPerIP;
+        this.maxInFlight = maxInFlight;
+        this.adaptiveLimit = adaptiveLimit;
+        this.ipToInFlightStore = maxInFlightPerIP == UNLIMITED ? null : new RateLimitStateStore<>(IDLE_TIMEOUT_IN_NANOS,
+                currentTime -> new AtomicInteger(), this::removeIfIdle);
+    }
+
+
+    /**
+     * @return whether the request may be processed, then its permit must be released with {@link #release} once it
+     * has completed
+     */
+    public boolean tryAcquire(String userIP) {
+        AtomicInteger inFlightOfIP = null;
+
+        if (ipToInFlightStore != null) {
+            long currentTime = clock.nanoTime();
+            ipToInFlightStore.expireIdleStates(currentTime);
+            inFlightOfIP = acquire(userIP, currentTime);
+
+            if (inFlightOfIP == null) {
+                rejectedCount.increment();
+                return false;
+            }
+        }
+
+        int limit = adaptiveLimit != null ? adaptiveLimit.getLimit() : maxInFlight;
+
+        if (limit == UNLIMITED) {
+            inFlight.incrementAndGet();
+        } else if (!tryIncrement(inFlight, limit)) {
+            if (inFlightOfIP != null) {
+                inFlightOfIP.decrementAndGet();
+            }
+            rejectedCount.increment();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the counter of the IP with the acquired permit, or {@code null} if the IP has too many requests in flight
+     */
+    private AtomicInteger acquire(String userIP, long currentTime) {
+        AtomicInteger inFlightOfIP = ipToInFlightStore.getOrCreate(userIP, currentTime);
+
+        while (true) {
+            int count = inFlightOfIP.get();
+
+            if (count == REMOVED) {
+                // removed as idle, help to finish the removal and start with a new counter
+                ipToInFlightStore.remove(userIP, inFlightOfIP);
+                inFlightOfIP = ipToInFlightStore.getOrCreate(userIP, currentTime);
+                continue;
+            }
+
+            if (count >= maxInFlightPerIP) {
+                return null;
+            }
+
+            if (inFlightOfIP.compareAndSet(count, count + 1)) {
+                return inFlightOfIP;
+            }
+        }
+    }
+
+    private static boolean tryIncrement(AtomicInteger counter, int limit) {
+        while (true) {
+            int count = counter.get();
+
+            if (count >= limit) {
+                return false;
+            }
+            if (counter.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the start time of a request that acquired a permit if its latency is measured for the
+     * {@link AdaptiveLimit}, otherwise {@link #NOT_TIMED} without reading the clock
+     */
+    public long startTimer() {
+        return adaptiveLimit != null ? clock.nanoTime() : NOT_TIMED;
+    }
+
+    /**
+     * Releases the permit of a request that was allowed by {@link #tryAcquire}, and records its latency.
+     *
+     * @param startTime of {@link #startTimer()}
+     * @param failed    whether the request failed in the backend, e.g. with an exception or a server error
+     */
+    public void release(String userIP, long startTime, boolean failed) {
+        if (startTime != NOT_TIMED) {
+            long currentTime = clock.nanoTime();
+            adaptiveLimit.onSample(currentTime - startTime, inFlight.get(), failed, currentTime);
+        }
+
+        release(userIP);
+    }
+
+    /**
+     * Releases the permit of a request that was allowed by {@link #tryAcquire}.
+     */
+    public void release(String userIP) {
+        inFlight.decrementAndGet();
+
+        if (ipToInFlightStore != null) {
+            // a counter with a request in flight is never removed
+            ipToInFlightStore.get(userIP).decrementAndGet();
+        }
+    }
+
+    /**
+     * A counter without requests in flight has the same effect as a new one.
+     */
+    private long removeIfIdle(String userIP, AtomicInteger inFlightOfIP, long currentTime) {
+        if (!inFlightOfIP.compareAndSet(0, REMOVED) && inFlightOfIP.get() != REMOVED) {
+            return currentTime + IDLE_TIMEOUT_IN_NANOS;
+        }
+
+        ipToInFlightStore.remove(userIP, inFlightOfIP);
+        return RateLimitStateStore.REMOVED;
+    }
+
+    @Scheduled(initialDelayString = "${rate.limit.expiry.interval.millis}", fixedDelayString = "${rate.limit.expiry.interval.millis}")
+    public void expireIdleStates() {
+        if (ipToInFlightStore != null) {
+            ipToInFlightStore.expireAllIdleStates(clock.nanoTime());
+        }
+    }
+
+    /**
+     * @return the current limit of the requests of all IPs in flight, or {@link #UNLIMITED}
+     */
+    public int getLimit() {
+        return adaptiveLimit != null ? adaptiveLimit.getLimit() : maxInFlight;
+    }
+
+    public int numberOfRequestsInFlight() {
+        return inFlight.get();
+    }
+
+    public int numberOfRequestsInFlight(String userIP) {
+        AtomicInteger inFlightOfIP = ipToInFlightStore != null ? ipToInFlightStore.get(userIP) : null;
+        return inFlightOfIP == null ? 0 : Math.max(inFlightOfIP.get(), 0);
+    }
+
+    public int numberOfTrackedIPs() {
+        return ipToInFlightStore != null ? ipToInFlightStore.size() : 0;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+}
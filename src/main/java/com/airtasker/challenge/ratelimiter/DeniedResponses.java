@@ -0,0 +1,103 @@
+package com.airtasker.challenge.ratelimiter;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The headers and bodies of the responses to denied requests, encoded once per Retry-After second and shared by all
+ * requests. A request that was denied by the rate limit is also told the limit, that no requests remain and when to
+ * reset in the {@code RateLimit} headers of the IETF draft, whose values are shared as well: the few limits that deny
+ * requests are cached by their number of requests, and the reset is the Retry-After.
+ */
+final class DeniedResponses {
+
+    static final String RETRY_AFTER = "Retry-After";
+    static final String RATE_LIMIT_LIMIT = "RateLimit-Limit";
+    static final String RATE_LIMIT_REMAINING = "RateLimit-Remaining";
+    static final String RATE_LIMIT_RESET = "RateLimit-Reset";
+
+    static final String NO_REMAINING_REQUESTS = "0";
+
+    // the responses are cached within the first hour, longer waits are rare enough to be encoded every time
+    private static final int MAX_CACHED_RETRY_AFTER_SECONDS = 3600;
+
+    // a limit is cached in the slot of its lowest bits, limits that share a slot replace each other
+    private static final int NUMBER_OF_CACHED_LIMITS = 16;
+
+    private final DeniedResponse[] deniedResponses = new DeniedResponse[MAX_CACHED_RETRY_AFTER_SECONDS + 1];
+    private final EncodedLimit[] encodedLimits = new EncodedLimit[NUMBER_OF_CACHED_LIMITS];
+
+
+    DeniedResponse forRetryAfter(long retryAfterInSeconds) {
+        if (retryAfterInSeconds < 0 || retryAfterInSeconds >= deniedResponses.length) {
+            return new DeniedResponse(retryAfterInSeconds);
+        }
+
+        DeniedResponse deniedResponse = deniedResponses[(int) retryAfterInSeconds];
+
+        if (deniedResponse == null) {
+            // a race only encodes the same response twice
+            deniedResponse = new DeniedResponse(retryAfterInSeconds);
+            deniedResponses[(int) retryAfterInSeconds] = deniedResponse;
+        }
+        return deniedResponse;
+    }
+
+    /**
+     * @return the limit of the result as value of the {@code RateLimit-Limit} header, or {@code null} if it is unknown
+     */
+    String limitHeaderValue(RateLimitResult rateLimitResult) {
+        int limitOfRequests = rateLimitResult.getLimitOfRequests();
+
+        if (limitOfRequests == RateLimitResult.UNKNOWN_LIMIT) {
+            return null;
+        }
+
+        int slot = limitOfRequests & (NUMBER_OF_CACHED_LIMITS - 1);
+        EncodedLimit encodedLimit = encodedLimits[slot];
+
+        if (encodedLimit == null || encodedLimit.limitOfRequests != limitOfRequests) {
+            // the fields are final, so a limit written by a racing request is seen completely
+            encodedLimit = new EncodedLimit(limitOfRequests);
+            encodedLimits[slot] = encodedLimit;
+        }
+        return encodedLimit.value;
+    }
+
+
+    static final class DeniedResponse {
+
+        private final String retryAfter;
+        private final byte[] body;
+
+        DeniedResponse(long retryAfterInSeconds) {
+            this.retryAfter = String.valueOf(retryAfterInSeconds);
+            this.body = ("Try again in " + retryAfterInSeconds + " seconds").getBytes(StandardCharsets.UTF_8);
+        }
+
+        String getRetryAfter() {
+            return retryAfter;
+        }
+
+        /**
+         * @return the seconds until the limit allows the request again, the same as the Retry-After
+         */
+        String getReset() {
+            return retryAfter;
+        }
+
+        byte[] getBody() {
+            return body;
+        }
+    }
+
+    private static final class EncodedLimit {
+
+        private final int limitOfRequests;
+        private final String value;
+
+        EncodedLimit(int limitOfRequests) {
+            this.limitOfRequests = limitOfRequests;
+            this.value = String.valueOf(limitOfRequests);
+        }
+    }
+}
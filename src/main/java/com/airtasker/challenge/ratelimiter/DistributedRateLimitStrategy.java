@@ -0,0 +1,297 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.MonotonicClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Limits the requests of an IP across all instances of the service with the generic cell rate algorithm, whose
+ * state is kept in a {@link SharedRateLimitStore}.
+ * <p>
+ * Requests are not sent to the store one by one: a single sender thread takes all requests that arrived while the
+ * previous batch was in flight and checks them in one round trip. A request waits at most the configured timeout for
+ * its batch. If the store fails or does not answer in time, the request is checked by a local
+ * {@link GcraRateLimitStrategy} instead, and so are all requests until the retry interval has passed. While the store
+ * is unavailable, every instance enforces the limit on its own.
+ * <p>
+ * The {@link #checkRateLimitAsync asynchronous check} does not wait for the batch: its result is completed by the
+ * sender, or with the result of the local strategy by a timer once the timeout has passed.
+ */
+@Component
+@ConditionalOnProperty(name = "api.limit.strategy", havingValue = "distributed")
+public class DistributedRateLimitStrategy implements RateLimitStrategy {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DistributedRateLimitStrategy.class);
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final SharedRateLimitStore sharedStore;
+    private final GcraRateLimitStrategy localStrategy;
+    private final MonotonicClock clock;
+    private final int apiLimitRequests;
+    private final long apiLimitInNanos;
+    private final int batchSize;
+    private final long timeoutInNanos;
+    private final long retryIntervalInNanos;
+    private final BlockingQueue<PendingRequest> pendingRequests;
+    private final Thread sender;
+    private final ScheduledThreadPoolExecutor timeouts;
+
+    private volatile long sharedStoreUnavailableUntil;
+    private volatile boolean sharedStoreUnavailable;
+
+
+    @Autowired
+    public DistributedRateLimitStrategy(MonotonicClock clock, SharedRateLimitStore sharedStore,
+                                        @Value("${api.limit.in.minutes}") int apiLimitInMinutes,
+                                        @Value("${api.limit.requests}") int apiLimitRequests,
+                                        @Value("${rate.limit.max.tracked.ips}") int maxTrackedIPs,
+                                        @Value("${rate.limit.distributed.batch.size}") int batchSize,
+                                        @Value("${rate.limit.distributed.timeout.millis}") long timeoutInMillis,
+                                        @Value("${rate.limit.distributed.retry.millis}") long retryIntervalInMillis) {
+        this.sharedStore = sharedStore;
+        this.localStrategy = new GcraRateLimitStrategy(clock, apiLimitInMinutes, apiLimitRequests, maxTrackedIPs);
+        this.clock = clock;
+        this.apiLimitRequests = apiLimitRequests;
+        this.apiLimitInNanos = TimeUnit.MINUTES.toNanos(apiLimitInMinutes);
+        this.batchSize = batchSize;
+        this.timeoutInNanos = TimeUnit.MILLISECONDS.toNanos(timeoutInMillis);
+        this.retryIntervalInNanos = TimeUnit.MILLISECONDS.toNanos(retryIntervalInMillis);
+        this.pendingRequests = new ArrayBlockingQueue<>(64 * batchSize);
+        this.sender = new Thread(this::sendPendingRequests, "distributed-rate-limit-sender");
+
+        sender.setDaemon(true);
+        sender.start();
+
+        this.timeouts = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "distributed-rate-limit-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // most requests are answered in time, their timeouts must not pile up in the queue
+        timeouts.setRemoveOnCancelPolicy(true);
+    }
+
+
+    /**
+     * A request that costs more than one request takes all of its permits from the store or none. A request that
+     * costs more than the limit is denied by the local strategy without asking the store.
+     */
+    @Override
+    public RateLimitResult checkRateLimit(String userIP, int cost) {
+
+        if (cost > apiLimitRequests || sharedStoreUnavailable && clock.nanoTime() - sharedStoreUnavailableUntil < 0) {
+            return localStrategy.checkRateLimit(userIP, cost);
+        }
+
+        PendingRequest request = new PendingRequest(userIP, cost);
+
+        if (!pendingRequests.offer(request)) {
+            // the store does not keep up, rather than waiting check locally
+            return localStrategy.checkRateLimit(userIP, cost);
+        }
+
+        return await(request, timeoutInNanos);
+    }
+
+    /**
+     * Queues all requests of the batch before waiting for the first one, so they are sent in as few round trips as
+     * possible, and the whole batch waits at most one timeout.
+     */
+    @Override
+    public void checkRateLimits(RateLimitBatch batch) {
+
+        if (sharedStoreUnavailable && clock.nanoTime() - sharedStoreUnavailableUntil < 0) {
+            localStrategy.checkRateLimits(batch);
+            return;
+        }
+
+        PendingRequest[] requests = new PendingRequest[batch.size()];
+
+        for (int i = 0; i < requests.length; i++) {
+            PendingRequest request = new PendingRequest(batch.userIP(i), batch.cost(i));
+
+            if (request.cost <= apiLimitRequests && pendingRequests.offer(request)) {
+                requests[i] = request;
+            } else {
+                batch.setResult(i, localStrategy.checkRateLimit(request.userIP, request.cost));
+            }
+        }
+
+        long deadline = clock.nanoTime() + timeoutInNanos;
+
+        for (int i = 0; i < requests.length; i++) {
+            if (requests[i] != null) {
+                batch.setResult(i, await(requests[i], deadline - clock.nanoTime()));
+            }
+        }
+    }
+
+    /**
+     * @return the result of the shared store, or of the local strategy if the store failed or did not answer in time
+     */
+    private RateLimitResult await(PendingRequest request, long timeoutInNanos) {
+        try {
+            return request.result.get(timeoutInNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // the failure has already been handled by the sender
+        } catch (TimeoutException e) {
+            // not sent anymore if it is still pending
+            request.result.cancel(false);
+            markSharedStoreUnavailable(e);
+        }
+
+        return localStrategy.checkRateLimit(request.userIP, request.cost);
+    }
+
+    @Override
+    public CompletionStage<RateLimitResult> checkRateLimitAsync(String userIP, int cost) {
+
+        if (cost > apiLimitRequests || sharedStoreUnavailable && clock.nanoTime() - sharedStoreUnavailableUntil < 0) {
+            return CompletableFuture.completedFuture(localStrategy.checkRateLimit(userIP, cost));
+        }
+
+        PendingRequest request = new PendingRequest(userIP, cost);
+
+        if (!pendingRequests.offer(request)) {
+            return CompletableFuture.completedFuture(localStrategy.checkRateLimit(userIP, cost));
+        }
+
+        ScheduledFuture<?> timeout = timeouts.schedule(() -> {
+            if (!request.result.isDone()) {
+                TimeoutException timeoutException = new TimeoutException("no answer of the shared rate limit store");
+
+                // marked before the request continues locally, so its next request does not wait for the store again
+                markSharedStoreUnavailable(timeoutException);
+                // not sent anymore if it is still pending
+                request.result.completeExceptionally(timeoutException);
+            }
+        }, timeoutInNanos, TimeUnit.NANOSECONDS);
+
+        return request.result.handle((result, failure) -> {
+            timeout.cancel(false);
+            return failure == null ? result : localStrategy.checkRateLimit(userIP, cost);
+        });
+    }
+
+    private void sendPendingRequests() {
+        List<PendingRequest> batch = new ArrayList<>(batchSize);
+        List<String> userIPs = new ArrayList<>(batchSize);
+        int[] permits = new int[batchSize];
+
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(pendingRequests.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            pendingRequests.drainTo(batch, batchSize - 1);
+
+            batch.removeIf(request -> request.result.isDone());
+            for (PendingRequest request : batch) {
+                userIPs.add(request.userIP);
+            }
+
+            if (!userIPs.isEmpty()) {
+                send(batch, userIPs, permits);
+            }
+
+            batch.clear();
+            userIPs.clear();
+        }
+    }
+
+    private void send(List<PendingRequest> batch, List<String> userIPs, int[] permits) {
+        for (int i = 0; i < batch.size(); i++) {
+            permits[i] = batch.get(i).cost;
+        }
+
+        try {
+            List<SharedRateLimitStore.Admission> admissions = sharedStore.tryAcquire(userIPs, permits, true,
+                    apiLimitRequests, apiLimitInNanos);
+
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(toResult(admissions.get(i)));
+            }
+
+            if (sharedStoreUnavailable) {
+                sharedStoreUnavailable = false;
+                LOGGER.info("Shared rate limit store is available again");
+            }
+        } catch (RuntimeException e) {
+            markSharedStoreUnavailable(e);
+
+            for (PendingRequest request : batch) {
+                request.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private RateLimitResult toResult(SharedRateLimitStore.Admission admission) {
+        if (admission.isAllowed()) {
+            return new RateLimitResult(true, 0, Math.min(admission.getRemainingRequests(), apiLimitRequests - 1),
+                    apiLimitRequests);
+        }
+
+        long retryAfterInSeconds = (admission.getRetryAfterInNanos() + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND;
+        return new RateLimitResult(false, retryAfterInSeconds, 0, apiLimitRequests);
+    }
+
+    private void markSharedStoreUnavailable(Exception cause) {
+        sharedStoreUnavailableUntil = clock.nanoTime() + retryIntervalInNanos;
+
+        if (!sharedStoreUnavailable) {
+            sharedStoreUnavailable = true;
+            LOGGER.warn("Shared rate limit store is unavailable, limiting locally for {} ms",
+                    TimeUnit.NANOSECONDS.toMillis(retryIntervalInNanos), cause);
+        }
+    }
+
+    @Scheduled(initialDelayString = "${rate.limit.expiry.interval.millis}", fixedDelayString = "${rate.limit.expiry.interval.millis}")
+    public void expireIdleStates() {
+        localStrategy.expireIdleStates();
+    }
+
+    int numberOfPendingRequests() {
+        return pendingRequests.size();
+    }
+
+    @PreDestroy
+    public void stop() {
+        sender.interrupt();
+        timeouts.shutdownNow();
+    }
+
+
+    private static final class PendingRequest {
+
+        private final String userIP;
+        private final int cost;
+        private final CompletableFuture<RateLimitResult> result;
+
+        PendingRequest(String userIP, int cost) {
+            this.userIP = userIP;
+            this.cost = cost;
+            this.result = new CompletableFuture<>();
+        }
+    }
+}
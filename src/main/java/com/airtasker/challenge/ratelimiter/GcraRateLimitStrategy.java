@@ -0,0 +1,203 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.MonotonicClock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generic cell rate algorithm: every IP may send one request per emission interval ({@code window / limit}) and
+ * up to {@code limit} requests at once. The whole state of an IP is its theoretical arrival time (TAT), which is
+ * updated with a single compare and set, so the strategy needs no locks.
+ * <p>
+ * Unlike the sliding window, requests are replenished continuously: after a burst of {@code limit} requests the next
+ * request is allowed after one emission interval, not after the whole window.
+ * <p>
+ * If the limit is {@link #updateLimit updated}, the theoretical arrival times are kept as they are: the requests made
+ * before count with the old emission interval until they have drained, and the new limit applies to the requests after.
+ */
+@Component
+@ConditionalOnProperty(name = "api.limit.strategy", havingValue = "gcra")
+public class GcraRateLimitStrategy implements SnapshotableRateLimitStrategy, ReloadableRateLimitStrategy,
+        ObservableRateLimitStrategy {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long REMOVED = Long.MAX_VALUE;
+    private static final long SIZE_OF_STATE = MemoryLayout.sizeOfObject(MemoryLayout.LONG);
+
+    private final RateLimitStateStore<AtomicLong> ipToTheoreticalArrivalTimeStore;
+    private final AtomicLong untrackedTheoreticalArrivalTime = new AtomicLong(Long.MIN_VALUE);
+    private final MonotonicClock clock;
+    private volatile RateLimit limit;
+
+
+    public GcraRateLimitStrategy(MonotonicClock clock, int apiLimitInMinutes, int apiLimitRequests) {
+        this(clock, apiLimitInMinutes, apiLimitRequests, RateLimitStateStore.UNBOUNDED);
+    }
+
+    @Autowired
+    public GcraRateLimitStrategy(MonotonicClock clock, @Value("${api.limit.in.minutes}") int apiLimitInMinutes,
+                                 @Value("${api.limit.requests}") int apiLimitRequests,
+                                 @Value("${rate.limit.max.tracked.ips}") int maxTrackedIPs) {
+        this.clock = clock;
+        this.limit = new RateLimit(apiLimitInMinutes, apiLimitRequests);
+        this.ipToTheoreticalArrivalTimeStore = new RateLimitStateStore<>(limit.apiLimitInNanos,
+                currentTime -> new AtomicLong(Long.MIN_VALUE), this::removeIfIdle, maxTrackedIPs);
+    }
+
+
+    /**
+     * A request that costs {@code n} requests moves the theoretical arrival time by {@code n} emission intervals.
+     */
+    @Override
+    public RateLimitResult checkRateLimit(String userIP, int cost) {
+
+        RateLimit limit = this.limit;
+        long currentTime = clock.nanoTime();
+
+        ipToTheoreticalArrivalTimeStore.expireIdleStates(currentTime);
+
+        return checkRateLimit(userIP, cost, limit, currentTime);
+    }
+
+    /**
+     * Reads the clock and the limit once for all requests of the batch.
+     */
+    @Override
+    public void checkRateLimits(RateLimitBatch batch) {
+
+        RateLimit limit = this.limit;
+        long currentTime = clock.nanoTime();
+
+        ipToTheoreticalArrivalTimeStore.expireIdleStates(currentTime, RateLimitStateStore.EXPIRY_CHECKS_PER_REQUEST * batch.size());
+
+        for (int i = 0; i < batch.size(); i++) {
+            batch.setResult(i, checkRateLimit(batch.userIP(i), batch.cost(i), limit, currentTime));
+        }
+    }
+
+    private RateLimitResult checkRateLimit(String userIP, int cost, RateLimit limit, long currentTime) {
+
+        if (cost > limit.apiLimitRequests) {
+            return limit.deniedAboveLimit();
+        }
+
+        AtomicLong theoreticalArrivalTime = ipToTheoreticalArrivalTimeStore.getOrCreate(userIP, currentTime);
+
+        while (true) {
+            if (theoreticalArrivalTime == null) {
+                // not tracked because the store is full, checked against the state that all untracked IPs share
+                theoreticalArrivalTime = untrackedTheoreticalArrivalTime;
+            }
+
+            long tat = theoreticalArrivalTime.get();
+
+            if (tat == REMOVED) {
+                // removed as idle or evicted, help to finish the removal and start with a new state
+                ipToTheoreticalArrivalTimeStore.remove(userIP, theoreticalArrivalTime);
+                theoreticalArrivalTime = ipToTheoreticalArrivalTimeStore.getOrCreate(userIP, currentTime);
+                continue;
+            }
+
+            long newTat = Math.max(tat, currentTime) + cost * limit.emissionIntervalInNanos;
+            long allowedAt = newTat - limit.apiLimitInNanos;
+
+            if (currentTime < allowedAt) {
+                return limit.denied(toSecondsRoundedUp(allowedAt - currentTime));
+            }
+
+            if (theoreticalArrivalTime.compareAndSet(tat, newTat)) {
+                int remaining = (int) ((currentTime - allowedAt) / limit.emissionIntervalInNanos);
+                return limit.allowed(remaining);
+            }
+        }
+    }
+
+    private static long toSecondsRoundedUp(long nanos) {
+        return (nanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND;
+    }
+
+
+    /**
+     * Once the theoretical arrival time has passed, the state has the same effect as a new one.
+     */
+    private long removeIfIdle(String userIP, AtomicLong theoreticalArrivalTime, long currentTime) {
+        long tat = theoreticalArrivalTime.get();
+
+        if (tat != REMOVED && tat > currentTime) {
+            return tat;
+        }
+
+        if (tat != REMOVED && !theoreticalArrivalTime.compareAndSet(tat, REMOVED)) {
+            // updated by a request in the meantime
+            return theoreticalArrivalTime.get();
+        }
+
+        ipToTheoreticalArrivalTimeStore.remove(userIP, theoreticalArrivalTime);
+        return RateLimitStateStore.REMOVED;
+    }
+
+    @Override
+    public void updateLimit(int apiLimitInMinutes, int apiLimitRequests) {
+        limit = new RateLimit(apiLimitInMinutes, apiLimitRequests);
+    }
+
+    @Override
+    public String snapshotFormat() {
+        return "gcra";
+    }
+
+    /**
+     * The theoretical arrival time is the time the state becomes idle, so the records have no further times.
+     */
+    @Override
+    public void writeSnapshot(RateLimitSnapshot.Writer writer) {
+        long[] noTimes = new long[0];
+
+        ipToTheoreticalArrivalTimeStore.forEach((userIP, theoreticalArrivalTime) -> {
+            long tat = theoreticalArrivalTime.get();
+
+            if (tat != REMOVED && tat != Long.MIN_VALUE) {
+                writer.write(userIP, tat, noTimes, 0);
+            }
+        });
+    }
+
+    @Override
+    public void restoreSnapshot(RateLimitSnapshot.Reader reader) {
+        long currentTime = clock.nanoTime();
+
+        while (reader.next()) {
+            AtomicLong theoreticalArrivalTime = ipToTheoreticalArrivalTimeStore.getOrCreate(reader.getUserIP(), currentTime);
+
+            if (theoreticalArrivalTime != null) {
+                theoreticalArrivalTime.compareAndSet(Long.MIN_VALUE, reader.getIdleTime());
+            }
+        }
+    }
+
+    @Scheduled(initialDelayString = "${rate.limit.expiry.interval.millis}", fixedDelayString = "${rate.limit.expiry.interval.millis}")
+    public void expireIdleStates() {
+        ipToTheoreticalArrivalTimeStore.expireAllIdleStates(clock.nanoTime());
+    }
+
+    @Override
+    public int numberOfTrackedIPs() {
+        return ipToTheoreticalArrivalTimeStore.size();
+    }
+
+    @Override
+    public long estimateMemoryInBytes() {
+        return ipToTheoreticalArrivalTimeStore.estimateMemoryInBytes(theoreticalArrivalTime -> SIZE_OF_STATE);
+    }
+
+    @Override
+    public RateLimitStateStatistics getStateStatistics() {
+        return ipToTheoreticalArrivalTimeStore.getStatistics();
+    }
+}
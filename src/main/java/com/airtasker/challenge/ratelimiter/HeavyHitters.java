@@ -0,0 +1,201 @@
+package com.airtasker.challenge.ratelimiter;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Finds the keys that were requested most often recently, in constant memory. A count-min sketch estimates how often
+ * every key was requested, and the keys with the highest estimates are kept as candidates. When the number of
+ * requests reaches {@value #SAMPLE_SIZE}, all counts are halved, so old requests lose weight.
+ * <p>
+ * The sketch is updated without synchronization, like the {@link FrequencySketch}. A key whose estimate is not above
+ * the lowest one of the candidates is not compared with them, and a key that is a candidate already is found without
+ * locking. Only a new candidate takes the lock, and if the lock is held by another thread, the key is offered again
+ * with its next request. Adding a key does not allocate: the candidates are the keys of the requests themselves.
+ * <p>
+ * The requests are counted atomically, so the counts are halved once per sample, by the thread that adds its last
+ * request. If the candidates are locked at that moment, their counts are halved by the next thread that locks them.
+ */
+final class HeavyHitters {
+
+    static final int WIDTH = 4096;
+    static final int SAMPLE_SIZE = 1 << 20;
+
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final int DEPTH = SEEDS.length;
+
+    private final int[] counters;
+    private final String[] candidates;
+    private final int[] hashesOfCandidates;
+    private final int[] countsOfCandidates;
+    private final ReentrantLock candidatesLock;
+    private volatile int lowestCountOfCandidates;
+    private volatile boolean candidatesToHalve;
+    private final AtomicInteger size;
+
+
+    HeavyHitters(int numberOfCandidates) {
+        if (numberOfCandidates <= 0) {
+            throw new IllegalArgumentException("number of heavy hitters must be positive: " + numberOfCandidates);
+        }
+
+        this.counters = new int[DEPTH * WIDTH];
+        this.candidates = new String[numberOfCandidates];
+        this.hashesOfCandidates = new int[numberOfCandidates];
+        this.countsOfCandidates = new int[numberOfCandidates];
+        this.candidatesLock = new ReentrantLock();
+        this.size = new AtomicInteger();
+    }
+
+
+    void add(String key) {
+        int hash = spread(key.hashCode());
+        int count = Integer.MAX_VALUE;
+
+        for (int i = 0; i < DEPTH; i++) {
+            count = Math.min(count, ++counters[indexOf(hash, i)]);
+        }
+
+        if (count > lowestCountOfCandidates) {
+            offer(key, hash, count);
+        }
+
+        if (size.incrementAndGet() == SAMPLE_SIZE) {
+            reset();
+        }
+    }
+
+    private void offer(String key, int hash, int count) {
+        for (int i = 0; i < candidates.length; i++) {
+            if (hashesOfCandidates[i] == hash && key.equals(candidates[i])) {
+                countsOfCandidates[i] = count;
+                return;
+            }
+        }
+
+        if (!candidatesLock.tryLock()) {
+            return;
+        }
+        try {
+            if (candidatesToHalve) {
+                halveCountsOfCandidates();
+            }
+
+            int lowest = 0;
+
+            for (int i = 0; i < candidates.length; i++) {
+                if (hashesOfCandidates[i] == hash && key.equals(candidates[i])) {
+                    countsOfCandidates[i] = count;
+                    return;
+                }
+                if (countsOfCandidates[i] < countsOfCandidates[lowest]) {
+                    lowest = i;
+                }
+            }
+
+            if (count > countsOfCandidates[lowest]) {
+                candidates[lowest] = key;
+                hashesOfCandidates[lowest] = hash;
+                countsOfCandidates[lowest] = count;
+            }
+
+            updateLowestCountOfCandidates();
+        } finally {
+            candidatesLock.unlock();
+        }
+    }
+
+    private void updateLowestCountOfCandidates() {
+        int lowestCount = Integer.MAX_VALUE;
+        for (int count : countsOfCandidates) {
+            lowestCount = Math.min(lowestCount, count);
+        }
+        lowestCountOfCandidates = lowestCount;
+    }
+
+    private void reset() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] >>>= 1;
+        }
+        size.addAndGet(-SAMPLE_SIZE);
+
+        candidatesToHalve = true;
+        if (!candidatesLock.tryLock()) {
+            // lets the keys be compared with the candidates whose counts are not halved yet
+            lowestCountOfCandidates = lowestCountOfCandidates >>> 1;
+            return;
+        }
+        try {
+            if (candidatesToHalve) {
+                halveCountsOfCandidates();
+            }
+        } finally {
+            candidatesLock.unlock();
+        }
+    }
+
+    private void halveCountsOfCandidates() {
+        candidatesToHalve = false;
+
+        for (int i = 0; i < countsOfCandidates.length; i++) {
+            countsOfCandidates[i] >>>= 1;
+        }
+        updateLowestCountOfCandidates();
+    }
+
+    /**
+     * @return the candidates with their current estimate, the most frequently requested first
+     */
+    Map<String, Integer> heaviest() {
+        List<Map.Entry<String, Integer>> estimates = new ArrayList<>();
+
+        candidatesLock.lock();
+        try {
+            if (candidatesToHalve) {
+                halveCountsOfCandidates();
+            }
+            for (String candidate : candidates) {
+                if (candidate != null) {
+                    estimates.add(new AbstractMap.SimpleImmutableEntry<>(candidate, estimate(candidate)));
+                }
+            }
+        } finally {
+            candidatesLock.unlock();
+        }
+
+        estimates.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+
+        Map<String, Integer> heaviest = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> estimate : estimates) {
+            heaviest.put(estimate.getKey(), estimate.getValue());
+        }
+        return heaviest;
+    }
+
+    int estimate(String key) {
+        int hash = spread(key.hashCode());
+        int count = Integer.MAX_VALUE;
+
+        for (int i = 0; i < DEPTH; i++) {
+            count = Math.min(count, counters[indexOf(hash, i)]);
+        }
+        return count;
+    }
+
+    private static int indexOf(int item, int i) {
+        long hash = (item + SEEDS[i]) * SEEDS[i];
+        hash += hash >>> 32;
+        return i * WIDTH + (((int) hash) & (WIDTH - 1));
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
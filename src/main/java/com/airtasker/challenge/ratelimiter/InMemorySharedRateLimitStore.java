@@ -0,0 +1,57 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.MonotonicClock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process stand-in for a shared store, for tests and for running several strategy instances in one JVM.
+ * The theoretical arrival time of a key is updated atomically within {@link ConcurrentHashMap#compute}, like a
+ * script is executed atomically by Redis. Keys are never removed.
+ */
+public class InMemorySharedRateLimitStore implements SharedRateLimitStore {
+
+    private final ConcurrentHashMap<String, Long> keyToTheoreticalArrivalTime;
+    private final MonotonicClock clock;
+
+
+    public InMemorySharedRateLimitStore(MonotonicClock clock) {
+        this.keyToTheoreticalArrivalTime = new ConcurrentHashMap<>();
+        this.clock = clock;
+    }
+
+
+    @Override
+    public List<Admission> tryAcquire(List<String> keys, int[] permits, boolean allOrNothing, int limitOfRequests,
+                                      long limitInNanos) {
+        List<Admission> admissions = new ArrayList<>(keys.size());
+
+        for (int i = 0; i < keys.size(); i++) {
+            admissions.add(tryAcquire(keys.get(i), permits[i], allOrNothing, limitOfRequests, limitInNanos));
+        }
+
+        return admissions;
+    }
+
+    private Admission tryAcquire(String key, int permits, boolean allOrNothing, int limitOfRequests, long limitInNanos) {
+        long emissionIntervalInNanos = limitInNanos / limitOfRequests;
+        long currentTime = clock.nanoTime();
+        Admission[] admission = new Admission[1];
+
+        keyToTheoreticalArrivalTime.compute(key, (ignored, storedTat) -> {
+            long tat = Math.max(storedTat == null ? currentTime : storedTat, currentTime);
+            long available = (currentTime + limitInNanos - tat) / emissionIntervalInNanos;
+            int granted = allOrNothing && available < permits ? 0 : (int) Math.max(Math.min(permits, available), 0);
+            long newTat = tat + granted * emissionIntervalInNanos;
+            long retryAfter = granted < permits
+                    ? newTat + (allOrNothing ? permits : 1) * emissionIntervalInNanos - limitInNanos - currentTime : 0;
+
+            admission[0] = new Admission(granted, (int) ((currentTime + limitInNanos - newTat) / emissionIntervalInNanos), retryAfter);
+            return granted > 0 ? newTat : storedTat;
+        });
+
+        return admission[0];
+    }
+}
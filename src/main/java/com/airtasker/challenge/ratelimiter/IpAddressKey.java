@@ -0,0 +1,259 @@
+package com.airtasker.challenge.ratelimiter;
+
+/**
+ * An IPv4 or IPv6 address as a 128 bit key of two longs, parsed from its textual form without creating any objects
+ * besides the key. An IPv4 address is mapped into the IPv4-mapped IPv6 range {@code ::ffff:0:0/96}, so
+ * {@code 192.0.2.1} and {@code ::ffff:192.0.2.1} are the same key, and its low long alone identifies it.
+ * <p>
+ * A single client usually owns a whole IPv6 /64 network, so IPv6 addresses can be reduced to a prefix. IPv4 addresses
+ * are never reduced.
+ */
+public final class IpAddressKey {
+
+    public static final int IPV6_ADDRESS_LENGTH = 128;
+    public static final long NOT_IPV4 = -1;
+
+    private static final long IPV4_MAPPED_PREFIX = 0xffffL << 32;
+
+    private final long high;
+    private final long low;
+
+
+    private IpAddressKey(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * @param address          textual IPv4 or IPv6 address, e.g. from {@code ServletRequest#getRemoteAddr()}. An IPv6
+     *                         address may be enclosed in brackets and have a zone index.
+     * @param ipv6PrefixLength number of leading bits of an IPv6 address that are kept, 128 to keep the whole address
+     * @return the key, or {@code null} if the address is not a valid IP address
+     */
+    public static IpAddressKey parse(String address, int ipv6PrefixLength) {
+        if (ipv6PrefixLength < 0 || ipv6PrefixLength > IPV6_ADDRESS_LENGTH) {
+            throw new IllegalArgumentException("invalid IPv6 prefix length: " + ipv6PrefixLength);
+        }
+
+        int start = 0;
+        int end = address.length();
+
+        if (end > 1 && address.charAt(0) == '[' && address.charAt(end - 1) == ']') {
+            start++;
+            end--;
+        }
+
+        int zone = address.indexOf('%', start);
+        if (zone >= 0 && zone < end) {
+            end = zone;
+        }
+
+        if (address.indexOf(':', start) < 0) {
+            long ipv4 = parseIPv4(address, start, end);
+            return ipv4 < 0 ? null : new IpAddressKey(0, IPV4_MAPPED_PREFIX | ipv4);
+        }
+
+        return parseIPv6(address, start, end, ipv6PrefixLength);
+    }
+
+    /**
+     * Parses a dotted decimal IPv4 address without creating a key. The high long of an IPv4 key is always 0.
+     *
+     * @return the low long of the key, or {@link #NOT_IPV4} if the address is not a valid IPv4 address
+     */
+    public static long parseIPv4(String address) {
+        long ipv4 = parseIPv4(address, 0, address.length());
+        return ipv4 < 0 ? NOT_IPV4 : IPV4_MAPPED_PREFIX | ipv4;
+    }
+
+    /**
+     * @return the address as unsigned int, or -1 if it is not a valid dotted decimal IPv4 address
+     */
+    private static long parseIPv4(String address, int start, int end) {
+        long ipv4 = 0;
+        int octets = 0;
+        int i = start;
+
+        while (i < end) {
+            int digits = 0;
+            int octet = 0;
+
+            for (; i < end && digits < 4; i++, digits++) {
+                char c = address.charAt(i);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                octet = octet * 10 + (c - '0');
+            }
+
+            if (digits == 0 || digits > 3 || octet > 255 || ++octets > 4) {
+                return -1;
+            }
+            ipv4 = ipv4 << 8 | octet;
+
+            if (i < end) {
+                if (address.charAt(i) != '.' || i + 1 == end) {
+                    return -1;
+                }
+                i++;
+            }
+        }
+
+        return octets == 4 ? ipv4 : -1;
+    }
+
+    private static IpAddressKey parseIPv6(String address, int start, int end, int ipv6PrefixLength) {
+        // the groups before and after "::" are collected separately and joined at the end
+        long headHigh = 0;
+        long headLow = 0;
+        int headGroups = 0;
+        long tailHigh = 0;
+        long tailLow = 0;
+        int tailGroups = 0;
+        boolean compressed = false;
+        int i = start;
+
+        if (end - start >= 2 && address.charAt(start) == ':' && address.charAt(start + 1) == ':') {
+            compressed = true;
+            i += 2;
+        }
+
+        while (i < end) {
+            int group = 0;
+            int digits = 0;
+
+            for (; i < end && digits <= 4; i++, digits++) {
+                int digit = hexDigit(address.charAt(i));
+                if (digit < 0) {
+                    break;
+                }
+                group = group << 4 | digit;
+            }
+
+            if (i < end && address.charAt(i) == '.') {
+                // embedded IPv4 address as the last two groups
+                long ipv4 = parseIPv4(address, i - digits, end);
+                if (ipv4 < 0) {
+                    return null;
+                }
+                if (compressed) {
+                    tailHigh = tailHigh << 32 | tailLow >>> 32;
+                    tailLow = tailLow << 32 | ipv4;
+                    tailGroups += 2;
+                } else {
+                    headHigh = headHigh << 32 | headLow >>> 32;
+                    headLow = headLow << 32 | ipv4;
+                    headGroups += 2;
+                }
+                i = end;
+                break;
+            }
+
+            if (digits == 0 || digits > 4) {
+                return null;
+            }
+            if (compressed) {
+                tailHigh = tailHigh << 16 | tailLow >>> 48;
+                tailLow = tailLow << 16 | group;
+                tailGroups++;
+            } else {
+                headHigh = headHigh << 16 | headLow >>> 48;
+                headLow = headLow << 16 | group;
+                headGroups++;
+            }
+
+            if (i == end) {
+                break;
+            }
+            if (address.charAt(i) != ':' || ++i == end) {
+                return null;
+            }
+            if (address.charAt(i) == ':') {
+                if (compressed) {
+                    return null;
+                }
+                compressed = true;
+                i++;
+            }
+        }
+
+        int groups = headGroups + tailGroups;
+        if (compressed ? groups > 7 : groups != 8) {
+            return null;
+        }
+
+        // move the head groups in front of the zero groups
+        int shift = 16 * (8 - headGroups);
+        if (shift >= 64) {
+            headHigh = shift == 128 ? 0 : headLow << (shift - 64);
+            headLow = 0;
+        } else if (shift > 0) {
+            headHigh = headHigh << shift | headLow >>> (64 - shift);
+            headLow = headLow << shift;
+        }
+
+        long high = headHigh | tailHigh;
+        long low = headLow | tailLow;
+
+        if (high == 0 && low >>> 32 == 0xffffL) {
+            return new IpAddressKey(high, low);
+        }
+
+        return new IpAddressKey(high & prefixMask(ipv6PrefixLength), low & prefixMask(ipv6PrefixLength - 64));
+    }
+
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private static long prefixMask(int prefixLength) {
+        if (prefixLength <= 0) {
+            return 0;
+        }
+        return prefixLength >= 64 ? -1L : -1L << (64 - prefixLength);
+    }
+
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    public boolean isIPv4() {
+        return high == 0 && low >>> 32 == 0xffffL;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof IpAddressKey)) {
+            return false;
+        }
+        IpAddressKey key = (IpAddressKey) other;
+        return high == key.high && low == key.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(high * 31 + low);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+}
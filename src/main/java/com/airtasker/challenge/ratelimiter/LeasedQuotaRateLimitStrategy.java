@@ -0,0 +1,322 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.MonotonicClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the requests of an IP across all instances of the service without a round trip to the
+ * {@link SharedRateLimitStore} per request. Every instance leases a share of the limit of an IP from the store and
+ * admits requests against this lease in memory. A background task refills the leases that run low, in batches and
+ * asynchronously to the requests.
+ * <p>
+ * Before a lease arrives, an instance admits up to the local allowance of requests per IP unconfirmed. They are
+ * charged to the store with the next refill. So within a time window the instances together allow at most
+ * {@code limit + instances * (local allowance + lease size)} requests of an IP, and deny requests only once at least
+ * {@code limit - instances * lease size} were allowed. The lease size and the local allowance configure this error.
+ * <p>
+ * A request that costs more than one request is admitted against the lease as a whole, so the lease size and the
+ * local allowance together should be at least the highest cost of a request, a more expensive request is not admitted.
+ * <p>
+ * If the store fails, the requests are checked by a local {@link GcraRateLimitStrategy} until the retry interval has
+ * passed, like in the {@link DistributedRateLimitStrategy}.
+ */
+@Component
+@ConditionalOnProperty(name = "api.limit.strategy", havingValue = "distributed-leased")
+public class LeasedQuotaRateLimitStrategy implements RateLimitStrategy {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LeasedQuotaRateLimitStrategy.class);
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final RateLimitStateStore<QuotaLease> ipToLeaseStore;
+    private final SharedRateLimitStore sharedStore;
+    private final GcraRateLimitStrategy localStrategy;
+    private final MonotonicClock clock;
+    private final int apiLimitRequests;
+    private final long apiLimitInNanos;
+    private final int leaseSize;
+    private final int localAllowance;
+    private final int batchSize;
+    private final long syncIntervalInNanos;
+    private final long retryIntervalInNanos;
+    private final Queue<QuotaLease> leasesToSync;
+    private final ScheduledExecutorService synchronizer;
+
+    private volatile long sharedStoreUnavailableUntil;
+    private volatile boolean sharedStoreUnavailable;
+
+
+    @Autowired
+    public LeasedQuotaRateLimitStrategy(MonotonicClock clock, SharedRateLimitStore sharedStore,
+                                        @Value("${api.limit.in.minutes}") int apiLimitInMinutes,
+                                        @Value("${api.limit.requests}") int apiLimitRequests,
+                                        @Value("${rate.limit.max.tracked.ips}") int maxTrackedIPs,
+                                        @Value("${rate.limit.lease.size}") int leaseSize,
+                                        @Value("${rate.limit.lease.local.allowance}") int localAllowance,
+                                        @Value("${rate.limit.distributed.batch.size}") int batchSize,
+                                        @Value("${rate.limit.lease.sync.millis}") long syncIntervalInMillis,
+                                        @Value("${rate.limit.distributed.retry.millis}") long retryIntervalInMillis) {
+        this.sharedStore = sharedStore;
+        this.localStrategy = new GcraRateLimitStrategy(clock, apiLimitInMinutes, apiLimitRequests, maxTrackedIPs);
+        this.clock = clock;
+        this.apiLimitRequests = apiLimitRequests;
+        this.apiLimitInNanos = TimeUnit.MINUTES.toNanos(apiLimitInMinutes);
+        this.leaseSize = Math.max(1, Math.min(leaseSize, apiLimitRequests));
+        this.localAllowance = localAllowance;
+        this.batchSize = batchSize;
+        this.syncIntervalInNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalInMillis);
+        this.retryIntervalInNanos = TimeUnit.MILLISECONDS.toNanos(retryIntervalInMillis);
+        this.ipToLeaseStore = new RateLimitStateStore<>(apiLimitInNanos, QuotaLease::new, this::removeIfIdle, maxTrackedIPs);
+        this.leasesToSync = new ConcurrentLinkedQueue<>();
+        this.synchronizer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limit-lease-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        synchronizer.scheduleWithFixedDelay(this::synchronizeLeases, syncIntervalInMillis, syncIntervalInMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+
+    @Override
+    public RateLimitResult checkRateLimit(String userIP, int cost) {
+
+        long currentTime = clock.nanoTime();
+
+        if (cost > apiLimitRequests || sharedStoreUnavailable && currentTime - sharedStoreUnavailableUntil < 0) {
+            return localStrategy.checkRateLimit(userIP, cost);
+        }
+
+        ipToLeaseStore.expireIdleStates(currentTime);
+
+        while (true) {
+            QuotaLease lease = ipToLeaseStore.getOrCreate(userIP, currentTime);
+
+            if (lease == null) {
+                // not tracked because the store is full, limited locally like while the store is unavailable
+                return localStrategy.checkRateLimit(userIP, cost);
+            }
+
+            lease.lock();
+            try {
+                if (ipToLeaseStore.get(userIP) != lease) {
+                    // removed as idle or evicted in the meantime
+                    continue;
+                }
+
+                lease.timeOfLastRequest = currentTime;
+                RateLimitResult result = admit(lease, cost, currentTime);
+
+                if (!lease.syncPending && lease.permits <= leaseSize / 2 && currentTime - lease.exhaustedUntil >= 0) {
+                    lease.syncPending = true;
+                    lease.userIP = userIP;
+                    leasesToSync.offer(lease);
+                }
+
+                return result;
+            } finally {
+                lease.unlock();
+            }
+        }
+    }
+
+    private RateLimitResult admit(QuotaLease lease, int cost, long currentTime) {
+
+        if (lease.permits >= cost) {
+            lease.permits -= cost;
+            return new RateLimitResult(true, 0, remainingRequests(lease), apiLimitRequests);
+        }
+
+        if (currentTime - lease.exhaustedUntil < 0) {
+            return new RateLimitResult(false, toSecondsRoundedUp(lease.exhaustedUntil - currentTime), 0,
+                    apiLimitRequests);
+        }
+
+        // the rest of the lease first, the remainder is charged to the store with the next refill
+        if (lease.permits + localAllowance - lease.unsyncedRequests >= cost) {
+            lease.unsyncedRequests += cost - lease.permits;
+            lease.permits = 0;
+            return new RateLimitResult(true, 0, remainingRequests(lease), apiLimitRequests);
+        }
+
+        // the lease is on its way
+        return new RateLimitResult(false, toSecondsRoundedUp(syncIntervalInNanos), 0, apiLimitRequests);
+    }
+
+    private int remainingRequests(QuotaLease lease) {
+        int remaining = lease.permits + lease.remainingInSharedStore - lease.unsyncedRequests;
+        return Math.max(0, Math.min(remaining, apiLimitRequests - 1));
+    }
+
+    private static long toSecondsRoundedUp(long nanos) {
+        return (nanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND;
+    }
+
+
+    /**
+     * Refills the leases that ran low and charges their unsynced requests, {@code batchSize} leases per round trip.
+     * The leases themselves are queued, so a lease that was removed while its refill was pending is dropped rather than
+     * synced a second time by the lease that replaced it for the same IP.
+     */
+    void synchronizeLeases() {
+        if (sharedStoreUnavailable && clock.nanoTime() - sharedStoreUnavailableUntil < 0) {
+            return;
+        }
+
+        List<QuotaLease> batch = new ArrayList<>(batchSize);
+        List<String> userIPs = new ArrayList<>(batchSize);
+
+        while (!leasesToSync.isEmpty()) {
+            for (QuotaLease lease; batch.size() < batchSize && (lease = leasesToSync.poll()) != null; ) {
+                if (ipToLeaseStore.get(lease.userIP) == lease) {
+                    batch.add(lease);
+                    userIPs.add(lease.userIP);
+                }
+            }
+
+            int[] chargedRequests = new int[batch.size()];
+            int[] permits = new int[batch.size()];
+
+            for (int i = 0; i < batch.size(); i++) {
+                QuotaLease lease = batch.get(i);
+                lease.lock();
+                try {
+                    chargedRequests[i] = lease.unsyncedRequests;
+                    permits[i] = lease.unsyncedRequests + Math.max(leaseSize - lease.permits, 0);
+                } finally {
+                    lease.unlock();
+                }
+            }
+
+            if (!send(batch, userIPs, chargedRequests, permits)) {
+                return;
+            }
+
+            batch.clear();
+            userIPs.clear();
+        }
+    }
+
+    private boolean send(List<QuotaLease> batch, List<String> userIPs, int[] chargedRequests, int[] permits) {
+        List<SharedRateLimitStore.Admission> admissions;
+
+        try {
+            admissions = sharedStore.tryAcquire(userIPs, permits, apiLimitRequests, apiLimitInNanos);
+        } catch (RuntimeException e) {
+            markSharedStoreUnavailable(e);
+
+            // retried once the retry interval has passed
+            leasesToSync.addAll(batch);
+            return false;
+        }
+
+        long currentTime = clock.nanoTime();
+
+        for (int i = 0; i < batch.size(); i++) {
+            QuotaLease lease = batch.get(i);
+            SharedRateLimitStore.Admission admission = admissions.get(i);
+
+            lease.lock();
+            try {
+                // unsynced requests are charged first, requests that could not be charged exceeded the limit
+                int granted = admission.getGrantedPermits();
+                lease.unsyncedRequests -= chargedRequests[i];
+                lease.permits += Math.max(granted - chargedRequests[i], 0);
+                lease.remainingInSharedStore = admission.getRemainingRequests();
+                lease.syncPending = false;
+
+                if (granted < permits[i]) {
+                    lease.exhaustedUntil = currentTime + admission.getRetryAfterInNanos();
+                }
+            } finally {
+                lease.unlock();
+            }
+        }
+
+        if (sharedStoreUnavailable) {
+            sharedStoreUnavailable = false;
+            LOGGER.info("Shared rate limit store is available again");
+        }
+        return true;
+    }
+
+    private void markSharedStoreUnavailable(Exception cause) {
+        sharedStoreUnavailableUntil = clock.nanoTime() + retryIntervalInNanos;
+
+        if (!sharedStoreUnavailable) {
+            sharedStoreUnavailable = true;
+            LOGGER.warn("Shared rate limit store is unavailable, limiting locally for {} ms",
+                    TimeUnit.NANOSECONDS.toMillis(retryIntervalInNanos), cause);
+        }
+    }
+
+
+    /**
+     * A lease is idle once its latest request has left the time window. Its unused permits are given up, the limit
+     * of the IP has recovered by then anyway.
+     */
+    private long removeIfIdle(String userIP, QuotaLease lease, long currentTime) {
+
+        lease.lock();
+        try {
+            long idleTime = lease.timeOfLastRequest + apiLimitInNanos;
+
+            if (idleTime >= currentTime) {
+                return idleTime;
+            }
+
+            ipToLeaseStore.remove(userIP, lease);
+            return RateLimitStateStore.REMOVED;
+        } finally {
+            lease.unlock();
+        }
+    }
+
+    @Scheduled(initialDelayString = "${rate.limit.expiry.interval.millis}", fixedDelayString = "${rate.limit.expiry.interval.millis}")
+    public void expireIdleStates() {
+        ipToLeaseStore.expireAllIdleStates(clock.nanoTime());
+        localStrategy.expireIdleStates();
+    }
+
+    int numberOfTrackedIPs() {
+        return ipToLeaseStore.size();
+    }
+
+    @PreDestroy
+    public void stop() {
+        synchronizer.shutdownNow();
+    }
+
+
+    private final class QuotaLease extends StateLock {
+
+        private String userIP;
+        private int permits;
+        private int unsyncedRequests;
+        private int remainingInSharedStore;
+        private long exhaustedUntil;
+        private long timeOfLastRequest;
+        private boolean syncPending;
+
+        QuotaLease(long currentTime) {
+            this.remainingInSharedStore = apiLimitRequests;
+            this.exhaustedUntil = currentTime;
+            this.timeOfLastRequest = currentTime;
+        }
+    }
+}
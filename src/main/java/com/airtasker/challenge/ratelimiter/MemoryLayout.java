@@ -0,0 +1,65 @@
+package com.airtasker.challenge.ratelimiter;
+
+/**
+ * Sizes of objects on a 64-bit JVM with compressed references and compressed class pointers, which is the default
+ * for heaps up to 32 GB. They are used to estimate the memory of the rate limit state, not to measure it: field
+ * padding is ignored and a String is counted with two bytes per char, as on Java 8.
+ */
+final class MemoryLayout {
+
+    static final int OBJECT_HEADER = 12;
+    static final int ARRAY_HEADER = 16;
+    static final int REFERENCE = 4;
+    static final int INT = 4;
+    static final int LONG = 8;
+
+    /**
+     * The owner thread, the head and the tail of the wait queue and the state of {@link StateLock}.
+     */
+    static final int STATE_LOCK_FIELDS = 3 * REFERENCE + INT;
+
+    /**
+     * A node of {@link java.util.concurrent.ConcurrentHashMap}: hash, key, value and next node.
+     */
+    static final long CONCURRENT_HASH_MAP_NODE = sizeOfObject(INT + 3 * REFERENCE);
+
+    /**
+     * The node of a key in a bucket of the timing wheel: item and next node.
+     */
+    static final long WHEEL_ENTRY = sizeOfObject(2 * REFERENCE);
+
+    private static final int ALIGNMENT = 8;
+
+
+    private MemoryLayout() {
+    }
+
+    static long sizeOfObject(long bytesOfFields) {
+        return align(OBJECT_HEADER + bytesOfFields);
+    }
+
+    static long sizeOfArray(long length, int bytesPerElement) {
+        return align(ARRAY_HEADER + length * bytesPerElement);
+    }
+
+    static long sizeOfString(String string) {
+        return sizeOfObject(REFERENCE + INT) + sizeOfArray(string.length(), 2);
+    }
+
+    /**
+     * The table of a {@link java.util.concurrent.ConcurrentHashMap} is resized to twice its length once it is three
+     * quarters full.
+     */
+    static long sizeOfConcurrentHashMapTable(int size) {
+        if (size == 0) {
+            return 0;
+        }
+
+        long length = Long.highestOneBit(Math.max(16, size + (size >>> 1) + 1) - 1) << 1;
+        return sizeOfArray(length, REFERENCE);
+    }
+
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+}
@@ -0,0 +1,17 @@
+package com.airtasker.challenge.ratelimiter;
+
+/**
+ * A strategy that keeps the state of the IPs in memory and reports its size to the metrics. The values are read when
+ * the metrics are published, never while checking a request.
+ */
+public interface ObservableRateLimitStrategy extends RateLimitStrategy {
+
+    int numberOfTrackedIPs();
+
+    /**
+     * Estimates the memory of the tracked IPs and their state, without locking them. Visits every tracked IP.
+     */
+    long estimateMemoryInBytes();
+
+    RateLimitStateStatistics getStateStatistics();
+}
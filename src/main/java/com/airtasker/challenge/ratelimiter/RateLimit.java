@@ -0,0 +1,68 @@
+package com.airtasker.challenge.ratelimiter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The limit of a {@link ReloadableRateLimitStrategy}. It is replaced as a whole, so a request never combines the time
+ * window of the old with the number of requests of the new limit.
+ */
+final class RateLimit {
+
+    // denied requests wait at most the time window, the results of longer windows are only shared for the first hour
+    private static final int MAX_SHARED_DENIED_SECONDS = 3600;
+
+    final long apiLimitInNanos;
+    final int apiLimitRequests;
+    final long emissionIntervalInNanos;
+    private final RateLimitResult[] allowedResults;
+    private final RateLimitResult[] deniedResults;
+
+
+    RateLimit(int apiLimitInMinutes, int apiLimitRequests) {
+        if (apiLimitInMinutes <= 0 || apiLimitRequests <= 0) {
+            throw new IllegalArgumentException("invalid rate limit: " + apiLimitRequests + " requests in "
+                    + apiLimitInMinutes + " minutes");
+        }
+
+        this.apiLimitInNanos = TimeUnit.MINUTES.toNanos(apiLimitInMinutes);
+        this.apiLimitRequests = apiLimitRequests;
+        this.emissionIntervalInNanos = apiLimitInNanos / apiLimitRequests;
+        this.allowedResults = new RateLimitResult[apiLimitRequests];
+
+        this.deniedResults = new RateLimitResult[(int) Math.min(TimeUnit.NANOSECONDS.toSeconds(apiLimitInNanos),
+                MAX_SHARED_DENIED_SECONDS) + 1];
+
+        for (int remaining = 0; remaining < apiLimitRequests; remaining++) {
+            allowedResults[remaining] = new RateLimitResult(true, 0, remaining, apiLimitRequests);
+        }
+        for (int seconds = 0; seconds < deniedResults.length; seconds++) {
+            deniedResults[seconds] = new RateLimitResult(false, seconds, 0, apiLimitRequests);
+        }
+    }
+
+
+    /**
+     * @return the shared result of an allowed request, the remaining requests are capped by the limit
+     */
+    RateLimitResult allowed(int remaining) {
+        return allowedResults[Math.min(remaining, apiLimitRequests - 1)];
+    }
+
+    /**
+     * @return the result of a request that costs more than the limit, which is denied however long it waits. It is
+     * told to retry after the time window, like a client that exhausted the limit with a single request.
+     */
+    RateLimitResult deniedAboveLimit() {
+        return denied(TimeUnit.NANOSECONDS.toSeconds(apiLimitInNanos));
+    }
+
+    /**
+     * @return the shared result of a denied request, so a flood of denied requests does not allocate
+     */
+    RateLimitResult denied(long nextAllowedRequestTimeInSeconds) {
+        if (nextAllowedRequestTimeInSeconds >= 0 && nextAllowedRequestTimeInSeconds < deniedResults.length) {
+            return deniedResults[(int) nextAllowedRequestTimeInSeconds];
+        }
+        return new RateLimitResult(false, nextAllowedRequestTimeInSeconds, 0, apiLimitRequests);
+    }
+}
@@ -0,0 +1,125 @@
+package com.airtasker.challenge.ratelimiter;
+
+import java.util.Arrays;
+
+/**
+ * Requests whose rate limits are checked together by {@link RateLimitStrategy#checkRateLimits}, e.g. the messages a
+ * consumer received with one poll. The results are written into the batch.
+ * <p>
+ * A batch is meant to be reused: {@link #clear()} keeps its arrays, so checking a batch that is not larger than the
+ * ones before does not allocate. The batch also holds the scratch arrays of the strategies that group the requests,
+ * e.g. by shard. A batch must not be used by several threads at once.
+ */
+public final class RateLimitBatch {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int[] NO_INTS = new int[0];
+    private static final long[] NO_LONGS = new long[0];
+
+    private String[] userIPs;
+    private int[] costs;
+    private RateLimitResult[] results;
+    private int size;
+
+    // scratch arrays of the strategies, sized to the capacity of the batch on first use
+    int[] groups = NO_INTS;
+    int[] order = NO_INTS;
+    int[] groupEnds = NO_INTS;
+    long[] highs = NO_LONGS;
+    long[] lows = NO_LONGS;
+    long[] hashes = NO_LONGS;
+
+
+    public RateLimitBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public RateLimitBatch(int capacity) {
+        this.userIPs = new String[Math.max(capacity, 1)];
+        this.costs = new int[userIPs.length];
+        this.results = new RateLimitResult[userIPs.length];
+    }
+
+
+    /**
+     * Adds a request, the batch grows if it is full. A key may be added more than once, its requests are then checked
+     * in the order they were added.
+     *
+     * @return the index of the request
+     */
+    public int add(String userIP) {
+        return add(userIP, 1);
+    }
+
+    /**
+     * Adds a request that counts as {@code cost} requests, see {@link RateLimitStrategy#checkRateLimit(String, int)}.
+     *
+     * @return the index of the request
+     */
+    public int add(String userIP, int cost) {
+        if (cost < 1) {
+            throw new IllegalArgumentException("cost must be positive: " + cost);
+        }
+        if (size == userIPs.length) {
+            userIPs = Arrays.copyOf(userIPs, size * 2);
+            costs = Arrays.copyOf(costs, size * 2);
+            results = Arrays.copyOf(results, size * 2);
+        }
+
+        userIPs[size] = userIP;
+        costs[size] = cost;
+        results[size] = null;
+        return size++;
+    }
+
+    /**
+     * Removes all requests and their results, keeping the arrays.
+     */
+    public void clear() {
+        Arrays.fill(userIPs, 0, size, null);
+        Arrays.fill(results, 0, size, null);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String userIP(int index) {
+        return userIPs[index];
+    }
+
+    public int cost(int index) {
+        return costs[index];
+    }
+
+    /**
+     * @return the result of the request, or {@code null} before the batch was checked
+     */
+    public RateLimitResult result(int index) {
+        return results[index];
+    }
+
+    /**
+     * Called by the strategy for every request of the batch.
+     */
+    public void setResult(int index, RateLimitResult result) {
+        results[index] = result;
+    }
+
+    /**
+     * Sizes the scratch arrays to the requests and to the given number of groups.
+     */
+    void ensureScratchCapacity(int numberOfGroups) {
+        if (order.length < size) {
+            groups = new int[userIPs.length];
+            order = new int[userIPs.length];
+            highs = new long[userIPs.length];
+            lows = new long[userIPs.length];
+            hashes = new long[userIPs.length];
+        }
+        if (groupEnds.length < numberOfGroups) {
+            groupEnds = new int[numberOfGroups];
+        }
+    }
+}
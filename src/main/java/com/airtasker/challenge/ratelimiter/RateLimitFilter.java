@@ -13,26 +13,71 @@ import java.io.IOException;
 public class RateLimitFilter extends OncePerRequestFilter {
 
 
-    private final RateLimitStrategy strategy;
+    private final RateLimiter rateLimiter;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final DeniedResponses deniedResponses = new DeniedResponses();
 
-    public RateLimitFilter(RateLimitStrategy strategy) {
+    /**
+     * @param concurrencyLimiter limits the requests in flight once the rate limit allowed them, or {@code null}
+     */
+    public RateLimitFilter(RateLimiter rateLimiter, ConcurrencyLimiter concurrencyLimiter) {
 
-        this.strategy = strategy;
+        this.rateLimiter = rateLimiter;
+        this.concurrencyLimiter = concurrencyLimiter;
     }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
 
-        RateLimitResult rateLimitResult = strategy.checkRateLimit(request.getRemoteAddr());
+        RateLimitResult rateLimitResult = rateLimiter.checkRateLimit(request, ServletRateLimitRequestAdapter.INSTANCE);
 
         if (!rateLimitResult.isRequestAllowed()) {
-            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
-            response.setHeader("Content-Type", MediaType.TEXT_HTML_VALUE);
-            response.setHeader("Retry-After", String.valueOf(rateLimitResult.getNextAllowedRequestTimeInSeconds()));
-            response.getWriter().write("Try again in " + rateLimitResult.getNextAllowedRequestTimeInSeconds() + " seconds");
-        } else {
+            deny(response, rateLimitResult);
+        } else if (concurrencyLimiter == null) {
             filterChain.doFilter(request, response);
+        } else {
+            String remoteAddress = request.getRemoteAddr();
+
+            if (!concurrencyLimiter.tryAcquire(remoteAddress)) {
+                deny(response, deniedResponses.forRetryAfter(ConcurrencyLimiter.RETRY_AFTER_IN_SECONDS));
+                return;
+            }
+
+            long startTime = concurrencyLimiter.startTimer();
+            boolean failed = true;
+
+            try {
+                filterChain.doFilter(request, response);
+                failed = response.getStatus() >= HttpStatus.INTERNAL_SERVER_ERROR.value();
+            } finally {
+                concurrencyLimiter.release(remoteAddress, startTime, failed);
+            }
         }
 
     }
+
+    /**
+     * Writes the pre-encoded response of a request that was denied by the rate limit, with the {@code RateLimit}
+     * headers of its result. Neither the headers nor the body are encoded per request.
+     */
+    private void deny(HttpServletResponse response, RateLimitResult rateLimitResult) throws IOException {
+        DeniedResponses.DeniedResponse deniedResponse =
+                deniedResponses.forRetryAfter(rateLimitResult.getNextAllowedRequestTimeInSeconds());
+        String limit = deniedResponses.limitHeaderValue(rateLimitResult);
+
+        if (limit != null) {
+            response.setHeader(DeniedResponses.RATE_LIMIT_LIMIT, limit);
+        }
+        response.setHeader(DeniedResponses.RATE_LIMIT_REMAINING, DeniedResponses.NO_REMAINING_REQUESTS);
+        response.setHeader(DeniedResponses.RATE_LIMIT_RESET, deniedResponse.getReset());
+        deny(response, deniedResponse);
+    }
+
+    private void deny(HttpServletResponse response, DeniedResponses.DeniedResponse deniedResponse) throws IOException {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader("Content-Type", MediaType.TEXT_HTML_VALUE);
+        response.setHeader(DeniedResponses.RETRY_AFTER, deniedResponse.getRetryAfter());
+        response.setContentLength(deniedResponse.getBody().length);
+        response.getOutputStream().write(deniedResponse.getBody());
+    }
 }
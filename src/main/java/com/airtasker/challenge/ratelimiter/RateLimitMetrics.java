@@ -0,0 +1,100 @@
+package com.airtasker.challenge.ratelimiter;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the checked requests: the allowed and the denied ones, how long checking the rate limit took, and the
+ * clients that sent the most requests ({@link HeavyHitters}).
+ * <p>
+ * Recording a request does not allocate and does not lock: the results are counted by striped counters that are only
+ * summed up when the metrics are published, and the latency is recorded by a Micrometer {@link Timer}, which keeps
+ * the percentiles in HdrHistogram buckets. Reading the clock twice and updating the timer would cost more than most
+ * checks themselves, so only a random sample of the checks is timed, which yields the same percentiles.
+ */
+public class RateLimitMetrics {
+
+    public static final long NOT_TIMED = Long.MIN_VALUE;
+
+    private final LongAdder allowedCount;
+    private final LongAdder deniedCount;
+    private final Timer checkTimer;
+    private final HeavyHitters heavyHitters;
+    private final int samplingMask;
+
+
+    /**
+     * @param numberOfHeavyHitters     number of clients that are reported by {@link #heaviestClients()}
+     * @param latencySamplingInterval  a power of two, on average one of this many checks is timed
+     */
+    public RateLimitMetrics(MeterRegistry registry, int numberOfHeavyHitters, int latencySamplingInterval) {
+        if (latencySamplingInterval <= 0 || Integer.bitCount(latencySamplingInterval) != 1) {
+            throw new IllegalArgumentException("latency sampling interval must be a power of two: " + latencySamplingInterval);
+        }
+
+        this.samplingMask = latencySamplingInterval - 1;
+        this.allowedCount = new LongAdder();
+        this.deniedCount = new LongAdder();
+        this.heavyHitters = new HeavyHitters(numberOfHeavyHitters);
+
+        FunctionCounter.builder("rate.limit.requests", allowedCount, LongAdder::sum)
+                .description("Requests checked by the rate limit")
+                .tag("result", "allowed")
+                .register(registry);
+        FunctionCounter.builder("rate.limit.requests", deniedCount, LongAdder::sum)
+                .description("Requests checked by the rate limit")
+                .tag("result", "denied")
+                .register(registry);
+
+        this.checkTimer = Timer.builder("rate.limit.check")
+                .description("Time to check the rate limit of a request, of a sample of the requests")
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .register(registry);
+    }
+
+
+    /**
+     * Called before a check, decides whether it is timed.
+     *
+     * @return the start time of the check, or {@link #NOT_TIMED}
+     */
+    public long startTimer() {
+        return (ThreadLocalRandom.current().nextInt() & samplingMask) == 0 ? System.nanoTime() : NOT_TIMED;
+    }
+
+    /**
+     * @param key       the key the strategy limited the request by, i.e. the remote address
+     * @param startTime the time returned by {@link #startTimer()}
+     */
+    public void record(String key, RateLimitResult result, long startTime) {
+        (result.isRequestAllowed() ? allowedCount : deniedCount).increment();
+
+        if (startTime != NOT_TIMED) {
+            checkTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        }
+
+        heavyHitters.add(key);
+    }
+
+    public long getAllowedCount() {
+        return allowedCount.sum();
+    }
+
+    public long getDeniedCount() {
+        return deniedCount.sum();
+    }
+
+    /**
+     * @return the clients that sent the most requests recently, allowed or denied, with an estimate of their number
+     * of requests. The estimate may be too high, but not too low, apart from concurrent requests that were lost.
+     */
+    public Map<String, Integer> heaviestClients() {
+        return heavyHitters.heaviest();
+    }
+}
@@ -0,0 +1,203 @@
+package com.airtasker.challenge.ratelimiter;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A rate limit that applies to the requests matching a path pattern and a method, limited per key of a request
+ * attribute. A policy has one or more limits, e.g. {@code 10/1s} against bursts and {@code 1000/1h} sustained, and a
+ * request is only allowed if all of them allow it.
+ * <p>
+ * Policies are compiled once from their configuration: the path pattern is parsed, the key attribute is resolved and
+ * the limits are converted into emission intervals, so matching a request neither scans a regular expression nor
+ * allocates. The attributes are read with a {@link RateLimitRequestAdapter}, so a policy applies to the requests of
+ * every web framework.
+ */
+public final class RateLimitPolicy {
+
+    static final String KEY_IP = "ip";
+    static final String KEY_PRINCIPAL = "principal";
+    static final String KEY_GLOBAL = "global";
+    static final String KEY_HEADER_PREFIX = "header:";
+
+    private static final String GLOBAL = "";
+
+    private final String name;
+    private final RequestPathPattern pathPattern;
+    private final String method;
+    private final KeyType keyType;
+    private final String keyHeader;
+    private final int[] limitsOfRequests;
+    private final long[] limitsInNanos;
+    private final long[] emissionIntervalsInNanos;
+
+
+    private RateLimitPolicy(String name, RequestPathPattern pathPattern, String method,
+                            String key, int[] limitsOfRequests, long[] limitsInNanos) {
+        this.name = name;
+        this.pathPattern = pathPattern;
+        this.method = method;
+        this.keyType = KeyType.of(key);
+        this.keyHeader = keyType == KeyType.HEADER ? key.substring(KEY_HEADER_PREFIX.length()) : null;
+        this.limitsOfRequests = limitsOfRequests;
+        this.limitsInNanos = limitsInNanos;
+        this.emissionIntervalsInNanos = new long[limitsOfRequests.length];
+
+        for (int i = 0; i < limitsOfRequests.length; i++) {
+            emissionIntervalsInNanos[i] = limitsInNanos[i] / limitsOfRequests[i];
+        }
+    }
+
+    /**
+     * @param key    request attribute the requests are limited by: {@code ip}, {@code header:<name>}, {@code principal}
+     *               or {@code global} for one limit shared by all matching requests
+     * @param path   path pattern of the requests the policy applies to, see {@link RequestPathPattern}, or
+     *               {@code null} for all paths
+     * @param method HTTP method of the requests the policy applies to, or {@code null} for all methods
+     * @param limits at least one limit as {@code <requests>/<duration>}, the duration with one of the units
+     *               {@code ms, s, m, h, d}, e.g. {@code 1000/1h}
+     */
+    public static RateLimitPolicy compile(String name, String key, String path, String method, List<String> limits) {
+        if (limits == null || limits.isEmpty()) {
+            throw new IllegalArgumentException("rate limit policy " + name + " has no limits");
+        }
+
+        int[] limitsOfRequests = new int[limits.size()];
+        long[] limitsInNanos = new long[limits.size()];
+
+        for (int i = 0; i < limits.size(); i++) {
+            String limit = limits.get(i).trim();
+            int separator = limit.indexOf('/');
+
+            if (separator < 0) {
+                throw new IllegalArgumentException("invalid limit of rate limit policy " + name + ": " + limit);
+            }
+
+            limitsOfRequests[i] = Integer.parseInt(limit.substring(0, separator).trim());
+            limitsInNanos[i] = parseDuration(limit.substring(separator + 1).trim());
+
+            if (limitsOfRequests[i] <= 0 || limitsInNanos[i] < limitsOfRequests[i]) {
+                throw new IllegalArgumentException("invalid limit of rate limit policy " + name + ": " + limit);
+            }
+        }
+
+        return new RateLimitPolicy(name, path == null || path.isEmpty() ? null : RequestPathPattern.compile(path),
+                method == null || method.isEmpty() ? null : method.toUpperCase(Locale.ROOT), key, limitsOfRequests,
+                limitsInNanos);
+    }
+
+    private static long parseDuration(String duration) {
+        int unit = 0;
+        while (unit < duration.length() && Character.isDigit(duration.charAt(unit))) {
+            unit++;
+        }
+
+        if (unit == 0) {
+            throw new IllegalArgumentException("invalid duration: " + duration);
+        }
+
+        long amount = Long.parseLong(duration.substring(0, unit));
+
+        switch (duration.substring(unit)) {
+            case "ms":
+                return TimeUnit.MILLISECONDS.toNanos(amount);
+            case "s":
+                return TimeUnit.SECONDS.toNanos(amount);
+            case "m":
+                return TimeUnit.MINUTES.toNanos(amount);
+            case "h":
+                return TimeUnit.HOURS.toNanos(amount);
+            case "d":
+                return TimeUnit.DAYS.toNanos(amount);
+            default:
+                throw new IllegalArgumentException("invalid unit of duration: " + duration);
+        }
+    }
+
+    /**
+     * @param path the {@link RateLimitRequestAdapter#path path} of the request, resolved once per request by the
+     *             caller if {@link #hasPathPattern()}
+     */
+    <R> boolean matches(R request, RateLimitRequestAdapter<R> adapter, String path) {
+        if (method != null && !method.equals(adapter.method(request))) {
+            return false;
+        }
+        return pathPattern == null || pathPattern.matches(path);
+    }
+
+    boolean hasPathPattern() {
+        return pathPattern != null;
+    }
+
+    /**
+     * @return the key the request is limited by, or {@code null} if the request has no such attribute (e.g. no API
+     * key header), then the policy does not apply
+     */
+    <R> String keyOf(R request, RateLimitRequestAdapter<R> adapter) {
+        switch (keyType) {
+            case IP:
+                return adapter.remoteAddress(request);
+            case PRINCIPAL:
+                return adapter.principal(request);
+            case GLOBAL:
+                return GLOBAL;
+            default:
+                return adapter.header(request, keyHeader);
+        }
+    }
+
+    boolean isLimitedByPrincipal() {
+        return keyType == KeyType.PRINCIPAL;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    int numberOfLimits() {
+        return limitsOfRequests.length;
+    }
+
+    int limitOfRequests(int limit) {
+        return limitsOfRequests[limit];
+    }
+
+    long limitInNanos(int limit) {
+        return limitsInNanos[limit];
+    }
+
+    long emissionIntervalInNanos(int limit) {
+        return emissionIntervalsInNanos[limit];
+    }
+
+    long longestLimitInNanos() {
+        long longest = 0;
+        for (long limitInNanos : limitsInNanos) {
+            longest = Math.max(longest, limitInNanos);
+        }
+        return longest;
+    }
+
+
+    private enum KeyType {
+        IP, PRINCIPAL, GLOBAL, HEADER;
+
+        static KeyType of(String key) {
+            if (key == null || key.isEmpty() || key.equals(KEY_IP)) {
+                return IP;
+            }
+            if (key.equals(KEY_PRINCIPAL)) {
+                return PRINCIPAL;
+            }
+            if (key.equals(KEY_GLOBAL)) {
+                return GLOBAL;
+            }
+            if (key.startsWith(KEY_HEADER_PREFIX) && key.length() > KEY_HEADER_PREFIX.length()) {
+                return HEADER;
+            }
+
+            throw new IllegalArgumentException("unknown key of rate limit policy: " + key);
+        }
+    }
+}
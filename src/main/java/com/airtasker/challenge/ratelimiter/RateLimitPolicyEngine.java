@@ -0,0 +1,356 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.MonotonicClock;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates the {@link RateLimitPolicy policies} that match a request. Every policy keeps the state of its keys in its
+ * own {@link RateLimitStateStore}, so the key of a request is used as it is and not combined with the policy into a
+ * new String.
+ * <p>
+ * The limits of a policy are checked with the generic cell rate algorithm (see {@link GcraRateLimitStrategy}), and
+ * the theoretical arrival times of all limits of a key are kept in one state. They are checked and updated together
+ * while holding the lock of the state, so a request that is denied by one limit is not counted by the others. The
+ * policies are evaluated one after the other: a request that is denied by a policy was counted by the policies
+ * evaluated before.
+ * <p>
+ * The policies can be {@link #updatePolicies replaced} at runtime. A policy with the name of a current policy keeps
+ * the state of its keys, which is migrated to the new limits by the next request of a key.
+ */
+public class RateLimitPolicyEngine {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final RateLimitResult NOT_LIMITED = new RateLimitResult(true, Integer.MAX_VALUE);
+    private static final long[] NO_LIMITS = new long[0];
+
+    private final MonotonicClock clock;
+    private final int maxTrackedKeys;
+    private volatile ActivePolicy[] activePolicies;
+
+
+    public RateLimitPolicyEngine(MonotonicClock clock, List<RateLimitPolicy> policies, int maxTrackedKeys) {
+        this.clock = clock;
+        this.maxTrackedKeys = maxTrackedKeys;
+        this.activePolicies = activate(policies, new ActivePolicy[0]);
+    }
+
+
+    /**
+     * @return the result of the first policy that denies the request, otherwise the result with the fewest remaining
+     * requests. A request that matches no policy is allowed.
+     */
+    public RateLimitResult checkRateLimit(HttpServletRequest request) {
+        return checkRateLimit(request, ServletRateLimitRequestAdapter.INSTANCE);
+    }
+
+    /**
+     * @see #checkRateLimit(HttpServletRequest)
+     */
+    public <R> RateLimitResult checkRateLimit(R request, RateLimitRequestAdapter<R> adapter) {
+        return checkRateLimit(request, adapter, 1);
+    }
+
+    /**
+     * Checks a request that counts as {@code cost} requests against every limit of the matching policies, see
+     * {@link RateLimitStrategy#checkRateLimit(String, int)}.
+     */
+    public <R> RateLimitResult checkRateLimit(R request, RateLimitRequestAdapter<R> adapter, int cost) {
+        return checkRateLimit(request, adapter, cost, null);
+    }
+
+    /**
+     * @param path the {@link RateLimitRequestAdapter#path path} of the request, or {@code null} to resolve it on the
+     *             first policy with a path pattern. It is resolved once and passed to every policy.
+     */
+    public <R> RateLimitResult checkRateLimit(R request, RateLimitRequestAdapter<R> adapter, int cost, String path) {
+        RateLimitResult result = NOT_LIMITED;
+        long currentTime = 0;
+        boolean timeIsRead = false;
+
+        for (ActivePolicy activePolicy : activePolicies) {
+            if (path == null && activePolicy.policy.hasPathPattern()) {
+                path = adapter.path(request);
+            }
+            if (!activePolicy.policy.matches(request, adapter, path)) {
+                continue;
+            }
+
+            String key = activePolicy.policy.keyOf(request, adapter);
+
+            if (key == null) {
+                continue;
+            }
+
+            if (!timeIsRead) {
+                currentTime = clock.nanoTime();
+                timeIsRead = true;
+            }
+
+            RateLimitResult policyResult = activePolicy.checkRateLimit(key, cost, currentTime);
+
+            if (!policyResult.isRequestAllowed()) {
+                return policyResult;
+            }
+            if (policyResult.getRemainingAllowedAmountOfRequests() < result.getRemainingAllowedAmountOfRequests()) {
+                result = policyResult;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Replaces all policies at once, a request is either checked against the old or against the new policies. The
+     * keys of a policy that has the same name as a current one are not reset: the limits are matched by their
+     * position, and a theoretical arrival time is kept as it is, so the requests made before count with the emission
+     * interval they were made with. Policies that are no longer configured drop their state.
+     */
+    public synchronized void updatePolicies(List<RateLimitPolicy> policies) {
+        activePolicies = activate(policies, activePolicies);
+    }
+
+    private ActivePolicy[] activate(List<RateLimitPolicy> policies, ActivePolicy[] currentPolicies) {
+        ActivePolicy[] newPolicies = new ActivePolicy[policies.size()];
+        Set<String> names = new HashSet<>();
+
+        for (int i = 0; i < policies.size(); i++) {
+            RateLimitPolicy policy = policies.get(i);
+
+            if (!names.add(policy.getName())) {
+                throw new IllegalArgumentException("duplicate rate limit policy: " + policy.getName());
+            }
+
+            KeyStates keyStates = null;
+            for (ActivePolicy currentPolicy : currentPolicies) {
+                if (currentPolicy.policy.getName().equals(policy.getName())) {
+                    keyStates = currentPolicy.keyStates;
+                }
+            }
+
+            newPolicies[i] = new ActivePolicy(policy, keyStates != null ? keyStates
+                    : new KeyStates(policy.longestLimitInNanos(), maxTrackedKeys));
+        }
+
+        return newPolicies;
+    }
+
+    public boolean hasPolicies() {
+        return activePolicies.length > 0;
+    }
+
+    /**
+     * @return whether a policy matches the path of the requests, which is then resolved for every request
+     */
+    public boolean hasPoliciesMatchingPaths() {
+        for (ActivePolicy activePolicy : activePolicies) {
+            if (activePolicy.policy.hasPathPattern()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether a policy is limited by the principal, which a non-blocking framework has to resolve before the
+     * policies are checked
+     */
+    public boolean hasPoliciesLimitedByPrincipal() {
+        for (ActivePolicy activePolicy : activePolicies) {
+            if (activePolicy.policy.isLimitedByPrincipal()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Scheduled(initialDelayString = "${rate.limit.expiry.interval.millis}", fixedDelayString = "${rate.limit.expiry.interval.millis}")
+    public void expireIdleStates() {
+        long currentTime = clock.nanoTime();
+
+        for (ActivePolicy activePolicy : activePolicies) {
+            activePolicy.keyStates.keyToStateStore.expireAllIdleStates(currentTime);
+        }
+    }
+
+    int numberOfTrackedKeys(String policyName) {
+        for (ActivePolicy activePolicy : activePolicies) {
+            if (activePolicy.policy.getName().equals(policyName)) {
+                return activePolicy.keyStates.keyToStateStore.size();
+            }
+        }
+        throw new IllegalArgumentException("unknown rate limit policy: " + policyName);
+    }
+
+
+    /**
+     * A policy together with the state of its keys, which outlives the policy if it is replaced by one with the same
+     * name.
+     */
+    private static final class ActivePolicy {
+
+        private final RateLimitPolicy policy;
+        private final KeyStates keyStates;
+        // per limit, the shared results of the requests for which it has the fewest remaining requests
+        private final RateLimitResult[][] allowedResults;
+
+        ActivePolicy(RateLimitPolicy policy, KeyStates keyStates) {
+            this.policy = policy;
+            this.keyStates = keyStates;
+            this.allowedResults = new RateLimitResult[policy.numberOfLimits()][];
+
+            for (int limit = 0; limit < policy.numberOfLimits(); limit++) {
+                int limitOfRequests = policy.limitOfRequests(limit);
+                allowedResults[limit] = new RateLimitResult[limitOfRequests];
+
+                for (int remaining = 0; remaining < limitOfRequests; remaining++) {
+                    allowedResults[limit][remaining] = new RateLimitResult(true, 0, remaining, limitOfRequests);
+                }
+            }
+        }
+
+        RateLimitResult checkRateLimit(String key, int cost, long currentTime) {
+            RateLimitStateStore<KeyState> keyToStateStore = keyStates.keyToStateStore;
+
+            keyToStateStore.expireIdleStates(currentTime);
+
+            while (true) {
+                KeyState state = keyToStateStore.getOrCreate(key, currentTime);
+
+                if (state == null) {
+                    // not tracked because the store is full, checked against the state that all untracked keys share
+                    state = keyStates.untrackedState;
+                }
+
+                state.lock();
+                try {
+                    if (state != keyStates.untrackedState && keyToStateStore.get(key) != state) {
+                        // removed as idle or evicted in the meantime
+                        continue;
+                    }
+
+                    if (state.theoreticalArrivalTimes.length != policy.numberOfLimits()) {
+                        state.theoreticalArrivalTimes = migrate(state.theoreticalArrivalTimes);
+                    }
+
+                    return checkLimits(state.theoreticalArrivalTimes, cost, currentTime);
+                } finally {
+                    state.unlock();
+                }
+            }
+        }
+
+        /**
+         * Sizes the theoretical arrival times of a new key, or of a key that was tracked with a different number of
+         * limits, to the limits of the policy. New limits start with {@code Long.MIN_VALUE}.
+         */
+        private long[] migrate(long[] theoreticalArrivalTimes) {
+            long[] migrated = Arrays.copyOf(theoreticalArrivalTimes, policy.numberOfLimits());
+
+            if (theoreticalArrivalTimes.length < migrated.length) {
+                Arrays.fill(migrated, theoreticalArrivalTimes.length, migrated.length, Long.MIN_VALUE);
+            }
+            return migrated;
+        }
+
+        /**
+         * @param theoreticalArrivalTimes the times of the limits, which are updated if the request is allowed
+         */
+        private RateLimitResult checkLimits(long[] theoreticalArrivalTimes, int cost, long currentTime) {
+            long retryAfter = 0;
+            int remaining = Integer.MAX_VALUE;
+            // the limit that denies the request the longest, or else that has the fewest remaining requests
+            int decidingLimit = 0;
+
+            for (int limit = 0; limit < policy.numberOfLimits(); limit++) {
+                long tat = limit < theoreticalArrivalTimes.length ? theoreticalArrivalTimes[limit] : Long.MIN_VALUE;
+                long newTat = Math.max(tat, currentTime) + cost * policy.emissionIntervalInNanos(limit);
+                long allowedAt = newTat - policy.limitInNanos(limit);
+                long retryAfterOfLimit = 0;
+
+                if (cost > policy.limitOfRequests(limit)) {
+                    // denied however long it waits, told to retry after the time window of the limit
+                    retryAfterOfLimit = policy.limitInNanos(limit);
+                } else if (currentTime < allowedAt) {
+                    retryAfterOfLimit = allowedAt - currentTime;
+                } else if (retryAfter == 0) {
+                    int remainingOfLimit = (int) ((currentTime - allowedAt) / policy.emissionIntervalInNanos(limit));
+
+                    if (remainingOfLimit < remaining) {
+                        remaining = remainingOfLimit;
+                        decidingLimit = limit;
+                    }
+                }
+
+                if (retryAfterOfLimit > retryAfter) {
+                    retryAfter = retryAfterOfLimit;
+                    decidingLimit = limit;
+                }
+            }
+
+            if (retryAfter > 0) {
+                return new RateLimitResult(false, (retryAfter + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND, 0,
+                        policy.limitOfRequests(decidingLimit));
+            }
+
+            for (int limit = 0; limit < theoreticalArrivalTimes.length; limit++) {
+                theoreticalArrivalTimes[limit] = Math.max(theoreticalArrivalTimes[limit], currentTime)
+                        + cost * policy.emissionIntervalInNanos(limit);
+            }
+
+            RateLimitResult[] allowedResultsOfLimit = allowedResults[decidingLimit];
+            return allowedResultsOfLimit[Math.min(remaining, allowedResultsOfLimit.length - 1)];
+        }
+    }
+
+    /**
+     * The keys of a policy. Their state does not depend on the limits of the policy, so it is kept across updates.
+     */
+    private static final class KeyStates {
+
+        private final RateLimitStateStore<KeyState> keyToStateStore;
+        private final KeyState untrackedState = new KeyState();
+
+        KeyStates(long idleTimeoutInNanos, int maxTrackedKeys) {
+            this.keyToStateStore = new RateLimitStateStore<>(idleTimeoutInNanos, currentTime -> new KeyState(),
+                    this::removeIfIdle, maxTrackedKeys);
+        }
+
+        /**
+         * A key is idle once the theoretical arrival times of all its limits have passed.
+         */
+        private long removeIfIdle(String key, KeyState state, long currentTime) {
+
+            state.lock();
+            try {
+                long idleTime = Long.MIN_VALUE;
+                for (long tat : state.theoreticalArrivalTimes) {
+                    idleTime = Math.max(idleTime, tat);
+                }
+
+                if (idleTime >= currentTime) {
+                    return idleTime;
+                }
+
+                keyToStateStore.remove(key, state);
+                return RateLimitStateStore.REMOVED;
+            } finally {
+                state.unlock();
+            }
+        }
+    }
+
+    private static final class KeyState extends StateLock {
+
+        /**
+         * The theoretical arrival times of the limits, sized to the limits of the policy by the first request.
+         */
+        private long[] theoreticalArrivalTimes = NO_LIMITS;
+    }
+}
@@ -0,0 +1,41 @@
+package com.airtasker.challenge.ratelimiter;
+
+/**
+ * Reads the attributes of a request of a web framework that the rate limit is checked with, so the
+ * {@link RateLimiter} does not depend on the servlet API. An adapter is stateless and shared by all requests, so no
+ * wrapper is allocated per request.
+ *
+ * @param <R> the request, e.g. {@code HttpServletRequest} or {@code ServerWebExchange}
+ */
+public interface RateLimitRequestAdapter<R> {
+
+    /**
+     * @return the IP address of the client, the key of the {@link RateLimitStrategy}
+     */
+    String remoteAddress(R request);
+
+    String method(R request);
+
+    /**
+     * @return the path of the request within the application as the framework routes it: decoded, without path
+     * parameters (e.g. {@code ;jsessionid=}) and {@link RequestPathPattern#normalize normalized}. The raw URI must not
+     * be used, as e.g. {@code /%61pi/reports} reaches the same handler as {@code /api/reports}. Resolving it is the
+     * most expensive attribute, so it is resolved once per request and passed to every route and policy.
+     */
+    String path(R request);
+
+    /**
+     * @return the first value of the header, or {@code null}
+     */
+    String header(R request, String name);
+
+    /**
+     * @return the name of the authenticated principal, or {@code null}
+     */
+    String principal(R request);
+
+    /**
+     * @return the attribute of the request, e.g. set by a filter before the rate limit is checked, or {@code null}
+     */
+    Object attribute(R request, String name);
+}
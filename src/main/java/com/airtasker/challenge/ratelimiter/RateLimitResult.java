@@ -3,22 +3,33 @@ package com.airtasker.challenge.ratelimiter;
 
 public class RateLimitResult {
 
+    /**
+     * The limit of a result that does not know the limit it was checked against.
+     */
+    public static final int UNKNOWN_LIMIT = 0;
+
     private final boolean requestAllowed;
     private final int remainingAllowedAmountOfRequests;
     private final long nextAllowedRequestTimeInSeconds;
+    private final int limitOfRequests;
 
-    RateLimitResult(boolean requestAllowed, long nextAllowedRequestTimeInSeconds, int remainingAllowedAmountOfRequests) {
+    RateLimitResult(boolean requestAllowed, long nextAllowedRequestTimeInSeconds, int remainingAllowedAmountOfRequests,
+                    int limitOfRequests) {
 
         this.requestAllowed = requestAllowed;
         this.nextAllowedRequestTimeInSeconds = nextAllowedRequestTimeInSeconds;
         this.remainingAllowedAmountOfRequests = remainingAllowedAmountOfRequests;
+        this.limitOfRequests = limitOfRequests;
+    }
+
+    RateLimitResult(boolean requestAllowed, long nextAllowedRequestTimeInSeconds, int remainingAllowedAmountOfRequests) {
+
+        this(requestAllowed, nextAllowedRequestTimeInSeconds, remainingAllowedAmountOfRequests, UNKNOWN_LIMIT);
     }
 
     RateLimitResult(boolean requestAllowed, int remainingAllowedAmountOfRequests) {
 
-        this.requestAllowed = requestAllowed;
-        this.nextAllowedRequestTimeInSeconds = 0;
-        this.remainingAllowedAmountOfRequests = remainingAllowedAmountOfRequests;
+        this(requestAllowed, 0, remainingAllowedAmountOfRequests, UNKNOWN_LIMIT);
     }
 
     public boolean isRequestAllowed() {
@@ -33,4 +44,11 @@ public class RateLimitResult {
         return remainingAllowedAmountOfRequests;
     }
 
+    /**
+     * @return the number of requests of the limit that decided the result, or {@link #UNKNOWN_LIMIT}
+     */
+    public int getLimitOfRequests() {
+        return limitOfRequests;
+    }
+
 }
@@ -0,0 +1,284 @@
+package com.airtasker.challenge.ratelimiter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Binary snapshot of the state of a {@link SnapshotableRateLimitStrategy} in a memory mapped file. The records are
+ * written into and read from the mapped memory directly, without a stream or object serialization.
+ * <p>
+ * Format: a header (magic number, version, format of the strategy, wall clock time of the snapshot in millis, number
+ * of records), then per IP the length and the UTF-8 bytes of the IP, the time its state becomes idle and a number of
+ * times, e.g. the request times. The monotonic clock starts anew with every process, so all times are stored relative
+ * to the time of the snapshot and are moved by the wall clock time that passed until the restore.
+ * <p>
+ * A snapshot is written to a temporary file, which replaces the previous snapshot once it is complete.
+ */
+public final class RateLimitSnapshot {
+
+    static final int MAGIC = 0x524c5331;
+    static final int VERSION = 1;
+    static final int INITIAL_MAPPING_SIZE = 1 << 20;
+
+    private static final int MAX_KEY_LENGTH = 0xffff;
+
+
+    private RateLimitSnapshot() {
+    }
+
+    /**
+     * @return the number of written records
+     */
+    public static long write(Path file, SnapshotableRateLimitStrategy strategy, long currentTime) throws IOException {
+        return write(file, strategy, currentTime, System.currentTimeMillis());
+    }
+
+    static long write(Path file, SnapshotableRateLimitStrategy strategy, long currentTime, long currentTimeMillis)
+            throws IOException {
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        long numberOfRecords;
+
+        try (FileChannel channel = FileChannel.open(temporaryFile, CREATE, TRUNCATE_EXISTING, READ, WRITE)) {
+            Writer writer = new Writer(channel, currentTime, strategy.snapshotFormat(), currentTimeMillis);
+
+            try {
+                strategy.writeSnapshot(writer);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            numberOfRecords = writer.finish();
+        }
+
+        Files.move(temporaryFile, file, REPLACE_EXISTING, ATOMIC_MOVE);
+        return numberOfRecords;
+    }
+
+    /**
+     * @param discardIdle if {@code true}, the IPs whose state is idle by now are not restored
+     * @return the number of restored records
+     */
+    public static long restore(Path file, SnapshotableRateLimitStrategy strategy, long currentTime,
+                               boolean discardIdle) throws IOException {
+        return restore(file, strategy, currentTime, System.currentTimeMillis(), discardIdle);
+    }
+
+    static long restore(Path file, SnapshotableRateLimitStrategy strategy, long currentTime, long currentTimeMillis,
+                        boolean discardIdle) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("rate limit snapshot is too large: " + file);
+            }
+
+            Reader reader = new Reader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), currentTime,
+                    currentTimeMillis, discardIdle);
+
+            try {
+                reader.readHeader(strategy.snapshotFormat());
+                strategy.restoreSnapshot(reader);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("corrupt rate limit snapshot: " + file, e);
+            }
+
+            return reader.numberOfRestoredRecords;
+        }
+    }
+
+
+    /**
+     * Appends records to the mapped file. When the mapped region is full, the following region of twice the size is
+     * mapped.
+     */
+    public static final class Writer {
+
+        private final FileChannel channel;
+        private final long snapshotTime;
+        private final MappedByteBuffer header;
+        private final int positionOfNumberOfRecords;
+        private MappedByteBuffer buffer;
+        private long offsetOfBuffer;
+        private long numberOfRecords;
+
+        private Writer(FileChannel channel, long snapshotTime, String format, long currentTimeMillis) throws IOException {
+            this.channel = channel;
+            this.snapshotTime = snapshotTime;
+            this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, INITIAL_MAPPING_SIZE);
+            this.buffer = header;
+
+            byte[] formatBytes = format.getBytes(StandardCharsets.UTF_8);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putShort((short) formatBytes.length);
+            header.put(formatBytes);
+            header.putLong(currentTimeMillis);
+            this.positionOfNumberOfRecords = header.position();
+            header.putLong(0);
+        }
+
+        /**
+         * @param idleTime time of the monotonic clock at which the state of the IP becomes idle
+         * @param times    times of the monotonic clock, the first {@code numberOfTimes} are written
+         */
+        public void write(String userIP, long idleTime, long[] times, int numberOfTimes) {
+            byte[] key = userIP.getBytes(StandardCharsets.UTF_8);
+
+            if (key.length > MAX_KEY_LENGTH) {
+                // not an IP address, such a client starts with a new limit
+                return;
+            }
+
+            ensureRemaining(Short.BYTES + key.length + Long.BYTES + Integer.BYTES + numberOfTimes * Long.BYTES);
+
+            buffer.putShort((short) key.length);
+            buffer.put(key);
+            buffer.putLong(idleTime - snapshotTime);
+            buffer.putInt(numberOfTimes);
+            for (int i = 0; i < numberOfTimes; i++) {
+                buffer.putLong(times[i] - snapshotTime);
+            }
+
+            numberOfRecords++;
+        }
+
+        private void ensureRemaining(int length) {
+            if (buffer.remaining() >= length) {
+                return;
+            }
+
+            long position = offsetOfBuffer + buffer.position();
+            long size = Math.min(Math.max(buffer.capacity() * 2L, length), Integer.MAX_VALUE);
+
+            try {
+                buffer.force();
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+                offsetOfBuffer = position;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private long finish() throws IOException {
+            header.putLong(positionOfNumberOfRecords, numberOfRecords);
+            header.force();
+            buffer.force();
+            // the mapped regions are larger than the records
+            channel.truncate(offsetOfBuffer + buffer.position());
+            return numberOfRecords;
+        }
+    }
+
+
+    /**
+     * Iterates over the records of the mapped file. The times are converted to the monotonic clock of this process.
+     */
+    public static final class Reader {
+
+        private final MappedByteBuffer buffer;
+        private final long currentTime;
+        private final long currentTimeMillis;
+        private final boolean discardIdle;
+        private long timeOffset;
+        private long remainingRecords;
+        private long numberOfRestoredRecords;
+
+        private String userIP;
+        private long idleTime;
+        private int numberOfTimes;
+        private int positionOfTimes;
+
+        private Reader(MappedByteBuffer buffer, long currentTime, long currentTimeMillis, boolean discardIdle) {
+            this.buffer = buffer;
+            this.currentTime = currentTime;
+            this.currentTimeMillis = currentTimeMillis;
+            this.discardIdle = discardIdle;
+        }
+
+        private void readHeader(String expectedFormat) throws IOException {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("not a rate limit snapshot");
+            }
+
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported version of rate limit snapshot: " + version);
+            }
+
+            String format = readString(buffer.getShort() & MAX_KEY_LENGTH);
+            if (!format.equals(expectedFormat)) {
+                throw new IOException("rate limit snapshot of " + format + " cannot be restored by " + expectedFormat);
+            }
+
+            long millisSinceSnapshot = Math.max(currentTimeMillis - buffer.getLong(), 0);
+            this.timeOffset = currentTime - TimeUnit.MILLISECONDS.toNanos(millisSinceSnapshot);
+            this.remainingRecords = buffer.getLong();
+        }
+
+        /**
+         * Moves to the next record.
+         *
+         * @return {@code false} if there are no more records
+         */
+        public boolean next() {
+            while (remainingRecords > 0) {
+                remainingRecords--;
+
+                userIP = readString(buffer.getShort() & MAX_KEY_LENGTH);
+                idleTime = timeOffset + buffer.getLong();
+                numberOfTimes = buffer.getInt();
+                positionOfTimes = buffer.position();
+
+                if (numberOfTimes < 0) {
+                    throw new IllegalArgumentException("negative number of times: " + numberOfTimes);
+                }
+                buffer.position(positionOfTimes + numberOfTimes * Long.BYTES);
+
+                if (!discardIdle || idleTime >= currentTime) {
+                    numberOfRestoredRecords++;
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private String readString(int length) {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        public String getUserIP() {
+            return userIP;
+        }
+
+        public long getIdleTime() {
+            return idleTime;
+        }
+
+        public int getNumberOfTimes() {
+            return numberOfTimes;
+        }
+
+        public long getTime(int index) {
+            if (index < 0 || index >= numberOfTimes) {
+                throw new IndexOutOfBoundsException("time " + index + " of " + numberOfTimes);
+            }
+            return timeOffset + buffer.getLong(positionOfTimes + index * Long.BYTES);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.MonotonicClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restores the state of the strategy from {@code rate.limit.snapshot.file} on startup, and writes a
+ * {@link RateLimitSnapshot} every {@code rate.limit.snapshot.interval.millis} and on shutdown. Strategies that do not
+ * support snapshots are left alone.
+ */
+@Component
+@ConditionalOnProperty(name = "rate.limit.snapshot.enabled", havingValue = "true")
+public class RateLimitSnapshotter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RateLimitSnapshotter.class);
+
+    private final SnapshotableRateLimitStrategy strategy;
+    private final MonotonicClock clock;
+    private final Path file;
+    private final boolean discardIdle;
+
+
+    @Autowired
+    public RateLimitSnapshotter(RateLimitStrategy strategy, MonotonicClock clock,
+                                @Value("${rate.limit.snapshot.file}") String file,
+                                @Value("${rate.limit.snapshot.discard.idle}") boolean discardIdle) {
+        this.strategy = strategy instanceof SnapshotableRateLimitStrategy ? (SnapshotableRateLimitStrategy) strategy : null;
+        this.clock = clock;
+        this.file = Paths.get(file).toAbsolutePath();
+        this.discardIdle = discardIdle;
+
+        if (this.strategy == null) {
+            LOGGER.warn("{} does not support snapshots, the rate limits are not persisted",
+                    strategy.getClass().getSimpleName());
+        }
+    }
+
+
+    @PostConstruct
+    public void restore() {
+        if (strategy == null || !Files.exists(file)) {
+            return;
+        }
+
+        long startTime = System.nanoTime();
+
+        try {
+            long numberOfRecords = RateLimitSnapshot.restore(file, strategy, clock.nanoTime(), discardIdle);
+            LOGGER.info("Restored the rate limits of {} IPs from {} in {} ms", numberOfRecords, file,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        } catch (IOException e) {
+            // the service starts with new limits rather than not at all
+            LOGGER.warn("Could not restore the rate limits from {}", file, e);
+        }
+    }
+
+    @Scheduled(initialDelayString = "${rate.limit.snapshot.interval.millis}", fixedDelayString = "${rate.limit.snapshot.interval.millis}")
+    public synchronized void snapshot() {
+        if (strategy == null) {
+            return;
+        }
+
+        long startTime = System.nanoTime();
+
+        try {
+            long numberOfRecords = RateLimitSnapshot.write(file, strategy, clock.nanoTime());
+            LOGGER.debug("Wrote the rate limits of {} IPs to {} in {} ms", numberOfRecords, file,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        } catch (IOException e) {
+            LOGGER.warn("Could not write the rate limits to {}", file, e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        snapshot();
+    }
+}
@@ -0,0 +1,279 @@
+package com.airtasker.challenge.ratelimiter;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.LongFunction;
+
+import static com.airtasker.challenge.ratelimiter.RateLimitStateStore.EVICTION_SAMPLES;
+import static com.airtasker.challenge.ratelimiter.RateLimitStateStore.NUMBER_OF_BUCKETS;
+import static com.airtasker.challenge.ratelimiter.RateLimitStateStore.REMOVED;
+import static com.airtasker.challenge.ratelimiter.RateLimitStateStore.UNBOUNDED;
+
+/**
+ * One shard of a {@link RateLimitStateStore}: the keys of the shard, their timing wheel, the lock of the wheel and
+ * the frequency sketch. Shards share nothing that is written per request, except the striped counters of the
+ * {@link RateLimitStateStatistics}.
+ * <p>
+ * The fields that are written while advancing the wheel are padded on both sides (by the super classes and the
+ * padding fields below), so shards that are allocated next to each other do not invalidate each other's cache lines.
+ */
+final class RateLimitStateShard<S> extends ShardWheelFields {
+
+    private static final long MIN_TICK_IN_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final ConcurrentHashMap<String, S> keyToStateMap;
+    private final LongFunction<S> stateFactory;
+    private final RateLimitStateStore.IdleStateRemover<S> idleStateRemover;
+    private final long idleTimeoutInNanos;
+    private final long tickInNanos;
+    private final Queue<String>[] buckets;
+    private final int bucketMask;
+    private final int maximumSize;
+    private final FrequencySketch frequencySketch;
+    private final ReentrantLock wheelLock;
+    private final RateLimitStateStatistics statistics;
+
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+
+
+    @SuppressWarnings("unchecked")
+    RateLimitStateShard(long idleTimeoutInNanos, LongFunction<S> stateFactory,
+                        RateLimitStateStore.IdleStateRemover<S> idleStateRemover, int maximumSize,
+                        RateLimitStateStatistics statistics) {
+        this.keyToStateMap = new ConcurrentHashMap<>();
+        this.stateFactory = stateFactory;
+        this.idleStateRemover = idleStateRemover;
+        this.idleTimeoutInNanos = idleTimeoutInNanos;
+        this.tickInNanos = Math.max(idleTimeoutInNanos / (NUMBER_OF_BUCKETS / 2), MIN_TICK_IN_NANOS);
+        this.buckets = new Queue[NUMBER_OF_BUCKETS];
+        this.bucketMask = NUMBER_OF_BUCKETS - 1;
+        this.maximumSize = maximumSize;
+        this.frequencySketch = maximumSize == UNBOUNDED ? null : new FrequencySketch(maximumSize);
+        this.wheelLock = new ReentrantLock();
+        this.statistics = statistics;
+        this.currentTick = UNINITIALIZED;
+        this.nextExpiryTime = Long.MIN_VALUE;
+        this.firstOccupiedTick = Long.MIN_VALUE;
+
+        for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+            buckets[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+
+    S get(String key) {
+        return keyToStateMap.get(key);
+    }
+
+    S getOrCreate(String key, long currentTime) {
+        if (frequencySketch != null) {
+            frequencySketch.increment(key);
+        }
+
+        S state = keyToStateMap.get(key);
+
+        if (state == null) {
+            state = maximumSize == UNBOUNDED ? create(key, currentTime) : createIfAdmitted(key, currentTime);
+        }
+
+        return state;
+    }
+
+    private S create(String key, long currentTime) {
+        return keyToStateMap.computeIfAbsent(key, newKey -> {
+            schedule(newKey, currentTime + idleTimeoutInNanos);
+            return stateFactory.apply(currentTime);
+        });
+    }
+
+    /**
+     * New keys of a bounded shard are only added while holding the wheel lock, so the maximum size is never exceeded.
+     */
+    private S createIfAdmitted(String key, long currentTime) {
+        wheelLock.lock();
+        try {
+            S state = keyToStateMap.get(key);
+
+            if (state == null) {
+                if (keyToStateMap.size() >= maximumSize && !evictInFavorOf(key)) {
+                    statistics.recordNotAdmitted();
+                    return null;
+                }
+
+                state = create(key, currentTime);
+            }
+
+            return state;
+        } finally {
+            wheelLock.unlock();
+        }
+    }
+
+    /**
+     * Compares the candidate with the first few keys of the wheel, which are the keys that will be idle soonest,
+     * and evicts the least frequently requested one if the candidate was requested more often.
+     */
+    private boolean evictInFavorOf(String candidate) {
+        long firstTick = Math.max(currentTick == UNINITIALIZED ? 0 : currentTick, firstOccupiedTick);
+        String victim = null;
+        Queue<String> bucketOfVictim = null;
+        int frequencyOfVictim = Integer.MAX_VALUE;
+        int samples = 0;
+
+        for (int i = 0; i < NUMBER_OF_BUCKETS && samples < EVICTION_SAMPLES; i++) {
+            Queue<String> bucket = buckets[(int) ((firstTick + i) & bucketMask)];
+
+            if (bucket.isEmpty()) {
+                if (samples == 0) {
+                    // keys idle soonest are usually a whole timeout ahead, skip the empty buckets next time
+                    firstOccupiedTick = firstTick + i + 1;
+                }
+                continue;
+            }
+
+            Iterator<String> keys = bucket.iterator();
+
+            while (keys.hasNext() && samples < EVICTION_SAMPLES) {
+                String key = keys.next();
+                int frequency = frequencySketch.frequency(key);
+                samples++;
+
+                if (frequency < frequencyOfVictim) {
+                    victim = key;
+                    bucketOfVictim = bucket;
+                    frequencyOfVictim = frequency;
+                }
+            }
+        }
+
+        if (victim == null || frequencySketch.frequency(candidate) <= frequencyOfVictim) {
+            return false;
+        }
+
+        S state = keyToStateMap.get(victim);
+
+        if (state != null && idleStateRemover.removeIfIdle(victim, state, Long.MAX_VALUE) != REMOVED) {
+            // updated by a request in the meantime
+            return false;
+        }
+
+        bucketOfVictim.remove(victim);
+        statistics.recordEviction();
+        return true;
+    }
+
+    boolean remove(String key, S state) {
+        return keyToStateMap.remove(key, state);
+    }
+
+    void forEach(BiConsumer<String, S> action) {
+        keyToStateMap.forEach(action);
+    }
+
+    int size() {
+        return keyToStateMap.size();
+    }
+
+    long nextExpiryTime() {
+        return nextExpiryTime;
+    }
+
+    /**
+     * Checks at most the given number of due keys, unless another thread is advancing the wheel.
+     *
+     * @return the number of checked keys
+     */
+    int expireIdleStates(long currentTime, int maxExpiryChecks) {
+
+        if (currentTime < nextExpiryTime || !wheelLock.tryLock()) {
+            return 0;
+        }
+
+        try {
+            long targetTick = Math.floorDiv(currentTime, tickInNanos);
+
+            if (currentTick == UNINITIALIZED) {
+                currentTick = targetTick;
+            } else if (targetTick - currentTick >= NUMBER_OF_BUCKETS) {
+                // every bucket is due, so each of them has to be visited only once
+                currentTick = targetTick - NUMBER_OF_BUCKETS + 1;
+            }
+
+            int remainingExpiryChecks = maxExpiryChecks;
+
+            while (currentTick <= targetTick) {
+                Queue<String> bucket = buckets[(int) (currentTick & bucketMask)];
+
+                for (String key = bucket.poll(); key != null; key = bucket.poll()) {
+                    expireIfIdle(key, currentTime);
+
+                    if (--remainingExpiryChecks == 0) {
+                        return maxExpiryChecks;
+                    }
+                }
+
+                currentTick++;
+            }
+
+            nextExpiryTime = currentTick * tickInNanos;
+            return maxExpiryChecks - remainingExpiryChecks;
+        } finally {
+            wheelLock.unlock();
+        }
+    }
+
+    private void expireIfIdle(String key, long currentTime) {
+        S state = keyToStateMap.get(key);
+
+        if (state == null) {
+            return;
+        }
+
+        long idleTime = idleStateRemover.removeIfIdle(key, state, currentTime);
+
+        if (idleTime == REMOVED) {
+            statistics.recordExpired(1);
+        } else {
+            schedule(key, idleTime);
+        }
+    }
+
+    private void schedule(String key, long idleTime) {
+        long tick = Math.floorDiv(idleTime, tickInNanos);
+        long tickOfWheel = currentTick;
+
+        if (tickOfWheel != UNINITIALIZED) {
+            // never into the bucket that is currently expired, keys further away are checked again after one round
+            tick = Math.min(Math.max(tick, tickOfWheel + 1), tickOfWheel + NUMBER_OF_BUCKETS - 1);
+        }
+
+        if (maximumSize != UNBOUNDED && tick < firstOccupiedTick) {
+            firstOccupiedTick = tick;
+        }
+
+        buckets[(int) (tick & bucketMask)].offer(key);
+    }
+}
+
+abstract class ShardLeftPadding {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+}
+
+/**
+ * Fields of a shard that are written while advancing the wheel. Super class fields are laid out first, so they are
+ * placed between the padding fields.
+ */
+abstract class ShardWheelFields extends ShardLeftPadding {
+
+    static final long UNINITIALIZED = Long.MIN_VALUE;
+
+    volatile long currentTick;
+    volatile long nextExpiryTime;
+    // keys of a bounded shard are only scheduled while holding the wheel lock
+    long firstOccupiedTick;
+}
@@ -0,0 +1,66 @@
+package com.airtasker.challenge.ratelimiter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the keys that left a store and of its cleanups. They are striped, so the requests that update them do
+ * not contend, and only summed up when they are read.
+ */
+public final class RateLimitStateStatistics {
+
+    private final LongAdder expiredCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder notAdmittedCount = new LongAdder();
+    private final LongAdder cleanupCount = new LongAdder();
+    private final LongAdder cleanupTimeInNanos = new LongAdder();
+
+
+    void recordExpired(int numberOfKeys) {
+        expiredCount.add(numberOfKeys);
+    }
+
+    void recordEviction() {
+        evictionCount.increment();
+    }
+
+    void recordNotAdmitted() {
+        notAdmittedCount.increment();
+    }
+
+    void recordCleanup(long durationInNanos) {
+        cleanupCount.increment();
+        cleanupTimeInNanos.add(durationInNanos);
+    }
+
+    /**
+     * Number of keys that were removed because they were idle, by the requests or by the cleanups.
+     */
+    public long getExpiredCount() {
+        return expiredCount.sum();
+    }
+
+    /**
+     * Number of keys that were removed before they were idle, to make room for a more frequently requested key.
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Number of requests whose key was not tracked because the store was full.
+     */
+    public long getNotAdmittedCount() {
+        return notAdmittedCount.sum();
+    }
+
+    /**
+     * Number of cleanups of the background task, which check all due keys at once.
+     */
+    public long getCleanupCount() {
+        return cleanupCount.sum();
+    }
+
+    public long getCleanupTimeInNanos() {
+        return cleanupTimeInNanos.sum();
+    }
+}
@@ -0,0 +1,242 @@
+package com.airtasker.challenge.ratelimiter;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiConsumer;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Rate limit state per key, which removes idle keys incrementally instead of sweeping the whole map.
+ * <p>
+ * Every key is kept in a hashed timing wheel at the time its state may become idle. Advancing the wheel only visits
+ * the keys of the buckets that are due, and asks the strategy to remove each of them if it is idle or to tell when
+ * to look again. The wheel is advanced by the requests themselves in small batches and by a background task,
+ * so the number of tracked keys stays proportional to the clients that were active within the idle timeout.
+ * <p>
+ * Optionally the number of keys is capped. When the store is full, a new key is only admitted if it was requested
+ * more often than the least recently active keys, which are found at the front of the wheel (TinyLFU admission).
+ * The one with the lowest frequency is evicted. A key that is not admitted is not tracked, so a flood of distinct
+ * keys cannot push out the clients that send most of the requests. The strategies check the keys that are not tracked
+ * against one state that they all share, so rotating through keys does not bypass the limit while the store is full.
+ * <p>
+ * The keys are split into independent shards by their mixed hash code. Each shard has its own map, wheel, lock and
+ * frequency sketch, and an equal share of the maximum size, so requests of different keys rarely contend.
+ */
+public class RateLimitStateStore<S> {
+
+    public static final long REMOVED = Long.MIN_VALUE;
+    public static final int UNBOUNDED = 0;
+
+    static final int NUMBER_OF_BUCKETS = 512;
+    static final int EXPIRY_CHECKS_PER_REQUEST = 16;
+    static final int EVICTION_SAMPLES = 4;
+    static final int MAX_NUMBER_OF_SHARDS = 64;
+    static final int MIN_KEYS_PER_SHARD = 1024;
+
+    private final RateLimitStateShard<S>[] shards;
+    private final int shardMask;
+    private final RateLimitStateStatistics statistics;
+
+    private volatile long nextExpiryTime;
+
+
+    public RateLimitStateStore(long idleTimeoutInNanos, LongFunction<S> stateFactory, IdleStateRemover<S> idleStateRemover) {
+        this(idleTimeoutInNanos, stateFactory, idleStateRemover, UNBOUNDED);
+    }
+
+    public RateLimitStateStore(long idleTimeoutInNanos, LongFunction<S> stateFactory, IdleStateRemover<S> idleStateRemover,
+                               int maximumSize) {
+        this(idleTimeoutInNanos, stateFactory, idleStateRemover, maximumSize, defaultNumberOfShards(maximumSize));
+    }
+
+    /**
+     * @param idleTimeoutInNanos minimum time a newly created state is kept, usually the rate limit window
+     * @param stateFactory       creates the state of a new key at the given time
+     * @param idleStateRemover   removes the state of a key if it is idle
+     * @param maximumSize        maximum number of keys, or {@link #UNBOUNDED}
+     * @param numberOfShards     a power of two, at most the maximum size
+     */
+    @SuppressWarnings("unchecked")
+    public RateLimitStateStore(long idleTimeoutInNanos, LongFunction<S> stateFactory, IdleStateRemover<S> idleStateRemover,
+                               int maximumSize, int numberOfShards) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("maximum size must not be negative: " + maximumSize);
+        }
+        if (numberOfShards <= 0 || Integer.bitCount(numberOfShards) != 1
+                || (maximumSize != UNBOUNDED && numberOfShards > maximumSize)) {
+            throw new IllegalArgumentException("invalid number of shards: " + numberOfShards);
+        }
+
+        this.shards = new RateLimitStateShard[numberOfShards];
+        this.shardMask = numberOfShards - 1;
+        this.statistics = new RateLimitStateStatistics();
+        this.nextExpiryTime = Long.MIN_VALUE;
+
+        for (int i = 0; i < numberOfShards; i++) {
+            // the remainder of the maximum size is spread over the first shards
+            int maximumSizeOfShard = maximumSize / numberOfShards + (i < maximumSize % numberOfShards ? 1 : 0);
+            shards[i] = new RateLimitStateShard<>(idleTimeoutInNanos, stateFactory, idleStateRemover, maximumSizeOfShard,
+                    statistics);
+        }
+    }
+
+    /**
+     * Four shards per processor keep the chance of two threads working on the same shard low, a bounded store keeps
+     * at least {@value #MIN_KEYS_PER_SHARD} keys per shard so that the admission compares enough keys.
+     */
+    static int defaultNumberOfShards(int maximumSize) {
+        int numberOfShards = Math.min(Integer.highestOneBit(4 * Runtime.getRuntime().availableProcessors() - 1) << 1,
+                MAX_NUMBER_OF_SHARDS);
+
+        while (maximumSize != UNBOUNDED && numberOfShards > 1 && maximumSize / numberOfShards < MIN_KEYS_PER_SHARD) {
+            numberOfShards >>>= 1;
+        }
+
+        return numberOfShards;
+    }
+
+
+    private RateLimitStateShard<S> shardOf(String key) {
+        // murmur3 finalizer, so the shard does not depend on the same bits as the bucket of the map within the shard
+        int hash = key.hashCode();
+        hash = (hash ^ (hash >>> 16)) * 0x85ebca6b;
+        hash = (hash ^ (hash >>> 13)) * 0xc2b2ae35;
+        return shards[(hash ^ (hash >>> 16)) & shardMask];
+    }
+
+    public S get(String key) {
+        return shardOf(key).get(key);
+    }
+
+    /**
+     * @return the state of the key, or {@code null} if the store is full and the key was not admitted
+     */
+    public S getOrCreate(String key, long currentTime) {
+        return shardOf(key).getOrCreate(key, currentTime);
+    }
+
+    /**
+     * Removes the state of the key, if it is still mapped to the given state. The {@link IdleStateRemover} calls
+     * this while it prevents concurrent requests from using the state.
+     */
+    public boolean remove(String key, S state) {
+        return shardOf(key).remove(key, state);
+    }
+
+    /**
+     * Visits every key and its state. Keys that are added or removed concurrently may or may not be visited.
+     */
+    public void forEach(BiConsumer<String, S> action) {
+        for (RateLimitStateShard<S> shard : shards) {
+            shard.forEach(action);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (RateLimitStateShard<S> shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    int numberOfShards() {
+        return shards.length;
+    }
+
+    int sizeOfShard(int shard) {
+        return shards[shard].size();
+    }
+
+    public RateLimitStateStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @see RateLimitStateStatistics#getEvictionCount()
+     */
+    public long getEvictionCount() {
+        return statistics.getEvictionCount();
+    }
+
+    /**
+     * @see RateLimitStateStatistics#getNotAdmittedCount()
+     */
+    public long getNotAdmittedCount() {
+        return statistics.getNotAdmittedCount();
+    }
+
+    /**
+     * Estimates the memory of the keys and their states, assuming compressed references. Reads every key, so it
+     * is meant for the metrics and not for the requests.
+     *
+     * @param sizeOfState estimates the memory of a state in bytes
+     */
+    public long estimateMemoryInBytes(ToLongFunction<S> sizeOfState) {
+        long[] bytes = new long[1];
+
+        for (RateLimitStateShard<S> shard : shards) {
+            bytes[0] += MemoryLayout.sizeOfConcurrentHashMapTable(shard.size());
+            shard.forEach((key, state) -> bytes[0] += MemoryLayout.CONCURRENT_HASH_MAP_NODE
+                    + MemoryLayout.sizeOfString(key) + MemoryLayout.WHEEL_ENTRY + sizeOfState.applyAsLong(state));
+        }
+
+        return bytes[0];
+    }
+
+    /**
+     * Called on every request, checks at most a few due keys and returns immediately when nothing is due.
+     */
+    public void expireIdleStates(long currentTime) {
+        expireIdleStates(currentTime, EXPIRY_CHECKS_PER_REQUEST);
+    }
+
+    /**
+     * Called by the background task, checks all due keys and records the duration of the cleanup.
+     */
+    public void expireAllIdleStates(long currentTime) {
+        long start = System.nanoTime();
+        expireIdleStates(currentTime, Integer.MAX_VALUE);
+        statistics.recordCleanup(System.nanoTime() - start);
+    }
+
+    /**
+     * Checks at most the given number of due keys of all shards. Remaining due keys are checked by the next call.
+     * The shards are visited from a random one, so concurrent calls rarely wait for the same shard.
+     */
+    public void expireIdleStates(long currentTime, int maxExpiryChecks) {
+
+        if (currentTime < nextExpiryTime) {
+            return;
+        }
+
+        int remainingExpiryChecks = maxExpiryChecks;
+        int firstShard = shards.length == 1 ? 0 : ThreadLocalRandom.current().nextInt(shards.length);
+        long nextExpiryTimeOfShards = Long.MAX_VALUE;
+
+        for (int i = 0; i < shards.length; i++) {
+            RateLimitStateShard<S> shard = shards[(firstShard + i) & shardMask];
+            remainingExpiryChecks -= shard.expireIdleStates(currentTime, remainingExpiryChecks);
+
+            if (remainingExpiryChecks == 0) {
+                return;
+            }
+
+            nextExpiryTimeOfShards = Math.min(nextExpiryTimeOfShards, shard.nextExpiryTime());
+        }
+
+        nextExpiryTime = nextExpiryTimeOfShards;
+    }
+
+
+    public interface IdleStateRemover<S> {
+
+        /**
+         * Removes the state with {@link #remove(String, Object)} if it is idle at the given time. To evict a state,
+         * the store passes {@link Long#MAX_VALUE}, at which every state is idle.
+         *
+         * @return {@link #REMOVED} if the state was removed, otherwise the time at which it may become idle
+         */
+        long removeIfIdle(String key, S state, long currentTime);
+    }
+}
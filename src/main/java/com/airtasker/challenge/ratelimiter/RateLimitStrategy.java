@@ -1,6 +1,43 @@
 package com.airtasker.challenge.ratelimiter;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 public interface RateLimitStrategy {
 
-    RateLimitResult checkRateLimit(String userIP);
+    default RateLimitResult checkRateLimit(String userIP) {
+        return checkRateLimit(userIP, 1);
+    }
+
+    /**
+     * Checks a request that counts as {@code cost} requests against the limit, e.g. an expensive report. It is either
+     * allowed as a whole or denied without being counted, and the remaining requests of the result are the ones left
+     * after it. A request that costs more than the limit is always denied.
+     *
+     * @param cost at least 1, see {@link RequestCosts}
+     */
+    RateLimitResult checkRateLimit(String userIP, int cost);
+
+    default CompletionStage<RateLimitResult> checkRateLimitAsync(String userIP) {
+        return checkRateLimitAsync(userIP, 1);
+    }
+
+    /**
+     * The same check for callers that must not block, e.g. on an event loop. Strategies that keep their state in
+     * memory return a completed stage, strategies that wait for a remote store complete it once the store answered.
+     */
+    default CompletionStage<RateLimitResult> checkRateLimitAsync(String userIP, int cost) {
+        return CompletableFuture.completedFuture(checkRateLimit(userIP, cost));
+    }
+
+    /**
+     * Checks all requests of the batch, the same as checking them one after the other. Strategies that keep their
+     * state in memory read the clock and the limit once for the whole batch, the default checks the requests one by
+     * one.
+     */
+    default void checkRateLimits(RateLimitBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            batch.setResult(i, checkRateLimit(batch.userIP(i), batch.cost(i)));
+        }
+    }
 }
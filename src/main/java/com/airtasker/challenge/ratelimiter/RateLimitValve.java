@@ -0,0 +1,34 @@
+package com.airtasker.challenge.ratelimiter;
+
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.catalina.valves.ValveBase;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import java.io.IOException;
+
+/**
+ * Checks the rate limit in the engine of Tomcat, right after the connector has parsed the request, with the same
+ * {@link RateLimitFilter} as the filters. A denied request is answered before Tomcat runs the filters and the servlet
+ * of the application, so a flood of denied requests does not create a filter chain, a security context or a session
+ * per request. The policies only see the principal that Tomcat itself authenticated.
+ */
+public class RateLimitValve extends ValveBase {
+
+    private final RateLimitFilter rateLimitFilter;
+
+    // the request and the response of the valve are passed through the filter, so the chain is shared by all requests
+    private final FilterChain nextValve = (request, response) -> getNext().invoke((Request) request, (Response) response);
+
+
+    public RateLimitValve(RateLimitFilter rateLimitFilter) {
+        super(true);
+        this.rateLimitFilter = rateLimitFilter;
+    }
+
+    @Override
+    public void invoke(Request request, Response response) throws IOException, ServletException {
+        rateLimitFilter.doFilterInternal(request, response, nextValve);
+    }
+}
@@ -0,0 +1,124 @@
+package com.airtasker.challenge.ratelimiter;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The {@link RateLimitFilter} of a reactive application. The rate limit is checked without blocking the event loop:
+ * the result of a strategy that keeps its state in memory is used right away, the result of a strategy that waits for
+ * a remote store continues the request once it is completed. The permit of the {@link ConcurrencyLimiter} is released
+ * when the response has completed, or the request was cancelled or failed. An error counts as a failure of the
+ * backend for the {@link AdaptiveLimit}, like a server error.
+ */
+public class RateLimitWebFilter implements WebFilter {
+
+    private final RateLimiter rateLimiter;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final DeniedResponses deniedResponses = new DeniedResponses();
+
+
+    /**
+     * @param concurrencyLimiter limits the requests in flight once the rate limit allowed them, or {@code null}
+     */
+    public RateLimitWebFilter(RateLimiter rateLimiter, ConcurrencyLimiter concurrencyLimiter) {
+        this.rateLimiter = rateLimiter;
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+
+        if (rateLimiter.hasPoliciesLimitedByPrincipal()) {
+            // like the servlet filter, only an authentication that was restored from the session is considered
+            return ReactiveSecurityContextHolder.getContext()
+                    .map(SecurityContext::getAuthentication)
+                    .filter(Authentication::isAuthenticated)
+                    .doOnNext(authentication -> exchange.getAttributes()
+                            .put(ReactiveRateLimitRequestAdapter.PRINCIPAL_ATTRIBUTE, authentication.getName()))
+                    .then(Mono.defer(() -> checkRateLimit(exchange, chain)));
+        }
+
+        return checkRateLimit(exchange, chain);
+    }
+
+    private Mono<Void> checkRateLimit(ServerWebExchange exchange, WebFilterChain chain) {
+        CompletableFuture<RateLimitResult> result = rateLimiter
+                .checkRateLimitAsync(exchange, ReactiveRateLimitRequestAdapter.INSTANCE).toCompletableFuture();
+
+        if (result.isDone() && !result.isCompletedExceptionally()) {
+            return continueOrDeny(result.join(), exchange, chain);
+        }
+
+        return Mono.fromFuture(result).flatMap(rateLimitResult -> continueOrDeny(rateLimitResult, exchange, chain));
+    }
+
+    private Mono<Void> continueOrDeny(RateLimitResult rateLimitResult, ServerWebExchange exchange, WebFilterChain chain) {
+
+        if (!rateLimitResult.isRequestAllowed()) {
+            return deny(exchange, rateLimitResult);
+        }
+
+        if (concurrencyLimiter == null) {
+            return chain.filter(exchange);
+        }
+
+        String remoteAddress = ReactiveRateLimitRequestAdapter.INSTANCE.remoteAddress(exchange);
+
+        if (!concurrencyLimiter.tryAcquire(remoteAddress)) {
+            return deny(exchange, deniedResponses.forRetryAfter(ConcurrencyLimiter.RETRY_AFTER_IN_SECONDS));
+        }
+        long startTime = concurrencyLimiter.startTimer();
+
+        return chain.filter(exchange).doFinally(signal -> concurrencyLimiter.release(remoteAddress, startTime,
+                signal == SignalType.ON_ERROR || isServerError(exchange.getResponse().getStatusCode())));
+    }
+
+    private static boolean isServerError(HttpStatus status) {
+        return status != null && status.is5xxServerError();
+    }
+
+    /**
+     * @see RateLimitFilter
+     */
+    private Mono<Void> deny(ServerWebExchange exchange, RateLimitResult rateLimitResult) {
+
+        DeniedResponses.DeniedResponse deniedResponse =
+                deniedResponses.forRetryAfter(rateLimitResult.getNextAllowedRequestTimeInSeconds());
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        String limit = deniedResponses.limitHeaderValue(rateLimitResult);
+
+        if (limit != null) {
+            headers.set(DeniedResponses.RATE_LIMIT_LIMIT, limit);
+        }
+        headers.set(DeniedResponses.RATE_LIMIT_REMAINING, DeniedResponses.NO_REMAINING_REQUESTS);
+        headers.set(DeniedResponses.RATE_LIMIT_RESET, deniedResponse.getReset());
+        return deny(exchange, deniedResponse);
+    }
+
+    private Mono<Void> deny(ServerWebExchange exchange, DeniedResponses.DeniedResponse deniedResponse) {
+
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders headers = response.getHeaders();
+
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        headers.set(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_HTML_VALUE);
+        headers.set(HttpHeaders.RETRY_AFTER, deniedResponse.getRetryAfter());
+        headers.setContentLength(deniedResponse.getBody().length);
+
+        // the body is never modified, so the shared bytes are wrapped instead of copied
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(deniedResponse.getBody())));
+    }
+}
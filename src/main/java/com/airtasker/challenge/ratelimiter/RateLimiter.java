@@ -0,0 +1,137 @@
+package com.airtasker.challenge.ratelimiter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Checks the rate limit of a request independent of the web framework: first the limit per IP of the
+ * {@link RateLimitStrategy}, then the {@link RateLimitPolicyEngine policies}. The servlet {@link RateLimitFilter} and
+ * the reactive {@link RateLimitWebFilter} are built on it, other integrations (e.g. a message consumer) can use it
+ * with their own {@link RateLimitRequestAdapter}.
+ * <p>
+ * If there are {@link RateLimitMetrics metrics}, every check is recorded with its result, and a sample of them with
+ * its duration. If there are {@link RequestCosts costs}, a request counts as its cost against all limits.
+ */
+public class RateLimiter {
+
+    private final RateLimitStrategy strategy;
+    private final RateLimitPolicyEngine policyEngine;
+    private final RateLimitMetrics metrics;
+    private final RequestCosts requestCosts;
+
+
+    public RateLimiter(RateLimitStrategy strategy, RateLimitPolicyEngine policyEngine) {
+        this(strategy, policyEngine, null);
+    }
+
+    /**
+     * @param policyEngine policies that are checked after the limit per IP of the strategy, or {@code null}. An engine
+     *                     without policies is kept, as they may be added at runtime.
+     * @param metrics      records the checks, or {@code null}
+     */
+    public RateLimiter(RateLimitStrategy strategy, RateLimitPolicyEngine policyEngine, RateLimitMetrics metrics) {
+        this(strategy, policyEngine, metrics, null);
+    }
+
+    /**
+     * @param requestCosts the costs of the requests, or {@code null} if every request costs 1
+     */
+    public RateLimiter(RateLimitStrategy strategy, RateLimitPolicyEngine policyEngine, RateLimitMetrics metrics,
+                       RequestCosts requestCosts) {
+        this.strategy = strategy;
+        this.policyEngine = policyEngine;
+        this.metrics = metrics;
+        this.requestCosts = requestCosts;
+    }
+
+
+    public <R> RateLimitResult checkRateLimit(R request, RateLimitRequestAdapter<R> adapter) {
+        String remoteAddress = adapter.remoteAddress(request);
+        long startTime = metrics != null ? metrics.startTimer() : RateLimitMetrics.NOT_TIMED;
+        String path = pathOf(request, adapter);
+        int cost = costOf(request, adapter, path);
+        RateLimitResult result = strategy.checkRateLimit(remoteAddress, cost);
+
+        if (result.isRequestAllowed() && policyEngine != null) {
+            result = policyEngine.checkRateLimit(request, adapter, cost, path);
+        }
+
+        if (metrics != null) {
+            metrics.record(remoteAddress, result, startTime);
+        }
+        return result;
+    }
+
+    /**
+     * The same check without blocking the caller: the policies are checked in memory once the strategy has answered.
+     * The adapter may be called on another thread then, so it must not depend on thread local state. A check that
+     * failed is not recorded by the metrics.
+     */
+    public <R> CompletionStage<RateLimitResult> checkRateLimitAsync(R request, RateLimitRequestAdapter<R> adapter) {
+        String remoteAddress = adapter.remoteAddress(request);
+        long startTime = metrics != null ? metrics.startTimer() : RateLimitMetrics.NOT_TIMED;
+        String path = pathOf(request, adapter);
+        int cost = costOf(request, adapter, path);
+        CompletionStage<RateLimitResult> result = strategy.checkRateLimitAsync(remoteAddress, cost);
+
+        if (policyEngine != null) {
+            result = result.thenApply(strategyResult -> strategyResult.isRequestAllowed()
+                    ? policyEngine.checkRateLimit(request, adapter, cost, path) : strategyResult);
+        }
+
+        if (metrics == null) {
+            return result;
+        }
+
+        CompletableFuture<RateLimitResult> future = result.toCompletableFuture();
+
+        if (future.isDone() && !future.isCompletedExceptionally()) {
+            // answered in memory, recorded without another stage
+            metrics.record(remoteAddress, future.join(), startTime);
+            return future;
+        }
+        return future.whenComplete((completedResult, failure) -> {
+            if (completedResult != null) {
+                metrics.record(remoteAddress, completedResult, startTime);
+            }
+        });
+    }
+
+    /**
+     * Checks the limit per IP of all requests of the batch at once, see {@link RateLimitStrategy#checkRateLimits}. The
+     * batch only holds the keys, so the policies, which match the method, path and headers of a request, are not
+     * checked. The checks are recorded by the metrics, but not timed.
+     */
+    public void checkRateLimits(RateLimitBatch batch) {
+        strategy.checkRateLimits(batch);
+
+        if (metrics != null) {
+            for (int i = 0; i < batch.size(); i++) {
+                metrics.record(batch.userIP(i), batch.result(i), RateLimitMetrics.NOT_TIMED);
+            }
+        }
+    }
+
+    /**
+     * Resolves the path once for the routes and the policies, if any of them matches paths, as decoding and
+     * normalizing it is the most expensive attribute of a request.
+     */
+    private <R> String pathOf(R request, RateLimitRequestAdapter<R> adapter) {
+        if (requestCosts != null && requestCosts.hasPathPatterns()
+                || policyEngine != null && policyEngine.hasPoliciesMatchingPaths()) {
+            return adapter.path(request);
+        }
+        return null;
+    }
+
+    private <R> int costOf(R request, RateLimitRequestAdapter<R> adapter, String path) {
+        return requestCosts != null ? requestCosts.costOf(request, adapter, path) : RequestCosts.DEFAULT_COST;
+    }
+
+    /**
+     * @see RateLimitPolicyEngine#hasPoliciesLimitedByPrincipal()
+     */
+    public boolean hasPoliciesLimitedByPrincipal() {
+        return policyEngine != null && policyEngine.hasPoliciesLimitedByPrincipal();
+    }
+}
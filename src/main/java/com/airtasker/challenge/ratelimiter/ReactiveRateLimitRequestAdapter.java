@@ -0,0 +1,75 @@
+package com.airtasker.challenge.ratelimiter;
+
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+public final class ReactiveRateLimitRequestAdapter implements RateLimitRequestAdapter<ServerWebExchange> {
+
+    public static final ReactiveRateLimitRequestAdapter INSTANCE = new ReactiveRateLimitRequestAdapter();
+
+    /**
+     * The exchange attribute with the name of the authenticated principal. The security context of a reactive request
+     * is only available within the reactive pipeline, so the {@link RateLimitWebFilter} resolves it beforehand.
+     */
+    public static final String PRINCIPAL_ATTRIBUTE = ReactiveRateLimitRequestAdapter.class.getName() + ".principal";
+
+    private static final String UNKNOWN_ADDRESS = "";
+
+
+    private ReactiveRateLimitRequestAdapter() {
+    }
+
+
+    /**
+     * @return the IP address of the client, an empty String if the server does not know it (e.g. a unix domain
+     * socket), then all such requests share one limit
+     */
+    @Override
+    public String remoteAddress(ServerWebExchange exchange) {
+        InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+
+        if (remoteAddress == null || remoteAddress.getAddress() == null) {
+            return UNKNOWN_ADDRESS;
+        }
+        return remoteAddress.getAddress().getHostAddress();
+    }
+
+    @Override
+    public String method(ServerWebExchange exchange) {
+        return exchange.getRequest().getMethodValue();
+    }
+
+    /**
+     * The segments of the path within the application as they are matched by WebFlux: decoded and without path
+     * parameters.
+     */
+    @Override
+    public String path(ServerWebExchange exchange) {
+        List<PathContainer.Element> elements = exchange.getRequest().getPath().pathWithinApplication().elements();
+        StringBuilder path = new StringBuilder();
+
+        for (PathContainer.Element element : elements) {
+            path.append(element instanceof PathContainer.PathSegment
+                    ? ((PathContainer.PathSegment) element).valueToMatch() : element.value());
+        }
+        return RequestPathPattern.normalize(path.length() == 0 ? "/" : path.toString());
+    }
+
+    @Override
+    public String header(ServerWebExchange exchange, String name) {
+        return exchange.getRequest().getHeaders().getFirst(name);
+    }
+
+    @Override
+    public String principal(ServerWebExchange exchange) {
+        return exchange.getAttribute(PRINCIPAL_ATTRIBUTE);
+    }
+
+    @Override
+    public Object attribute(ServerWebExchange exchange, String name) {
+        return exchange.getAttribute(name);
+    }
+}
@@ -0,0 +1,163 @@
+package com.airtasker.challenge.ratelimiter;
+
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.SocketOptions;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shared store in Redis. Each key is checked by a Lua script (see {@code scripts/gcra.lua}), which Redis executes
+ * atomically with its own time, so the clocks of the instances do not have to be in sync. The scripts of a batch are
+ * pipelined: all of them are written to the connection before the replies are awaited, so a batch takes one round
+ * trip. As every script only touches a single key, this also works with Redis Cluster.
+ * <p>
+ * The connection is opened with the first batch and the client reconnects automatically. While it is disconnected,
+ * commands are rejected instead of queued, so callers fail fast and can fall back to local rate limiting.
+ * <p>
+ * The batches are sent one after the other. They are serialized by a lock rather than a monitor, as a batch waits for
+ * the network, which would pin the carrier thread of a virtual thread.
+ */
+public class RedisSharedRateLimitStore implements SharedRateLimitStore, AutoCloseable {
+
+    private static final String SCRIPT_LOCATION = "scripts/gcra.lua";
+    private static final String KEY_PREFIX = "rate-limit:";
+    private static final String PARTIAL = "0";
+    private static final String ALL_OR_NOTHING = "1";
+
+    private final RedisURI redisURI;
+    private final Duration timeout;
+    private final String script;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private RedisClient client;
+    private StatefulRedisConnection<String, String> connection;
+    private String scriptDigest;
+
+
+    public RedisSharedRateLimitStore(String redisURI, Duration timeout) {
+        this.redisURI = RedisURI.create(redisURI);
+        this.redisURI.setTimeout(timeout);
+        this.timeout = timeout;
+        this.script = loadScript();
+    }
+
+
+    @Override
+    public List<Admission> tryAcquire(List<String> keys, int[] permits, boolean allOrNothing, int limitOfRequests,
+                                      long limitInNanos) {
+        String emissionIntervalInMicros = String.valueOf(TimeUnit.NANOSECONDS.toMicros(limitInNanos / limitOfRequests));
+        String limitInMicros = String.valueOf(TimeUnit.NANOSECONDS.toMicros(limitInNanos));
+        String mode = allOrNothing ? ALL_OR_NOTHING : PARTIAL;
+
+        lock.lock();
+        try {
+            try {
+                return evaluate(keys, permits, emissionIntervalInMicros, limitInMicros, mode);
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof RedisNoScriptException)) {
+                    throw e;
+                }
+                // not loaded yet, or the script cache of the server was flushed, e.g. by a restart
+                loadScriptIntoServer();
+                return evaluate(keys, permits, emissionIntervalInMicros, limitInMicros, mode);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SharedRateLimitStoreException("interrupted while waiting for redis", e);
+        } catch (ExecutionException | TimeoutException | RedisException e) {
+            throw new SharedRateLimitStoreException("rate limit check in redis failed", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<Admission> evaluate(List<String> keys, int[] permits, String emissionIntervalInMicros, String limitInMicros,
+                                     String mode) throws InterruptedException, ExecutionException, TimeoutException {
+
+        RedisAsyncCommands<String, String> commands = connect().async();
+        List<RedisFuture<List<Long>>> replies = new ArrayList<>(keys.size());
+
+        for (int i = 0; i < keys.size(); i++) {
+            replies.add(commands.evalsha(scriptDigest, ScriptOutputType.MULTI, new String[]{KEY_PREFIX + keys.get(i)},
+                    emissionIntervalInMicros, limitInMicros, String.valueOf(permits[i]), mode));
+        }
+        connection.flushCommands();
+
+        long deadline = System.nanoTime() + timeout.toNanos();
+        List<Admission> admissions = new ArrayList<>(keys.size());
+
+        for (RedisFuture<List<Long>> reply : replies) {
+            List<Long> result = reply.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            admissions.add(new Admission(result.get(0).intValue(), result.get(1).intValue(),
+                    TimeUnit.MICROSECONDS.toNanos(result.get(2))));
+        }
+
+        return admissions;
+    }
+
+    private StatefulRedisConnection<String, String> connect() {
+        if (client == null) {
+            client = RedisClient.create(redisURI);
+            client.setOptions(ClientOptions.builder()
+                    .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS)
+                    .socketOptions(SocketOptions.builder().connectTimeout(timeout).build())
+                    .build());
+        }
+
+        if (connection == null) {
+            connection = client.connect();
+            connection.setAutoFlushCommands(false);
+            scriptDigest = connection.async().digest(script);
+        }
+
+        return connection;
+    }
+
+    private void loadScriptIntoServer() throws InterruptedException, ExecutionException, TimeoutException {
+        RedisFuture<String> digest = connection.async().scriptLoad(script);
+        connection.flushCommands();
+        digest.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private static String loadScript() {
+        try {
+            return StreamUtils.copyToString(new ClassPathResource(SCRIPT_LOCATION).getInputStream(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not read " + SCRIPT_LOCATION, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (connection != null) {
+                connection.close();
+            }
+            if (client != null) {
+                client.shutdown();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
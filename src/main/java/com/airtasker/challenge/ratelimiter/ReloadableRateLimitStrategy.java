@@ -0,0 +1,13 @@
+package com.airtasker.challenge.ratelimiter;
+
+/**
+ * A strategy whose limit can be changed while it is running, without losing the state of the tracked IPs.
+ */
+public interface ReloadableRateLimitStrategy extends RateLimitStrategy {
+
+    /**
+     * Applies the limit to the following requests. Requests are not blocked meanwhile, a request that is checked
+     * concurrently uses either the old or the new limit. The state of an IP is migrated by its next request.
+     */
+    void updateLimit(int apiLimitInMinutes, int apiLimitRequests);
+}
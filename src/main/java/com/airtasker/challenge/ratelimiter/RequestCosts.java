@@ -0,0 +1,66 @@
+package com.airtasker.challenge.ratelimiter;
+
+import java.util.List;
+
+/**
+ * Resolves the cost of a request, the number of requests it counts as against the rate limits (see
+ * {@link RateLimitStrategy#checkRateLimit(String, int)}). The rate limit is checked before any handler runs, so a cost
+ * that is only known at runtime, e.g. from a header with the size of a batch, is set as the request attribute
+ * {@link #COST_ATTRIBUTE} by a filter that runs before the rate limit filter. Otherwise the first {@link RouteCost
+ * route} that matches the request applies, and a request that matches none costs 1.
+ */
+public final class RequestCosts {
+
+    /**
+     * The request attribute with the cost of the request, a {@link Number}. Takes precedence over the routes.
+     */
+    public static final String COST_ATTRIBUTE = RequestCosts.class.getName() + ".cost";
+
+    public static final int DEFAULT_COST = 1;
+
+    private final RouteCost[] routeCosts;
+    private final boolean pathPatterns;
+
+
+    /**
+     * @param routeCosts in the order they are matched
+     */
+    public RequestCosts(List<RouteCost> routeCosts) {
+        this.routeCosts = routeCosts.toArray(new RouteCost[0]);
+        this.pathPatterns = routeCosts.stream().anyMatch(RouteCost::hasPathPattern);
+    }
+
+
+    public <R> int costOf(R request, RateLimitRequestAdapter<R> adapter) {
+        return costOf(request, adapter, null);
+    }
+
+    /**
+     * @param path the {@link RateLimitRequestAdapter#path path} of the request, or {@code null} to resolve it on the
+     *             first route with a path pattern
+     */
+    public <R> int costOf(R request, RateLimitRequestAdapter<R> adapter, String path) {
+        Object cost = adapter.attribute(request, COST_ATTRIBUTE);
+
+        if (cost instanceof Number) {
+            return Math.max(((Number) cost).intValue(), DEFAULT_COST);
+        }
+
+        for (RouteCost routeCost : routeCosts) {
+            if (path == null && routeCost.hasPathPattern()) {
+                path = adapter.path(request);
+            }
+            if (routeCost.matches(request, adapter, path)) {
+                return routeCost.getCost();
+            }
+        }
+        return DEFAULT_COST;
+    }
+
+    /**
+     * @return whether a route matches the path of the requests, which is then resolved for every request
+     */
+    public boolean hasPathPatterns() {
+        return pathPatterns;
+    }
+}
@@ -0,0 +1,131 @@
+package com.airtasker.challenge.ratelimiter;
+
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A path pattern that is parsed once and matched segment by segment against the path of a request, without regular
+ * expressions and without allocating. A segment is either a literal, {@code *} for exactly one segment, or a trailing
+ * {@code **} for any number of segments, e.g. {@code /api/**}, or {@code /users/*} for {@code /users/{id}}.
+ * <p>
+ * The path must be decoded and {@link #normalize normalized}, see {@link RateLimitRequestAdapter#path}. Like Spring MVC
+ * a path with a trailing slash matches the pattern without it, so {@code /api/reports/} is limited as
+ * {@code /api/reports}.
+ */
+final class RequestPathPattern {
+
+    private static final String ANY_SEGMENT = "*";
+    private static final String ANY_SEGMENTS = "**";
+
+    private final String pattern;
+    private final String[] segments;
+    private final boolean[] wildcards;
+    private final boolean anyRemainingSegments;
+
+
+    private RequestPathPattern(String pattern, String[] segments, boolean[] wildcards, boolean anyRemainingSegments) {
+        this.pattern = pattern;
+        this.segments = segments;
+        this.wildcards = wildcards;
+        this.anyRemainingSegments = anyRemainingSegments;
+    }
+
+    static RequestPathPattern compile(String pattern) {
+        if (!pattern.startsWith("/")) {
+            throw new IllegalArgumentException("path pattern must start with '/': " + pattern);
+        }
+
+        List<String> parts = new ArrayList<>();
+        for (String part : pattern.substring(1).split("/", -1)) {
+            parts.add(part);
+        }
+
+        boolean anyRemainingSegments = parts.get(parts.size() - 1).equals(ANY_SEGMENTS);
+        if (anyRemainingSegments) {
+            parts.remove(parts.size() - 1);
+        }
+
+        String[] segments = parts.toArray(new String[0]);
+        boolean[] wildcards = new boolean[segments.length];
+
+        for (int i = 0; i < segments.length; i++) {
+            wildcards[i] = segments[i].equals(ANY_SEGMENT);
+
+            if (!wildcards[i] && segments[i].indexOf('*') >= 0) {
+                throw new IllegalArgumentException("'**' is only supported as the last segment and '*' only as a "
+                        + "whole segment: " + pattern);
+            }
+        }
+
+        return new RequestPathPattern(pattern, segments, wildcards, anyRemainingSegments);
+    }
+
+    /**
+     * Removes empty segments and resolves the segments {@code .} and {@code ..} of a decoded path, which the servlet
+     * container and the frameworks do before they route the request. A path that is already normalized is returned as
+     * it is.
+     */
+    static String normalize(String path) {
+        String normalized = path;
+
+        if (normalized.contains("//")) {
+            StringBuilder collapsed = new StringBuilder(normalized.length());
+
+            for (int i = 0; i < normalized.length(); i++) {
+                char c = normalized.charAt(i);
+
+                if (c != '/' || collapsed.length() == 0 || collapsed.charAt(collapsed.length() - 1) != '/') {
+                    collapsed.append(c);
+                }
+            }
+            normalized = collapsed.toString();
+        }
+
+        normalized = StringUtils.cleanPath(normalized);
+        return normalized.startsWith("/") ? normalized : "/" + normalized;
+    }
+
+    /**
+     * @param path the normalized path of the request within the application
+     */
+    boolean matches(String path) {
+        int length = path.length();
+        if (length > 1 && path.charAt(length - 1) == '/') {
+            // the trailing slash is matched by Spring MVC as well
+            length--;
+        }
+
+        int position = 0;
+
+        for (int i = 0; i < segments.length; i++) {
+            if (position >= length || path.charAt(position) != '/') {
+                return false;
+            }
+
+            int begin = position + 1;
+            int end = path.indexOf('/', begin);
+            if (end < 0 || end > length) {
+                end = length;
+            }
+
+            if (wildcards[i]) {
+                if (end == begin) {
+                    return false;
+                }
+            } else if (end - begin != segments[i].length() || !path.regionMatches(begin, segments[i], 0, segments[i].length())) {
+                return false;
+            }
+
+            position = end;
+        }
+
+        return anyRemainingSegments || position == length;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
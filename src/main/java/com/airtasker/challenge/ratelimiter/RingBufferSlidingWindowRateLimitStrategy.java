@@ -0,0 +1,332 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.MonotonicClock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sliding window strategy with the same semantics as {@link SlidingWindowRateLimitStrategy}, but the request times
+ * of every IP are stored as nanos of the monotonic clock in a fixed size primitive ring buffer. The allow path does not allocate.
+ * <p>
+ * The ring buffers have the size of the limit. If the limit is {@link #updateLimit updated}, the ring buffer of an IP
+ * is resized by its next request and keeps its latest requests.
+ * <p>
+ * Like the {@link SlidingWindowRateLimitStrategy}, the request log remembers until when an IP is denied, and the
+ * following requests of the IP are denied without taking the lock. A request that costs {@code n} requests takes
+ * {@code n} entries of the ring buffer.
+ */
+@Component
+@ConditionalOnProperty(name = "api.limit.strategy", havingValue = "sliding-window-ring-buffer")
+public class RingBufferSlidingWindowRateLimitStrategy implements SnapshotableRateLimitStrategy, ReloadableRateLimitStrategy,
+        ObservableRateLimitStrategy {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final RateLimitStateStore<RequestLog> ipToRequestLogStore;
+    private final RequestLog untrackedRequestLog;
+    private final MonotonicClock clock;
+    private volatile RateLimit limit;
+
+
+    public RingBufferSlidingWindowRateLimitStrategy(MonotonicClock clock, int apiLimitInMinutes, int apiLimitRequests) {
+        this(clock, apiLimitInMinutes, apiLimitRequests, RateLimitStateStore.UNBOUNDED);
+    }
+
+    @Autowired
+    public RingBufferSlidingWindowRateLimitStrategy(MonotonicClock clock, @Value("${api.limit.in.minutes}") int apiLimitInMinutes,
+                                                    @Value("${api.limit.requests}") int apiLimitRequests,
+                                                    @Value("${rate.limit.max.tracked.ips}") int maxTrackedIPs) {
+        this.clock = clock;
+        this.limit = new RateLimit(apiLimitInMinutes, apiLimitRequests);
+        this.ipToRequestLogStore = new RateLimitStateStore<>(limit.apiLimitInNanos,
+                currentTime -> new RequestLog(this.limit.apiLimitRequests), this::removeIfIdle, maxTrackedIPs);
+        this.untrackedRequestLog = new RequestLog(apiLimitRequests);
+    }
+
+
+    @Override
+    public RateLimitResult checkRateLimit(String userIP, int cost) {
+
+        RateLimit limit = this.limit;
+        long currentTime = clock.nanoTime();
+
+        ipToRequestLogStore.expireIdleStates(currentTime);
+
+        return checkRateLimit(userIP, cost, limit, currentTime);
+    }
+
+    /**
+     * Reads the clock and the limit once for all requests of the batch.
+     */
+    @Override
+    public void checkRateLimits(RateLimitBatch batch) {
+
+        RateLimit limit = this.limit;
+        long currentTime = clock.nanoTime();
+
+        ipToRequestLogStore.expireIdleStates(currentTime, RateLimitStateStore.EXPIRY_CHECKS_PER_REQUEST * batch.size());
+
+        for (int i = 0; i < batch.size(); i++) {
+            batch.setResult(i, checkRateLimit(batch.userIP(i), batch.cost(i), limit, currentTime));
+        }
+    }
+
+    private RateLimitResult checkRateLimit(String userIP, int cost, RateLimit limit, long currentTime) {
+
+        if (cost > limit.apiLimitRequests) {
+            return limit.deniedAboveLimit();
+        }
+
+        while (true) {
+            RequestLog requestLog = ipToRequestLogStore.getOrCreate(userIP, currentTime);
+
+            if (requestLog == null) {
+                // not tracked because the store is full, checked against the state that all untracked IPs share
+                requestLog = untrackedRequestLog;
+            }
+
+            Block block = requestLog.block;
+
+            if (block != null && currentTime <= block.until && block.limit == limit && cost >= block.cost) {
+                return limit.denied(Math.floorDiv(block.until - currentTime, NANOS_PER_SECOND));
+            }
+
+            requestLog.lock();
+            try {
+                if (requestLog.removed) {
+                    // removed as idle or evicted in the meantime
+                    continue;
+                }
+
+                requestLog.removeOlderThan(currentTime - limit.apiLimitInNanos);
+                requestLog.resize(limit.apiLimitRequests);
+
+                if (requestLog.size + cost > limit.apiLimitRequests) {
+                    // allowed once the requests above the limit have left the window
+                    long allowedAt = requestLog.get(requestLog.size + cost - limit.apiLimitRequests - 1)
+                            + limit.apiLimitInNanos;
+
+                    requestLog.block = new Block(limit, cost, allowedAt);
+                    return limit.denied(Math.floorDiv(allowedAt - currentTime, NANOS_PER_SECOND));
+                }
+
+                for (int i = 0; i < cost; i++) {
+                    requestLog.add(currentTime);
+                }
+                return limit.allowed(limit.apiLimitRequests - requestLog.size);
+            } finally {
+                requestLog.unlock();
+            }
+        }
+    }
+
+    /**
+     * A request log is idle once its latest request has left the time window.
+     */
+    private long removeIfIdle(String userIP, RequestLog requestLog, long currentTime) {
+
+        long apiLimitInNanos = limit.apiLimitInNanos;
+
+        requestLog.lock();
+        try {
+            if (requestLog.size > 0 && requestLog.newest() + apiLimitInNanos >= currentTime) {
+                return requestLog.newest() + apiLimitInNanos;
+            }
+
+            requestLog.removed = true;
+            ipToRequestLogStore.remove(userIP, requestLog);
+            return RateLimitStateStore.REMOVED;
+        } finally {
+            requestLog.unlock();
+        }
+    }
+
+    @Override
+    public void updateLimit(int apiLimitInMinutes, int apiLimitRequests) {
+        limit = new RateLimit(apiLimitInMinutes, apiLimitRequests);
+    }
+
+    @Override
+    public String snapshotFormat() {
+        return "sliding-window";
+    }
+
+    @Override
+    public void writeSnapshot(RateLimitSnapshot.Writer writer) {
+        RateLimit limit = this.limit;
+        long[] requestTimes = new long[limit.apiLimitRequests];
+
+        ipToRequestLogStore.forEach((userIP, requestLog) -> {
+            int numberOfRequests = 0;
+
+            requestLog.lock();
+            try {
+                if (!requestLog.removed) {
+                    requestLog.resize(limit.apiLimitRequests);
+                    numberOfRequests = requestLog.copyTo(requestTimes);
+                }
+            } finally {
+                requestLog.unlock();
+            }
+
+            if (numberOfRequests > 0) {
+                writer.write(userIP, requestTimes[numberOfRequests - 1] + limit.apiLimitInNanos, requestTimes,
+                        numberOfRequests);
+            }
+        });
+    }
+
+    @Override
+    public void restoreSnapshot(RateLimitSnapshot.Reader reader) {
+        int apiLimitRequests = limit.apiLimitRequests;
+        long currentTime = clock.nanoTime();
+
+        while (reader.next()) {
+            RequestLog requestLog = ipToRequestLogStore.getOrCreate(reader.getUserIP(), currentTime);
+
+            if (requestLog == null) {
+                continue;
+            }
+
+            requestLog.lock();
+            try {
+                // the latest requests, if the limit was lowered
+                for (int i = Math.max(reader.getNumberOfTimes() - apiLimitRequests, 0); i < reader.getNumberOfTimes(); i++) {
+                    if (requestLog.size < apiLimitRequests) {
+                        requestLog.add(reader.getTime(i));
+                    }
+                }
+            } finally {
+                requestLog.unlock();
+            }
+        }
+    }
+
+    @Scheduled(initialDelayString = "${rate.limit.expiry.interval.millis}", fixedDelayString = "${rate.limit.expiry.interval.millis}")
+    public void expireIdleStates() {
+        ipToRequestLogStore.expireAllIdleStates(clock.nanoTime());
+    }
+
+    @Override
+    public int numberOfTrackedIPs() {
+        return ipToRequestLogStore.size();
+    }
+
+    @Override
+    public long estimateMemoryInBytes() {
+        return ipToRequestLogStore.estimateMemoryInBytes(RequestLog::estimateMemoryInBytes);
+    }
+
+    @Override
+    public RateLimitStateStatistics getStateStatistics() {
+        return ipToRequestLogStore.getStatistics();
+    }
+
+
+    private static final class RequestLog extends StateLock {
+
+        private long[] requestTimes;
+        private int head;
+        private int size;
+        private boolean removed;
+        // the latest denial, written while holding the lock and read without it, see SlidingWindowRateLimitStrategy
+        private volatile Block block;
+
+        RequestLog(int capacity) {
+            this.requestTimes = new long[capacity];
+        }
+
+        long estimateMemoryInBytes() {
+            return MemoryLayout.sizeOfObject(MemoryLayout.STATE_LOCK_FIELDS + 2 * MemoryLayout.REFERENCE
+                    + 2 * MemoryLayout.INT + 1)
+                    + (block == null ? 0 : MemoryLayout.sizeOfObject(MemoryLayout.REFERENCE + MemoryLayout.INT
+                    + MemoryLayout.LONG))
+                    + MemoryLayout.sizeOfArray(requestTimes.length, MemoryLayout.LONG);
+        }
+
+        void removeOlderThan(long expirationTime) {
+            while (size > 0 && requestTimes[head] < expirationTime) {
+                head = next(head);
+                size--;
+            }
+        }
+
+        /**
+         * Changes the capacity to a new limit, keeping the latest requests that fit.
+         */
+        void resize(int capacity) {
+            if (capacity == requestTimes.length) {
+                return;
+            }
+
+            long[] resized = new long[capacity];
+            int kept = Math.min(size, capacity);
+
+            for (int i = 0, index = head; i < size; i++, index = next(index)) {
+                if (i >= size - kept) {
+                    resized[i - (size - kept)] = requestTimes[index];
+                }
+            }
+
+            requestTimes = resized;
+            head = 0;
+            size = kept;
+        }
+
+        void add(long requestTime) {
+            int tail = head + size;
+            requestTimes[tail < requestTimes.length ? tail : tail - requestTimes.length] = requestTime;
+            size++;
+        }
+
+        /**
+         * @return the number of request times copied, from the oldest to the newest
+         */
+        int copyTo(long[] target) {
+            for (int i = 0, index = head; i < size; i++, index = next(index)) {
+                target[i] = requestTimes[index];
+            }
+            return size;
+        }
+
+        /**
+         * @return the time of the request at the index, counted from the oldest
+         */
+        long get(int index) {
+            int position = head + index;
+            return requestTimes[position < requestTimes.length ? position : position - requestTimes.length];
+        }
+
+        long newest() {
+            int tail = head + size - 1;
+            return requestTimes[tail < requestTimes.length ? tail : tail - requestTimes.length];
+        }
+
+        private int next(int index) {
+            return index + 1 == requestTimes.length ? 0 : index + 1;
+        }
+    }
+
+
+    /**
+     * Requests of the IP that cost at least {@link #cost} are denied with {@link #limit} until {@link #until},
+     * published together like the block of the {@link SlidingWindowRateLimitStrategy}.
+     */
+    private static final class Block {
+
+        private final RateLimit limit;
+        private final int cost;
+        private final long until;
+
+        Block(RateLimit limit, int cost, long until) {
+            this.limit = limit;
+            this.cost = cost;
+            this.until = until;
+        }
+    }
+}
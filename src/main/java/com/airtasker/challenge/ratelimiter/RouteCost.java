@@ -0,0 +1,55 @@
+package com.airtasker.challenge.ratelimiter;
+
+import java.util.Locale;
+
+/**
+ * The cost of the requests matching a path pattern and a method, e.g. {@code 10} for an export that is as expensive
+ * as ten ordinary requests. Compiled once from its configuration like a {@link RateLimitPolicy}, so matching a request
+ * does not allocate.
+ */
+public final class RouteCost {
+
+    private final RequestPathPattern pathPattern;
+    private final String method;
+    private final int cost;
+
+
+    private RouteCost(RequestPathPattern pathPattern, String method, int cost) {
+        this.pathPattern = pathPattern;
+        this.method = method;
+        this.cost = cost;
+    }
+
+    /**
+     * @param path   path pattern of the requests, see {@link RequestPathPattern}, or {@code null} for all paths
+     * @param method HTTP method of the requests, or {@code null} for all methods
+     * @param cost   the number of requests a matching request counts as, at least 1
+     */
+    public static RouteCost compile(String path, String method, int cost) {
+        if (cost <= 0) {
+            throw new IllegalArgumentException("invalid cost of route " + method + " " + path + ": " + cost);
+        }
+
+        return new RouteCost(path == null || path.isEmpty() ? null : RequestPathPattern.compile(path),
+                method == null || method.isEmpty() ? null : method.toUpperCase(Locale.ROOT), cost);
+    }
+
+    /**
+     * @param path the {@link RateLimitRequestAdapter#path path} of the request, resolved once per request by the
+     *             caller if {@link #hasPathPattern()}
+     */
+    <R> boolean matches(R request, RateLimitRequestAdapter<R> adapter, String path) {
+        if (method != null && !method.equals(adapter.method(request))) {
+            return false;
+        }
+        return pathPattern == null || pathPattern.matches(path);
+    }
+
+    boolean hasPathPattern() {
+        return pathPattern != null;
+    }
+
+    public int getCost() {
+        return cost;
+    }
+}
@@ -0,0 +1,65 @@
+package com.airtasker.challenge.ratelimiter;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.http.HttpServletRequest;
+import java.security.Principal;
+
+public final class ServletRateLimitRequestAdapter implements RateLimitRequestAdapter<HttpServletRequest> {
+
+    public static final ServletRateLimitRequestAdapter INSTANCE = new ServletRateLimitRequestAdapter();
+
+    private static final UrlPathHelper URL_PATH_HELPER = new UrlPathHelper();
+
+
+    private ServletRateLimitRequestAdapter() {
+    }
+
+
+    @Override
+    public String remoteAddress(HttpServletRequest request) {
+        return request.getRemoteAddr();
+    }
+
+    @Override
+    public String method(HttpServletRequest request) {
+        return request.getMethod();
+    }
+
+    /**
+     * The path decoded and without path parameters by the {@link UrlPathHelper} of Spring MVC, which does not rely on
+     * the firewall of Spring Security, as the filter may run before it.
+     */
+    @Override
+    public String path(HttpServletRequest request) {
+        return RequestPathPattern.normalize(URL_PATH_HELPER.getPathWithinApplication(request));
+    }
+
+    @Override
+    public String header(HttpServletRequest request, String name) {
+        return request.getHeader(name);
+    }
+
+    /**
+     * The principal of the servlet container, or the authentication that was restored from the session. Requests are
+     * limited before they are authenticated, so credentials sent with the request itself are not considered.
+     */
+    @Override
+    public String principal(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+
+        if (principal != null) {
+            return principal.getName();
+        }
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication == null || !authentication.isAuthenticated() ? null : authentication.getName();
+    }
+
+    @Override
+    public Object attribute(HttpServletRequest request, String name) {
+        return request.getAttribute(name);
+    }
+}
@@ -0,0 +1,81 @@
+package com.airtasker.challenge.ratelimiter;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rate limit state shared by all instances of the service, e.g. in Redis. Every key is limited with the generic cell
+ * rate algorithm (see {@link GcraRateLimitStrategy}), which the store evaluates atomically on its side, so concurrent
+ * requests of the same key on different instances cannot exceed the limit.
+ */
+public interface SharedRateLimitStore {
+
+    /**
+     * Checks and records one request for each of the keys, in a single round trip if possible. The same key may
+     * occur more than once.
+     *
+     * @return the admission of each key, in the order of the keys
+     * @throws SharedRateLimitStoreException if the store could not be reached or did not answer in time
+     */
+    default List<Admission> tryAcquire(List<String> keys, int limitOfRequests, long limitInNanos) {
+        int[] permits = new int[keys.size()];
+        Arrays.fill(permits, 1);
+        return tryAcquire(keys, permits, limitOfRequests, limitInNanos);
+    }
+
+    /**
+     * Records up to {@code permits[i]} requests for the i-th key, as many as its limit allows, in a single round trip
+     * if possible. The granted permits may be used later, e.g. as a lease of an instance.
+     *
+     * @return the admission of each key, in the order of the keys
+     * @throws SharedRateLimitStoreException if the store could not be reached or did not answer in time
+     */
+    default List<Admission> tryAcquire(List<String> keys, int[] permits, int limitOfRequests, long limitInNanos) {
+        return tryAcquire(keys, permits, false, limitOfRequests, limitInNanos);
+    }
+
+    /**
+     * Records {@code permits[i]} requests for the i-th key, in a single round trip if possible.
+     *
+     * @param allOrNothing whether the permits of a key are only granted if its limit allows all of them, e.g. for a
+     *                     request that costs more than one request, otherwise as many as the limit allows are granted
+     * @return the admission of each key, in the order of the keys. The retry after of a key whose permits were not
+     * granted is the time until all of them are available, or until the next one if not all or nothing.
+     * @throws SharedRateLimitStoreException if the store could not be reached or did not answer in time
+     */
+    List<Admission> tryAcquire(List<String> keys, int[] permits, boolean allOrNothing, int limitOfRequests,
+                               long limitInNanos);
+
+
+    final class Admission {
+
+        private final int grantedPermits;
+        private final int remainingRequests;
+        private final long retryAfterInNanos;
+
+        /**
+         * @param retryAfterInNanos time until the next permit is available, if not all permits were granted
+         */
+        public Admission(int grantedPermits, int remainingRequests, long retryAfterInNanos) {
+            this.grantedPermits = grantedPermits;
+            this.remainingRequests = remainingRequests;
+            this.retryAfterInNanos = retryAfterInNanos;
+        }
+
+        public boolean isAllowed() {
+            return grantedPermits > 0;
+        }
+
+        public int getGrantedPermits() {
+            return grantedPermits;
+        }
+
+        public int getRemainingRequests() {
+            return remainingRequests;
+        }
+
+        public long getRetryAfterInNanos() {
+            return retryAfterInNanos;
+        }
+    }
+}
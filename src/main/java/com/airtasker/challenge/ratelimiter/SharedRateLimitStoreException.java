@@ -0,0 +1,8 @@
+package com.airtasker.challenge.ratelimiter;
+
+public class SharedRateLimitStoreException extends RuntimeException {
+
+    public SharedRateLimitStoreException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,214 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.MonotonicClock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Approximates the sliding window with two fixed windows per IP. The count of the previous window is weighted by how
+ * much of it still overlaps the sliding window, which assumes that its requests were evenly distributed.
+ * The memory per IP is constant, independent of the request limit.
+ * <p>
+ * The approximation can both deny requests the exact sliding window would allow and allow requests it would deny.
+ * In the worst case, when all requests of the previous window arrived right before its end, a sliding window of
+ * the configured length can contain up to {@code 2 * limit - 1} allowed requests.
+ */
+@Component
+@ConditionalOnProperty(name = "api.limit.strategy", havingValue = "sliding-window-counter")
+public class SlidingWindowCounterRateLimitStrategy implements ObservableRateLimitStrategy {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final RateLimitStateStore<WindowCounter> ipToWindowCounterStore;
+    private final WindowCounter untrackedWindowCounter;
+    private final MonotonicClock clock;
+    private final int apiLimitRequests;
+    private final long apiLimitInNanos;
+    private final RateLimitResult[] allowedResults;
+
+
+    public SlidingWindowCounterRateLimitStrategy(MonotonicClock clock, int apiLimitInMinutes, int apiLimitRequests) {
+        this(clock, apiLimitInMinutes, apiLimitRequests, RateLimitStateStore.UNBOUNDED);
+    }
+
+    @Autowired
+    public SlidingWindowCounterRateLimitStrategy(MonotonicClock clock, @Value("${api.limit.in.minutes}") int apiLimitInMinutes,
+                                                 @Value("${api.limit.requests}") int apiLimitRequests,
+                                                 @Value("${rate.limit.max.tracked.ips}") int maxTrackedIPs) {
+        this.clock = clock;
+        this.apiLimitRequests = apiLimitRequests;
+        this.apiLimitInNanos = TimeUnit.MINUTES.toNanos(apiLimitInMinutes);
+        this.ipToWindowCounterStore = new RateLimitStateStore<>(apiLimitInNanos, WindowCounter::new, this::removeIfIdle, maxTrackedIPs);
+        this.untrackedWindowCounter = new WindowCounter(clock.nanoTime());
+        this.allowedResults = new RateLimitResult[apiLimitRequests];
+
+        for (int remaining = 0; remaining < apiLimitRequests; remaining++) {
+            allowedResults[remaining] = new RateLimitResult(true, 0, remaining, apiLimitRequests);
+        }
+    }
+
+
+    @Override
+    public RateLimitResult checkRateLimit(String userIP, int cost) {
+
+        long currentTime = clock.nanoTime();
+
+        ipToWindowCounterStore.expireIdleStates(currentTime);
+
+        return checkRateLimit(userIP, cost, currentTime);
+    }
+
+    /**
+     * Reads the clock once for all requests of the batch.
+     */
+    @Override
+    public void checkRateLimits(RateLimitBatch batch) {
+
+        long currentTime = clock.nanoTime();
+
+        ipToWindowCounterStore.expireIdleStates(currentTime, RateLimitStateStore.EXPIRY_CHECKS_PER_REQUEST * batch.size());
+
+        for (int i = 0; i < batch.size(); i++) {
+            batch.setResult(i, checkRateLimit(batch.userIP(i), batch.cost(i), currentTime));
+        }
+    }
+
+    private RateLimitResult checkRateLimit(String userIP, int cost, long currentTime) {
+
+        if (cost > apiLimitRequests) {
+            return new RateLimitResult(false, TimeUnit.NANOSECONDS.toSeconds(apiLimitInNanos), 0, apiLimitRequests);
+        }
+
+        while (true) {
+            WindowCounter windowCounter = ipToWindowCounterStore.getOrCreate(userIP, currentTime);
+
+            if (windowCounter == null) {
+                // not tracked because the store is full, checked against the state that all untracked IPs share
+                windowCounter = untrackedWindowCounter;
+            }
+
+            windowCounter.lock();
+            try {
+                if (windowCounter.removed) {
+                    // removed as idle or evicted in the meantime
+                    continue;
+                }
+
+                windowCounter.slideTo(currentTime, apiLimitInNanos);
+
+                double previousWeight = windowCounter.previousWeight(currentTime, apiLimitInNanos);
+                double estimatedRequests = windowCounter.previousCount * previousWeight + windowCounter.currentCount;
+
+                if (estimatedRequests + cost > apiLimitRequests) {
+                    return new RateLimitResult(false,
+                            calculateNextAllowedRequestTimeInSeconds(currentTime, windowCounter, cost), 0, apiLimitRequests);
+                }
+
+                windowCounter.currentCount += cost;
+                int remaining = apiLimitRequests - (int) Math.ceil(estimatedRequests + cost);
+                return allowedResults[Math.max(remaining, 0)];
+            } finally {
+                windowCounter.unlock();
+            }
+        }
+    }
+
+    /**
+     * Time until the weighted count has dropped far enough for a request of the cost, assuming no further requests.
+     */
+    private long calculateNextAllowedRequestTimeInSeconds(long currentTime, WindowCounter windowCounter, int cost) {
+        long elapsedInWindow = currentTime - windowCounter.windowStart;
+        double allowedBeforeNextRequest = apiLimitRequests - cost;
+        long waitInNanos;
+
+        if (windowCounter.currentCount <= allowedBeforeNextRequest) {
+            double requiredPreviousWeight = (allowedBeforeNextRequest - windowCounter.currentCount) / windowCounter.previousCount;
+            waitInNanos = (long) (apiLimitInNanos * (1 - requiredPreviousWeight)) - elapsedInWindow;
+        } else {
+            double requiredPreviousWeight = allowedBeforeNextRequest / windowCounter.currentCount;
+            waitInNanos = apiLimitInNanos - elapsedInWindow + (long) (apiLimitInNanos * (1 - requiredPreviousWeight));
+        }
+
+        return Math.max((waitInNanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND, 1);
+    }
+
+
+    /**
+     * A window counter is idle once both of its windows are older than the time window, from then on it has the
+     * same effect as a new counter.
+     */
+    private long removeIfIdle(String userIP, WindowCounter windowCounter, long currentTime) {
+
+        windowCounter.lock();
+        try {
+            long idleTime = windowCounter.windowStart + 2 * apiLimitInNanos;
+
+            if (idleTime > currentTime) {
+                return idleTime;
+            }
+
+            windowCounter.removed = true;
+            ipToWindowCounterStore.remove(userIP, windowCounter);
+            return RateLimitStateStore.REMOVED;
+        } finally {
+            windowCounter.unlock();
+        }
+    }
+
+    @Scheduled(initialDelayString = "${rate.limit.expiry.interval.millis}", fixedDelayString = "${rate.limit.expiry.interval.millis}")
+    public void expireIdleStates() {
+        ipToWindowCounterStore.expireAllIdleStates(clock.nanoTime());
+    }
+
+    @Override
+    public int numberOfTrackedIPs() {
+        return ipToWindowCounterStore.size();
+    }
+
+    @Override
+    public long estimateMemoryInBytes() {
+        return ipToWindowCounterStore.estimateMemoryInBytes(windowCounter -> WindowCounter.SIZE_IN_BYTES);
+    }
+
+    @Override
+    public RateLimitStateStatistics getStateStatistics() {
+        return ipToWindowCounterStore.getStatistics();
+    }
+
+
+    private static final class WindowCounter extends StateLock {
+
+        static final long SIZE_IN_BYTES = MemoryLayout.sizeOfObject(MemoryLayout.STATE_LOCK_FIELDS + MemoryLayout.LONG
+                + 2 * MemoryLayout.INT + 1);
+
+        private long windowStart;
+        private int previousCount;
+        private int currentCount;
+        private boolean removed;
+
+        WindowCounter(long windowStart) {
+            this.windowStart = windowStart;
+        }
+
+        void slideTo(long currentTime, long windowLength) {
+            long elapsedWindows = (currentTime - windowStart) / windowLength;
+
+            if (elapsedWindows <= 0) {
+                return;
+            }
+
+            previousCount = elapsedWindows == 1 ? currentCount : 0;
+            currentCount = 0;
+            windowStart += elapsedWindows * windowLength;
+        }
+
+        double previousWeight(long currentTime, long windowLength) {
+            return (double) (windowLength - Math.max(currentTime - windowStart, 0)) / windowLength;
+        }
+    }
+}
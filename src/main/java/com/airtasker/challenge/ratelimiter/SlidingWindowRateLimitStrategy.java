@@ -1,74 +1,155 @@
 package com.airtasker.challenge.ratelimiter;
 
-import com.airtasker.challenge.util.TimeProvider;
+import com.airtasker.challenge.util.MonotonicClock;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.time.Duration;
-import java.time.LocalDateTime;
-import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
-
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the times of the requests in the time window per IP. The queues are not bounded by the limit, so the limit can
+ * be {@link #updateLimit updated}: if it is raised, a queue grows with the next requests, if it is lowered, a queue
+ * keeps its latest requests up to the new limit, the older ones would not allow a request before them anyway.
+ * <p>
+ * Denied requests are not recorded, so an IP that is denied stays denied until its oldest request leaves the window.
+ * The queue remembers that time, and the following requests of the IP are denied without taking the lock, cleaning up
+ * the queue or allocating a result. A request that costs {@code n} requests is recorded {@code n} times, and a denied
+ * one only blocks the requests that cost at least as much.
+ */
 @Component
-public class SlidingWindowRateLimitStrategy implements RateLimitStrategy {
+@ConditionalOnProperty(name = "api.limit.strategy", havingValue = "sliding-window", matchIfMissing = true)
+public class SlidingWindowRateLimitStrategy implements SnapshotableRateLimitStrategy, ReloadableRateLimitStrategy,
+        ObservableRateLimitStrategy {
 
-    @Value("${rate.limit.cleanup.minutes}")
-    int timeToCleanupInMinutes;
+    private final RateLimitStateStore<RequestQueue> ipToRequestsStore;
+    private final RequestQueue untrackedRequests;
+    private final MonotonicClock clock;
+    private volatile RateLimit limit;
 
-    private ConcurrentHashMap<String, Queue<LocalDateTime>> ipToRequestsMap;
-    private final TimeProvider timeProvider;
-    private final int apiLimitInMinutes;
-    private final int apiLimitRequests;
 
+    public SlidingWindowRateLimitStrategy(MonotonicClock clock, int apiLimitInMinutes, int apiLimitRequests) {
+        this(clock, apiLimitInMinutes, apiLimitRequests, RateLimitStateStore.UNBOUNDED);
+    }
 
-    public SlidingWindowRateLimitStrategy(TimeProvider timeProvider, @Value("${api.limit.in.minutes}") int apiLimitInMinutes,
-                                          @Value("${api.limit.requests}") int apiLimitRequests) {
-        this.timeProvider = timeProvider;
-        this.apiLimitInMinutes = apiLimitInMinutes;
-        this.apiLimitRequests = apiLimitRequests;
-        this.ipToRequestsMap = new ConcurrentHashMap<>();
+    @Autowired
+    public SlidingWindowRateLimitStrategy(MonotonicClock clock, @Value("${api.limit.in.minutes}") int apiLimitInMinutes,
+                                          @Value("${api.limit.requests}") int apiLimitRequests,
+                                          @Value("${rate.limit.max.tracked.ips}") int maxTrackedIPs) {
+        this.clock = clock;
+        this.limit = new RateLimit(apiLimitInMinutes, apiLimitRequests);
+        this.ipToRequestsStore = new RateLimitStateStore<>(limit.apiLimitInNanos,
+                currentTime -> new RequestQueue(this.limit.apiLimitRequests), this::removeIfIdle, maxTrackedIPs);
+        this.untrackedRequests = new RequestQueue(apiLimitRequests);
     }
 
 
     @Override
-    public RateLimitResult checkRateLimit(String userIP) {
+    public RateLimitResult checkRateLimit(String userIP, int cost) {
+
+        RateLimit limit = this.limit;
+        long currentTime = clock.nanoTime();
+
+        ipToRequestsStore.expireIdleStates(currentTime);
+
+        return checkRateLimit(userIP, cost, limit, currentTime);
+    }
+
+    /**
+     * Reads the clock and the limit once for all requests of the batch.
+     */
+    @Override
+    public void checkRateLimits(RateLimitBatch batch) {
+
+        RateLimit limit = this.limit;
+        long currentTime = clock.nanoTime();
 
-        LocalDateTime currentTime = timeProvider.getCurrentTime();
+        ipToRequestsStore.expireIdleStates(currentTime, RateLimitStateStore.EXPIRY_CHECKS_PER_REQUEST * batch.size());
 
-        if (!ipToRequestsMap.containsKey(userIP)) {
-            addRequestToMap(userIP, currentTime, new ArrayBlockingQueue<>(apiLimitRequests));
-            return new RateLimitResult(true, apiLimitRequests - 1);
+        for (int i = 0; i < batch.size(); i++) {
+            batch.setResult(i, checkRateLimit(batch.userIP(i), batch.cost(i), limit, currentTime));
         }
+    }
+
+    private RateLimitResult checkRateLimit(String userIP, int cost, RateLimit limit, long currentTime) {
+
+        if (cost > limit.apiLimitRequests) {
+            return limit.deniedAboveLimit();
+        }
+
+        while (true) {
+            RequestQueue requestQueue = ipToRequestsStore.getOrCreate(userIP, currentTime);
+
+            if (requestQueue == null) {
+                // not tracked because the store is full, checked against the state that all untracked IPs share
+                requestQueue = untrackedRequests;
+            }
+
+            Block block = requestQueue.block;
 
-        Queue requestQueue = ipToRequestsMap.get(userIP);
+            if (block != null && currentTime <= block.until && block.limit == limit && cost >= block.cost) {
+                return limit.denied(TimeUnit.NANOSECONDS.toSeconds(block.until - currentTime));
+            }
+
+            requestQueue.lock();
+            try {
+                if (requestQueue != untrackedRequests && ipToRequestsStore.get(userIP) != requestQueue) {
+                    // removed as idle or evicted in the meantime
+                    continue;
+                }
+
+                Deque<Long> requestTimes = requestQueue.requestTimes;
+
+                cleanExpiredRequestsInQueue(currentTime, requestTimes, limit);
+                removeRequestsAboveLimit(requestTimes, limit);
+
+                if (requestTimes.size() + cost > limit.apiLimitRequests) {
+                    long allowedAt = timeOfRequest(requestTimes, requestTimes.size() + cost - limit.apiLimitRequests - 1)
+                            + limit.apiLimitInNanos;
 
-        cleanExpiredRequestsInQueue(currentTime, requestQueue);
+                    requestQueue.block = new Block(limit, cost, allowedAt);
+                    return limit.denied(TimeUnit.NANOSECONDS.toSeconds(allowedAt - currentTime));
+                }
 
-        if (requestQueue.size() >= apiLimitRequests) {
-            return new RateLimitResult(false, calculateNextAllowedRequestTimeInSeconds(currentTime, requestQueue), 0);
-        } else {
-            if (addRequestToMap(userIP, currentTime, requestQueue)) {
-                return new RateLimitResult(true, apiLimitRequests - requestQueue.size());
+                for (int i = 0; i < cost; i++) {
+                    requestTimes.offer(currentTime);
+                }
+                return limit.allowed(limit.apiLimitRequests - requestTimes.size());
+            } finally {
+                requestQueue.unlock();
             }
-            return new RateLimitResult(false, apiLimitInMinutes * 60, 0);
         }
+    }
+
+    /**
+     * @return the time of the request at the index, counted from the oldest. A request that costs {@code n} requests
+     * is allowed once the {@code n} oldest requests above the limit have left the window.
+     */
+    private long timeOfRequest(Deque<Long> queueOfRequests, int index) {
+        Iterator<Long> requestTimes = queueOfRequests.iterator();
 
+        for (int i = 0; i < index; i++) {
+            requestTimes.next();
+        }
+        return requestTimes.next();
     }
 
-    private long calculateNextAllowedRequestTimeInSeconds(LocalDateTime currentTime, Queue queueOfRequests) {
-        LocalDateTime timeOfFirstRequest = (LocalDateTime) queueOfRequests.peek();
-        Duration diff = Duration.between(currentTime, timeOfFirstRequest.plusMinutes(apiLimitInMinutes));
 
-        return diff.getSeconds();
+    private void removeRequestsAboveLimit(Deque<Long> queue, RateLimit limit) {
+        while (queue.size() > limit.apiLimitRequests) {
+            queue.poll();
+        }
     }
 
 
-    private void cleanExpiredRequestsInQueue(LocalDateTime currentTime, Queue<LocalDateTime> queue) {
+    private void cleanExpiredRequestsInQueue(long currentTime, Deque<Long> queue, RateLimit limit) {
 
-        LocalDateTime expirationTime = currentTime.minusMinutes(apiLimitInMinutes);
+        long expirationTime = currentTime - limit.apiLimitInNanos;
 
         while (firstEntryExpired(queue, expirationTime)) {
             queue.poll();
@@ -76,40 +157,161 @@ public class SlidingWindowRateLimitStrategy implements RateLimitStrategy {
 
     }
 
-    private boolean firstEntryExpired(Queue<LocalDateTime> queue, LocalDateTime expirationTime) {
-        return queue.peek() != null && expirationTime.isAfter(queue.peek());
+    private boolean firstEntryExpired(Deque<Long> queue, long expirationTime) {
+        Long timeOfFirstRequest = queue.peek();
+        return timeOfFirstRequest != null && timeOfFirstRequest < expirationTime;
     }
 
-    private boolean addRequestToMap(String userIP, LocalDateTime currentTime, Queue<LocalDateTime> requestTimeQueue) {
 
-        if (requestTimeQueue.offer(currentTime)) {
-            ipToRequestsMap.put(userIP, requestTimeQueue);
-            return true;
+    /**
+     * A queue is idle once its latest request has left the time window.
+     */
+    private long removeIfIdle(String userIP, RequestQueue requestQueue, long currentTime) {
+
+        requestQueue.lock();
+        try {
+            Long timeOfLastRequest = requestQueue.requestTimes.peekLast();
+
+            if (timeOfLastRequest != null) {
+                long idleTime = timeOfLastRequest + limit.apiLimitInNanos;
+
+                if (idleTime >= currentTime) {
+                    return idleTime;
+                }
+            }
+
+            ipToRequestsStore.remove(userIP, requestQueue);
+            return RateLimitStateStore.REMOVED;
+        } finally {
+            requestQueue.unlock();
         }
+    }
 
-        return false;
+    @Override
+    public void updateLimit(int apiLimitInMinutes, int apiLimitRequests) {
+        limit = new RateLimit(apiLimitInMinutes, apiLimitRequests);
     }
 
+    @Override
+    public String snapshotFormat() {
+        return "sliding-window";
+    }
+
+    @Override
+    public void writeSnapshot(RateLimitSnapshot.Writer writer) {
+        RateLimit limit = this.limit;
+        long[] requestTimes = new long[limit.apiLimitRequests];
+
+        ipToRequestsStore.forEach((userIP, requestQueue) -> {
+            int numberOfRequests = 0;
+
+            requestQueue.lock();
+            try {
+                removeRequestsAboveLimit(requestQueue.requestTimes, limit);
+
+                for (Long requestTime : requestQueue.requestTimes) {
+                    requestTimes[numberOfRequests++] = requestTime;
+                }
+            } finally {
+                requestQueue.unlock();
+            }
 
-    @Scheduled(cron = "${schedule.cleanup.rate.limit.data}")
-    public void scheduleCleanupTask() {
+            if (numberOfRequests > 0) {
+                writer.write(userIP, requestTimes[numberOfRequests - 1] + limit.apiLimitInNanos, requestTimes,
+                        numberOfRequests);
+            }
+        });
+    }
+
+    @Override
+    public void restoreSnapshot(RateLimitSnapshot.Reader reader) {
+        int apiLimitRequests = limit.apiLimitRequests;
+        long currentTime = clock.nanoTime();
 
-        System.out.println("rate limit cleaning job started, cleaning entries older than " + timeToCleanupInMinutes + " minutes");
+        while (reader.next()) {
+            RequestQueue requestQueue = ipToRequestsStore.getOrCreate(reader.getUserIP(), currentTime);
 
-        if (ipToRequestsMap.size() == 0) {
-            return;
+            if (requestQueue == null) {
+                continue;
+            }
+
+            requestQueue.lock();
+            try {
+                // the latest requests, if the limit was lowered
+                for (int i = Math.max(reader.getNumberOfTimes() - apiLimitRequests, 0); i < reader.getNumberOfTimes(); i++) {
+                    requestQueue.requestTimes.offer(reader.getTime(i));
+                }
+            } finally {
+                requestQueue.unlock();
+            }
         }
+    }
 
-        deleteMapEntriesOlderThanInMinutes(ipToRequestsMap, timeToCleanupInMinutes);
+    @Scheduled(initialDelayString = "${rate.limit.expiry.interval.millis}", fixedDelayString = "${rate.limit.expiry.interval.millis}")
+    public void expireIdleStates() {
+        ipToRequestsStore.expireAllIdleStates(clock.nanoTime());
     }
 
-    protected ConcurrentHashMap<String, Queue<LocalDateTime>> deleteMapEntriesOlderThanInMinutes(ConcurrentHashMap<String, Queue<LocalDateTime>> ipMap, int minutes) {
-        ipMap.entrySet().removeIf(entry -> isOlderThan(entry, minutes));
-        return ipMap;
+    @Override
+    public int numberOfTrackedIPs() {
+        return ipToRequestsStore.size();
+    }
+
+    @Override
+    public long estimateMemoryInBytes() {
+        return ipToRequestsStore.estimateMemoryInBytes(RequestQueue::estimateMemoryInBytes);
     }
 
-    private boolean isOlderThan(Map.Entry<String, Queue<LocalDateTime>> entry, int minutes) {
-        LocalDateTime firstRequestTime = entry.getValue().peek();
-        return firstRequestTime == null || firstRequestTime.isBefore(timeProvider.getCurrentTime().minusMinutes(minutes));
+    @Override
+    public RateLimitStateStatistics getStateStatistics() {
+        return ipToRequestsStore.getStatistics();
+    }
+
+
+    private static final class RequestQueue extends StateLock {
+
+        private final ArrayDeque<Long> requestTimes;
+
+        /**
+         * The latest denial, written while holding the lock and read without it, or {@code null}.
+         */
+        private volatile Block block;
+
+        RequestQueue(int capacity) {
+            this.requestTimes = new ArrayDeque<>(capacity);
+        }
+
+        /**
+         * Every request time is a boxed Long, the array of the deque is a power of two larger than its size.
+         */
+        long estimateMemoryInBytes() {
+            int size = requestTimes.size();
+
+            return MemoryLayout.sizeOfObject(MemoryLayout.STATE_LOCK_FIELDS + 2 * MemoryLayout.REFERENCE)
+                    + (block == null ? 0 : MemoryLayout.sizeOfObject(MemoryLayout.REFERENCE + MemoryLayout.INT
+                    + MemoryLayout.LONG))
+                    + MemoryLayout.sizeOfObject(3 * MemoryLayout.REFERENCE)
+                    + MemoryLayout.sizeOfArray(Integer.highestOneBit(Math.max(size, 7)) << 1, MemoryLayout.REFERENCE)
+                    + size * MemoryLayout.sizeOfObject(MemoryLayout.LONG);
+        }
+    }
+
+
+    /**
+     * Requests of the IP that cost at least {@link #cost} are denied with {@link #limit} until {@link #until}. The
+     * three are published together, so a request checked without the lock never sees the time of one denial with
+     * the limit or the cost of another.
+     */
+    private static final class Block {
+
+        private final RateLimit limit;
+        private final int cost;
+        private final long until;
+
+        Block(RateLimit limit, int cost, long until) {
+            this.limit = limit;
+            this.cost = cost;
+            this.until = until;
+        }
     }
 }
@@ -0,0 +1,115 @@
+package com.airtasker.challenge.ratelimiter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Fixed number of longs that hold the slots of an open addressing hash table, either in a {@code long[]} on the heap
+ * or in a direct {@link ByteBuffer} outside of the heap. Off heap, the state of millions of IPs neither enlarges the
+ * old generation nor has to be traced or copied by the garbage collector, which only sees the buffer object.
+ * <p>
+ * A slot table is not thread safe, it is guarded by the lock of its owner.
+ */
+abstract class SlotTable {
+
+    /**
+     * Where the slots are stored, selected with the {@code rate.limit.state.storage} property.
+     */
+    enum Storage {
+        HEAP, OFF_HEAP;
+
+        static Storage of(String property) {
+            switch (property) {
+                case "heap":
+                    return HEAP;
+                case "off-heap":
+                    return OFF_HEAP;
+                default:
+                    throw new IllegalArgumentException("unknown rate limit state storage: " + property);
+            }
+        }
+    }
+
+
+    static SlotTable allocate(Storage storage, int length) {
+        return storage == Storage.HEAP ? new HeapSlotTable(length) : new OffHeapSlotTable(length);
+    }
+
+    abstract long get(int index);
+
+    abstract void set(int index, long value);
+
+    /**
+     * Copies the given number of longs within the table, like {@link System#arraycopy}.
+     */
+    abstract void copy(int sourceIndex, int targetIndex, int length);
+
+    abstract int length();
+
+
+    private static final class HeapSlotTable extends SlotTable {
+
+        private final long[] slots;
+
+        HeapSlotTable(int length) {
+            this.slots = new long[length];
+        }
+
+        @Override
+        long get(int index) {
+            return slots[index];
+        }
+
+        @Override
+        void set(int index, long value) {
+            slots[index] = value;
+        }
+
+        @Override
+        void copy(int sourceIndex, int targetIndex, int length) {
+            System.arraycopy(slots, sourceIndex, slots, targetIndex, length);
+        }
+
+        @Override
+        int length() {
+            return slots.length;
+        }
+    }
+
+    /**
+     * The memory is released when the buffer is garbage collected, its size is limited by
+     * {@code -XX:MaxDirectMemorySize}.
+     */
+    private static final class OffHeapSlotTable extends SlotTable {
+
+        private final ByteBuffer slots;
+        private final int length;
+
+        OffHeapSlotTable(int length) {
+            this.slots = ByteBuffer.allocateDirect(length * Long.BYTES).order(ByteOrder.nativeOrder());
+            this.length = length;
+        }
+
+        @Override
+        long get(int index) {
+            return slots.getLong(index * Long.BYTES);
+        }
+
+        @Override
+        void set(int index, long value) {
+            slots.putLong(index * Long.BYTES, value);
+        }
+
+        @Override
+        void copy(int sourceIndex, int targetIndex, int length) {
+            for (int i = 0; i < length; i++) {
+                set(targetIndex + i, get(sourceIndex + i));
+            }
+        }
+
+        @Override
+        int length() {
+            return length;
+        }
+    }
+}
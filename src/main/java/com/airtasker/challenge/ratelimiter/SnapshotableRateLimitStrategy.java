@@ -0,0 +1,23 @@
+package com.airtasker.challenge.ratelimiter;
+
+/**
+ * A strategy whose state can be saved to a {@link RateLimitSnapshot} and restored after a restart, so the clients do
+ * not get a new limit with every deployment.
+ */
+public interface SnapshotableRateLimitStrategy extends RateLimitStrategy {
+
+    /**
+     * Identifies the content of the records. A snapshot is only restored by a strategy with the same format.
+     */
+    String snapshotFormat();
+
+    /**
+     * Writes a record for every tracked IP. Requests may be checked concurrently.
+     */
+    void writeSnapshot(RateLimitSnapshot.Writer writer);
+
+    /**
+     * Restores the records before the first request is checked.
+     */
+    void restoreSnapshot(RateLimitSnapshot.Reader reader);
+}
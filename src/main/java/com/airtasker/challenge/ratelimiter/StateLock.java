@@ -0,0 +1,33 @@
+package com.airtasker.challenge.ratelimiter;
+
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+
+/**
+ * The lock of the state of a key, which the state extends, so it takes neither a separate lock object per key nor
+ * the monitor of the state. A virtual thread that waits for a monitor pins its carrier thread (up to Java 23), one
+ * that waits for this lock is unmounted, so a hot key does not block the carrier threads of the other requests.
+ * <p>
+ * The lock is not reentrant: the states are only locked around their own reads and updates, which never lock the
+ * same state again.
+ */
+abstract class StateLock extends AbstractQueuedSynchronizer {
+
+    final void lock() {
+        acquire(1);
+    }
+
+    final void unlock() {
+        release(1);
+    }
+
+    @Override
+    protected final boolean tryAcquire(int ignored) {
+        return compareAndSetState(0, 1);
+    }
+
+    @Override
+    protected final boolean tryRelease(int ignored) {
+        setState(0);
+        return true;
+    }
+}
@@ -0,0 +1,45 @@
+package com.airtasker.challenge.util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coarse clock, which returns the time of the last tick of a background thread. Reading it is a single volatile
+ * read, the price is that the time is up to one tick behind.
+ */
+@Component
+@ConditionalOnProperty(name = "rate.limit.clock", havingValue = "cached")
+public class CachedMonotonicClock implements MonotonicClock {
+
+    private final ScheduledExecutorService ticker;
+    private volatile long nanoTime;
+
+
+    public CachedMonotonicClock(@Value("${rate.limit.clock.tick.millis}") long tickInMillis) {
+        this.nanoTime = System.nanoTime();
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limit-clock");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        ticker.scheduleAtFixedRate(() -> nanoTime = System.nanoTime(), tickInMillis, tickInMillis, TimeUnit.MILLISECONDS);
+    }
+
+
+    @Override
+    public long nanoTime() {
+        return nanoTime;
+    }
+
+    @PreDestroy
+    public void stop() {
+        ticker.shutdownNow();
+    }
+}
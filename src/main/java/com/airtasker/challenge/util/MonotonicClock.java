@@ -0,0 +1,11 @@
+package com.airtasker.challenge.util;
+
+/**
+ * Monotonic time in nanoseconds, like {@link System#nanoTime()}. The values have an arbitrary origin and are only
+ * meaningful as the difference between two values of the same clock. Unlike the wall clock, the time does not jump
+ * when the system time is adjusted, so it cannot shorten or extend a time window.
+ */
+public interface MonotonicClock {
+
+    long nanoTime();
+}
@@ -0,0 +1,14 @@
+package com.airtasker.challenge.util;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConditionalOnProperty(name = "rate.limit.clock", havingValue = "system", matchIfMissing = true)
+public class SystemMonotonicClock implements MonotonicClock {
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+}
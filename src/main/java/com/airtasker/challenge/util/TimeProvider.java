@@ -1,7 +0,0 @@
-package com.airtasker.challenge.util;
-
-import java.time.LocalDateTime;
-
-public interface TimeProvider {
-    LocalDateTime getCurrentTime();
-}
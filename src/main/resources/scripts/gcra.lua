@@ -0,0 +1,43 @@
+-- Generic cell rate algorithm for one key, evaluated atomically by Redis.
+-- KEYS[1]: key of the client
+-- ARGV[1]: emission interval in microseconds (time window / limit of requests)
+-- ARGV[2]: time window in microseconds
+-- ARGV[3]: number of requesting permits, as many of them are granted as the limit allows
+-- ARGV[4]: 1 to grant the permits only if the limit allows all of them (a request that costs more than one request)
+-- returns {granted permits, remaining requests, retry after in microseconds if not all permits were granted}
+
+-- the time of the server is the same for all instances of the service
+redis.replicate_commands()
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+
+local emission_interval = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local permits = tonumber(ARGV[3])
+local all_or_nothing = ARGV[4] == '1'
+
+local tat = math.max(tonumber(redis.call('GET', KEYS[1])) or now, now)
+local available = math.floor((now + window - tat) / emission_interval)
+local granted = math.max(math.min(permits, available), 0)
+if all_or_nothing and granted < permits then
+    granted = 0
+end
+local new_tat = tat + granted * emission_interval
+
+if granted > 0 then
+    -- once the theoretical arrival time has passed, the key has the same effect as a new one,
+    -- %d because Lua would convert the number into a string with only 14 significant digits
+    redis.call('SET', KEYS[1], string.format('%d', new_tat), 'PX', math.ceil((new_tat - now) / 1000))
+end
+
+local retry_after = 0
+if granted < permits then
+    -- until the next permit, or until all of them are available
+    local needed = 1
+    if all_or_nothing then
+        needed = permits
+    end
+    retry_after = new_tat + needed * emission_interval - window - now
+end
+
+return {granted, math.floor((now + window - new_tat) / emission_interval), retry_after}
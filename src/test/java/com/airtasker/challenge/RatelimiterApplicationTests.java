@@ -1,6 +1,7 @@
 package com.airtasker.challenge;
 
-import com.airtasker.challenge.util.TimeProvider;
+import com.airtasker.challenge.ratelimiter.RateLimitMetrics;
+import com.airtasker.challenge.util.MonotonicClock;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -16,15 +17,21 @@ import org.springframework.test.web.servlet.request.RequestPostProcessor;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
-import java.time.LocalDateTime;
-
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
 import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ContextConfiguration(classes = {RatelimiterApplication.class})
-@TestPropertySource(properties = {"api.limit.in.minutes=2", "api.limit.requests=2", "schedule.cleanup.rate.limit.data=0 0 18 27 1 ?", "rate.limit.cleanup.minutes=1440"})
+@TestPropertySource(properties = {"api.limit.in.minutes=2", "api.limit.requests=2", "rate.limit.expiry.interval.millis=86400000",
+        "rate.limit.max.tracked.ips=1000", "rate.limit.policies[0].key=header:X-Api-Key",
+        "rate.limit.policies[0].path=/api-key/**", "rate.limit.policies[0].limits=1/1m",
+        "rate.limit.metrics.heavy.hitters=10", "rate.limit.metrics.latency.sampling.interval=1",
+        "management.endpoints.web.exposure.include=health,metrics,ratelimit"})
 @WebAppConfiguration
 @ExtendWith(SpringExtension.class)
 public class RatelimiterApplicationTests {
@@ -32,14 +39,17 @@ public class RatelimiterApplicationTests {
     @Autowired
     private WebApplicationContext wac;
 
+    @Autowired
+    private RateLimitMetrics rateLimitMetrics;
+
     @MockBean
-    TimeProvider timeProvider;
+    MonotonicClock clock;
 
     private MockMvc mockMvc;
 
     @BeforeEach
     public void setup() {
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(LocalDateTime.now());
+        Mockito.when(clock.nanoTime()).thenReturn(System.nanoTime());
         this.mockMvc = MockMvcBuilders.webAppContextSetup(this.wac).apply(springSecurity()).build();
     }
 
@@ -68,17 +78,17 @@ public class RatelimiterApplicationTests {
         String userIp = "127.0.0.3";
 
         //First Request
-        LocalDateTime timeOfFirstRequest = LocalDateTime.now();
+        long timeOfFirstRequest = System.nanoTime();
 
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(timeOfFirstRequest);
+        Mockito.when(clock.nanoTime()).thenReturn(timeOfFirstRequest);
         mockMvc.perform(get("/").with(ip(userIp))).andExpect(status().isOk());
 
         //Second Request
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(timeOfFirstRequest.plusMinutes(1));
+        Mockito.when(clock.nanoTime()).thenReturn(timeOfFirstRequest + MINUTES.toNanos(1));
         mockMvc.perform(get("/").with(ip(userIp))).andExpect(status().isOk());
 
         //ThirdRequest
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(timeOfFirstRequest.plusMinutes(5));
+        Mockito.when(clock.nanoTime()).thenReturn(timeOfFirstRequest + MINUTES.toNanos(5));
         mockMvc.perform(get("/").with(ip(userIp))).andExpect(status().isOk());
     }
 
@@ -106,6 +116,40 @@ public class RatelimiterApplicationTests {
 
     }
 
+    @Test
+    public void shouldNotAllow_WhenPolicyOfApiKeyIsExceeded_FromAnotherIP() throws Exception {
+        mockMvc.perform(get("/api-key/data").header("X-Api-Key", "first").with(ip("127.0.0.8")))
+                .andExpect(status().isNotFound());
+
+        mockMvc.perform(get("/api-key/data").header("X-Api-Key", "first").with(ip("127.0.0.9")))
+                .andExpect(status().isTooManyRequests());
+        mockMvc.perform(get("/api-key/data").header("X-Api-Key", "second").with(ip("127.0.0.9")))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void shouldRecordDeniedRequest_InMetrics() throws Exception {
+        String userIp = "127.0.0.10";
+        long deniedRequests = rateLimitMetrics.getDeniedCount();
+
+        mockMvc.perform(get("/").with(ip(userIp))).andExpect(status().isOk());
+        mockMvc.perform(get("/").with(ip(userIp))).andExpect(status().isOk());
+        mockMvc.perform(get("/").with(ip(userIp))).andExpect(status().isTooManyRequests());
+
+        assertEquals(deniedRequests + 1, rateLimitMetrics.getDeniedCount());
+        assertTrue(rateLimitMetrics.heaviestClients().containsKey(userIp));
+    }
+
+    @Test
+    public void shouldRequireAuthentication_ForActuatorEndpointsExceptHealth() throws Exception {
+        mockMvc.perform(get("/actuator/ratelimit").with(ip("127.0.0.11"))).andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/actuator/metrics").with(ip("127.0.0.11"))).andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/actuator/health").with(ip("127.0.0.12"))).andExpect(status().isOk());
+
+        mockMvc.perform(get("/actuator/ratelimit").with(ip("127.0.0.12")).with(user("admin")))
+                .andExpect(status().isOk());
+    }
+
 
     RequestPostProcessor ip(String ip) {
         return request -> {
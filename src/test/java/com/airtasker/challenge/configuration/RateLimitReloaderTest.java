@@ -0,0 +1,111 @@
+package com.airtasker.challenge.configuration;
+
+import com.airtasker.challenge.ratelimiter.RateLimitPolicyEngine;
+import com.airtasker.challenge.ratelimiter.SlidingWindowRateLimitStrategy;
+import com.airtasker.challenge.util.TestClock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitReloaderTest {
+
+    private static final String USER_IP = "127.0.0.1";
+
+    @TempDir
+    Path directory;
+
+    private Path file;
+    private SlidingWindowRateLimitStrategy strategy;
+    private RateLimitPolicyEngine policyEngine;
+    private RateLimitReloader reloader;
+
+
+    @BeforeEach
+    public void setUp() {
+        TestClock clock = new TestClock();
+
+        file = directory.resolve("rate-limits.properties");
+        strategy = new SlidingWindowRateLimitStrategy(clock, 60, 2);
+        policyEngine = new RateLimitPolicyEngine(clock, Collections.emptyList(), 0);
+        reloader = new RateLimitReloader(strategy, policyEngine, new RateLimitPolicyProperties(), file.toString(), 60, 2);
+    }
+
+
+    @Test
+    public void shouldApplyLimit_AndKeepState_WhenFileChanges() throws IOException {
+
+        strategy.checkRateLimit(USER_IP);
+        strategy.checkRateLimit(USER_IP);
+        assertFalse(strategy.checkRateLimit(USER_IP).isRequestAllowed());
+
+        write("api.limit.requests=3\n", 1);
+        reloader.reloadIfModified();
+
+        assertTrue(strategy.checkRateLimit(USER_IP).isRequestAllowed());
+        assertFalse(strategy.checkRateLimit(USER_IP).isRequestAllowed());
+
+        // the application properties apply again once the file is deleted
+        write("api.limit.requests=4\n", 2);
+        reloader.reloadIfModified();
+        Files.delete(file);
+        reloader.reloadIfModified();
+
+        assertFalse(strategy.checkRateLimit(USER_IP).isRequestAllowed());
+    }
+
+    @Test
+    public void shouldApplyPolicies_WhenFileChanges() throws IOException {
+
+        assertTrue(policyEngine.checkRateLimit(request("/api/tasks")).isRequestAllowed());
+        assertTrue(policyEngine.checkRateLimit(request("/api/tasks")).isRequestAllowed());
+
+        write("rate.limit.policies[0].name=api\n"
+                + "rate.limit.policies[0].path=/api/**\n"
+                + "rate.limit.policies[0].limits=1/1m,10/1h\n", 1);
+        reloader.reloadIfModified();
+
+        assertTrue(policyEngine.checkRateLimit(request("/api/tasks")).isRequestAllowed());
+        assertFalse(policyEngine.checkRateLimit(request("/api/tasks")).isRequestAllowed());
+        assertTrue(policyEngine.checkRateLimit(request("/")).isRequestAllowed());
+    }
+
+    @Test
+    public void shouldKeepCurrentLimits_WhenFileIsInvalid() throws IOException {
+
+        write("api.limit.requests=3\n", 1);
+        reloader.reloadIfModified();
+
+        write("api.limit.requests=1\n"
+                + "rate.limit.policies[0].limits=1/1w\n", 2);
+        reloader.reloadIfModified();
+
+        assertTrue(strategy.checkRateLimit(USER_IP).isRequestAllowed());
+        assertTrue(strategy.checkRateLimit(USER_IP).isRequestAllowed());
+        assertTrue(strategy.checkRateLimit(USER_IP).isRequestAllowed());
+        assertFalse(strategy.checkRateLimit(USER_IP).isRequestAllowed());
+    }
+
+    /**
+     * Writes the file with a distinct modification time, the resolution of the file system may be a second or more.
+     */
+    private void write(String properties, long modification) throws IOException {
+        Files.write(file, properties.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modification * 10_000));
+    }
+
+    private static MockHttpServletRequest request(String path) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.setRemoteAddr(USER_IP);
+        return request;
+    }
+}
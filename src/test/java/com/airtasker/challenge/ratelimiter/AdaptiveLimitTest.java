@@ -0,0 +1,135 @@
+package com.airtasker.challenge.ratelimiter;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveLimitTest {
+
+    private static final long WINDOW_IN_NANOS = MILLISECONDS.toNanos(100);
+
+    private AdaptiveLimit adaptiveLimit;
+    private long currentTime;
+
+
+    @BeforeEach
+    public void setUp() {
+        adaptiveLimit = new AdaptiveLimit(20, 5, 100, WINDOW_IN_NANOS, 1.5);
+        currentTime = 0;
+    }
+
+    /**
+     * Records one window of samples with the given latency, each a tenth of the window after the previous one, while
+     * the limit is fully used.
+     */
+    private void recordWindow(long latencyInMillis, int failures) {
+        recordWindow(latencyInMillis, failures, adaptiveLimit.getLimit());
+    }
+
+    private void recordWindow(long latencyInMillis, int failures, int inFlight) {
+        for (int i = 0; i < AdaptiveLimit.MIN_SAMPLES_PER_WINDOW; i++) {
+            currentTime += WINDOW_IN_NANOS / AdaptiveLimit.MIN_SAMPLES_PER_WINDOW;
+            adaptiveLimit.onSample(MILLISECONDS.toNanos(latencyInMillis), inFlight, i < failures, currentTime);
+        }
+    }
+
+
+    @Test
+    public void shouldGrowLimit_WhileLatencyIsStable() {
+
+        for (int window = 0; window < 20; window++) {
+            int limit = adaptiveLimit.getLimit();
+            recordWindow(10, 0);
+
+            assertTrue(adaptiveLimit.getLimit() >= limit);
+        }
+
+        assertTrue(adaptiveLimit.getLimit() > 30);
+    }
+
+    @Test
+    public void shouldKeepLimit_WhileFewRequestsAreInFlight() {
+
+        for (int window = 0; window < 50; window++) {
+            recordWindow(10, 0, 1);
+        }
+        assertEquals(20, adaptiveLimit.getLimit());
+
+        // a burst that uses the limit lets it grow again, smoothed over the windows
+        recordWindow(10, 0, 20);
+        recordWindow(10, 0, 20);
+        assertTrue(adaptiveLimit.getLimit() > 20);
+    }
+
+    @Test
+    public void shouldShrinkLimit_WhenLatencyRises() {
+
+        for (int window = 0; window < 10; window++) {
+            recordWindow(10, 0);
+        }
+        int limitOfFastBackend = adaptiveLimit.getLimit();
+
+        for (int window = 0; window < 5; window++) {
+            int limit = adaptiveLimit.getLimit();
+            recordWindow(100, 0);
+
+            assertTrue(adaptiveLimit.getLimit() < limit);
+        }
+
+        assertTrue(adaptiveLimit.getLimit() < limitOfFastBackend * 0.8);
+    }
+
+    @Test
+    public void shouldTolerateLatency_WithinToleranceOfLongTermAverage() {
+
+        for (int window = 0; window < 10; window++) {
+            recordWindow(10, 0);
+        }
+        int limit = adaptiveLimit.getLimit();
+
+        recordWindow(14, 0);
+
+        assertTrue(adaptiveLimit.getLimit() >= limit);
+    }
+
+    @Test
+    public void shouldBackOff_WhenRequestsFail() {
+
+        recordWindow(10, 0);
+        int limit = adaptiveLimit.getLimit();
+
+        recordWindow(10, 1);
+
+        assertEquals((int) (limit * AdaptiveLimit.BACKOFF_RATIO), adaptiveLimit.getLimit(), 1);
+    }
+
+    @Test
+    public void shouldKeepLimitBetweenMinAndMax() {
+
+        for (int window = 0; window < 200; window++) {
+            recordWindow(10, 0);
+        }
+        assertEquals(100, adaptiveLimit.getLimit());
+
+        for (int window = 0; window < 200; window++) {
+            recordWindow(10, AdaptiveLimit.MIN_SAMPLES_PER_WINDOW);
+        }
+        assertEquals(5, adaptiveLimit.getLimit());
+    }
+
+    @Test
+    public void shouldNotAdjustLimit_UntilWindowHasEnoughSamples() {
+
+        recordWindow(10, 0);
+        int limit = adaptiveLimit.getLimit();
+
+        for (int i = 0; i < AdaptiveLimit.MIN_SAMPLES_PER_WINDOW - 1; i++) {
+            currentTime += WINDOW_IN_NANOS;
+            adaptiveLimit.onSample(MILLISECONDS.toNanos(1000), adaptiveLimit.getLimit(), true, currentTime);
+        }
+
+        assertEquals(limit, adaptiveLimit.getLimit());
+    }
+}
@@ -0,0 +1,288 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.TestClock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactGcraRateLimitStrategyTest {
+
+    private static final int NO_LIMIT_OF_TRACKED_IPS = 0;
+
+    private TestClock clock;
+    private CompactGcraRateLimitStrategy strategy;
+    private String firstUserIP;
+
+
+    @BeforeEach
+    public void setUp() {
+        clock = new TestClock();
+        firstUserIP = "127.0.0.1";
+    }
+
+
+    @Test
+    public void shouldAllowBurstOfLimit_WhenFirstRequests() {
+
+        strategy = new CompactGcraRateLimitStrategy(clock, 1, 3);
+
+        assertEquals(2, strategy.checkRateLimit(firstUserIP).getRemainingAllowedAmountOfRequests());
+        assertEquals(1, strategy.checkRateLimit(firstUserIP).getRemainingAllowedAmountOfRequests());
+
+        RateLimitResult result = strategy.checkRateLimit(firstUserIP);
+
+        assertTrue(result.isRequestAllowed());
+        assertEquals(0, result.getRemainingAllowedAmountOfRequests());
+        assertFalse(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+    }
+
+    @Test
+    public void shouldCalculateRemainingTimeInSeconds_UntilNextEmissionInterval() {
+
+        strategy = new CompactGcraRateLimitStrategy(clock, 1, 3);
+
+        long timeOfFirstRequest = clock.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            strategy.checkRateLimit(firstUserIP);
+        }
+
+        clock.setTime(timeOfFirstRequest + SECONDS.toNanos(1));
+        RateLimitResult result = strategy.checkRateLimit(firstUserIP);
+
+        assertFalse(result.isRequestAllowed());
+        assertEquals(19, result.getNextAllowedRequestTimeInSeconds());
+
+        clock.setTime(timeOfFirstRequest + SECONDS.toNanos(20));
+        assertTrue(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+    }
+
+    @Test
+    public void shouldLimitIPv6NetworkAsOneClient_WhenPrefixIsAggregated() {
+
+        strategy = new CompactGcraRateLimitStrategy(clock, 1, 2, NO_LIMIT_OF_TRACKED_IPS, 64, SlotTable.Storage.HEAP);
+
+        assertTrue(strategy.checkRateLimit("2001:db8:0:1::1").isRequestAllowed());
+        assertTrue(strategy.checkRateLimit("2001:db8:0:1::2").isRequestAllowed());
+        assertFalse(strategy.checkRateLimit("2001:db8:0:1:ffff::3").isRequestAllowed());
+
+        assertTrue(strategy.checkRateLimit("2001:db8:0:2::1").isRequestAllowed());
+    }
+
+    @Test
+    public void shouldLimitEveryIPv6Address_WhenWholeAddressIsKept() {
+
+        strategy = new CompactGcraRateLimitStrategy(clock, 1, 1, NO_LIMIT_OF_TRACKED_IPS, IpAddressKey.IPV6_ADDRESS_LENGTH,
+                SlotTable.Storage.HEAP);
+
+        assertTrue(strategy.checkRateLimit("2001:db8:0:1::1").isRequestAllowed());
+        assertTrue(strategy.checkRateLimit("2001:db8:0:1::2").isRequestAllowed());
+        assertFalse(strategy.checkRateLimit("2001:db8:0:1:0:0:0:2").isRequestAllowed());
+    }
+
+    @Test
+    public void shouldLimitRemoteAddressesThatAreNotIPAddresses() {
+
+        strategy = new CompactGcraRateLimitStrategy(clock, 1, 1);
+
+        assertTrue(strategy.checkRateLimit("unix-socket").isRequestAllowed());
+        assertFalse(strategy.checkRateLimit("unix-socket").isRequestAllowed());
+    }
+
+    @Test
+    public void shouldKeepEveryIP_WhenTableGrows() {
+
+        strategy = new CompactGcraRateLimitStrategy(clock, 60, 1);
+
+        assertKeepsEveryIP();
+    }
+
+    @Test
+    public void shouldKeepEveryIP_WhenTableGrows_OffHeap() {
+
+        strategy = new CompactGcraRateLimitStrategy(clock, 60, 1, NO_LIMIT_OF_TRACKED_IPS, IpAddressKey.IPV6_ADDRESS_LENGTH,
+                SlotTable.Storage.OFF_HEAP);
+
+        assertKeepsEveryIP();
+    }
+
+    private void assertKeepsEveryIP() {
+        for (int i = 0; i < 100_000; i++) {
+            strategy.checkRateLimit("10." + (i >>> 16) + "." + (i >>> 8 & 0xff) + "." + (i & 0xff));
+            strategy.checkRateLimit("2001:db8::" + Integer.toHexString(i));
+        }
+
+        assertEquals(200_000, strategy.numberOfTrackedIPs());
+        for (int i = 0; i < 100_000; i += 7) {
+            assertFalse(strategy.checkRateLimit("10." + (i >>> 16) + "." + (i >>> 8 & 0xff) + "." + (i & 0xff)).isRequestAllowed());
+            assertFalse(strategy.checkRateLimit("2001:db8::" + Integer.toHexString(i)).isRequestAllowed());
+        }
+    }
+
+    @Test
+    public void shouldDeleteIdleEntries() {
+
+        long now = clock.nanoTime();
+        strategy = new CompactGcraRateLimitStrategy(clock, 3, 3);
+
+        clock.setTime(now - MINUTES.toNanos(10));
+        for (int i = 0; i < 1000; i++) {
+            strategy.checkRateLimit("10.0." + (i >>> 8) + "." + (i & 0xff));
+        }
+
+        clock.setTime(now - SECONDS.toNanos(30));
+        strategy.checkRateLimit("127.0.0.2");
+
+        clock.setTime(now);
+        strategy.expireIdleStates();
+
+        assertEquals(1, strategy.numberOfTrackedIPs());
+        assertEquals(1000, strategy.getStateStatistics().getExpiredCount());
+        assertEquals(1, strategy.getStateStatistics().getCleanupCount());
+        assertFalse(strategy.checkRateLimit("127.0.0.2").isRequestAllowed() && strategy.checkRateLimit("127.0.0.2").isRequestAllowed()
+                && strategy.checkRateLimit("127.0.0.2").isRequestAllowed());
+    }
+
+    @Test
+    public void shouldTakeLessMemoryThanGcraStrategy() {
+
+        strategy = new CompactGcraRateLimitStrategy(clock, 60, 100);
+        GcraRateLimitStrategy gcraStrategy = new GcraRateLimitStrategy(clock, 60, 100);
+
+        for (int i = 0; i < 100_000; i++) {
+            String userIP = "10." + (i >>> 16) + "." + (i >>> 8 & 0xff) + "." + (i & 0xff);
+            strategy.checkRateLimit(userIP);
+            gcraStrategy.checkRateLimit(userIP);
+        }
+
+        assertTrue(strategy.estimateMemoryInBytes() * 2 < gcraStrategy.estimateMemoryInBytes(),
+                strategy.estimateMemoryInBytes() + " bytes, GCRA " + gcraStrategy.estimateMemoryInBytes() + " bytes");
+    }
+
+    @Test
+    public void shouldDeleteIdleEntries_OffHeap() {
+
+        long now = clock.nanoTime();
+        strategy = new CompactGcraRateLimitStrategy(clock, 3, 3, NO_LIMIT_OF_TRACKED_IPS, IpAddressKey.IPV6_ADDRESS_LENGTH,
+                SlotTable.Storage.OFF_HEAP);
+
+        clock.setTime(now - MINUTES.toNanos(10));
+        for (int i = 0; i < 1000; i++) {
+            strategy.checkRateLimit("10.0." + (i >>> 8) + "." + (i & 0xff));
+        }
+
+        clock.setTime(now - SECONDS.toNanos(30));
+        strategy.checkRateLimit("127.0.0.2");
+
+        clock.setTime(now);
+        strategy.expireIdleStates();
+
+        assertEquals(1, strategy.numberOfTrackedIPs());
+        assertFalse(strategy.checkRateLimit("127.0.0.2").isRequestAllowed() && strategy.checkRateLimit("127.0.0.2").isRequestAllowed()
+                && strategy.checkRateLimit("127.0.0.2").isRequestAllowed());
+    }
+
+    @Test
+    public void shouldNotTrackNewIPs_WhenFull_AndKeepTrackedOnes() {
+
+        strategy = new CompactGcraRateLimitStrategy(clock, 60, 10, 10_000, 64, SlotTable.Storage.HEAP);
+
+        for (int i = 0; i < 10; i++) {
+            strategy.checkRateLimit(firstUserIP);
+        }
+
+        for (int request = 0; request < 1_000_000; request++) {
+            strategy.checkRateLimit("2001:db8:" + Integer.toHexString(request >>> 16) + ":" + Integer.toHexString(request & 0xffff) + "::1");
+
+            if (request % 1000 == 0) {
+                assertFalse(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+                assertTrue(strategy.numberOfTrackedIPs() <= 10_000);
+            }
+        }
+
+        assertTrue(strategy.getNotAdmittedCount() > 0);
+    }
+
+    @Test
+    public void shouldLimitUntrackedIPsTogether_WhenShardIsFull() {
+
+        strategy = new CompactGcraRateLimitStrategy(clock, 1, 2, 1, 64, SlotTable.Storage.HEAP);
+
+        assertTrue(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+
+        assertTrue(strategy.checkRateLimit("127.0.0.2").isRequestAllowed());
+        assertTrue(strategy.checkRateLimit("2001:db8::1").isRequestAllowed());
+        RateLimitResult denied = strategy.checkRateLimit("127.0.0.3");
+        assertFalse(denied.isRequestAllowed());
+        assertEquals(30, denied.getNextAllowedRequestTimeInSeconds());
+
+        assertTrue(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+        assertEquals(1, strategy.numberOfTrackedIPs());
+        assertEquals(3, strategy.getNotAdmittedCount());
+
+        // one emission interval later the untracked IPs may send one more request
+        clock.advance(30, SECONDS);
+        assertTrue(strategy.checkRateLimit("127.0.0.4").isRequestAllowed());
+        assertFalse(strategy.checkRateLimit("127.0.0.5").isRequestAllowed());
+    }
+
+    @Test
+    public void shouldUseLessMemoryPerIP_ThanStringKeys() {
+
+        // the tables of the shards are about two thirds full, not just doubled
+        int numberOfIPs = 180_000;
+        long usedHeapBefore = usedHeap();
+        strategy = new CompactGcraRateLimitStrategy(clock, 60, 10);
+        for (int i = 0; i < numberOfIPs; i++) {
+            strategy.checkRateLimit("10." + (i >>> 16) + "." + (i >>> 8 & 0xff) + "." + (i & 0xff));
+        }
+        long bytesPerIP = (usedHeap() - usedHeapBefore) / numberOfIPs;
+
+        GcraRateLimitStrategy stringKeyedStrategy = new GcraRateLimitStrategy(clock, 60, 10);
+        usedHeapBefore = usedHeap();
+        for (int i = 0; i < numberOfIPs; i++) {
+            stringKeyedStrategy.checkRateLimit("10." + (i >>> 16) + "." + (i >>> 8 & 0xff) + "." + (i & 0xff));
+        }
+        long bytesPerStringKey = (usedHeap() - usedHeapBefore) / numberOfIPs;
+
+        assertEquals(numberOfIPs, strategy.numberOfTrackedIPs());
+        assertEquals(numberOfIPs, stringKeyedStrategy.numberOfTrackedIPs());
+        assertTrue(bytesPerIP * 2 < bytesPerStringKey, bytesPerIP + " vs " + bytesPerStringKey + " bytes per IP");
+    }
+
+    @Test
+    public void shouldKeepStateOutsideOfHeap_WhenOffHeap() {
+
+        int numberOfIPs = 200_000;
+        long usedHeapBefore = usedHeap();
+        strategy = new CompactGcraRateLimitStrategy(clock, 60, 10, NO_LIMIT_OF_TRACKED_IPS, IpAddressKey.IPV6_ADDRESS_LENGTH,
+                SlotTable.Storage.OFF_HEAP);
+        for (int i = 0; i < numberOfIPs; i++) {
+            strategy.checkRateLimit("10." + (i >>> 16) + "." + (i >>> 8 & 0xff) + "." + (i & 0xff));
+        }
+        long bytesPerIP = (usedHeap() - usedHeapBefore) / numberOfIPs;
+
+        assertEquals(numberOfIPs, strategy.numberOfTrackedIPs());
+        assertTrue(bytesPerIP < 2, bytesPerIP + " bytes per IP on the heap");
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Test
+    public void shouldCountRequestAsItsCost_AndDenyItAsAWhole() {
+
+        CompactGcraRateLimitStrategy strategy = new CompactGcraRateLimitStrategy(clock, 1, 5);
+
+        assertEquals(2, strategy.checkRateLimit(firstUserIP, 3).getRemainingAllowedAmountOfRequests());
+        assertEquals(12, strategy.checkRateLimit(firstUserIP, 3).getNextAllowedRequestTimeInSeconds());
+        assertEquals(0, strategy.checkRateLimit(firstUserIP, 2).getRemainingAllowedAmountOfRequests());
+        assertFalse(strategy.checkRateLimit("127.0.0.2", 6).isRequestAllowed());
+        assertEquals(0, strategy.checkRateLimit("unknown", 5).getRemainingAllowedAmountOfRequests());
+    }
+}
@@ -0,0 +1,127 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.TestClock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimiterTest {
+
+    private TestClock clock;
+    private String firstUserIP;
+
+
+    @BeforeEach
+    public void setUp() {
+        clock = new TestClock();
+        firstUserIP = "127.0.0.1";
+    }
+
+
+    @Test
+    public void shouldRejectRequest_WhenTooManyRequestsOfIPAreInFlight() {
+
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(clock, 2, ConcurrencyLimiter.UNLIMITED);
+
+        assertTrue(limiter.tryAcquire(firstUserIP));
+        assertTrue(limiter.tryAcquire(firstUserIP));
+        assertFalse(limiter.tryAcquire(firstUserIP));
+        assertTrue(limiter.tryAcquire("127.0.0.2"));
+
+        limiter.release(firstUserIP);
+
+        assertTrue(limiter.tryAcquire(firstUserIP));
+        assertEquals(2, limiter.numberOfRequestsInFlight(firstUserIP));
+        assertEquals(3, limiter.numberOfRequestsInFlight());
+        assertEquals(1, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void shouldRejectRequest_WhenTooManyRequestsOfAllIPsAreInFlight() {
+
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(clock, 2, 3);
+
+        assertTrue(limiter.tryAcquire(firstUserIP));
+        assertTrue(limiter.tryAcquire("127.0.0.2"));
+        assertTrue(limiter.tryAcquire("127.0.0.3"));
+        assertFalse(limiter.tryAcquire(firstUserIP));
+
+        // the permit of the IP was given back when the global limit rejected the request
+        assertEquals(1, limiter.numberOfRequestsInFlight(firstUserIP));
+
+        limiter.release("127.0.0.3");
+        assertTrue(limiter.tryAcquire(firstUserIP));
+        assertFalse(limiter.tryAcquire(firstUserIP));
+    }
+
+    @Test
+    public void shouldDeleteIPs_WithoutRequestsInFlight() {
+
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(clock, 1, ConcurrencyLimiter.UNLIMITED);
+
+        limiter.tryAcquire(firstUserIP);
+        limiter.tryAcquire("127.0.0.2");
+        limiter.release("127.0.0.2");
+
+        clock.advance(ConcurrencyLimiter.IDLE_TIMEOUT_IN_NANOS + 1, NANOSECONDS);
+        limiter.expireIdleStates();
+
+        assertEquals(1, limiter.numberOfTrackedIPs());
+
+        limiter.release(firstUserIP);
+        clock.advance(ConcurrencyLimiter.IDLE_TIMEOUT_IN_NANOS + 1, NANOSECONDS);
+        limiter.expireIdleStates();
+
+        assertEquals(0, limiter.numberOfTrackedIPs());
+        assertTrue(limiter.tryAcquire(firstUserIP));
+    }
+
+    @Test
+    public void shouldNeverAdmitMoreThanLimit_WhenRequestedConcurrently() throws Exception {
+
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(clock, 3, ConcurrencyLimiter.UNLIMITED);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            List<Future<?>> threads = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                threads.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 10_000; i++) {
+                        if (limiter.tryAcquire(firstUserIP)) {
+                            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                            inFlight.decrementAndGet();
+                            limiter.release(firstUserIP);
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> thread : threads) {
+                thread.get(30, SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(maxInFlight.get() <= 3);
+        assertEquals(0, limiter.numberOfRequestsInFlight());
+        assertEquals(0, limiter.numberOfRequestsInFlight(firstUserIP));
+    }
+}
@@ -0,0 +1,263 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.TestClock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+
+class DistributedRateLimitStrategyTest {
+
+    private static final int NO_LIMIT_OF_TRACKED_IPS = 0;
+    private static final int BATCH_SIZE = 128;
+
+    private TestClock clock;
+    private InMemorySharedRateLimitStore sharedStore;
+    private List<DistributedRateLimitStrategy> strategies;
+    private String firstUserIP;
+
+
+    @BeforeEach
+    public void setUp() {
+        clock = new TestClock();
+        sharedStore = new InMemorySharedRateLimitStore(clock);
+        strategies = new ArrayList<>();
+        firstUserIP = "127.0.0.1";
+    }
+
+    @AfterEach
+    public void tearDown() {
+        strategies.forEach(DistributedRateLimitStrategy::stop);
+    }
+
+    private DistributedRateLimitStrategy createStrategy(SharedRateLimitStore store, int limitOfRequests, long timeoutInMillis) {
+        DistributedRateLimitStrategy strategy = new DistributedRateLimitStrategy(clock, store, 1, limitOfRequests,
+                NO_LIMIT_OF_TRACKED_IPS, BATCH_SIZE, timeoutInMillis, 1000);
+        strategies.add(strategy);
+        return strategy;
+    }
+
+
+    @Test
+    public void shouldNotAllowMoreThanLimit_AcrossInstancesSharingTheStore() {
+
+        DistributedRateLimitStrategy firstInstance = createStrategy(sharedStore, 3, 5000);
+        DistributedRateLimitStrategy secondInstance = createStrategy(sharedStore, 3, 5000);
+
+        assertEquals(2, firstInstance.checkRateLimit(firstUserIP).getRemainingAllowedAmountOfRequests());
+        assertEquals(1, secondInstance.checkRateLimit(firstUserIP).getRemainingAllowedAmountOfRequests());
+        assertEquals(0, firstInstance.checkRateLimit(firstUserIP).getRemainingAllowedAmountOfRequests());
+
+        assertFalse(secondInstance.checkRateLimit(firstUserIP).isRequestAllowed());
+        assertFalse(firstInstance.checkRateLimit(firstUserIP).isRequestAllowed());
+        assertTrue(secondInstance.checkRateLimit("127.0.0.2").isRequestAllowed());
+    }
+
+    @Test
+    public void shouldCheckAllRequestsOfABatch_AgainstTheSharedStore() {
+
+        DistributedRateLimitStrategy firstInstance = createStrategy(sharedStore, 3, 5000);
+        DistributedRateLimitStrategy secondInstance = createStrategy(sharedStore, 3, 5000);
+        RateLimitBatch batch = new RateLimitBatch();
+        for (int i = 0; i < 4; i++) {
+            batch.add(firstUserIP);
+        }
+
+        assertTrue(secondInstance.checkRateLimit(firstUserIP).isRequestAllowed());
+        firstInstance.checkRateLimits(batch);
+
+        assertEquals(1, batch.result(0).getRemainingAllowedAmountOfRequests());
+        assertEquals(0, batch.result(1).getRemainingAllowedAmountOfRequests());
+        assertFalse(batch.result(2).isRequestAllowed());
+        assertFalse(batch.result(3).isRequestAllowed());
+    }
+
+    @Test
+    public void shouldCalculateRemainingTimeInSeconds_UntilNextEmissionInterval() {
+
+        DistributedRateLimitStrategy strategy = createStrategy(sharedStore, 3, 5000);
+
+        long timeOfFirstRequest = clock.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            strategy.checkRateLimit(firstUserIP);
+        }
+
+        clock.setTime(timeOfFirstRequest + SECONDS.toNanos(1));
+        RateLimitResult result = strategy.checkRateLimit(firstUserIP);
+
+        assertFalse(result.isRequestAllowed());
+        assertEquals(19, result.getNextAllowedRequestTimeInSeconds());
+    }
+
+    @Test
+    public void shouldLimitLocally_WhenSharedStoreFails() {
+
+        AtomicInteger calls = new AtomicInteger();
+        DistributedRateLimitStrategy strategy = createStrategy((keys, permits, allOrNothing, limitOfRequests, limitInNanos) -> {
+            calls.incrementAndGet();
+            throw new SharedRateLimitStoreException("connection refused", null);
+        }, 2, 5000);
+
+        assertEquals(1, strategy.checkRateLimit(firstUserIP).getRemainingAllowedAmountOfRequests());
+        assertEquals(0, strategy.checkRateLimit(firstUserIP).getRemainingAllowedAmountOfRequests());
+        assertFalse(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+
+        // only the first request tried the store, the others were checked locally right away
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void shouldUseSharedStoreAgain_AfterRetryInterval() {
+
+        AtomicBoolean available = new AtomicBoolean(false);
+        DistributedRateLimitStrategy strategy = createStrategy((keys, permits, allOrNothing, limitOfRequests, limitInNanos) -> {
+            if (!available.get()) {
+                throw new SharedRateLimitStoreException("connection refused", null);
+            }
+            return sharedStore.tryAcquire(keys, permits, allOrNothing, limitOfRequests, limitInNanos);
+        }, 2, 5000);
+
+        strategy.checkRateLimit(firstUserIP);
+        available.set(true);
+        strategy.checkRateLimit(firstUserIP);
+        assertFalse(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+
+        clock.advance(1001, MILLISECONDS);
+
+        // the local requests are not known to the shared store
+        assertEquals(1, strategy.checkRateLimit(firstUserIP).getRemainingAllowedAmountOfRequests());
+    }
+
+    @Test
+    public void shouldLimitLocally_WhenSharedStoreDoesNotAnswerInTime() {
+
+        CountDownLatch answer = new CountDownLatch(1);
+        DistributedRateLimitStrategy strategy = createStrategy((keys, permits, allOrNothing, limitOfRequests, limitInNanos) -> {
+            try {
+                answer.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return sharedStore.tryAcquire(keys, permits, allOrNothing, limitOfRequests, limitInNanos);
+        }, 1, 50);
+
+        assertTrue(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+        assertFalse(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+
+        answer.countDown();
+    }
+
+    @Test
+    public void shouldCompleteAsynchronously_WithoutBlockingTheCaller() throws Exception {
+
+        CountDownLatch answer = new CountDownLatch(1);
+        DistributedRateLimitStrategy strategy = createStrategy((keys, permits, allOrNothing, limitOfRequests, limitInNanos) -> {
+            try {
+                answer.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return sharedStore.tryAcquire(keys, permits, allOrNothing, limitOfRequests, limitInNanos);
+        }, 1, 5000);
+
+        CompletableFuture<RateLimitResult> result = strategy.checkRateLimitAsync(firstUserIP).toCompletableFuture();
+        assertFalse(result.isDone());
+
+        answer.countDown();
+
+        assertTrue(result.get(5, SECONDS).isRequestAllowed());
+        assertFalse(strategy.checkRateLimitAsync(firstUserIP).toCompletableFuture().get(5, SECONDS).isRequestAllowed());
+    }
+
+    @Test
+    public void shouldLimitLocallyAsynchronously_WhenSharedStoreDoesNotAnswerInTime() throws Exception {
+
+        CountDownLatch answer = new CountDownLatch(1);
+        DistributedRateLimitStrategy strategy = createStrategy((keys, permits, allOrNothing, limitOfRequests, limitInNanos) -> {
+            try {
+                answer.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return sharedStore.tryAcquire(keys, permits, allOrNothing, limitOfRequests, limitInNanos);
+        }, 1, 50);
+
+        try {
+            assertTrue(strategy.checkRateLimitAsync(firstUserIP).toCompletableFuture().get(5, SECONDS).isRequestAllowed());
+
+            // the store is marked unavailable, so the next request is checked locally right away
+            CompletableFuture<RateLimitResult> result = strategy.checkRateLimitAsync(firstUserIP).toCompletableFuture();
+            assertTrue(result.isDone());
+            assertFalse(result.get().isRequestAllowed());
+        } finally {
+            answer.countDown();
+        }
+    }
+
+    @Test
+    public void shouldSendRequestsInOneBatch_WhileThePreviousBatchIsInFlight() throws Exception {
+
+        CountDownLatch firstBatchSent = new CountDownLatch(1);
+        CountDownLatch answer = new CountDownLatch(1);
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        DistributedRateLimitStrategy strategy = createStrategy((keys, permits, allOrNothing, limitOfRequests, limitInNanos) -> {
+            batchSizes.add(keys.size());
+            firstBatchSent.countDown();
+            try {
+                answer.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return sharedStore.tryAcquire(keys, permits, allOrNothing, limitOfRequests, limitInNanos);
+        }, 100, 5000);
+
+        ExecutorService executor = Executors.newFixedThreadPool(11);
+        try {
+            Future<RateLimitResult> firstRequest = executor.submit(() -> strategy.checkRateLimit(firstUserIP));
+            firstBatchSent.await();
+
+            List<Future<RateLimitResult>> requests = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                requests.add(executor.submit(() -> strategy.checkRateLimit(firstUserIP)));
+            }
+            while (strategy.numberOfPendingRequests() < 10) {
+                Thread.sleep(1);
+            }
+            answer.countDown();
+
+            assertTrue(firstRequest.get().isRequestAllowed());
+            for (Future<RateLimitResult> request : requests) {
+                assertTrue(request.get().isRequestAllowed());
+            }
+            assertEquals(2, batchSizes.size());
+            assertEquals(10, batchSizes.get(1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldAcquireAllPermitsOfARequest_OrNone() {
+
+        DistributedRateLimitStrategy firstInstance = createStrategy(sharedStore, 3, 5000);
+        DistributedRateLimitStrategy secondInstance = createStrategy(sharedStore, 3, 5000);
+
+        assertEquals(1, firstInstance.checkRateLimit(firstUserIP, 2).getRemainingAllowedAmountOfRequests());
+        assertFalse(secondInstance.checkRateLimit(firstUserIP, 2).isRequestAllowed());
+        assertEquals(0, secondInstance.checkRateLimit(firstUserIP).getRemainingAllowedAmountOfRequests());
+    }
+}
@@ -0,0 +1,39 @@
+package com.airtasker.challenge.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrequencySketchTest {
+
+    @Test
+    public void shouldCountIncrements_UpToMaximumOf15() {
+        FrequencySketch sketch = new FrequencySketch(1000);
+
+        assertEquals(0, sketch.frequency("127.0.0.1"));
+
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("127.0.0.1");
+        }
+        assertEquals(5, sketch.frequency("127.0.0.1"));
+
+        for (int i = 0; i < 20; i++) {
+            sketch.increment("127.0.0.1");
+        }
+        assertEquals(15, sketch.frequency("127.0.0.1"));
+    }
+
+    @Test
+    public void shouldHalveFrequencies_AfterSampleSize() {
+        FrequencySketch sketch = new FrequencySketch(1000);
+        for (int i = 0; i < 10; i++) {
+            sketch.increment("127.0.0.1");
+        }
+
+        for (int i = 0; i < 10_000; i++) {
+            sketch.increment("key-" + i);
+        }
+
+        assertTrue(sketch.frequency("127.0.0.1") < 10);
+    }
+}
@@ -0,0 +1,227 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.TestClock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SpringExtension.class)
+class GcraRateLimitStrategyTest {
+
+    private TestClock clock;
+    private GcraRateLimitStrategy strategy;
+    private String firstUserIP;
+
+
+    @BeforeEach
+    public void setUp() {
+        clock = new TestClock();
+        firstUserIP = "127.0.0.1";
+    }
+
+
+    @Test
+    public void shouldAllowBurstOfLimit_WhenFirstRequests() {
+
+        strategy = new GcraRateLimitStrategy(clock, 1, 3);
+
+        clock.setTime(clock.nanoTime());
+
+        assertEquals(2, strategy.checkRateLimit(firstUserIP).getRemainingAllowedAmountOfRequests());
+        assertEquals(1, strategy.checkRateLimit(firstUserIP).getRemainingAllowedAmountOfRequests());
+
+        RateLimitResult result = strategy.checkRateLimit(firstUserIP);
+
+        assertTrue(result.isRequestAllowed());
+        assertEquals(0, result.getRemainingAllowedAmountOfRequests());
+    }
+
+    @Test
+    public void shouldNotAllow_WhenMoreThanAllowedRequests_WithinTimeWindow() {
+
+        strategy = new GcraRateLimitStrategy(clock, 1, 3);
+
+        long timeOfFirstRequest = clock.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            strategy.checkRateLimit(firstUserIP);
+        }
+
+        clock.setTime(timeOfFirstRequest + SECONDS.toNanos(5));
+        RateLimitResult result = strategy.checkRateLimit(firstUserIP);
+
+        assertFalse(result.isRequestAllowed());
+        assertEquals(0, result.getRemainingAllowedAmountOfRequests());
+    }
+
+    @Test
+    public void shouldCalculateRemainingTimeInSeconds_UntilNextEmissionInterval() {
+
+        strategy = new GcraRateLimitStrategy(clock, 1, 3);
+
+        long timeOfFirstRequest = clock.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            strategy.checkRateLimit(firstUserIP);
+        }
+
+        clock.setTime(timeOfFirstRequest + SECONDS.toNanos(1));
+        assertEquals(19, strategy.checkRateLimit(firstUserIP).getNextAllowedRequestTimeInSeconds());
+
+        clock.setTime(timeOfFirstRequest + SECONDS.toNanos(2));
+        assertEquals(18, strategy.checkRateLimit(firstUserIP).getNextAllowedRequestTimeInSeconds());
+    }
+
+    @Test
+    public void shouldReplenishOneRequest_PerEmissionInterval() {
+
+        strategy = new GcraRateLimitStrategy(clock, 1, 3);
+
+        long timeOfFirstRequest = clock.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            strategy.checkRateLimit(firstUserIP);
+        }
+
+        clock.setTime(timeOfFirstRequest + SECONDS.toNanos(20));
+        RateLimitResult result = strategy.checkRateLimit(firstUserIP);
+
+        assertTrue(result.isRequestAllowed());
+        assertEquals(0, result.getRemainingAllowedAmountOfRequests());
+        assertFalse(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+    }
+
+    @Test
+    public void shouldAllowFullBurstAgain_WhenNotInTimeWindow() {
+
+        strategy = new GcraRateLimitStrategy(clock, 3, 2);
+
+        long timeOfFirstRequest = clock.nanoTime();
+        strategy.checkRateLimit(firstUserIP);
+        strategy.checkRateLimit(firstUserIP);
+
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(3) + SECONDS.toNanos(1));
+        RateLimitResult result = strategy.checkRateLimit(firstUserIP);
+
+        assertTrue(result.isRequestAllowed());
+        assertEquals(1, result.getRemainingAllowedAmountOfRequests());
+    }
+
+    @Test
+    public void shouldAllowSecondUser_WhenFirstUserReachedLimit() {
+
+        strategy = new GcraRateLimitStrategy(clock, 3, 1);
+
+        clock.setTime(clock.nanoTime());
+        strategy.checkRateLimit(firstUserIP);
+
+        assertFalse(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+        assertTrue(strategy.checkRateLimit("127.0.0.2").isRequestAllowed());
+    }
+
+    @Test
+    public void shouldKeepTheoreticalArrivalTime_WhenLimitIsUpdated() {
+
+        strategy = new GcraRateLimitStrategy(clock, 3, 1);
+
+        long timeOfFirstRequest = clock.nanoTime();
+        strategy.checkRateLimit(firstUserIP);
+
+        strategy.updateLimit(3, 3);
+
+        // the first request still counts with the emission interval of 3 minutes
+        RateLimitResult denied = strategy.checkRateLimit(firstUserIP);
+        assertFalse(denied.isRequestAllowed());
+        assertEquals(MINUTES.toSeconds(1), denied.getNextAllowedRequestTimeInSeconds());
+        assertTrue(strategy.checkRateLimit("127.0.0.2").isRequestAllowed());
+
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(1));
+        assertTrue(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+    }
+
+    @Test
+    public void shouldDeleteIdleMapEntries() {
+
+        long now = clock.nanoTime();
+        strategy = new GcraRateLimitStrategy(clock, 3, 3);
+
+        clock.setTime(now - MINUTES.toNanos(10));
+        strategy.checkRateLimit(firstUserIP);
+
+        clock.setTime(now - MINUTES.toNanos(2));
+        strategy.checkRateLimit("127.0.0.2");
+
+        clock.setTime(now);
+        strategy.expireIdleStates();
+
+        assertEquals(1, strategy.numberOfTrackedIPs());
+    }
+
+    @Test
+    public void shouldKeepMemoryBounded_WhenFloodedWithDistinctIPs() {
+
+        strategy = new GcraRateLimitStrategy(clock, 60, 10, 10_000);
+
+        for (int i = 0; i < 10; i++) {
+            strategy.checkRateLimit(firstUserIP);
+        }
+
+        long usedHeapAfterFirstRound = 0;
+
+        for (int request = 0; request < 2_000_000; request++) {
+            strategy.checkRateLimit("2001:db8::" + Integer.toHexString(request));
+
+            if (request % 1000 == 0) {
+                assertFalse(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+                assertTrue(strategy.numberOfTrackedIPs() <= 10_000);
+            }
+            if (request == 200_000) {
+                usedHeapAfterFirstRound = usedHeap();
+            }
+        }
+
+        assertEquals(10_000, strategy.numberOfTrackedIPs());
+        assertTrue(usedHeap() - usedHeapAfterFirstRound < 32 * 1024 * 1024);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Test
+    public void shouldCountRequestAsItsCost_AndDenyItAsAWhole() {
+
+        strategy = new GcraRateLimitStrategy(clock, 1, 5);
+
+        assertEquals(2, strategy.checkRateLimit(firstUserIP, 3).getRemainingAllowedAmountOfRequests());
+
+        // 3 more requests fit once one emission interval has passed
+        RateLimitResult result = strategy.checkRateLimit(firstUserIP, 3);
+        assertFalse(result.isRequestAllowed());
+        assertEquals(12, result.getNextAllowedRequestTimeInSeconds());
+
+        assertEquals(0, strategy.checkRateLimit(firstUserIP, 2).getRemainingAllowedAmountOfRequests());
+        assertFalse(strategy.checkRateLimit("127.0.0.2", 6).isRequestAllowed());
+        assertEquals(0, strategy.checkRateLimit("127.0.0.2", 5).getRemainingAllowedAmountOfRequests());
+    }
+
+    @Test
+    public void shouldLimitUntrackedIPsTogether_WhenStoreIsFull() {
+
+        strategy = new GcraRateLimitStrategy(clock, 1, 2, 1);
+
+        assertTrue(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+
+        // requested as rarely as the tracked IP, so not admitted, and limited like one IP
+        assertTrue(strategy.checkRateLimit("127.0.0.2").isRequestAllowed());
+        assertTrue(strategy.checkRateLimit("127.0.0.3").isRequestAllowed());
+        assertFalse(strategy.checkRateLimit("127.0.0.4").isRequestAllowed());
+
+        assertTrue(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+        assertEquals(1, strategy.numberOfTrackedIPs());
+    }
+}
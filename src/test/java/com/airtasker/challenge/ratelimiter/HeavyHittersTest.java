@@ -0,0 +1,99 @@
+package com.airtasker.challenge.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeavyHittersTest {
+
+    @Test
+    public void shouldReportHeaviestKeys_MostFrequentFirst() {
+        HeavyHitters heavyHitters = new HeavyHitters(3);
+
+        for (int request = 0; request < 100_000; request++) {
+            heavyHitters.add("key-" + request);
+
+            if (request % 10 == 0) {
+                heavyHitters.add("10.0.0.1");
+            }
+            if (request % 20 == 0) {
+                heavyHitters.add("10.0.0.2");
+            }
+            if (request % 50 == 0) {
+                heavyHitters.add("10.0.0.3");
+            }
+        }
+
+        Map<String, Integer> heaviest = heavyHitters.heaviest();
+
+        assertEquals(Arrays.asList("10.0.0.1", "10.0.0.2", "10.0.0.3"), new ArrayList<>(heaviest.keySet()));
+        assertTrue(heaviest.get("10.0.0.1") >= 10_000);
+        assertTrue(heaviest.get("10.0.0.3") >= 2_000);
+    }
+
+    @Test
+    public void shouldReportOnlyRequestedKeys_WhenFewerThanCandidates() {
+        HeavyHitters heavyHitters = new HeavyHitters(10);
+
+        heavyHitters.add("10.0.0.1");
+        heavyHitters.add("10.0.0.1");
+        heavyHitters.add("10.0.0.2");
+
+        Map<String, Integer> heaviest = heavyHitters.heaviest();
+
+        assertEquals(Arrays.asList("10.0.0.1", "10.0.0.2"), new ArrayList<>(heaviest.keySet()));
+        assertEquals(2, heaviest.get("10.0.0.1"));
+    }
+
+    @Test
+    public void shouldReplaceFormerHeavyHitter_AfterCountsWereHalved() {
+        HeavyHitters heavyHitters = new HeavyHitters(1);
+
+        for (int request = 0; request < 1000; request++) {
+            heavyHitters.add("10.0.0.1");
+        }
+        for (int request = 0; request < 2 * HeavyHitters.SAMPLE_SIZE; request++) {
+            heavyHitters.add("10.0.0.2");
+        }
+
+        assertEquals(Arrays.asList("10.0.0.2"), new ArrayList<>(heavyHitters.heaviest().keySet()));
+        assertTrue(heavyHitters.estimate("10.0.0.1") < 1000);
+    }
+
+    @Test
+    public void shouldHalveCountsOnce_WhenSampleIsCompletedConcurrently() throws Exception {
+        HeavyHitters heavyHitters = new HeavyHitters(4);
+        int numberOfThreads = 4;
+
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+        try {
+            List<Future<?>> clients = new ArrayList<>();
+            for (int thread = 0; thread < numberOfThreads; thread++) {
+                String key = "10.0.0." + thread;
+                clients.add(executor.submit(() -> {
+                    for (int request = 0; request < HeavyHitters.SAMPLE_SIZE / numberOfThreads; request++) {
+                        heavyHitters.add(key);
+                    }
+                }));
+            }
+            for (Future<?> client : clients) {
+                client.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int thread = 0; thread < numberOfThreads; thread++) {
+            assertEquals(HeavyHitters.SAMPLE_SIZE / numberOfThreads / 2, heavyHitters.estimate("10.0.0." + thread));
+        }
+        assertEquals(numberOfThreads, heavyHitters.heaviest().size());
+    }
+}
@@ -0,0 +1,74 @@
+package com.airtasker.challenge.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IpAddressKeyTest {
+
+    private static final int WHOLE_ADDRESS = IpAddressKey.IPV6_ADDRESS_LENGTH;
+
+
+    @Test
+    public void shouldParseIPv4_IntoIPv4MappedAddress() {
+        IpAddressKey key = IpAddressKey.parse("192.0.2.1", WHOLE_ADDRESS);
+
+        assertTrue(key.isIPv4());
+        assertEquals(0, key.getHigh());
+        assertEquals(0x0000ffffc0000201L, key.getLow());
+        assertEquals(key, IpAddressKey.parse("::ffff:192.0.2.1", WHOLE_ADDRESS));
+        assertEquals(key, IpAddressKey.parse("::ffff:c000:201", WHOLE_ADDRESS));
+        assertEquals(key.getLow(), IpAddressKey.parseIPv4("192.0.2.1"));
+        assertEquals(IpAddressKey.NOT_IPV4, IpAddressKey.parseIPv4("::1"));
+    }
+
+    @Test
+    public void shouldParseIPv6_InFullAndCompressedNotation() {
+        IpAddressKey key = IpAddressKey.parse("2001:0db8:0000:0000:0000:ff00:0042:8329", WHOLE_ADDRESS);
+
+        assertFalse(key.isIPv4());
+        assertEquals(0x20010db800000000L, key.getHigh());
+        assertEquals(0x0000ff0000428329L, key.getLow());
+        assertEquals(key, IpAddressKey.parse("2001:db8::ff00:42:8329", WHOLE_ADDRESS));
+        assertEquals(key, IpAddressKey.parse("[2001:DB8::FF00:42:8329]", WHOLE_ADDRESS));
+        assertEquals(key, IpAddressKey.parse("2001:db8::ff00:42:8329%eth0", WHOLE_ADDRESS));
+    }
+
+    @Test
+    public void shouldParseIPv6_WithZerosAtTheBeginningOrEnd() {
+        assertEquals(0, IpAddressKey.parse("::", WHOLE_ADDRESS).getHigh());
+        assertEquals(0, IpAddressKey.parse("::", WHOLE_ADDRESS).getLow());
+        assertEquals(1, IpAddressKey.parse("::1", WHOLE_ADDRESS).getLow());
+        assertEquals(0xfe80000000000000L, IpAddressKey.parse("fe80::", WHOLE_ADDRESS).getHigh());
+        assertEquals(0x0001000200030004L, IpAddressKey.parse("1:2:3:4:5:6:7::", WHOLE_ADDRESS).getHigh());
+        assertEquals(0x0005000600070000L, IpAddressKey.parse("1:2:3:4:5:6:7::", WHOLE_ADDRESS).getLow());
+    }
+
+    @Test
+    public void shouldAggregateIPv6_ToPrefix() {
+        IpAddressKey first = IpAddressKey.parse("2001:db8:1:2:aaaa::1", 64);
+        IpAddressKey second = IpAddressKey.parse("2001:db8:1:2:bbbb::2", 64);
+
+        assertEquals(first, second);
+        assertEquals(0, first.getLow());
+        assertNotEquals(first, IpAddressKey.parse("2001:db8:1:3::1", 64));
+        assertEquals(IpAddressKey.parse("2001:db8::", 32), IpAddressKey.parse("2001:db8:ffff::", 32));
+        assertNotEquals(IpAddressKey.parse("2001:db8::1", 127), IpAddressKey.parse("2001:db8::2", 127));
+    }
+
+    @Test
+    public void shouldNotAggregateIPv4() {
+        assertNotEquals(IpAddressKey.parse("192.0.2.1", 64), IpAddressKey.parse("192.0.2.2", 64));
+    }
+
+    @Test
+    public void shouldReturnNull_WhenNotAnIPAddress() {
+        String[] invalidAddresses = {"", "localhost", "1.2.3", "1.2.3.4.5", "256.0.0.1", "1.2.3.", "1..2.3", "1234.1.1.1",
+                ":", ":1", "1:", "1:2:3:4:5:6:7:8:9", "1::2::3", "1:::2", "12345::", "g::", "::1.2.3", "1:2:3:4:5:6:7:1.2.3.4",
+                "::1.2.3.4:5"};
+
+        for (String address : invalidAddresses) {
+            assertNull(IpAddressKey.parse(address, WHOLE_ADDRESS), address);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.TestClock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LeasedQuotaRateLimitStrategyTest {
+
+    private static final int NO_LIMIT_OF_TRACKED_IPS = 0;
+    private static final int BATCH_SIZE = 128;
+    private static final long NO_AUTOMATIC_SYNC = MINUTES.toMillis(60);
+
+    private TestClock clock;
+    private InMemorySharedRateLimitStore coordinator;
+    private List<LeasedQuotaRateLimitStrategy> nodes;
+    private String firstUserIP;
+
+
+    @BeforeEach
+    public void setUp() {
+        clock = new TestClock();
+        coordinator = new InMemorySharedRateLimitStore(clock);
+        nodes = new ArrayList<>();
+        firstUserIP = "127.0.0.1";
+    }
+
+    @AfterEach
+    public void tearDown() {
+        nodes.forEach(LeasedQuotaRateLimitStrategy::stop);
+    }
+
+    private LeasedQuotaRateLimitStrategy createNode(SharedRateLimitStore store, int limitOfRequests, int leaseSize,
+                                                    int localAllowance, long syncIntervalInMillis) {
+        LeasedQuotaRateLimitStrategy node = new LeasedQuotaRateLimitStrategy(clock, store, 1, limitOfRequests,
+                NO_LIMIT_OF_TRACKED_IPS, leaseSize, localAllowance, BATCH_SIZE, syncIntervalInMillis, 1000);
+        nodes.add(node);
+        return node;
+    }
+
+
+    @Test
+    public void shouldAdmitLocalAllowance_BeforeTheLeaseArrives() {
+
+        LeasedQuotaRateLimitStrategy node = createNode(coordinator, 100, 10, 2, NO_AUTOMATIC_SYNC);
+
+        assertTrue(node.checkRateLimit(firstUserIP).isRequestAllowed());
+        assertTrue(node.checkRateLimit(firstUserIP).isRequestAllowed());
+
+        assertFalse(node.checkRateLimit(firstUserIP).isRequestAllowed());
+
+        node.synchronizeLeases();
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(node.checkRateLimit(firstUserIP).isRequestAllowed());
+        }
+    }
+
+    @Test
+    public void shouldChargeUnsyncedRequests_ToTheSharedStore() {
+
+        LeasedQuotaRateLimitStrategy node = createNode(coordinator, 10, 4, 3, NO_AUTOMATIC_SYNC);
+
+        for (int i = 0; i < 3; i++) {
+            node.checkRateLimit(firstUserIP);
+        }
+        node.synchronizeLeases();
+
+        // 3 charged and 4 leased
+        SharedRateLimitStore.Admission admission = coordinator.tryAcquire(Collections.singletonList(firstUserIP), 10,
+                MINUTES.toNanos(1)).get(0);
+        assertEquals(2, admission.getRemainingRequests());
+    }
+
+    @Test
+    public void shouldChargeUnsyncedRequestsOnce_WhenLeaseIsReplacedWhileRefillIsPending() {
+
+        LeasedQuotaRateLimitStrategy node = createNode(coordinator, 10, 4, 3, NO_AUTOMATIC_SYNC);
+
+        // the lease runs low and is removed as idle before it is refilled
+        node.checkRateLimit(firstUserIP);
+        clock.advance(2, MINUTES);
+        node.expireIdleStates();
+
+        for (int i = 0; i < 3; i++) {
+            node.checkRateLimit(firstUserIP);
+        }
+        node.synchronizeLeases();
+
+        // only the requests of the new lease are charged, and it is leased once
+        SharedRateLimitStore.Admission admission = coordinator.tryAcquire(Collections.singletonList(firstUserIP), 10,
+                MINUTES.toNanos(1)).get(0);
+        assertEquals(2, admission.getRemainingRequests());
+    }
+
+    @Test
+    public void shouldDeny_WhenSharedLimitIsExhausted_UntilNextPermit() {
+
+        LeasedQuotaRateLimitStrategy node = createNode(coordinator, 3, 3, 1, NO_AUTOMATIC_SYNC);
+        LeasedQuotaRateLimitStrategy otherNode = createNode(coordinator, 3, 3, 1, NO_AUTOMATIC_SYNC);
+
+        node.checkRateLimit(firstUserIP);
+        node.synchronizeLeases();
+        otherNode.checkRateLimit(firstUserIP);
+        otherNode.synchronizeLeases();
+
+        // the first node holds the whole limit, the request of the other node could not be charged
+        RateLimitResult result = otherNode.checkRateLimit(firstUserIP);
+        assertFalse(result.isRequestAllowed());
+        assertEquals(20, result.getNextAllowedRequestTimeInSeconds());
+
+        clock.advance(20, SECONDS);
+        assertTrue(otherNode.checkRateLimit(firstUserIP).isRequestAllowed());
+    }
+
+    @Test
+    public void shouldEnforceLimitWithinConfiguredError_WhenSeveralNodesShareTheCoordinator() {
+
+        int numberOfNodes = 4;
+        int limitOfRequests = 100;
+        int leaseSize = 10;
+        int localAllowance = 5;
+        for (int i = 0; i < numberOfNodes; i++) {
+            createNode(coordinator, limitOfRequests, leaseSize, localAllowance, NO_AUTOMATIC_SYNC);
+        }
+
+        // the clients of an IP are spread randomly over the nodes, every node syncs after every 10th request
+        Random random = new Random(42);
+        int allowedRequests = 0;
+        for (int request = 1; request <= 1000; request++) {
+            LeasedQuotaRateLimitStrategy node = nodes.get(random.nextInt(numberOfNodes));
+
+            if (node.checkRateLimit(firstUserIP).isRequestAllowed()) {
+                allowedRequests++;
+            }
+            if (request % 10 == 0) {
+                nodes.forEach(LeasedQuotaRateLimitStrategy::synchronizeLeases);
+            }
+        }
+
+        assertTrue(allowedRequests <= limitOfRequests + numberOfNodes * localAllowance, "allowed " + allowedRequests);
+        assertTrue(allowedRequests >= limitOfRequests - numberOfNodes * leaseSize, "allowed " + allowedRequests);
+
+        // the limit is replenished across the nodes
+        clock.advance(1, MINUTES);
+        nodes.forEach(LeasedQuotaRateLimitStrategy::synchronizeLeases);
+        for (LeasedQuotaRateLimitStrategy node : nodes) {
+            assertTrue(node.checkRateLimit(firstUserIP).isRequestAllowed());
+        }
+    }
+
+    @Test
+    public void shouldEnforceLimitWithinConfiguredError_WhenNodesAreRequestedConcurrently() throws Exception {
+
+        int numberOfNodes = 4;
+        int limitOfRequests = 1000;
+        int localAllowance = 5;
+        for (int i = 0; i < numberOfNodes; i++) {
+            createNode(coordinator, limitOfRequests, 50, localAllowance, 1);
+        }
+
+        AtomicInteger allowedRequests = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfNodes);
+        try {
+            List<Future<?>> clients = new ArrayList<>();
+            for (LeasedQuotaRateLimitStrategy node : nodes) {
+                clients.add(executor.submit(() -> {
+                    for (int request = 0; request < 5000; request++) {
+                        if (node.checkRateLimit(firstUserIP).isRequestAllowed()) {
+                            allowedRequests.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> client : clients) {
+                client.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(allowedRequests.get() <= limitOfRequests + numberOfNodes * localAllowance, "allowed " + allowedRequests);
+    }
+
+    @Test
+    public void shouldLimitLocally_WhenSharedStoreFails() {
+
+        AtomicBoolean available = new AtomicBoolean(false);
+        LeasedQuotaRateLimitStrategy node = createNode((keys, permits, allOrNothing, limitOfRequests, limitInNanos) -> {
+            if (!available.get()) {
+                throw new SharedRateLimitStoreException("connection refused", null);
+            }
+            return coordinator.tryAcquire(keys, permits, allOrNothing, limitOfRequests, limitInNanos);
+        }, 2, 2, 1, NO_AUTOMATIC_SYNC);
+
+        node.checkRateLimit(firstUserIP);
+        node.synchronizeLeases();
+
+        assertEquals(1, node.checkRateLimit(firstUserIP).getRemainingAllowedAmountOfRequests());
+        assertEquals(0, node.checkRateLimit(firstUserIP).getRemainingAllowedAmountOfRequests());
+        assertFalse(node.checkRateLimit(firstUserIP).isRequestAllowed());
+
+        available.set(true);
+        clock.advance(1001, MILLISECONDS);
+        node.synchronizeLeases();
+
+        assertTrue(node.checkRateLimit(firstUserIP).isRequestAllowed());
+    }
+
+    @Test
+    public void shouldDeleteIdleLeases() {
+        long now = clock.nanoTime();
+        LeasedQuotaRateLimitStrategy node = createNode(coordinator, 3, 3, 1, NO_AUTOMATIC_SYNC);
+
+        clock.setTime(now - MINUTES.toNanos(10));
+        node.checkRateLimit(firstUserIP);
+
+        clock.setTime(now - SECONDS.toNanos(30));
+        node.checkRateLimit("127.0.0.2");
+
+        clock.setTime(now);
+        node.expireIdleStates();
+
+        assertEquals(1, node.numberOfTrackedIPs());
+    }
+
+    @Test
+    public void shouldAdmitRequestOfHigherCost_FromLeaseAndLocalAllowance() {
+
+        LeasedQuotaRateLimitStrategy node = createNode(coordinator, 100, 10, 2, NO_AUTOMATIC_SYNC);
+
+        assertFalse(node.checkRateLimit(firstUserIP, 3).isRequestAllowed());
+        assertTrue(node.checkRateLimit(firstUserIP, 2).isRequestAllowed());
+
+        node.synchronizeLeases();
+
+        assertTrue(node.checkRateLimit(firstUserIP, 3).isRequestAllowed());
+        assertTrue(node.checkRateLimit(firstUserIP, 7).isRequestAllowed());
+
+        // the lease is used up, only the local allowance is left until the next one arrives
+        assertFalse(node.checkRateLimit(firstUserIP, 3).isRequestAllowed());
+        assertTrue(node.checkRateLimit(firstUserIP, 2).isRequestAllowed());
+    }
+}
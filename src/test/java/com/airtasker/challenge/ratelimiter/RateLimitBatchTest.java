@@ -0,0 +1,118 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.TestClock;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Supplier;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitBatchTest {
+
+    private static final int LIMIT_OF_REQUESTS = 5;
+    private static final String[] USER_IPS = {"127.0.0.1", "127.0.0.2", "2001:db8::1", "unknown", "127.0.0.1",
+            "10.0.0.1", "127.0.0.2", "127.0.0.1"};
+
+    private final TestClock clock = new TestClock();
+
+
+    @Test
+    public void shouldReturnSameResultsAsSingleChecks_WithSlidingWindow() {
+        assertSameResultsAsSingleChecks(() -> new SlidingWindowRateLimitStrategy(clock, 1, LIMIT_OF_REQUESTS));
+    }
+
+    @Test
+    public void shouldReturnSameResultsAsSingleChecks_WithRingBuffer() {
+        assertSameResultsAsSingleChecks(() -> new RingBufferSlidingWindowRateLimitStrategy(clock, 1, LIMIT_OF_REQUESTS));
+    }
+
+    @Test
+    public void shouldReturnSameResultsAsSingleChecks_WithSlidingWindowCounter() {
+        assertSameResultsAsSingleChecks(() -> new SlidingWindowCounterRateLimitStrategy(clock, 1, LIMIT_OF_REQUESTS));
+    }
+
+    @Test
+    public void shouldReturnSameResultsAsSingleChecks_WithGcra() {
+        assertSameResultsAsSingleChecks(() -> new GcraRateLimitStrategy(clock, 1, LIMIT_OF_REQUESTS));
+    }
+
+    @Test
+    public void shouldReturnSameResultsAsSingleChecks_WithCompactGcra() {
+        assertSameResultsAsSingleChecks(() -> new CompactGcraRateLimitStrategy(clock, 1, LIMIT_OF_REQUESTS));
+    }
+
+    @Test
+    public void shouldCheckRequestsOfAnIPInOrder_WhenItIsAddedMoreThanOnce() {
+
+        RateLimitStrategy strategy = new CompactGcraRateLimitStrategy(clock, 1, 3);
+        RateLimitBatch batch = new RateLimitBatch();
+
+        for (int i = 0; i < 4; i++) {
+            batch.add("127.0.0.1");
+        }
+        strategy.checkRateLimits(batch);
+
+        assertEquals(2, batch.result(0).getRemainingAllowedAmountOfRequests());
+        assertEquals(1, batch.result(1).getRemainingAllowedAmountOfRequests());
+        assertEquals(0, batch.result(2).getRemainingAllowedAmountOfRequests());
+        assertFalse(batch.result(3).isRequestAllowed());
+    }
+
+    @Test
+    public void shouldGrowAndBeReused_WhenItIsCleared() {
+
+        RateLimitStrategy strategy = new CompactGcraRateLimitStrategy(clock, 1, LIMIT_OF_REQUESTS);
+        RateLimitBatch batch = new RateLimitBatch(2);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, batch.add("10.0." + (i / 10) + "." + i));
+        }
+        strategy.checkRateLimits(batch);
+
+        assertEquals(100, batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            assertEquals(LIMIT_OF_REQUESTS - 1, batch.result(i).getRemainingAllowedAmountOfRequests());
+        }
+
+        batch.clear();
+        assertEquals(0, batch.size());
+
+        batch.add("10.0.0.0");
+        assertNull(batch.result(0));
+        strategy.checkRateLimits(batch);
+
+        assertEquals(LIMIT_OF_REQUESTS - 2, batch.result(0).getRemainingAllowedAmountOfRequests());
+    }
+
+
+    /**
+     * Checks the same requests with two instances of the strategy, with one batch per second and one by one.
+     */
+    private void assertSameResultsAsSingleChecks(Supplier<RateLimitStrategy> strategyFactory) {
+
+        RateLimitStrategy batchedStrategy = strategyFactory.get();
+        RateLimitStrategy singleStrategy = strategyFactory.get();
+        RateLimitBatch batch = new RateLimitBatch(4);
+
+        for (int second = 0; second < 20; second++) {
+            batch.clear();
+            for (String userIP : USER_IPS) {
+                batch.add(userIP);
+            }
+
+            batchedStrategy.checkRateLimits(batch);
+
+            for (int i = 0; i < batch.size(); i++) {
+                RateLimitResult expected = singleStrategy.checkRateLimit(USER_IPS[i]);
+                RateLimitResult actual = batch.result(i);
+
+                assertEquals(expected.isRequestAllowed(), actual.isRequestAllowed());
+                assertEquals(expected.getRemainingAllowedAmountOfRequests(), actual.getRemainingAllowedAmountOfRequests());
+                assertEquals(expected.getNextAllowedRequestTimeInSeconds(), actual.getNextAllowedRequestTimeInSeconds());
+            }
+
+            clock.advance(7, SECONDS);
+        }
+    }
+}
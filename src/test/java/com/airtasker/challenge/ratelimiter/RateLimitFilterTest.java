@@ -0,0 +1,257 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.TestClock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitFilterTest {
+
+    private static final long WINDOW_IN_NANOS = MILLISECONDS.toNanos(100);
+
+    private TestClock clock;
+    private AtomicInteger forwardedRequests;
+
+
+    @BeforeEach
+    public void setUp() {
+        clock = new TestClock();
+        forwardedRequests = new AtomicInteger();
+    }
+
+    /**
+     * A backend that takes the given time to answer, with the given status.
+     */
+    private FilterChain backend(long latencyInMillis, int status) {
+        return (request, response) -> {
+            forwardedRequests.incrementAndGet();
+            clock.advance(latencyInMillis, MILLISECONDS);
+            ((HttpServletResponse) response).setStatus(status);
+        };
+    }
+
+    private MockHttpServletResponse filter(RateLimitFilter filter, String remoteAddress, FilterChain chain)
+            throws ServletException, IOException {
+        return filter(filter, remoteAddress, "/", chain);
+    }
+
+    private MockHttpServletResponse filter(RateLimitFilter filter, String remoteAddress, String requestUri,
+                                           FilterChain chain) throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", requestUri);
+        request.setRemoteAddr(remoteAddress);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private RateLimitFilter createFilter(ConcurrencyLimiter concurrencyLimiter) {
+        return new RateLimitFilter(new RateLimiter(new GcraRateLimitStrategy(clock, 1, 1_000_000), null),
+                concurrencyLimiter);
+    }
+
+
+    @Test
+    public void shouldRespondTooManyRequests_WithRateLimitHeaders_WhenLimitIsExceeded() throws Exception {
+
+        RateLimitFilter filter = new RateLimitFilter(new RateLimiter(new GcraRateLimitStrategy(clock, 1, 2), null),
+                null);
+
+        filter(filter, "127.0.0.1", backend(1, 200));
+        filter(filter, "127.0.0.1", backend(1, 200));
+        MockHttpServletResponse denied = filter(filter, "127.0.0.1", backend(1, 200));
+
+        assertEquals(2, forwardedRequests.get());
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), denied.getStatus());
+        assertEquals("30", denied.getHeader("Retry-After"));
+        assertEquals("2", denied.getHeader("RateLimit-Limit"));
+        assertEquals("0", denied.getHeader("RateLimit-Remaining"));
+        assertEquals("30", denied.getHeader("RateLimit-Reset"));
+        assertEquals("Try again in 30 seconds", denied.getContentAsString());
+        assertEquals(denied.getContentAsByteArray().length, denied.getContentLength());
+    }
+
+    @Test
+    public void shouldLimitPolicyPath_WhenPathIsEncodedOrNotNormalized() throws Exception {
+
+        RateLimitPolicyEngine policyEngine = new RateLimitPolicyEngine(clock, Collections.singletonList(
+                RateLimitPolicy.compile("api", "global", "/api/**", null, Collections.singletonList("1/1h"))), 0);
+        RateLimitFilter filter = new RateLimitFilter(new RateLimiter(new GcraRateLimitStrategy(clock, 1, 100),
+                policyEngine), null);
+
+        assertEquals(HttpStatus.OK.value(), filter(filter, "127.0.0.1", "/api/reports", backend(1, 200)).getStatus());
+
+        for (String path : Arrays.asList("/%61pi/reports", "/api/reports/", "//api/reports", "/api;jsessionid=1/reports",
+                "/x/../api/reports")) {
+            assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), filter(filter, "127.0.0.1", path, backend(1, 200)).getStatus(),
+                    path);
+        }
+        assertEquals(HttpStatus.OK.value(), filter(filter, "127.0.0.1", "/apis", backend(1, 200)).getStatus());
+    }
+
+    @Test
+    public void shouldMatchPolicyPath_WithinContextPath() throws Exception {
+
+        RateLimitPolicyEngine policyEngine = new RateLimitPolicyEngine(clock, Collections.singletonList(
+                RateLimitPolicy.compile("api", "global", "/api/**", null, Collections.singletonList("1/1h"))), 0);
+        RateLimitFilter filter = new RateLimitFilter(new RateLimiter(new GcraRateLimitStrategy(clock, 1, 100),
+                policyEngine), null);
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/context/api/reports");
+        request.setContextPath("/context");
+        filter.doFilter(request, new MockHttpServletResponse(), backend(1, 200));
+        MockHttpServletResponse denied = new MockHttpServletResponse();
+        filter.doFilter(request, denied, backend(1, 200));
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), denied.getStatus());
+    }
+
+    @Test
+    public void shouldCountRequestAsItsCost_SetByEarlierFilter() throws Exception {
+
+        RateLimitFilter filter = new RateLimitFilter(new RateLimiter(new GcraRateLimitStrategy(clock, 1, 4), null, null,
+                new RequestCosts(Collections.emptyList())), null);
+        Filter batchCostFilter = (request, response, chain) -> {
+            request.setAttribute(RequestCosts.COST_ATTRIBUTE,
+                    Integer.parseInt(((HttpServletRequest) request).getHeader("X-Batch-Size")));
+            chain.doFilter(request, response);
+        };
+        Servlet backend = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) {
+                forwardedRequests.incrementAndGet();
+            }
+        };
+
+        MockHttpServletResponse allowed = batch(batchCostFilter, filter, backend, 3);
+        MockHttpServletResponse denied = batch(batchCostFilter, filter, backend, 2);
+
+        assertEquals(HttpStatus.OK.value(), allowed.getStatus());
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), denied.getStatus());
+        assertEquals(1, forwardedRequests.get());
+    }
+
+    private static MockHttpServletResponse batch(Filter batchCostFilter, RateLimitFilter filter, Servlet backend,
+                                                 int batchSize) throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/batch");
+        request.setRemoteAddr("127.0.0.1");
+        request.addHeader("X-Batch-Size", batchSize);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        new MockFilterChain(backend, batchCostFilter, filter).doFilter(request, response);
+        return response;
+    }
+
+    @Test
+    public void shouldCountRequestAsCostOfRoute_WhenPathIsEncoded() throws Exception {
+
+        RequestCosts requestCosts = new RequestCosts(Collections.singletonList(RouteCost.compile("/reports/**", "GET", 3)));
+        RateLimitFilter filter = new RateLimitFilter(new RateLimiter(new GcraRateLimitStrategy(clock, 1, 4), null, null,
+                requestCosts), null);
+
+        filter(filter, "127.0.0.1", "/%72eports/monthly", backend(1, 200));
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(),
+                filter(filter, "127.0.0.1", "/reports/monthly", backend(1, 200)).getStatus());
+        assertEquals(1, forwardedRequests.get());
+    }
+
+    @Test
+    public void shouldReleasePermit_WhenBackendThrows() throws Exception {
+
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(clock, 1, 1);
+        RateLimitFilter filter = createFilter(concurrencyLimiter);
+
+        assertThrows(ServletException.class, () -> filter(filter, "127.0.0.1", (request, response) -> {
+            throw new ServletException("backend failed");
+        }));
+
+        assertEquals(0, concurrencyLimiter.numberOfRequestsInFlight());
+        assertEquals(HttpStatus.OK.value(), filter(filter, "127.0.0.1", backend(1, 200)).getStatus());
+    }
+
+    @Test
+    public void shouldShedLoad_WhenBackendBecomesSlow() throws Exception {
+
+        AdaptiveLimit adaptiveLimit = new AdaptiveLimit(20, 5, 100, WINDOW_IN_NANOS, 1.5);
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(clock, ConcurrencyLimiter.UNLIMITED, adaptiveLimit);
+        RateLimitFilter filter = createFilter(concurrencyLimiter);
+
+        // the requests of other clients keep the limit in use, so it may grow
+        int requestsOfOtherClients = 15;
+        for (int i = 0; i < requestsOfOtherClients; i++) {
+            assertTrue(concurrencyLimiter.tryAcquire("10.0.1." + i));
+        }
+
+        for (int i = 0; i < 300; i++) {
+            filter(filter, "127.0.0.1", backend(10, 200));
+        }
+        int limitOfFastBackend = concurrencyLimiter.getLimit();
+        assertTrue(limitOfFastBackend > 20);
+
+        // the backend queues the requests, so the latency rises
+        for (int i = 0; i < 100; i++) {
+            filter(filter, "127.0.0.1", backend(100, 200));
+        }
+        int limitOfSlowBackend = concurrencyLimiter.getLimit();
+        assertTrue(limitOfSlowBackend < limitOfFastBackend * 3 / 4);
+
+        // the requests in flight of other clients fill the limit
+        for (int i = requestsOfOtherClients; i < limitOfSlowBackend; i++) {
+            assertTrue(concurrencyLimiter.tryAcquire("10.0.0." + i));
+        }
+        int forwarded = forwardedRequests.get();
+        MockHttpServletResponse rejected = filter(filter, "127.0.0.1", backend(100, 200));
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), rejected.getStatus());
+        assertEquals("1", rejected.getHeader("Retry-After"));
+        assertNull(rejected.getHeader("RateLimit-Remaining"));
+        assertEquals(forwarded, forwardedRequests.get());
+    }
+
+    @Test
+    public void shouldKeepLimit_WhenRequestsAreSequential() throws Exception {
+
+        AdaptiveLimit adaptiveLimit = new AdaptiveLimit(20, 5, 100, WINDOW_IN_NANOS, 1.5);
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(clock, ConcurrencyLimiter.UNLIMITED, adaptiveLimit);
+        RateLimitFilter filter = createFilter(concurrencyLimiter);
+
+        for (int i = 0; i < 300; i++) {
+            filter(filter, "127.0.0.1", backend(10, 200));
+        }
+
+        assertEquals(20, concurrencyLimiter.getLimit());
+    }
+
+    @Test
+    public void shouldShedLoad_WhenBackendFails() throws Exception {
+
+        AdaptiveLimit adaptiveLimit = new AdaptiveLimit(50, 5, 100, WINDOW_IN_NANOS, 1.5);
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(clock, ConcurrencyLimiter.UNLIMITED, adaptiveLimit);
+        RateLimitFilter filter = createFilter(concurrencyLimiter);
+
+        for (int i = 0; i < 100; i++) {
+            filter(filter, "127.0.0.1", backend(10, HttpStatus.SERVICE_UNAVAILABLE.value()));
+        }
+
+        assertTrue(concurrencyLimiter.getLimit() < 50 * AdaptiveLimit.BACKOFF_RATIO * AdaptiveLimit.BACKOFF_RATIO);
+    }
+}
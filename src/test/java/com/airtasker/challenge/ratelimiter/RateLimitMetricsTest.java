@@ -0,0 +1,68 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.TestClock;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitMetricsTest {
+
+    private TestClock clock;
+    private MeterRegistry registry;
+    private RateLimitMetrics metrics;
+
+
+    @BeforeEach
+    public void setUp() {
+        clock = new TestClock();
+        registry = new SimpleMeterRegistry();
+        metrics = new RateLimitMetrics(registry, 10, 1);
+    }
+
+
+    @Test
+    public void shouldCountAllowedAndDeniedRequests_AndRecordLatency() {
+        RateLimiter rateLimiter = new RateLimiter(new GcraRateLimitStrategy(clock, 1, 2), null, metrics);
+
+        for (int i = 0; i < 5; i++) {
+            rateLimiter.checkRateLimit(request("127.0.0.1"), ServletRateLimitRequestAdapter.INSTANCE);
+        }
+        rateLimiter.checkRateLimit(request("127.0.0.2"), ServletRateLimitRequestAdapter.INSTANCE);
+
+        assertEquals(3, registry.get("rate.limit.requests").tag("result", "allowed").functionCounter().count());
+        assertEquals(3, registry.get("rate.limit.requests").tag("result", "denied").functionCounter().count());
+
+        Timer checkTimer = registry.get("rate.limit.check").timer();
+        assertEquals(6, checkTimer.count());
+        assertTrue(checkTimer.totalTime(TimeUnit.NANOSECONDS) > 0);
+
+        assertEquals(Arrays.asList("127.0.0.1", "127.0.0.2"), new ArrayList<>(metrics.heaviestClients().keySet()));
+    }
+
+    @Test
+    public void shouldRecordAsyncCheck_WhenCompleted() {
+        RateLimiter rateLimiter = new RateLimiter(new GcraRateLimitStrategy(clock, 1, 1), null, metrics);
+
+        rateLimiter.checkRateLimitAsync(request("127.0.0.1"), ServletRateLimitRequestAdapter.INSTANCE);
+        rateLimiter.checkRateLimitAsync(request("127.0.0.1"), ServletRateLimitRequestAdapter.INSTANCE);
+
+        assertEquals(1, metrics.getAllowedCount());
+        assertEquals(1, metrics.getDeniedCount());
+        assertEquals(2, registry.get("rate.limit.check").timer().count());
+    }
+
+    private static MockHttpServletRequest request(String remoteAddress) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(remoteAddress);
+        return request;
+    }
+}
@@ -0,0 +1,271 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.TestClock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitPolicyEngineTest {
+
+    private static final int NO_LIMIT_OF_TRACKED_KEYS = 0;
+
+    private TestClock clock;
+
+
+    @BeforeEach
+    public void setUp() {
+        clock = new TestClock();
+    }
+
+
+    @Test
+    public void shouldDenyBurst_AndSustainedRate_OfSamePolicy() {
+
+        RateLimitPolicyEngine engine = engine(RateLimitPolicy.compile("ip", "ip", null, null, Arrays.asList("2/1s", "3/1h")));
+
+        assertTrue(engine.checkRateLimit(request("GET", "/", "127.0.0.1")).isRequestAllowed());
+        assertTrue(engine.checkRateLimit(request("GET", "/", "127.0.0.1")).isRequestAllowed());
+
+        RateLimitResult burst = engine.checkRateLimit(request("GET", "/", "127.0.0.1"));
+        assertFalse(burst.isRequestAllowed());
+        assertEquals(1, burst.getNextAllowedRequestTimeInSeconds());
+        assertEquals(2, burst.getLimitOfRequests());
+
+        clock.advance(1, SECONDS);
+        RateLimitResult allowed = engine.checkRateLimit(request("GET", "/", "127.0.0.1"));
+        assertTrue(allowed.isRequestAllowed());
+        assertEquals(0, allowed.getRemainingAllowedAmountOfRequests());
+        assertEquals(3, allowed.getLimitOfRequests());
+
+        clock.advance(1, SECONDS);
+        RateLimitResult sustained = engine.checkRateLimit(request("GET", "/", "127.0.0.1"));
+        assertFalse(sustained.isRequestAllowed());
+        assertEquals(MINUTES.toSeconds(20) - 2, sustained.getNextAllowedRequestTimeInSeconds());
+        assertEquals(3, sustained.getLimitOfRequests());
+    }
+
+    @Test
+    public void shouldNotCountDeniedRequest_InOtherLimitsOfPolicy() {
+
+        RateLimitPolicyEngine engine = engine(RateLimitPolicy.compile("ip", "ip", null, null, Arrays.asList("1/1s", "3/1h")));
+
+        assertTrue(engine.checkRateLimit(request("GET", "/", "127.0.0.1")).isRequestAllowed());
+        for (int i = 0; i < 10; i++) {
+            assertFalse(engine.checkRateLimit(request("GET", "/", "127.0.0.1")).isRequestAllowed());
+        }
+
+        clock.advance(1, SECONDS);
+        assertTrue(engine.checkRateLimit(request("GET", "/", "127.0.0.1")).isRequestAllowed());
+        clock.advance(1, SECONDS);
+        assertTrue(engine.checkRateLimit(request("GET", "/", "127.0.0.1")).isRequestAllowed());
+    }
+
+    @Test
+    public void shouldLimitByHeader_AndSkipRequestsWithoutHeader() {
+
+        RateLimitPolicyEngine engine = engine(RateLimitPolicy.compile("api-key", "header:X-Api-Key", null, null,
+                Collections.singletonList("1/1h")));
+
+        MockHttpServletRequest firstKey = request("GET", "/", "127.0.0.1");
+        firstKey.addHeader("X-Api-Key", "first");
+        MockHttpServletRequest secondKey = request("GET", "/", "127.0.0.1");
+        secondKey.addHeader("X-Api-Key", "second");
+
+        assertTrue(engine.checkRateLimit(firstKey).isRequestAllowed());
+        assertFalse(engine.checkRateLimit(firstKey).isRequestAllowed());
+        assertTrue(engine.checkRateLimit(secondKey).isRequestAllowed());
+        assertTrue(engine.checkRateLimit(request("GET", "/", "127.0.0.1")).isRequestAllowed());
+        assertTrue(engine.checkRateLimit(request("GET", "/", "127.0.0.1")).isRequestAllowed());
+    }
+
+    @Test
+    public void shouldLimitByPrincipal() {
+
+        RateLimitPolicyEngine engine = engine(RateLimitPolicy.compile("user", "principal", null, null,
+                Collections.singletonList("1/1h")));
+
+        MockHttpServletRequest alice = request("GET", "/", "127.0.0.1");
+        alice.setUserPrincipal(() -> "alice");
+        MockHttpServletRequest aliceFromOtherIP = request("GET", "/", "127.0.0.2");
+        aliceFromOtherIP.setUserPrincipal(() -> "alice");
+
+        assertTrue(engine.checkRateLimit(alice).isRequestAllowed());
+        assertFalse(engine.checkRateLimit(aliceFromOtherIP).isRequestAllowed());
+    }
+
+    @Test
+    public void shouldOnlyLimitMatchingEndpoints_PerPolicy() {
+
+        RateLimitPolicyEngine engine = engine(
+                RateLimitPolicy.compile("orders", "ip", "/users/*/orders", "post", Collections.singletonList("1/1h")),
+                RateLimitPolicy.compile("all", "global", "/**", null, Collections.singletonList("3/1h")));
+
+        assertTrue(engine.checkRateLimit(request("POST", "/users/1/orders", "127.0.0.1")).isRequestAllowed());
+        assertFalse(engine.checkRateLimit(request("POST", "/users/2/orders", "127.0.0.1")).isRequestAllowed());
+        assertTrue(engine.checkRateLimit(request("GET", "/users/1/orders", "127.0.0.1")).isRequestAllowed());
+        assertTrue(engine.checkRateLimit(request("POST", "/users/1/orders", "127.0.0.2")).isRequestAllowed());
+
+        // the request denied by the orders policy was not counted by the global policy
+        assertFalse(engine.checkRateLimit(request("GET", "/", "127.0.0.3")).isRequestAllowed());
+        assertEquals(2, engine.numberOfTrackedKeys("orders"));
+        assertEquals(1, engine.numberOfTrackedKeys("all"));
+    }
+
+    @Test
+    public void shouldRemoveIdleKeys() {
+
+        RateLimitPolicyEngine engine = engine(RateLimitPolicy.compile("ip", "ip", null, null, Arrays.asList("10/1s", "100/1h")));
+
+        for (int i = 0; i < 100; i++) {
+            engine.checkRateLimit(request("GET", "/", "10.0.0." + i));
+        }
+
+        clock.advance(1, HOURS);
+        engine.expireIdleStates();
+
+        assertEquals(0, engine.numberOfTrackedKeys("ip"));
+    }
+
+    @Test
+    public void shouldRejectInvalidPolicies() {
+
+        assertThrows(IllegalArgumentException.class, () -> RateLimitPolicy.compile("p", "ip", null, null, Collections.emptyList()));
+        assertThrows(IllegalArgumentException.class, () -> RateLimitPolicy.compile("p", "ip", null, null, Collections.singletonList("10")));
+        assertThrows(IllegalArgumentException.class, () -> RateLimitPolicy.compile("p", "ip", null, null, Collections.singletonList("10/1w")));
+        assertThrows(IllegalArgumentException.class, () -> RateLimitPolicy.compile("p", "ip", null, null, Collections.singletonList("0/1s")));
+        assertThrows(IllegalArgumentException.class, () -> RateLimitPolicy.compile("p", "cookie", null, null, Collections.singletonList("1/1s")));
+    }
+
+    @Test
+    public void shouldKeepStateOfKeys_WhenPoliciesAreUpdated() {
+
+        RateLimitPolicyEngine engine = engine(RateLimitPolicy.compile("ip", "ip", null, null, Collections.singletonList("1/1h")),
+                RateLimitPolicy.compile("orders", "ip", "/orders", null, Collections.singletonList("1/1h")));
+
+        assertTrue(engine.checkRateLimit(request("GET", "/", "127.0.0.1")).isRequestAllowed());
+        assertTrue(engine.checkRateLimit(request("GET", "/orders", "127.0.0.2")).isRequestAllowed());
+
+        engine.updatePolicies(Arrays.asList(
+                RateLimitPolicy.compile("ip", "ip", null, null, Arrays.asList("2/1h", "5/1s")),
+                RateLimitPolicy.compile("users", "ip", "/users", null, Collections.singletonList("1/1h"))));
+
+        // the request made before counts with the emission interval of one hour
+        RateLimitResult denied = engine.checkRateLimit(request("GET", "/", "127.0.0.1"));
+        assertFalse(denied.isRequestAllowed());
+        assertEquals(MINUTES.toSeconds(30), denied.getNextAllowedRequestTimeInSeconds());
+
+        clock.advance(30, MINUTES);
+        assertTrue(engine.checkRateLimit(request("GET", "/", "127.0.0.1")).isRequestAllowed());
+
+        // the removed policy no longer applies, the new one starts without state
+        assertTrue(engine.checkRateLimit(request("GET", "/orders", "127.0.0.2")).isRequestAllowed());
+        assertEquals(0, engine.numberOfTrackedKeys("users"));
+        assertThrows(IllegalArgumentException.class, () -> engine.numberOfTrackedKeys("orders"));
+    }
+
+    @Test
+    public void shouldKeepPolicies_WhenUpdateHasDuplicateNames() {
+
+        RateLimitPolicyEngine engine = engine(RateLimitPolicy.compile("ip", "ip", null, null, Collections.singletonList("1/1h")));
+
+        assertThrows(IllegalArgumentException.class, () -> engine.updatePolicies(Arrays.asList(
+                RateLimitPolicy.compile("ip", "ip", null, null, Collections.singletonList("5/1h")),
+                RateLimitPolicy.compile("ip", "ip", "/orders", null, Collections.singletonList("5/1h")))));
+
+        assertTrue(engine.checkRateLimit(request("GET", "/", "127.0.0.1")).isRequestAllowed());
+        assertFalse(engine.checkRateLimit(request("GET", "/", "127.0.0.1")).isRequestAllowed());
+    }
+
+    @Test
+    public void shouldLimitUntrackedKeysTogether_WhenStoreIsFull() {
+
+        RateLimitPolicyEngine engine = new RateLimitPolicyEngine(clock, Collections.singletonList(
+                RateLimitPolicy.compile("ip", "ip", null, null, Collections.singletonList("2/1h"))), 1);
+
+        assertTrue(engine.checkRateLimit(request("GET", "/", "127.0.0.1")).isRequestAllowed());
+
+        // requested as rarely as the tracked key, so not admitted, and limited like one key
+        assertTrue(engine.checkRateLimit(request("GET", "/", "127.0.0.2")).isRequestAllowed());
+        assertTrue(engine.checkRateLimit(request("GET", "/", "127.0.0.3")).isRequestAllowed());
+        assertFalse(engine.checkRateLimit(request("GET", "/", "127.0.0.4")).isRequestAllowed());
+
+        assertTrue(engine.checkRateLimit(request("GET", "/", "127.0.0.1")).isRequestAllowed());
+    }
+
+    @Test
+    public void shouldResolvePathOnce_ForAllPoliciesAndRoutes() {
+
+        RateLimitPolicyEngine engine = engine(
+                RateLimitPolicy.compile("api", "ip", "/api/**", null, Collections.singletonList("5/1h")),
+                RateLimitPolicy.compile("reports", "ip", "/api/reports/**", null, Collections.singletonList("5/1h")));
+        RequestCosts requestCosts = new RequestCosts(Arrays.asList(RouteCost.compile("/export/**", null, 10),
+                RouteCost.compile("/api/reports/**", null, 2)));
+        RateLimiter rateLimiter = new RateLimiter(new GcraRateLimitStrategy(clock, 60, 100), engine, null, requestCosts);
+        PathCountingAdapter adapter = new PathCountingAdapter();
+
+        RateLimitResult result = rateLimiter.checkRateLimit(request("GET", "/api/reports/monthly", "127.0.0.1"), adapter);
+
+        assertEquals(3, result.getRemainingAllowedAmountOfRequests());
+        assertEquals(1, adapter.resolvedPaths);
+
+        engine.checkRateLimit(request("GET", "/api/reports/monthly", "127.0.0.1"), adapter);
+        assertEquals(2, adapter.resolvedPaths);
+    }
+
+    private RateLimitPolicyEngine engine(RateLimitPolicy... policies) {
+        return new RateLimitPolicyEngine(clock, Arrays.asList(policies), NO_LIMIT_OF_TRACKED_KEYS);
+    }
+
+    private static MockHttpServletRequest request(String method, String path, String userIP) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.setRemoteAddr(userIP);
+        return request;
+    }
+
+
+    private static final class PathCountingAdapter implements RateLimitRequestAdapter<HttpServletRequest> {
+
+        private final RateLimitRequestAdapter<HttpServletRequest> adapter = ServletRateLimitRequestAdapter.INSTANCE;
+        private int resolvedPaths;
+
+        @Override
+        public String remoteAddress(HttpServletRequest request) {
+            return adapter.remoteAddress(request);
+        }
+
+        @Override
+        public String method(HttpServletRequest request) {
+            return adapter.method(request);
+        }
+
+        @Override
+        public String path(HttpServletRequest request) {
+            resolvedPaths++;
+            return adapter.path(request);
+        }
+
+        @Override
+        public String header(HttpServletRequest request, String name) {
+            return adapter.header(request, name);
+        }
+
+        @Override
+        public String principal(HttpServletRequest request) {
+            return adapter.principal(request);
+        }
+
+        @Override
+        public Object attribute(HttpServletRequest request, String name) {
+            return adapter.attribute(request, name);
+        }
+    }
+}
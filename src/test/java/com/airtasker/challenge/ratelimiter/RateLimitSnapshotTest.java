@@ -0,0 +1,166 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.TestClock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitSnapshotTest {
+
+    private static final long SNAPSHOT_TIME_MILLIS = 1_600_000_000_000L;
+
+    private TestClock clockBeforeRestart;
+    private TestClock clockAfterRestart;
+    private Path file;
+    private String firstUserIP;
+
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        clockBeforeRestart = new TestClock();
+        clockAfterRestart = new TestClock();
+        // the monotonic clock of the new process has a different origin
+        clockAfterRestart.setTime(clockBeforeRestart.nanoTime() - MINUTES.toNanos(1000));
+        file = Files.createTempFile("rate-limit", ".snapshot");
+        firstUserIP = "127.0.0.1";
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+
+    @Test
+    public void shouldKeepRequestsOfSlidingWindow_AfterRestart() throws IOException {
+
+        SlidingWindowRateLimitStrategy strategy = new SlidingWindowRateLimitStrategy(clockBeforeRestart, 60, 2);
+        strategy.checkRateLimit(firstUserIP);
+        clockBeforeRestart.advance(10, MINUTES);
+        strategy.checkRateLimit(firstUserIP);
+        strategy.checkRateLimit("127.0.0.2");
+
+        assertEquals(2, snapshot(strategy));
+
+        SlidingWindowRateLimitStrategy restoredStrategy = new SlidingWindowRateLimitStrategy(clockAfterRestart, 60, 2);
+        restore(restoredStrategy, MINUTES.toMillis(5), true);
+
+        RateLimitResult result = restoredStrategy.checkRateLimit(firstUserIP);
+        assertFalse(result.isRequestAllowed());
+        assertEquals(MINUTES.toSeconds(45), result.getNextAllowedRequestTimeInSeconds());
+        assertTrue(restoredStrategy.checkRateLimit("127.0.0.2").isRequestAllowed());
+        assertFalse(restoredStrategy.checkRateLimit("127.0.0.2").isRequestAllowed());
+    }
+
+    @Test
+    public void shouldKeepRequestsOfRingBuffer_AfterRestart() throws IOException {
+
+        RingBufferSlidingWindowRateLimitStrategy strategy = new RingBufferSlidingWindowRateLimitStrategy(clockBeforeRestart, 60, 2);
+        strategy.checkRateLimit(firstUserIP);
+        strategy.checkRateLimit(firstUserIP);
+
+        assertEquals(1, snapshot(strategy));
+
+        RingBufferSlidingWindowRateLimitStrategy restoredStrategy = new RingBufferSlidingWindowRateLimitStrategy(clockAfterRestart, 60, 2);
+        restore(restoredStrategy, MINUTES.toMillis(20), true);
+
+        RateLimitResult result = restoredStrategy.checkRateLimit(firstUserIP);
+        assertFalse(result.isRequestAllowed());
+        assertEquals(MINUTES.toSeconds(40), result.getNextAllowedRequestTimeInSeconds());
+    }
+
+    @Test
+    public void shouldKeepTheoreticalArrivalTimeOfGcra_AfterRestart() throws IOException {
+
+        GcraRateLimitStrategy strategy = new GcraRateLimitStrategy(clockBeforeRestart, 60, 2);
+        strategy.checkRateLimit(firstUserIP);
+        strategy.checkRateLimit(firstUserIP);
+
+        assertEquals(1, snapshot(strategy));
+
+        GcraRateLimitStrategy restoredStrategy = new GcraRateLimitStrategy(clockAfterRestart, 60, 2);
+        restore(restoredStrategy, MINUTES.toMillis(10), true);
+
+        RateLimitResult result = restoredStrategy.checkRateLimit(firstUserIP);
+        assertFalse(result.isRequestAllowed());
+        assertEquals(MINUTES.toSeconds(20), result.getNextAllowedRequestTimeInSeconds());
+    }
+
+    @Test
+    public void shouldDiscardIdleIPs_WhenTimeWindowPassedSinceSnapshot() throws IOException {
+
+        SlidingWindowRateLimitStrategy strategy = new SlidingWindowRateLimitStrategy(clockBeforeRestart, 60, 1);
+        strategy.checkRateLimit(firstUserIP);
+        clockBeforeRestart.advance(30, MINUTES);
+        strategy.checkRateLimit("127.0.0.2");
+        snapshot(strategy);
+
+        SlidingWindowRateLimitStrategy restoredStrategy = new SlidingWindowRateLimitStrategy(clockAfterRestart, 60, 1);
+        assertEquals(1, restore(restoredStrategy, MINUTES.toMillis(45), true));
+        assertEquals(1, restoredStrategy.numberOfTrackedIPs());
+
+        SlidingWindowRateLimitStrategy strategyKeepingIdleIPs = new SlidingWindowRateLimitStrategy(clockAfterRestart, 60, 1);
+        assertEquals(2, restore(strategyKeepingIdleIPs, MINUTES.toMillis(45), false));
+        assertTrue(strategyKeepingIdleIPs.checkRateLimit(firstUserIP).isRequestAllowed());
+        assertFalse(strategyKeepingIdleIPs.checkRateLimit("127.0.0.2").isRequestAllowed());
+    }
+
+    @Test
+    public void shouldGrowMappedRegion_WhenSnapshotIsLargerThanInitialMapping() throws IOException {
+
+        int numberOfIPs = 50_000;
+        SlidingWindowRateLimitStrategy strategy = new SlidingWindowRateLimitStrategy(clockBeforeRestart, 60, 3);
+        for (int i = 0; i < numberOfIPs; i++) {
+            String userIP = "10.0." + (i >>> 8) + "." + (i & 0xff);
+            strategy.checkRateLimit(userIP);
+            strategy.checkRateLimit(userIP);
+            strategy.checkRateLimit(userIP);
+        }
+
+        assertEquals(numberOfIPs, snapshot(strategy));
+        assertTrue(Files.size(file) > RateLimitSnapshot.INITIAL_MAPPING_SIZE);
+
+        SlidingWindowRateLimitStrategy restoredStrategy = new SlidingWindowRateLimitStrategy(clockAfterRestart, 60, 3);
+        assertEquals(numberOfIPs, restore(restoredStrategy, 0, true));
+        assertEquals(numberOfIPs, restoredStrategy.numberOfTrackedIPs());
+        assertFalse(restoredStrategy.checkRateLimit("10.0.195.79").isRequestAllowed());
+    }
+
+    @Test
+    public void shouldRejectSnapshot_OfOtherStrategyOrCorruptFile() throws IOException {
+
+        GcraRateLimitStrategy strategy = new GcraRateLimitStrategy(clockBeforeRestart, 60, 2);
+        strategy.checkRateLimit(firstUserIP);
+        snapshot(strategy);
+
+        SlidingWindowRateLimitStrategy otherStrategy = new SlidingWindowRateLimitStrategy(clockAfterRestart, 60, 2);
+        assertThrows(IOException.class, () -> restore(otherStrategy, 0, true));
+
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+        assertThrows(IOException.class, () -> restore(new GcraRateLimitStrategy(clockAfterRestart, 60, 2), 0, true));
+
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        assertThrows(IOException.class, () -> restore(new GcraRateLimitStrategy(clockAfterRestart, 60, 2), 0, true));
+    }
+
+    /**
+     * @return the number of written records
+     */
+    private long snapshot(SnapshotableRateLimitStrategy strategy) throws IOException {
+        return RateLimitSnapshot.write(file, strategy, clockBeforeRestart.nanoTime(), SNAPSHOT_TIME_MILLIS);
+    }
+
+    private long restore(SnapshotableRateLimitStrategy strategy, long millisSinceSnapshot, boolean discardIdle) throws IOException {
+        return RateLimitSnapshot.restore(file, strategy, clockAfterRestart.nanoTime(), SNAPSHOT_TIME_MILLIS + millisSinceSnapshot,
+                discardIdle);
+    }
+}
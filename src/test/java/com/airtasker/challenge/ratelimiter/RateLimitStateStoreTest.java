@@ -0,0 +1,267 @@
+package com.airtasker.challenge.ratelimiter;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitStateStoreTest {
+
+    private static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toNanos(60);
+
+    private RateLimitStateStore<AtomicLong> store;
+    private AtomicInteger expiryChecks;
+
+
+    @BeforeEach
+    public void setUp() {
+        expiryChecks = new AtomicInteger();
+        store = new RateLimitStateStore<>(IDLE_TIMEOUT, AtomicLong::new, this::removeIfIdle);
+    }
+
+    /**
+     * The state holds the time of the last request of the key.
+     */
+    private long removeIfIdle(String key, AtomicLong timeOfLastRequest, long currentTime) {
+        expiryChecks.incrementAndGet();
+
+        if (timeOfLastRequest.get() + IDLE_TIMEOUT >= currentTime) {
+            return timeOfLastRequest.get() + IDLE_TIMEOUT;
+        }
+
+        store.remove(key, timeOfLastRequest);
+        return RateLimitStateStore.REMOVED;
+    }
+
+
+    @Test
+    public void shouldReturnSameState_ForSameKey() {
+        AtomicLong state = store.getOrCreate("127.0.0.1", 0);
+
+        assertSame(state, store.getOrCreate("127.0.0.1", 10));
+        assertSame(state, store.get("127.0.0.1"));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void shouldNotCheckAnyKey_BeforeIdleTimeout() {
+        store.expireIdleStates(0);
+        store.getOrCreate("127.0.0.1", 0);
+
+        store.expireIdleStates(IDLE_TIMEOUT / 2, Integer.MAX_VALUE);
+
+        assertEquals(0, expiryChecks.get());
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void shouldRemoveIdleKeys_InBatches() {
+        store.expireIdleStates(0);
+        for (int i = 0; i < 100; i++) {
+            store.getOrCreate("127.0.0." + i, 0);
+        }
+
+        long currentTime = 2 * IDLE_TIMEOUT;
+
+        store.expireIdleStates(currentTime, 30);
+        assertEquals(70, store.size());
+
+        store.expireIdleStates(currentTime, 30);
+        assertEquals(40, store.size());
+
+        store.expireIdleStates(currentTime, Integer.MAX_VALUE);
+        assertEquals(0, store.size());
+        assertEquals(100, expiryChecks.get());
+    }
+
+    @Test
+    public void shouldCountIdleKeysAndCleanups_WhenExpiredByBackgroundTask() {
+        store.expireIdleStates(0);
+        for (int i = 0; i < 100; i++) {
+            store.getOrCreate("127.0.0." + i, 0);
+        }
+
+        store.expireIdleStates(2 * IDLE_TIMEOUT, 30);
+        store.expireAllIdleStates(2 * IDLE_TIMEOUT);
+
+        RateLimitStateStatistics statistics = store.getStatistics();
+        assertEquals(100, statistics.getExpiredCount());
+        assertEquals(1, statistics.getCleanupCount());
+        assertTrue(statistics.getCleanupTimeInNanos() > 0);
+    }
+
+    @Test
+    public void shouldEstimateMemory_ProportionalToKeys() {
+        assertEquals(0, store.estimateMemoryInBytes(state -> 24));
+
+        for (int i = 0; i < 1000; i++) {
+            store.getOrCreate("10.0." + (i >>> 8) + "." + (i & 0xff), 0);
+        }
+
+        long bytesPerKey = store.estimateMemoryInBytes(state -> 24) / 1000;
+        // map node, String with its chars, entry of the wheel and the state
+        assertTrue(bytesPerKey > 32 + 48 + 24 + 24 && bytesPerKey < 200, "bytes per key " + bytesPerKey);
+    }
+
+    @Test
+    public void shouldKeepActiveKey_AndCheckItAgainWhenItMayBeIdle() {
+        store.expireIdleStates(0);
+        AtomicLong timeOfLastRequest = store.getOrCreate("127.0.0.1", 0);
+
+        timeOfLastRequest.set(IDLE_TIMEOUT / 2);
+        store.expireIdleStates(IDLE_TIMEOUT + 1, Integer.MAX_VALUE);
+
+        assertEquals(1, store.size());
+        assertEquals(1, expiryChecks.get());
+
+        store.expireIdleStates(IDLE_TIMEOUT + IDLE_TIMEOUT / 4, Integer.MAX_VALUE);
+
+        assertEquals(1, expiryChecks.get());
+
+        store.expireIdleStates(2 * IDLE_TIMEOUT, Integer.MAX_VALUE);
+
+        assertEquals(0, store.size());
+        assertEquals(2, expiryChecks.get());
+    }
+
+    @Test
+    public void shouldCheckEveryKeyOnce_WhenWheelWasNotAdvancedForLongTime() {
+        store.expireIdleStates(0);
+        for (int i = 0; i < 100; i++) {
+            store.getOrCreate("127.0.0." + i, 0);
+        }
+
+        store.expireIdleStates(TimeUnit.DAYS.toNanos(10), Integer.MAX_VALUE);
+
+        assertEquals(0, store.size());
+        assertEquals(100, expiryChecks.get());
+    }
+
+    @Test
+    public void shouldKeepSizeProportionalToActiveKeys_WhenEveryRequestHasNewKey() {
+        long timeBetweenRequests = TimeUnit.MILLISECONDS.toNanos(10);
+        long keysPerIdleTimeout = IDLE_TIMEOUT / timeBetweenRequests;
+        int maxSize = 0;
+
+        for (int request = 0; request < 20 * keysPerIdleTimeout; request++) {
+            long currentTime = request * timeBetweenRequests;
+
+            store.expireIdleStates(currentTime);
+            store.getOrCreate("key-" + request, currentTime).set(currentTime);
+
+            maxSize = Math.max(maxSize, store.size());
+        }
+
+        assertTrue(maxSize <= keysPerIdleTimeout * 11 / 10, "max size " + maxSize);
+    }
+
+    @Test
+    public void shouldNotAdmitNewKeys_WhenMaximumSizeReached() {
+        store = new RateLimitStateStore<>(IDLE_TIMEOUT, AtomicLong::new, this::removeIfIdle, 100);
+        store.expireIdleStates(0);
+
+        for (int i = 0; i < 10_000; i++) {
+            store.getOrCreate("key-" + i, 0);
+        }
+
+        assertEquals(100, store.size());
+        assertEquals(9_900, store.getNotAdmittedCount() + store.getEvictionCount());
+        assertTrue(store.getNotAdmittedCount() > store.getEvictionCount());
+    }
+
+    @Test
+    public void shouldEvictLeastFrequentKey_WhenFullAndKeyIsRequestedAgain() {
+        store = new RateLimitStateStore<>(IDLE_TIMEOUT, AtomicLong::new, this::removeIfIdle, 100);
+        store.expireIdleStates(0);
+        for (int i = 0; i < 100; i++) {
+            store.getOrCreate("key-" + i, 0);
+        }
+
+        assertNull(store.getOrCreate("127.0.0.1", 0));
+        assertNotNull(store.getOrCreate("127.0.0.1", 0));
+
+        assertEquals(100, store.size());
+        assertEquals(1, store.getEvictionCount());
+        assertEquals(1, expiryChecks.get());
+    }
+
+    @Test
+    public void shouldKeepFrequentKeys_WhenFloodedWithNewKeys() {
+        int frequentKeys = 50;
+        store = new RateLimitStateStore<>(IDLE_TIMEOUT, AtomicLong::new, this::removeIfIdle, 100);
+        store.expireIdleStates(0);
+
+        for (int request = 0; request < 200_000; request++) {
+            long currentTime = request * TimeUnit.MICROSECONDS.toNanos(100);
+
+            store.expireIdleStates(currentTime);
+            store.getOrCreate("flood-" + request, currentTime);
+            AtomicLong timeOfLastRequest = store.getOrCreate("frequent-" + request % frequentKeys, currentTime);
+            if (timeOfLastRequest != null) {
+                timeOfLastRequest.set(currentTime);
+            }
+
+            assertTrue(store.size() <= 100);
+        }
+
+        for (int i = 0; i < frequentKeys; i++) {
+            assertNotNull(store.get("frequent-" + i), "frequent-" + i);
+        }
+        assertTrue(store.getNotAdmittedCount() > 0);
+    }
+
+    @Test
+    public void shouldSpreadKeysEvenlyOverShards() {
+        store = new RateLimitStateStore<>(IDLE_TIMEOUT, AtomicLong::new, this::removeIfIdle, RateLimitStateStore.UNBOUNDED, 16);
+
+        for (int i = 0; i < 16_000; i++) {
+            store.getOrCreate("10.0." + (i >>> 8) + "." + (i & 0xff), 0);
+        }
+
+        for (int shard = 0; shard < 16; shard++) {
+            int size = store.sizeOfShard(shard);
+            assertTrue(size > 800 && size < 1200, "shard " + shard + " has " + size + " keys");
+        }
+    }
+
+    @Test
+    public void shouldNotExceedMaximumSize_WhenEveryShardIsFull() {
+        store = new RateLimitStateStore<>(IDLE_TIMEOUT, AtomicLong::new, this::removeIfIdle, 1_000, 8);
+        store.expireIdleStates(0);
+
+        for (int i = 0; i < 100_000; i++) {
+            store.getOrCreate("key-" + i, 0);
+            assertTrue(store.size() <= 1_000);
+        }
+
+        assertEquals(1_000, store.size());
+    }
+
+    @Test
+    public void shouldRemoveIdleKeysOfAllShards_InBatches() {
+        store = new RateLimitStateStore<>(IDLE_TIMEOUT, AtomicLong::new, this::removeIfIdle, RateLimitStateStore.UNBOUNDED, 8);
+        store.expireIdleStates(0);
+        for (int i = 0; i < 100; i++) {
+            store.getOrCreate("127.0.0." + i, 0);
+        }
+
+        long currentTime = 2 * IDLE_TIMEOUT;
+
+        store.expireIdleStates(currentTime, 30);
+        assertEquals(70, store.size());
+
+        store.expireIdleStates(currentTime, Integer.MAX_VALUE);
+        assertEquals(0, store.size());
+        assertEquals(100, expiryChecks.get());
+    }
+
+    @Test
+    public void shouldUseFewerShards_WhenMaximumSizeIsSmall() {
+        assertEquals(1, RateLimitStateStore.defaultNumberOfShards(100));
+        assertTrue(RateLimitStateStore.defaultNumberOfShards(RateLimitStateStore.UNBOUNDED) <= RateLimitStateStore.MAX_NUMBER_OF_SHARDS);
+    }
+}
@@ -0,0 +1,98 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.TestClock;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RateLimitStrategyConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int REQUESTS_PER_THREAD = 2_000;
+    private static final int LIMIT_OF_REQUESTS = 100;
+    private static final int ROUNDS = 50;
+
+    private final TestClock clock = new TestClock();
+
+
+    @Test
+    public void shouldNeverExceedLimit_WhenOneIPIsHammeredConcurrently_WithSlidingWindow() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            assertEquals(LIMIT_OF_REQUESTS, countAllowedRequests(new SlidingWindowRateLimitStrategy(clock, 60, LIMIT_OF_REQUESTS)));
+        }
+    }
+
+    @Test
+    public void shouldNeverExceedLimit_WhenOneIPIsHammeredConcurrently_WithRingBuffer() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            assertEquals(LIMIT_OF_REQUESTS, countAllowedRequests(new RingBufferSlidingWindowRateLimitStrategy(clock, 60, LIMIT_OF_REQUESTS)));
+        }
+    }
+
+    @Test
+    public void shouldNeverExceedLimit_WhenOneIPIsHammeredConcurrently_WithSlidingWindowCounter() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            assertEquals(LIMIT_OF_REQUESTS, countAllowedRequests(new SlidingWindowCounterRateLimitStrategy(clock, 60, LIMIT_OF_REQUESTS)));
+        }
+    }
+
+    @Test
+    public void shouldNeverExceedLimit_WhenOneIPIsHammeredConcurrently_WithGcra() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            assertEquals(LIMIT_OF_REQUESTS, countAllowedRequests(new GcraRateLimitStrategy(clock, 60, LIMIT_OF_REQUESTS)));
+        }
+    }
+
+    @Test
+    public void shouldNeverExceedLimit_WhenOneIPIsHammeredConcurrently_WithCompactGcra() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            assertEquals(LIMIT_OF_REQUESTS, countAllowedRequests(new CompactGcraRateLimitStrategy(clock, 60, LIMIT_OF_REQUESTS)));
+        }
+    }
+
+    @Test
+    public void shouldNeverExceedLimit_WhenOneIPIsHammeredConcurrently_WithOffHeapCompactGcra() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            assertEquals(LIMIT_OF_REQUESTS, countAllowedRequests(new CompactGcraRateLimitStrategy(clock, 60, LIMIT_OF_REQUESTS,
+                    0, IpAddressKey.IPV6_ADDRESS_LENGTH, SlotTable.Storage.OFF_HEAP)));
+        }
+    }
+
+    private int countAllowedRequests(RateLimitStrategy strategy) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger allowedRequests = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+
+        try {
+            for (int thread = 0; thread < THREADS; thread++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                        if (strategy.checkRateLimit("127.0.0.1").isRequestAllowed()) {
+                            allowedRequests.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return allowedRequests.get();
+    }
+}
@@ -0,0 +1,217 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.TestClock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitWebFilterTest {
+
+    private static final int NO_LIMIT_OF_TRACKED_KEYS = 0;
+
+    private TestClock clock;
+    private AtomicInteger forwardedRequests;
+    private WebFilterChain chain;
+
+
+    @BeforeEach
+    public void setUp() {
+        clock = new TestClock();
+        forwardedRequests = new AtomicInteger();
+        chain = exchange -> Mono.fromRunnable(forwardedRequests::incrementAndGet);
+    }
+
+
+    @Test
+    public void shouldForwardRequest_WhenWithinLimit() {
+
+        RateLimitWebFilter filter = new RateLimitWebFilter(new RateLimiter(new SlidingWindowRateLimitStrategy(clock, 1, 2), null),
+                null);
+
+        filter.filter(exchange("127.0.0.1"), chain).block();
+        filter.filter(exchange("127.0.0.1"), chain).block();
+
+        assertEquals(2, forwardedRequests.get());
+    }
+
+    @Test
+    public void shouldRespondTooManyRequests_WithRetryAfter_WhenLimitIsExceeded() {
+
+        RateLimitWebFilter filter = new RateLimitWebFilter(new RateLimiter(new SlidingWindowRateLimitStrategy(clock, 1, 1), null),
+                null);
+
+        filter.filter(exchange("127.0.0.1"), chain).block();
+        MockServerWebExchange denied = exchange("127.0.0.1");
+        filter.filter(denied, chain).block();
+
+        assertEquals(1, forwardedRequests.get());
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, denied.getResponse().getStatusCode());
+        assertEquals("60", denied.getResponse().getHeaders().getFirst("Retry-After"));
+        assertEquals("1", denied.getResponse().getHeaders().getFirst("RateLimit-Limit"));
+        assertEquals("0", denied.getResponse().getHeaders().getFirst("RateLimit-Remaining"));
+        assertEquals("60", denied.getResponse().getHeaders().getFirst("RateLimit-Reset"));
+        assertEquals("Try again in 60 seconds", denied.getResponse().getBodyAsString().block());
+
+        filter.filter(exchange("127.0.0.2"), chain).block();
+        assertEquals(2, forwardedRequests.get());
+    }
+
+    @Test
+    public void shouldContinueRequest_OnceAsynchronousResultIsCompleted() {
+
+        CompletableFuture<RateLimitResult> result = new CompletableFuture<>();
+        RateLimitStrategy strategy = new RateLimitStrategy() {
+            @Override
+            public RateLimitResult checkRateLimit(String userIP, int cost) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public CompletionStage<RateLimitResult> checkRateLimitAsync(String userIP, int cost) {
+                return result;
+            }
+        };
+        RateLimitWebFilter filter = new RateLimitWebFilter(new RateLimiter(strategy, null), null);
+
+        Mono<Void> filtered = filter.filter(exchange("127.0.0.1"), chain);
+        filtered.subscribe();
+        assertEquals(0, forwardedRequests.get());
+
+        result.complete(new RateLimitResult(true, 0));
+        assertEquals(1, forwardedRequests.get());
+    }
+
+    @Test
+    public void shouldCheckPolicies_WithAttributesOfExchange() {
+
+        RateLimitPolicyEngine engine = new RateLimitPolicyEngine(clock, Collections.singletonList(RateLimitPolicy.compile(
+                "api-key", "header:X-Api-Key", "/api/**", "GET", Collections.singletonList("1/1m"))), NO_LIMIT_OF_TRACKED_KEYS);
+        RateLimitWebFilter filter = new RateLimitWebFilter(new RateLimiter(new SlidingWindowRateLimitStrategy(clock, 1, 100),
+                engine), null);
+
+        filter.filter(exchange(MockServerHttpRequest.get("/api/tasks").header("X-Api-Key", "key"), "127.0.0.1"), chain).block();
+        MockServerWebExchange denied = exchange(MockServerHttpRequest.get("/api/tasks").header("X-Api-Key", "key"), "127.0.0.2");
+        filter.filter(denied, chain).block();
+        filter.filter(exchange(MockServerHttpRequest.get("/other").header("X-Api-Key", "key"), "127.0.0.1"), chain).block();
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, denied.getResponse().getStatusCode());
+        assertEquals(2, forwardedRequests.get());
+    }
+
+    @Test
+    public void shouldLimitPolicyPath_WhenPathIsEncodedOrNotNormalized() {
+
+        RateLimitPolicyEngine engine = new RateLimitPolicyEngine(clock, Collections.singletonList(RateLimitPolicy.compile(
+                "api", "global", "/api/**", null, Collections.singletonList("1/1h"))), NO_LIMIT_OF_TRACKED_KEYS);
+        RateLimitWebFilter filter = new RateLimitWebFilter(new RateLimiter(new SlidingWindowRateLimitStrategy(clock, 1, 100),
+                engine), null);
+
+        filter.filter(exchange(MockServerHttpRequest.get("/api/reports"), "127.0.0.1"), chain).block();
+
+        for (String path : Arrays.asList("/%61pi/reports", "/api/reports/", "/api//reports", "/api;jsessionid=1/reports")) {
+            MockServerWebExchange denied = exchange(MockServerHttpRequest.method(HttpMethod.GET, URI.create(path)),
+                    "127.0.0.1");
+            filter.filter(denied, chain).block();
+
+            assertEquals(HttpStatus.TOO_MANY_REQUESTS, denied.getResponse().getStatusCode(), path);
+        }
+        assertEquals(1, forwardedRequests.get());
+    }
+
+    @Test
+    public void shouldLimitByPrincipal_OfReactiveSecurityContext() {
+
+        RateLimitPolicyEngine engine = new RateLimitPolicyEngine(clock, Collections.singletonList(RateLimitPolicy.compile(
+                "user", "principal", null, null, Collections.singletonList("1/1m"))), NO_LIMIT_OF_TRACKED_KEYS);
+        RateLimitWebFilter filter = new RateLimitWebFilter(new RateLimiter(new SlidingWindowRateLimitStrategy(clock, 1, 100),
+                engine), null);
+        UsernamePasswordAuthenticationToken user =
+                new UsernamePasswordAuthenticationToken("user", null, Collections.emptyList());
+
+        filter.filter(exchange("127.0.0.1"), chain)
+                .subscriberContext(ReactiveSecurityContextHolder.withAuthentication(user)).block();
+        MockServerWebExchange denied = exchange("127.0.0.2");
+        filter.filter(denied, chain)
+                .subscriberContext(ReactiveSecurityContextHolder.withAuthentication(user)).block();
+
+        // without a principal the policy does not apply
+        filter.filter(exchange("127.0.0.3"), chain).block();
+        filter.filter(exchange("127.0.0.3"), chain).block();
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, denied.getResponse().getStatusCode());
+        assertEquals(3, forwardedRequests.get());
+    }
+
+
+    @Test
+    public void shouldCountRequestAsItsCost_OfRouteOrAttribute() {
+
+        RequestCosts requestCosts = new RequestCosts(Collections.singletonList(RouteCost.compile("/reports/**", "POST", 3)));
+        RateLimitWebFilter filter = new RateLimitWebFilter(new RateLimiter(new GcraRateLimitStrategy(clock, 1, 4),
+                null, null, requestCosts), null);
+
+        filter.filter(exchange(MockServerHttpRequest.post("/reports/monthly"), "127.0.0.1"), chain).block();
+        MockServerWebExchange denied = exchange(MockServerHttpRequest.post("/reports/monthly"), "127.0.0.1");
+        filter.filter(denied, chain).block();
+        filter.filter(exchange("127.0.0.1"), chain).block();
+
+        MockServerWebExchange expensive = exchange("127.0.0.2");
+        expensive.getAttributes().put(RequestCosts.COST_ATTRIBUTE, 5);
+        filter.filter(expensive, chain).block();
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, denied.getResponse().getStatusCode());
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, expensive.getResponse().getStatusCode());
+        assertEquals(2, forwardedRequests.get());
+    }
+
+    @Test
+    public void shouldRejectRequest_WhileTooManyRequestsOfIPAreInFlight() {
+
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(clock, 1, ConcurrencyLimiter.UNLIMITED);
+        RateLimitWebFilter filter = new RateLimitWebFilter(new RateLimiter(new GcraRateLimitStrategy(clock, 1, 100),
+                null), concurrencyLimiter);
+        CompletableFuture<Void> response = new CompletableFuture<>();
+
+        filter.filter(exchange("127.0.0.1"), exchange -> Mono.fromFuture(response)).subscribe();
+        MockServerWebExchange rejected = exchange("127.0.0.1");
+        filter.filter(rejected, chain).block();
+        filter.filter(exchange("127.0.0.2"), chain).block();
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, rejected.getResponse().getStatusCode());
+        assertEquals("1", rejected.getResponse().getHeaders().getFirst("Retry-After"));
+        assertFalse(rejected.getResponse().getHeaders().containsKey("RateLimit-Remaining"));
+        assertEquals(1, forwardedRequests.get());
+
+        response.complete(null);
+        filter.filter(exchange("127.0.0.1"), chain).block();
+
+        assertEquals(2, forwardedRequests.get());
+        assertEquals(0, concurrencyLimiter.numberOfRequestsInFlight());
+    }
+
+
+    private static MockServerWebExchange exchange(String remoteAddress) {
+        return exchange(MockServerHttpRequest.get("/"), remoteAddress);
+    }
+
+    private static MockServerWebExchange exchange(MockServerHttpRequest.BaseBuilder<?> request, String remoteAddress) {
+        return MockServerWebExchange.from(request.remoteAddress(new InetSocketAddress(remoteAddress, 12345)));
+    }
+}
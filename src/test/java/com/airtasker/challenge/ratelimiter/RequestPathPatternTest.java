@@ -0,0 +1,71 @@
+package com.airtasker.challenge.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestPathPatternTest {
+
+    @Test
+    public void shouldMatchLiteralSegments() {
+
+        RequestPathPattern pattern = RequestPathPattern.compile("/api/users");
+
+        assertTrue(pattern.matches("/api/users"));
+        assertFalse(pattern.matches("/api/users/1"));
+        assertFalse(pattern.matches("/api/user"));
+        assertFalse(pattern.matches("/api/usersx"));
+        assertFalse(pattern.matches("/api"));
+    }
+
+    @Test
+    public void shouldMatchOneSegment_WithSingleWildcard() {
+
+        RequestPathPattern pattern = RequestPathPattern.compile("/users/*/orders");
+
+        assertTrue(pattern.matches("/users/42/orders"));
+        assertFalse(pattern.matches("/users//orders"));
+        assertFalse(pattern.matches("/users/42/43/orders"));
+    }
+
+    @Test
+    public void shouldMatchRemainingSegments_WithTrailingDoubleWildcard() {
+
+        RequestPathPattern pattern = RequestPathPattern.compile("/api/**");
+
+        assertTrue(pattern.matches("/api"));
+        assertTrue(pattern.matches("/api/users/42"));
+        assertFalse(pattern.matches("/apis/users"));
+        assertTrue(RequestPathPattern.compile("/**").matches("/anything/at/all"));
+        assertTrue(RequestPathPattern.compile("/").matches("/"));
+    }
+
+    @Test
+    public void shouldMatchPath_WithTrailingSlash() {
+
+        assertTrue(RequestPathPattern.compile("/api/reports").matches("/api/reports/"));
+        assertTrue(RequestPathPattern.compile("/users/*").matches("/users/42/"));
+        assertTrue(RequestPathPattern.compile("/api/**").matches("/api/"));
+        assertFalse(RequestPathPattern.compile("/api/reports").matches("/api/reports//"));
+    }
+
+    @Test
+    public void shouldNormalizePath_AsTheFrameworkRoutesIt() {
+
+        assertEquals("/api/reports", RequestPathPattern.normalize("//api//reports"));
+        assertEquals("/api/reports", RequestPathPattern.normalize("/x/../api/./reports"));
+        assertEquals("/", RequestPathPattern.normalize("/"));
+        assertTrue(RequestPathPattern.compile("/api/reports").matches(RequestPathPattern.normalize("/api///reports/")));
+
+        String normalized = "/api/reports";
+        assertSame(normalized, RequestPathPattern.normalize(normalized));
+    }
+
+    @Test
+    public void shouldRejectUnsupportedPatterns() {
+
+        assertThrows(IllegalArgumentException.class, () -> RequestPathPattern.compile("api"));
+        assertThrows(IllegalArgumentException.class, () -> RequestPathPattern.compile("/api/**/users"));
+        assertThrows(IllegalArgumentException.class, () -> RequestPathPattern.compile("/api/user*"));
+    }
+}
@@ -0,0 +1,298 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.TestClock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SpringExtension.class)
+class RingBufferSlidingWindowRateLimitStrategyTest {
+
+    private TestClock clock;
+    private RingBufferSlidingWindowRateLimitStrategy strategy;
+    private String firstUserIP;
+
+
+    @BeforeEach
+    public void setUp() {
+        clock = new TestClock();
+        firstUserIP = "127.0.0.1";
+    }
+
+
+    @Test
+    public void shouldAllow_WhenWithinLimitOfRequests_And_WithinTimeWindow() {
+
+        strategy = new RingBufferSlidingWindowRateLimitStrategy(clock, 3, 2);
+
+        //First Request
+        long timeOfFirstRequest = clock.nanoTime();
+        strategy.checkRateLimit(firstUserIP);
+
+        //Second Request
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(1));
+        RateLimitResult result = strategy.checkRateLimit(firstUserIP);
+
+        assertTrue(result.isRequestAllowed());
+    }
+
+
+    @Test
+    public void shouldNotAllow_WhenMoreThanAllowedRequests_WithinTimeWindow() {
+
+        strategy = new RingBufferSlidingWindowRateLimitStrategy(clock, 3, 2);
+
+        //First Request
+        long timeOfFirstRequest = clock.nanoTime();
+        strategy.checkRateLimit(firstUserIP);
+
+        //Second Request
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(1));
+        strategy.checkRateLimit(firstUserIP);
+
+        //Third Request
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(2));
+        RateLimitResult result = strategy.checkRateLimit(firstUserIP);
+
+        assertFalse(result.isRequestAllowed());
+    }
+
+    @Test
+    public void shouldCalculateRemainingTimeInSeconds() {
+
+        strategy = new RingBufferSlidingWindowRateLimitStrategy(clock, 1, 1);
+
+        //First Request
+        long timeOfFirstRequest = clock.nanoTime();
+        strategy.checkRateLimit(firstUserIP);
+
+        //Second Request
+        clock.setTime(timeOfFirstRequest + SECONDS.toNanos(1));
+        RateLimitResult resultSecondRequest = strategy.checkRateLimit(firstUserIP);
+
+        assertEquals(59, resultSecondRequest.getNextAllowedRequestTimeInSeconds());
+
+        //Third Request
+        clock.setTime(timeOfFirstRequest + SECONDS.toNanos(2));
+        RateLimitResult resultThirdRequest = strategy.checkRateLimit(firstUserIP);
+
+        assertEquals(58, resultThirdRequest.getNextAllowedRequestTimeInSeconds());
+    }
+
+    @Test
+    public void shouldAllow_WhenWithinLimitOfRequests_And_WithinTimeWindow_WithSecondUser() {
+
+        strategy = new RingBufferSlidingWindowRateLimitStrategy(clock, 3, 2);
+
+        //first user
+        long timeOfFirstRequest = clock.nanoTime();
+        strategy.checkRateLimit(firstUserIP);
+
+        //second user
+        clock.setTime(timeOfFirstRequest);
+        strategy.checkRateLimit("197.168.154");
+
+        //first user, second request
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(1));
+        RateLimitResult result = strategy.checkRateLimit(firstUserIP);
+
+        assertTrue(result.isRequestAllowed());
+    }
+
+    @Test
+    public void shouldReturnAmountOfAllowedRemainingRequests() {
+
+        int limitInMinutes = 3;
+
+        strategy = new RingBufferSlidingWindowRateLimitStrategy(clock, limitInMinutes, 2);
+
+        //First Request
+        long timeOfFirstRequest = clock.nanoTime();
+
+        assertEquals(1, strategy.checkRateLimit(firstUserIP).getRemainingAllowedAmountOfRequests());
+
+        //Second Request
+        long timeOfSecondRequest = timeOfFirstRequest + SECONDS.toNanos(10);
+        clock.setTime(timeOfSecondRequest);
+
+        assertEquals(0, strategy.checkRateLimit(firstUserIP).getRemainingAllowedAmountOfRequests());
+
+        //Third Request
+        clock.setTime(timeOfSecondRequest + MINUTES.toNanos(limitInMinutes) + SECONDS.toNanos(1));
+
+        assertEquals(1, strategy.checkRateLimit(firstUserIP).getRemainingAllowedAmountOfRequests());
+    }
+
+    @Test
+    public void shouldBehaveLikeSlidingWindowStrategy_ForRandomRequestSequence() {
+
+        int limitInMinutes = 2;
+        int limitOfRequests = 5;
+
+        strategy = new RingBufferSlidingWindowRateLimitStrategy(clock, limitInMinutes, limitOfRequests);
+        SlidingWindowRateLimitStrategy referenceStrategy = new SlidingWindowRateLimitStrategy(clock, limitInMinutes, limitOfRequests);
+
+        Random random = new Random(42);
+        String[] userIPs = {"127.0.0.1", "127.0.0.2", "127.0.0.3"};
+
+        for (int i = 0; i < 10_000; i++) {
+            clock.advance(random.nextInt(10_000), MILLISECONDS);
+            String userIP = userIPs[random.nextInt(userIPs.length)];
+
+            RateLimitResult expected = referenceStrategy.checkRateLimit(userIP);
+            RateLimitResult actual = strategy.checkRateLimit(userIP);
+
+            assertEquals(expected.isRequestAllowed(), actual.isRequestAllowed());
+            assertEquals(expected.getRemainingAllowedAmountOfRequests(), actual.getRemainingAllowedAmountOfRequests());
+            assertEquals(expected.getNextAllowedRequestTimeInSeconds(), actual.getNextAllowedRequestTimeInSeconds());
+        }
+    }
+
+    @Test
+    public void shouldReuseResult_WhenRequestIsAllowed() {
+
+        strategy = new RingBufferSlidingWindowRateLimitStrategy(clock, 3, 3);
+
+        RateLimitResult firstUserResult = strategy.checkRateLimit(firstUserIP);
+        RateLimitResult secondUserResult = strategy.checkRateLimit("127.0.0.2");
+
+        assertSame(firstUserResult, secondUserResult);
+    }
+
+    @Test
+    public void shouldDeleteIdleMapEntries() {
+
+        long now = clock.nanoTime();
+        strategy = new RingBufferSlidingWindowRateLimitStrategy(clock, 3, 3);
+
+        clock.setTime(now - MINUTES.toNanos(10));
+        strategy.checkRateLimit(firstUserIP);
+
+        clock.setTime(now - MINUTES.toNanos(2));
+        strategy.checkRateLimit("127.0.0.2");
+
+        clock.setTime(now);
+        strategy.expireIdleStates();
+
+        assertEquals(1, strategy.numberOfTrackedIPs());
+    }
+    @Test
+    public void shouldBehaveLikeSlidingWindowStrategy_WhenLimitIsUpdated() {
+
+        SlidingWindowRateLimitStrategy referenceStrategy = new SlidingWindowRateLimitStrategy(clock, 3, 4);
+        strategy = new RingBufferSlidingWindowRateLimitStrategy(clock, 3, 4);
+        Random random = new Random(42);
+
+        for (int i = 0; i < 2_000; i++) {
+            if (i % 100 == 0) {
+                int apiLimitRequests = 1 + random.nextInt(6);
+                referenceStrategy.updateLimit(3, apiLimitRequests);
+                strategy.updateLimit(3, apiLimitRequests);
+            }
+
+            clock.advance(random.nextInt(10_000), MILLISECONDS);
+            String userIP = "10.0.0." + random.nextInt(4);
+
+            RateLimitResult expected = referenceStrategy.checkRateLimit(userIP);
+            RateLimitResult actual = strategy.checkRateLimit(userIP);
+
+            assertEquals(expected.isRequestAllowed(), actual.isRequestAllowed());
+            assertEquals(expected.getRemainingAllowedAmountOfRequests(), actual.getRemainingAllowedAmountOfRequests());
+        }
+    }
+
+    @Test
+    public void shouldDenyWithSharedResult_UntilOldestRequestLeavesWindow() {
+        long timeOfFirstRequest = clock.nanoTime();
+        strategy = new RingBufferSlidingWindowRateLimitStrategy(clock, 3, 1);
+
+        strategy.checkRateLimit(firstUserIP);
+
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(1));
+        RateLimitResult denied = strategy.checkRateLimit(firstUserIP);
+        assertFalse(denied.isRequestAllowed());
+        assertEquals(MINUTES.toSeconds(2), denied.getNextAllowedRequestTimeInSeconds());
+        assertSame(denied, strategy.checkRateLimit(firstUserIP));
+
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(3));
+        RateLimitResult lastDenied = strategy.checkRateLimit(firstUserIP);
+        assertFalse(lastDenied.isRequestAllowed());
+        assertEquals(0, lastDenied.getNextAllowedRequestTimeInSeconds());
+
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(3) + 1);
+        assertTrue(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+    }
+
+    @Test
+    public void shouldAllow_WhenLimitIsRaised_WhileDenied() {
+        strategy = new RingBufferSlidingWindowRateLimitStrategy(clock, 3, 1);
+
+        strategy.checkRateLimit(firstUserIP);
+        assertFalse(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+
+        strategy.updateLimit(3, 2);
+
+        assertTrue(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+    }
+
+    @Test
+    public void shouldCountRequestAsItsCost_AndDenyItAsAWhole() {
+
+        RingBufferSlidingWindowRateLimitStrategy strategy = new RingBufferSlidingWindowRateLimitStrategy(clock, 1, 5);
+
+        assertEquals(2, strategy.checkRateLimit(firstUserIP, 3).getRemainingAllowedAmountOfRequests());
+        assertFalse(strategy.checkRateLimit(firstUserIP, 3).isRequestAllowed());
+        assertEquals(0, strategy.checkRateLimit(firstUserIP, 2).getRemainingAllowedAmountOfRequests());
+
+        // the oldest requests leave the window one after the other
+        clock.advance(61, SECONDS);
+        assertEquals(2, strategy.checkRateLimit(firstUserIP, 3).getRemainingAllowedAmountOfRequests());
+    }
+
+    @Test
+    public void shouldLimitUntrackedIPsTogether_WhenStoreIsFull() {
+
+        strategy = new RingBufferSlidingWindowRateLimitStrategy(clock, 1, 2, 1);
+
+        assertTrue(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+
+        // requested as rarely as the tracked IP, so not admitted, and limited like one IP
+        assertTrue(strategy.checkRateLimit("127.0.0.2").isRequestAllowed());
+        assertTrue(strategy.checkRateLimit("127.0.0.3").isRequestAllowed());
+        assertFalse(strategy.checkRateLimit("127.0.0.4").isRequestAllowed());
+
+        assertTrue(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+        assertEquals(1, strategy.numberOfTrackedIPs());
+    }
+
+    @Test
+    public void shouldDenyCheaperRequest_OnlyUntilItsOwnRetryTime_AfterExpensiveRequestIsDenied() {
+
+        strategy = new RingBufferSlidingWindowRateLimitStrategy(clock, 1, 5);
+
+        assertTrue(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+        for (int i = 0; i < 4; i++) {
+            clock.advance(10, SECONDS);
+            assertTrue(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+        }
+
+        clock.advance(5, SECONDS);
+        assertEquals(55, strategy.checkRateLimit(firstUserIP, 5).getNextAllowedRequestTimeInSeconds());
+
+        // the denial of the cheaper request replaces the one of the expensive request as a whole
+        clock.advance(1, SECONDS);
+        assertEquals(54, strategy.checkRateLimit(firstUserIP, 5).getNextAllowedRequestTimeInSeconds());
+        assertEquals(14, strategy.checkRateLimit(firstUserIP).getNextAllowedRequestTimeInSeconds());
+
+        clock.advance(15, SECONDS);
+        assertTrue(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+    }
+}
@@ -0,0 +1,233 @@
+package com.airtasker.challenge.ratelimiter;
+
+import com.airtasker.challenge.util.TestClock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SpringExtension.class)
+class SlidingWindowCounterRateLimitStrategyTest {
+
+    private TestClock clock;
+    private SlidingWindowCounterRateLimitStrategy strategy;
+    private String firstUserIP;
+
+
+    @BeforeEach
+    public void setUp() {
+        clock = new TestClock();
+        firstUserIP = "127.0.0.1";
+    }
+
+
+    @Test
+    public void shouldAllow_WhenWithinLimitOfRequests_And_WithinTimeWindow() {
+
+        strategy = new SlidingWindowCounterRateLimitStrategy(clock, 3, 2);
+
+        //First Request
+        long timeOfFirstRequest = clock.nanoTime();
+        strategy.checkRateLimit(firstUserIP);
+
+        //Second Request
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(1));
+        RateLimitResult result = strategy.checkRateLimit(firstUserIP);
+
+        assertTrue(result.isRequestAllowed());
+        assertEquals(0, result.getRemainingAllowedAmountOfRequests());
+    }
+
+    @Test
+    public void shouldNotAllow_WhenMoreThanAllowedRequests_WithinTimeWindow() {
+
+        strategy = new SlidingWindowCounterRateLimitStrategy(clock, 3, 2);
+
+        //First Request
+        long timeOfFirstRequest = clock.nanoTime();
+        strategy.checkRateLimit(firstUserIP);
+
+        //Second Request
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(1));
+        strategy.checkRateLimit(firstUserIP);
+
+        //Third Request
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(2));
+        RateLimitResult result = strategy.checkRateLimit(firstUserIP);
+
+        assertFalse(result.isRequestAllowed());
+        assertEquals(60 + 3 * 60 / 2, result.getNextAllowedRequestTimeInSeconds());
+    }
+
+    @Test
+    public void shouldWeightPreviousWindow_WhenWindowHasPassed() {
+
+        strategy = new SlidingWindowCounterRateLimitStrategy(clock, 1, 4);
+
+        //four requests fill the first window
+        long windowStart = clock.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            strategy.checkRateLimit(firstUserIP);
+        }
+
+        //a quarter into the next window the previous window still counts for three requests
+        clock.setTime(windowStart + SECONDS.toNanos(75));
+        RateLimitResult allowed = strategy.checkRateLimit(firstUserIP);
+        RateLimitResult denied = strategy.checkRateLimit(firstUserIP);
+
+        assertTrue(allowed.isRequestAllowed());
+        assertEquals(0, allowed.getRemainingAllowedAmountOfRequests());
+        assertFalse(denied.isRequestAllowed());
+        assertEquals(15, denied.getNextAllowedRequestTimeInSeconds());
+
+        //halfway into the window the previous window counts for two requests
+        clock.setTime(windowStart + SECONDS.toNanos(90));
+
+        assertTrue(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+    }
+
+    @Test
+    public void shouldAllow_WhenWithinAllowedLimitOfRequests_And_NotInTimeWindow() {
+
+        int limitInMinutes = 3;
+
+        strategy = new SlidingWindowCounterRateLimitStrategy(clock, limitInMinutes, 2);
+
+        //First and second Request
+        long timeOfFirstRequest = clock.nanoTime();
+        strategy.checkRateLimit(firstUserIP);
+        strategy.checkRateLimit(firstUserIP);
+
+        //Third Request, two windows later
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(2 * limitInMinutes) + SECONDS.toNanos(1));
+        RateLimitResult result = strategy.checkRateLimit(firstUserIP);
+
+        assertTrue(result.isRequestAllowed());
+        assertEquals(1, result.getRemainingAllowedAmountOfRequests());
+    }
+
+    @Test
+    public void shouldAllowSecondUser_WhenFirstUserReachedLimit() {
+
+        strategy = new SlidingWindowCounterRateLimitStrategy(clock, 3, 1);
+
+        clock.setTime(clock.nanoTime());
+        strategy.checkRateLimit(firstUserIP);
+
+        assertFalse(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+        assertTrue(strategy.checkRateLimit("127.0.0.2").isRequestAllowed());
+    }
+
+    /**
+     * Worst case of the approximation: all requests of the previous window arrive right before the window ends.
+     * Shortly before the end of the next window the sliding window then contains almost twice the limit.
+     */
+    @Test
+    public void shouldAllowAtMostTwiceTheLimitInSlidingWindow_WhenRequestsAreAtEndOfPreviousWindow() {
+
+        int limitOfRequests = 10;
+        strategy = new SlidingWindowCounterRateLimitStrategy(clock, 1, limitOfRequests);
+
+        long windowStart = clock.nanoTime();
+        strategy.checkRateLimit(firstUserIP);
+
+        Deque<Long> allowedRequests = new ArrayDeque<>();
+        allowedRequests.add(windowStart);
+        int maxAllowedInSlidingWindow = 0;
+
+        for (long time = windowStart + SECONDS.toNanos(59); time < windowStart + MINUTES.toNanos(3); time += SECONDS.toNanos(1)) {
+            clock.setTime(time);
+
+            while (strategy.checkRateLimit(firstUserIP).isRequestAllowed()) {
+                allowedRequests.add(time);
+            }
+
+            while (allowedRequests.peek() <= time - MINUTES.toNanos(1)) {
+                allowedRequests.poll();
+            }
+            maxAllowedInSlidingWindow = Math.max(maxAllowedInSlidingWindow, allowedRequests.size());
+        }
+
+        assertTrue(maxAllowedInSlidingWindow > limitOfRequests);
+        assertTrue(maxAllowedInSlidingWindow <= 2 * limitOfRequests - 1);
+    }
+
+    @Test
+    public void shouldNeverAllowTwiceTheLimitInSlidingWindow_ForRandomRequestSequence() {
+
+        int limitOfRequests = 20;
+        long window = MINUTES.toNanos(1);
+        strategy = new SlidingWindowCounterRateLimitStrategy(clock, 1, limitOfRequests);
+
+        Random random = new Random(42);
+        Deque<Long> allowedRequests = new ArrayDeque<>();
+
+        for (int i = 0; i < 100_000; i++) {
+            clock.advance(random.nextInt(3_000), MILLISECONDS);
+
+            if (strategy.checkRateLimit(firstUserIP).isRequestAllowed()) {
+                allowedRequests.add(clock.nanoTime());
+            }
+
+            while (!allowedRequests.isEmpty() && allowedRequests.peek() <= clock.nanoTime() - window) {
+                allowedRequests.poll();
+            }
+
+            assertTrue(allowedRequests.size() <= 2 * limitOfRequests - 1);
+        }
+    }
+
+    @Test
+    public void shouldDeleteIdleMapEntries() {
+
+        long now = clock.nanoTime();
+        strategy = new SlidingWindowCounterRateLimitStrategy(clock, 3, 3);
+
+        clock.setTime(now - MINUTES.toNanos(10));
+        strategy.checkRateLimit(firstUserIP);
+
+        clock.setTime(now - MINUTES.toNanos(2));
+        strategy.checkRateLimit("127.0.0.2");
+
+        clock.setTime(now);
+        strategy.expireIdleStates();
+
+        assertEquals(1, strategy.numberOfTrackedIPs());
+    }
+
+    @Test
+    public void shouldCountRequestAsItsCost_AndDenyItAsAWhole() {
+
+        SlidingWindowCounterRateLimitStrategy strategy = new SlidingWindowCounterRateLimitStrategy(clock, 1, 5);
+
+        assertEquals(2, strategy.checkRateLimit(firstUserIP, 3).getRemainingAllowedAmountOfRequests());
+        assertFalse(strategy.checkRateLimit(firstUserIP, 3).isRequestAllowed());
+        assertEquals(0, strategy.checkRateLimit(firstUserIP, 2).getRemainingAllowedAmountOfRequests());
+        assertFalse(strategy.checkRateLimit("127.0.0.2", 6).isRequestAllowed());
+    }
+
+    @Test
+    public void shouldLimitUntrackedIPsTogether_WhenStoreIsFull() {
+
+        strategy = new SlidingWindowCounterRateLimitStrategy(clock, 1, 2, 1);
+
+        assertTrue(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+
+        // requested as rarely as the tracked IP, so not admitted, and limited like one IP
+        assertTrue(strategy.checkRateLimit("127.0.0.2").isRequestAllowed());
+        assertTrue(strategy.checkRateLimit("127.0.0.3").isRequestAllowed());
+        assertFalse(strategy.checkRateLimit("127.0.0.4").isRequestAllowed());
+
+        assertTrue(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+        assertEquals(1, strategy.numberOfTrackedIPs());
+    }
+}
@@ -1,30 +1,27 @@
 package com.airtasker.challenge.ratelimiter;
 
-import com.airtasker.challenge.util.SystemTimeProvider;
+import com.airtasker.challenge.util.TestClock;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.Mockito;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
-import java.time.LocalDateTime;
-import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
-
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.jupiter.api.Assertions.*;
 
 @ExtendWith(SpringExtension.class)
 class SlidingWindowRateLimitStrategyTest {
 
-    private SystemTimeProvider timeProvider;
+    private TestClock clock;
     private SlidingWindowRateLimitStrategy strategy;
     private String firstUserIP;
 
 
     @BeforeEach
     public void setUp() {
-        timeProvider = Mockito.mock(SystemTimeProvider.class);
+        clock = new TestClock();
         firstUserIP = "127.0.0.1";
     }
 
@@ -35,16 +32,14 @@ class SlidingWindowRateLimitStrategyTest {
         int limitInMinutes = 3;
         int limitOfRequests = 2;
 
-        strategy = new SlidingWindowRateLimitStrategy(timeProvider, limitInMinutes, limitOfRequests);
+        strategy = new SlidingWindowRateLimitStrategy(clock, limitInMinutes, limitOfRequests);
 
         //First Request
-        LocalDateTime timeOfFirstRequest = LocalDateTime.now();
-
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(timeOfFirstRequest);
+        long timeOfFirstRequest = clock.nanoTime();
         strategy.checkRateLimit(firstUserIP);
 
         //Second Request
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(timeOfFirstRequest.plusMinutes(1));
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(1));
         RateLimitResult result = strategy.checkRateLimit(firstUserIP);
 
         assertTrue(result.isRequestAllowed());
@@ -57,20 +52,18 @@ class SlidingWindowRateLimitStrategyTest {
         int limitInMinutes = 3;
         int limitOfRequests = 2;
 
-        strategy = new SlidingWindowRateLimitStrategy(timeProvider, limitInMinutes, limitOfRequests);
+        strategy = new SlidingWindowRateLimitStrategy(clock, limitInMinutes, limitOfRequests);
 
         //First Request
-        LocalDateTime timeOfFirstRequest = LocalDateTime.now();
-
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(timeOfFirstRequest);
+        long timeOfFirstRequest = clock.nanoTime();
         strategy.checkRateLimit(firstUserIP);
 
         //Second Request
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(timeOfFirstRequest.plusMinutes(1));
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(1));
         strategy.checkRateLimit(firstUserIP);
 
         //Third Request
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(timeOfFirstRequest.plusMinutes(2));
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(2));
         RateLimitResult result = strategy.checkRateLimit(firstUserIP);
 
 
@@ -83,22 +76,20 @@ class SlidingWindowRateLimitStrategyTest {
         int limitInMinutes = 1;
         int limitOfRequests = 1;
 
-        strategy = new SlidingWindowRateLimitStrategy(timeProvider, limitInMinutes, limitOfRequests);
+        strategy = new SlidingWindowRateLimitStrategy(clock, limitInMinutes, limitOfRequests);
 
         //First Request
-        LocalDateTime timeOfFirstRequest = LocalDateTime.now();
-
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(timeOfFirstRequest);
+        long timeOfFirstRequest = clock.nanoTime();
         strategy.checkRateLimit(firstUserIP);
 
         //Second Request
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(timeOfFirstRequest.plusSeconds(1));
+        clock.setTime(timeOfFirstRequest + SECONDS.toNanos(1));
         RateLimitResult resultSecondRequest = strategy.checkRateLimit(firstUserIP);
 
         assertEquals(59, resultSecondRequest.getNextAllowedRequestTimeInSeconds());
 
         //Third Request
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(timeOfFirstRequest.plusSeconds(2));
+        clock.setTime(timeOfFirstRequest + SECONDS.toNanos(2));
         RateLimitResult resultThirdRequest = strategy.checkRateLimit(firstUserIP);
 
         assertEquals(58, resultThirdRequest.getNextAllowedRequestTimeInSeconds());
@@ -110,19 +101,18 @@ class SlidingWindowRateLimitStrategyTest {
         int limitInMinutes = 3;
         int limitOfRequests = 2;
 
-        strategy = new SlidingWindowRateLimitStrategy(timeProvider, limitInMinutes, limitOfRequests);
+        strategy = new SlidingWindowRateLimitStrategy(clock, limitInMinutes, limitOfRequests);
 
         //First Request
-        LocalDateTime timeOfFirstRequest = LocalDateTime.now();
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(timeOfFirstRequest);
+        long timeOfFirstRequest = clock.nanoTime();
         strategy.checkRateLimit(firstUserIP);
 
         //Second Request
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(timeOfFirstRequest.plusSeconds(10));
+        clock.setTime(timeOfFirstRequest + SECONDS.toNanos(10));
         strategy.checkRateLimit(firstUserIP);
 
         //Third Request
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(timeOfFirstRequest.plusMinutes(limitInMinutes).plusSeconds(1));
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(limitInMinutes) + SECONDS.toNanos(1));
         RateLimitResult result = strategy.checkRateLimit(firstUserIP);
 
         assertTrue(result.isRequestAllowed());
@@ -135,15 +125,14 @@ class SlidingWindowRateLimitStrategyTest {
         int limitInMinutes = 3;
         int limitOfRequests = 2;
 
-        strategy = new SlidingWindowRateLimitStrategy(timeProvider, limitInMinutes, limitOfRequests);
+        strategy = new SlidingWindowRateLimitStrategy(clock, limitInMinutes, limitOfRequests);
 
         //First Request
-        LocalDateTime timeOfFirstRequest = LocalDateTime.now();
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(timeOfFirstRequest);
+        long timeOfFirstRequest = clock.nanoTime();
         strategy.checkRateLimit(firstUserIP);
 
         //Second Request
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(timeOfFirstRequest.plusMinutes(limitInMinutes).plusSeconds(1));
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(limitInMinutes) + SECONDS.toNanos(1));
         RateLimitResult result = strategy.checkRateLimit(firstUserIP);
 
         assertTrue(result.isRequestAllowed());
@@ -155,18 +144,17 @@ class SlidingWindowRateLimitStrategyTest {
         int limitInMinutes = 3;
         int limitOfRequests = 2;
 
-        strategy = new SlidingWindowRateLimitStrategy(timeProvider, limitInMinutes, limitOfRequests);
+        strategy = new SlidingWindowRateLimitStrategy(clock, limitInMinutes, limitOfRequests);
 
         //First Request
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(LocalDateTime.now());
         strategy.checkRateLimit(firstUserIP);
 
         //Second Request
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(LocalDateTime.now().plusSeconds(10));
+        clock.advance(10, SECONDS);
         strategy.checkRateLimit(firstUserIP);
 
         //Third Request, next day
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(LocalDateTime.now().plusDays(1).plusSeconds(1));
+        clock.advance(1, DAYS);
         RateLimitResult result = strategy.checkRateLimit(firstUserIP);
 
         assertTrue(result.isRequestAllowed());
@@ -178,20 +166,19 @@ class SlidingWindowRateLimitStrategyTest {
         int limitInMinutes = 3;
         int limitOfRequests = 2;
 
-        strategy = new SlidingWindowRateLimitStrategy(timeProvider, limitInMinutes, limitOfRequests);
+        strategy = new SlidingWindowRateLimitStrategy(clock, limitInMinutes, limitOfRequests);
 
         //first user
-        LocalDateTime timeOfFirstRequest = LocalDateTime.now();
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(timeOfFirstRequest);
+        long timeOfFirstRequest = clock.nanoTime();
         strategy.checkRateLimit(firstUserIP);
 
         //second user
         String secondUserIP = "197.168.154";
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(timeOfFirstRequest);
+        clock.setTime(timeOfFirstRequest);
         strategy.checkRateLimit(secondUserIP);
 
         //first user, second request
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(timeOfFirstRequest.plusMinutes(1));
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(1));
         RateLimitResult result = strategy.checkRateLimit(firstUserIP);
 
         assertTrue(result.isRequestAllowed());
@@ -203,54 +190,190 @@ class SlidingWindowRateLimitStrategyTest {
         int limitInMinutes = 3;
         int limitOfRequests = 2;
 
-        strategy = new SlidingWindowRateLimitStrategy(timeProvider, limitInMinutes, limitOfRequests);
+        strategy = new SlidingWindowRateLimitStrategy(clock, limitInMinutes, limitOfRequests);
 
         //First Request
-        LocalDateTime timeOfFirstRequest = LocalDateTime.now();
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(timeOfFirstRequest);
+        long timeOfFirstRequest = clock.nanoTime();
         RateLimitResult firstRateLimitResult = strategy.checkRateLimit(firstUserIP);
 
         assertEquals(1, firstRateLimitResult.getRemainingAllowedAmountOfRequests());
 
         //Second Request
-        LocalDateTime timeOfSecondRequest = timeOfFirstRequest.plusSeconds(10);
+        long timeOfSecondRequest = timeOfFirstRequest + SECONDS.toNanos(10);
 
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(timeOfSecondRequest);
+        clock.setTime(timeOfSecondRequest);
         RateLimitResult secondRateLimitResult = strategy.checkRateLimit(firstUserIP);
 
         assertEquals(0, secondRateLimitResult.getRemainingAllowedAmountOfRequests());
 
         //Third Request
-        LocalDateTime timeOfThirdRequest = timeOfSecondRequest.plusMinutes(limitInMinutes).plusSeconds(1);
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(timeOfThirdRequest);
+        long timeOfThirdRequest = timeOfSecondRequest + MINUTES.toNanos(limitInMinutes) + SECONDS.toNanos(1);
+        clock.setTime(timeOfThirdRequest);
         RateLimitResult result = strategy.checkRateLimit(firstUserIP);
 
         assertEquals(1, result.getRemainingAllowedAmountOfRequests());
     }
 
     @Test
-    public void shouldDeleteOldMapEntries() {
-        LocalDateTime now = LocalDateTime.now();
-        strategy = new SlidingWindowRateLimitStrategy(timeProvider, 3, 3);
+    public void shouldDeleteIdleMapEntries() {
+        long now = clock.nanoTime();
+        strategy = new SlidingWindowRateLimitStrategy(clock, 3, 3);
 
-        Mockito.when(timeProvider.getCurrentTime()).thenReturn(now);
+        clock.setTime(now - MINUTES.toNanos(10));
+        strategy.checkRateLimit(firstUserIP);
 
-        ConcurrentHashMap<String, Queue<LocalDateTime>> map = new ConcurrentHashMap<>();
+        String secondUser = "127.0.0.2";
+        clock.setTime(now - MINUTES.toNanos(2));
+        strategy.checkRateLimit(secondUser);
 
-        addRequestToMap(firstUserIP, now.minusDays(2), new ArrayBlockingQueue<>(100), map);
-        addRequestToMap(firstUserIP, now.minusDays(1), map.get(firstUserIP), map);
+        clock.setTime(now);
+        strategy.expireIdleStates();
 
-        String secondUser = "127.0.0.2";
-        addRequestToMap(secondUser, now.minusMinutes(2), new ArrayBlockingQueue<>(100), map);
+        assertEquals(1, strategy.numberOfTrackedIPs());
+    }
+
+    @Test
+    public void shouldDeleteIdleMapEntries_WhenRequestsArrive() {
+        long now = clock.nanoTime();
+        strategy = new SlidingWindowRateLimitStrategy(clock, 3, 3);
+
+        clock.setTime(now - MINUTES.toNanos(10));
+        strategy.checkRateLimit(firstUserIP);
+
+        clock.setTime(now);
+        strategy.checkRateLimit("127.0.0.2");
+
+        assertEquals(1, strategy.numberOfTrackedIPs());
+    }
+
+    @Test
+    public void shouldKeepRequests_WhenLimitIsRaised() {
+        strategy = new SlidingWindowRateLimitStrategy(clock, 3, 2);
 
+        strategy.checkRateLimit(firstUserIP);
+        strategy.checkRateLimit(firstUserIP);
+        assertFalse(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
 
-        assertEquals(1, strategy.deleteMapEntriesOlderThanInMinutes(map, 60 * 24).size());
+        strategy.updateLimit(3, 4);
 
+        RateLimitResult result = strategy.checkRateLimit(firstUserIP);
+        assertTrue(result.isRequestAllowed());
+        assertEquals(1, result.getRemainingAllowedAmountOfRequests());
+        assertTrue(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+        assertFalse(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
     }
 
-    private void addRequestToMap(String userIP, LocalDateTime currentTime, Queue<LocalDateTime> requestTimeQueue, ConcurrentHashMap<String, Queue<LocalDateTime>> map) {
-        requestTimeQueue.add(currentTime);
-        map.put(userIP, requestTimeQueue);
+    @Test
+    public void shouldKeepLatestRequests_WhenLimitIsLowered() {
+        long timeOfFirstRequest = clock.nanoTime();
+        strategy = new SlidingWindowRateLimitStrategy(clock, 3, 3);
+
+        strategy.checkRateLimit(firstUserIP);
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(1));
+        strategy.checkRateLimit(firstUserIP);
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(2));
+        strategy.checkRateLimit(firstUserIP);
+
+        strategy.updateLimit(3, 2);
+
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(2) + SECONDS.toNanos(1));
+        RateLimitResult denied = strategy.checkRateLimit(firstUserIP);
+        assertFalse(denied.isRequestAllowed());
+        // the second request has to leave the window, the first one no longer counts
+        assertEquals(MINUTES.toSeconds(2) - 1, denied.getNextAllowedRequestTimeInSeconds());
+
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(4) + SECONDS.toNanos(1));
+        RateLimitResult allowed = strategy.checkRateLimit(firstUserIP);
+        assertTrue(allowed.isRequestAllowed());
+        assertEquals(0, allowed.getRemainingAllowedAmountOfRequests());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void shouldDenyWithSharedResult_UntilOldestRequestLeavesWindow() {
+        long timeOfFirstRequest = clock.nanoTime();
+        strategy = new SlidingWindowRateLimitStrategy(clock, 3, 1);
+
+        strategy.checkRateLimit(firstUserIP);
+
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(1));
+        RateLimitResult denied = strategy.checkRateLimit(firstUserIP);
+        assertFalse(denied.isRequestAllowed());
+        assertEquals(MINUTES.toSeconds(2), denied.getNextAllowedRequestTimeInSeconds());
+        assertSame(denied, strategy.checkRateLimit(firstUserIP));
+
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(3));
+        RateLimitResult lastDenied = strategy.checkRateLimit(firstUserIP);
+        assertFalse(lastDenied.isRequestAllowed());
+        assertEquals(0, lastDenied.getNextAllowedRequestTimeInSeconds());
+
+        clock.setTime(timeOfFirstRequest + MINUTES.toNanos(3) + 1);
+        assertTrue(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+    }
+
+    @Test
+    public void shouldAllow_WhenLimitIsRaised_WhileDenied() {
+        strategy = new SlidingWindowRateLimitStrategy(clock, 3, 1);
+
+        strategy.checkRateLimit(firstUserIP);
+        assertFalse(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+
+        strategy.updateLimit(3, 2);
+
+        assertTrue(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+    }
+
+    @Test
+    public void shouldCountRequestAsItsCost_AndDenyItAsAWhole() {
+
+        SlidingWindowRateLimitStrategy strategy = new SlidingWindowRateLimitStrategy(clock, 1, 5);
+
+        assertEquals(2, strategy.checkRateLimit(firstUserIP, 3).getRemainingAllowedAmountOfRequests());
+
+        RateLimitResult result = strategy.checkRateLimit(firstUserIP, 3);
+        assertFalse(result.isRequestAllowed());
+        assertEquals(60, result.getNextAllowedRequestTimeInSeconds());
+
+        assertEquals(0, strategy.checkRateLimit(firstUserIP, 2).getRemainingAllowedAmountOfRequests());
+        assertFalse(strategy.checkRateLimit("127.0.0.2", 6).isRequestAllowed());
+        assertEquals(4, strategy.checkRateLimit("127.0.0.2").getRemainingAllowedAmountOfRequests());
+    }
+
+    @Test
+    public void shouldLimitUntrackedIPsTogether_WhenStoreIsFull() {
+
+        strategy = new SlidingWindowRateLimitStrategy(clock, 1, 2, 1);
+
+        assertTrue(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+
+        // requested as rarely as the tracked IP, so not admitted, and limited like one IP
+        assertTrue(strategy.checkRateLimit("127.0.0.2").isRequestAllowed());
+        assertTrue(strategy.checkRateLimit("127.0.0.3").isRequestAllowed());
+        assertFalse(strategy.checkRateLimit("127.0.0.4").isRequestAllowed());
+
+        assertTrue(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+        assertEquals(1, strategy.numberOfTrackedIPs());
+    }
+
+    @Test
+    public void shouldDenyCheaperRequest_OnlyUntilItsOwnRetryTime_AfterExpensiveRequestIsDenied() {
+
+        strategy = new SlidingWindowRateLimitStrategy(clock, 1, 5);
+
+        assertTrue(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+        for (int i = 0; i < 4; i++) {
+            clock.advance(10, SECONDS);
+            assertTrue(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+        }
+
+        clock.advance(5, SECONDS);
+        assertEquals(55, strategy.checkRateLimit(firstUserIP, 5).getNextAllowedRequestTimeInSeconds());
+
+        // the denial of the cheaper request replaces the one of the expensive request as a whole
+        clock.advance(1, SECONDS);
+        assertEquals(54, strategy.checkRateLimit(firstUserIP, 5).getNextAllowedRequestTimeInSeconds());
+        assertEquals(14, strategy.checkRateLimit(firstUserIP).getNextAllowedRequestTimeInSeconds());
+
+        clock.advance(15, SECONDS);
+        assertTrue(strategy.checkRateLimit(firstUserIP).isRequestAllowed());
+    }
+}
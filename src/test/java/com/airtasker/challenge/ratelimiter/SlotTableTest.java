@@ -0,0 +1,34 @@
+package com.airtasker.challenge.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlotTableTest {
+
+    @Test
+    public void shouldStoreAndCopyLongs_OnAndOffHeap() {
+
+        for (SlotTable.Storage storage : SlotTable.Storage.values()) {
+            SlotTable table = SlotTable.allocate(storage, 6);
+
+            table.set(0, Long.MIN_VALUE);
+            table.set(1, -1);
+            table.set(2, Long.MAX_VALUE);
+            table.copy(0, 3, 3);
+
+            assertEquals(6, table.length());
+            assertEquals(Long.MIN_VALUE, table.get(3));
+            assertEquals(-1, table.get(4));
+            assertEquals(Long.MAX_VALUE, table.get(5));
+        }
+    }
+
+    @Test
+    public void shouldParseStorageProperty() {
+
+        assertEquals(SlotTable.Storage.HEAP, SlotTable.Storage.of("heap"));
+        assertEquals(SlotTable.Storage.OFF_HEAP, SlotTable.Storage.of("off-heap"));
+        assertThrows(IllegalArgumentException.class, () -> SlotTable.Storage.of("disk"));
+    }
+}
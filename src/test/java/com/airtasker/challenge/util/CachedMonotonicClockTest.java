@@ -0,0 +1,32 @@
+package com.airtasker.challenge.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachedMonotonicClockTest {
+
+    @Test
+    public void shouldAdvanceWithEveryTick_AndNeverGoBack() throws InterruptedException {
+        CachedMonotonicClock clock = new CachedMonotonicClock(1);
+
+        try {
+            long startTime = clock.nanoTime();
+            long previousTime = startTime;
+
+            for (int i = 0; i < 50; i++) {
+                Thread.sleep(2);
+                long currentTime = clock.nanoTime();
+
+                assertTrue(currentTime >= previousTime);
+                previousTime = currentTime;
+            }
+
+            assertTrue(previousTime - startTime >= TimeUnit.MILLISECONDS.toNanos(50));
+        } finally {
+            clock.stop();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.airtasker.challenge.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clock that only moves when the test sets or advances it. It starts at an arbitrary positive time, like
+ * {@link System#nanoTime()} has no fixed origin.
+ */
+public class TestClock implements MonotonicClock {
+
+    private volatile long nanoTime = TimeUnit.DAYS.toNanos(1);
+
+
+    @Override
+    public long nanoTime() {
+        return nanoTime;
+    }
+
+    public void setTime(long nanoTime) {
+        this.nanoTime = nanoTime;
+    }
+
+    public void advance(long duration, TimeUnit unit) {
+        this.nanoTime += unit.toNanos(duration);
+    }
+}